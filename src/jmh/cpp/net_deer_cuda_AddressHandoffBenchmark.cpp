@@ -0,0 +1,64 @@
+#ifndef _JAVASOFT_JNI_H_
+#include "jni.h"
+#endif /* _JAVASOFT_JNI_H_ */
+
+
+// Benchmark-only natives (library "deerjmh"), not part of deercuda. The field
+// IDs are cached once, as deercuda's JHandleCache does for the real entry
+// points, so that addressFromObjectN measures just the field reads.
+
+static jfieldID deviceIdField = 0;
+static jfieldID addressField = 0;
+
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+
+/*
+ * Class:     net_deer_cuda_AddressHandoffBenchmark
+ * Method:    initializeN
+ * Signature: (Ljava/lang/Class;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_net_deer_cuda_AddressHandoffBenchmark_initializeN
+  (JNIEnv* env, jclass /*clazz*/, jclass addressClass)
+{
+    deviceIdField = env->GetFieldID(addressClass, "deviceId", "I");
+    if (deviceIdField == 0) {
+        return JNI_FALSE;
+    }
+    addressField = env->GetFieldID(addressClass, "address", "J");
+    return addressField != 0 ? JNI_TRUE : JNI_FALSE;
+}
+
+
+/*
+ * Class:     net_deer_cuda_AddressHandoffBenchmark
+ * Method:    addressFromObjectN
+ * Signature: (Lnet/deer/cuda/Address;)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_AddressHandoffBenchmark_addressFromObjectN
+  (JNIEnv* env, jclass /*clazz*/, jobject addr)
+{
+    jint deviceId = env->GetIntField(addr, deviceIdField);
+    jlong address = env->GetLongField(addr, addressField);
+    return address ^ deviceId;
+}
+
+
+/*
+ * Class:     net_deer_cuda_AddressHandoffBenchmark
+ * Method:    addressFromValuesN
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_AddressHandoffBenchmark_addressFromValuesN
+  (JNIEnv* /*env*/, jclass /*clazz*/, jint deviceId, jlong address)
+{
+    return address ^ deviceId;
+}
+
+
+#ifdef __cplusplus
+}
+#endif
@@ -0,0 +1,63 @@
+package net.deer.cuda;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what it costs to hand a device address to native code: as an
+ * {@link Address} object whose fields are read through the cached field IDs,
+ * or as the plain {@code (deviceId, address)} values that the
+ * {@link CudaBackend} natives take. The difference is the per-call saving of
+ * every synchronous and asynchronous copy.
+ * <p>
+ * The natives live in the benchmark-only {@code deerjmh} library (built from
+ * {@code src/jmh/cpp}), which needs neither {@code deercuda} nor a device.
+ * Both return {@code address ^ deviceId}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AddressHandoffBenchmark {
+
+    private static final String LIBRARY_NAME = "deerjmh";
+
+    private Address address;
+
+    @Setup
+    public void setup() {
+        System.loadLibrary(LIBRARY_NAME);
+        address = Addresses.of(this, 0x7f0000001000L, 0L, null, 0);
+        if (!initializeN(address.getClass())) {
+            throw new IllegalStateException("Address fields not found in " + address.getClass().getName());
+        }
+    }
+
+    @Benchmark
+    public long addressObject() {
+        return addressFromObjectN(address);
+    }
+
+    @Benchmark
+    public long addressValues() {
+        return addressFromValuesN(address.getDeviceId(), address.getValue());
+    }
+
+    private static native boolean initializeN(Class<?> addressClass);
+
+    private static native long addressFromObjectN(Address address);
+
+    private static native long addressFromValuesN(int deviceId, long address);
+}
@@ -0,0 +1,46 @@
+package net.deer.cuda;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of wrapping a raw pointer into an {@link Address}, which happens
+ * on every allocation, slice and scalar kernel parameter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.deer.cuda.SystemProps.backend=host")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AddressesBenchmark {
+
+    private long value;
+    private Address parent;
+
+    @Setup
+    public void setup() {
+        value = 0x7f0000001000L;
+        parent = Addresses.of(this, value, 0L, null, 0);
+    }
+
+    @Benchmark
+    public Address of() {
+        return Addresses.of(this, value, 0L, null, 0);
+    }
+
+    @Benchmark
+    public Address slice() {
+        return Addresses.slice(this, parent, 256L);
+    }
+}
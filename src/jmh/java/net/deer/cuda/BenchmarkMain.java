@@ -0,0 +1,46 @@
+package net.deer.cuda;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code benchmarks.jar} entry point: excludes the benchmarks whose
+ * native library can't be loaded on this host and hands everything else to
+ * {@code org.openjdk.jmh.Main}, so that the default run works without a GPU
+ * and without the native build.
+ */
+public final class BenchmarkMain {
+
+    // library name, then the exclude patterns of the benchmarks that need it
+    private static final String[][] NATIVE_BENCHMARKS = {
+            { "deercuda", "ReachabilityFenceBenchmark\\.jni$" },
+            { "deerjmh", "AddressHandoffBenchmark\\." } };
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+        for (String[] entry : NATIVE_BENCHMARKS) {
+            if (!canLoad(entry[0])) {
+                for (int i = 1; i < entry.length; ++i) {
+                    System.err.println("Skipping " + entry[i] + " (" + entry[0] + " library not found)");
+                    jmhArgs.add("-e");
+                    jmhArgs.add(entry[i]);
+                }
+            }
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+    }
+
+    private static boolean canLoad(String libraryName) {
+        try {
+            System.loadLibrary(libraryName);
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            return false;
+        }
+    }
+
+    private BenchmarkMain() {
+        throw new AssertionError();
+    }
+}
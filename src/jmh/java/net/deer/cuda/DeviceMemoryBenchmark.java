@@ -0,0 +1,65 @@
+package net.deer.cuda;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The fixed cost of the {@link DeviceMemory} life cycle: allocate / close
+ * (which mostly hits the {@link CachingAllocator}) and taking a slice.
+ * <p>
+ * Runs on the host backend by default, pass
+ * {@code -jvmArgsAppend -Dnet.deer.cuda.SystemProps.backend=cuda} to measure
+ * a real device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.deer.cuda.SystemProps.backend=host")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DeviceMemoryBenchmark {
+
+    @Param({ "4", "4096", "1048576" })
+    public long byteCount;
+
+    private GPUDevice device;
+    private DeviceMemory buffer;
+
+    @Setup
+    public void setup() {
+        device = new GPUDevice(0);
+        buffer = new DeviceMemory(device, byteCount);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        buffer.close();
+    }
+
+    @Benchmark
+    public void allocateAndClose() throws Exception {
+        new DeviceMemory(device, byteCount).close();
+    }
+
+    @Benchmark
+    public void sliceAndClose() throws Exception {
+        buffer.slice(0L, byteCount >>> 1).close();
+    }
+
+    @Benchmark
+    public DeviceMemory slice() {
+        return buffer.slice(0L, byteCount >>> 1);
+    }
+}
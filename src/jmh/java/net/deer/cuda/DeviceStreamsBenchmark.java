@@ -0,0 +1,99 @@
+package net.deer.cuda;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoublePredicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scanning a double buffer through the chunked {@link DeviceStreams} views
+ * against fetching the whole buffer into a host array first
+ * ({@code fetchAll*}): a full reduction ({@code sum}) and a search whose
+ * match lies in the first chunk ({@code findFirst}).
+ * <p>
+ * Runs on the host backend by default. Pass
+ * {@code -jvmArgsAppend -Dnet.deer.cuda.SystemProps.backend=cuda} to measure
+ * real device to host copies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.deer.cuda.SystemProps.backend=host")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DeviceStreamsBenchmark {
+
+    @Param({ "1048576", "16777216" })
+    public int length;
+
+    private DeviceMemory memory;
+
+    @Setup
+    public void setup() {
+        double[] values = new double[length];
+        for (int i = 0; i < length; ++i) {
+            values[i] = i;
+        }
+        memory = new DeviceMemory(new GPUDevice(0), 8L * length);
+        memory.transferToDevice(values);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        memory.close();
+    }
+
+    @Benchmark
+    public double sum() {
+        return DeviceStreams.doubles(memory).sum();
+    }
+
+    @Benchmark
+    public double parallelSum() {
+        return DeviceStreams.doubles(memory).parallel().sum();
+    }
+
+    @Benchmark
+    public double fetchAllSum() {
+        double[] values = new double[length];
+        memory.fetchToHost(values);
+        double sum = 0.0;
+        for (int i = 0; i < values.length; ++i) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double findFirst() {
+        return DeviceStreams.doubles(memory).filter(new DoublePredicate() {
+            @Override
+            public boolean test(double value) {
+                return value >= 1000.0;
+            }
+        }).findFirst().getAsDouble();
+    }
+
+    @Benchmark
+    public double fetchAllFindFirst() {
+        double[] values = new double[length];
+        memory.fetchToHost(values);
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] >= 1000.0) {
+                return values[i];
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,111 @@
+package net.deer.cuda;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A fused {@link Expr} {@code d = a * b + c} against the same computation in
+ * two passes through a temporary buffer ({@code t = a * b; d = t + c}), i.e.
+ * one pass over four vectors against two passes over three vectors each, and
+ * against a sequential loop over plain Java arrays ({@code array}).
+ * <p>
+ * Runs on the host backend by default. Pass
+ * {@code -jvmArgsAppend -Dnet.deer.cuda.SystemProps.backend=cuda} to measure
+ * the generated kernels (the first evaluation, which compiles the kernel,
+ * happens during the warmup).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.deer.cuda.SystemProps.backend=host")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ExprBenchmark {
+
+    @Param({ "4096", "1048576", "16777216" })
+    public int length;
+
+    private float[] aa;
+    private float[] ba;
+    private float[] ca;
+    private float[] da;
+    private DeviceMemory a;
+    private DeviceMemory b;
+    private DeviceMemory c;
+    private DeviceMemory d;
+    private DeviceMemory t;
+    private Expr fused;
+    private Expr product;
+    private Expr sum;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42L);
+        aa = new float[length];
+        ba = new float[length];
+        ca = new float[length];
+        da = new float[length];
+        for (int i = 0; i < length; ++i) {
+            aa[i] = rnd.nextFloat();
+            ba[i] = rnd.nextFloat();
+            ca[i] = rnd.nextFloat();
+        }
+        GPUDevice device = new GPUDevice(0);
+        a = new DeviceMemory(device, 4L * length);
+        b = new DeviceMemory(device, 4L * length);
+        c = new DeviceMemory(device, 4L * length);
+        d = new DeviceMemory(device, 4L * length);
+        t = new DeviceMemory(device, 4L * length);
+        a.transferToDevice(aa);
+        b.transferToDevice(ba);
+        c.transferToDevice(ca);
+        fused = Expr.floats(a).mul(Expr.floats(b)).add(Expr.floats(c));
+        product = Expr.floats(a).mul(Expr.floats(b));
+        sum = Expr.floats(t).add(Expr.floats(c));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        a.close();
+        b.close();
+        c.close();
+        d.close();
+        t.close();
+    }
+
+    @Benchmark
+    public void fused() {
+        fused.into(d);
+    }
+
+    @Benchmark
+    public void twoPasses() {
+        product.into(t);
+        sum.into(d);
+    }
+
+    @Benchmark
+    public float[] array() {
+        float[] as = aa;
+        float[] bs = ba;
+        float[] cs = ca;
+        float[] ds = da;
+        for (int i = 0; i < ds.length; ++i) {
+            ds[i] = as[i] * bs[i] + cs[i];
+        }
+        return ds;
+    }
+}
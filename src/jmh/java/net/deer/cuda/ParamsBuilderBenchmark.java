@@ -0,0 +1,61 @@
+package net.deer.cuda;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of assembling the parameters of a typical kernel launch: two
+ * device buffers and three scalars.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.deer.cuda.SystemProps.backend=host")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ParamsBuilderBenchmark {
+
+    private DeviceMemory in;
+    private DeviceMemory out;
+    private ParamsBuilder reused;
+
+    @Setup
+    public void setup() {
+        GPUDevice device = new GPUDevice(0);
+        in = new DeviceMemory(device, 4096L);
+        out = new DeviceMemory(device, 4096L);
+        reused = new ParamsBuilder(5);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        in.close();
+        out.close();
+    }
+
+    @Benchmark
+    public KernelParams setAndBuild() {
+        return new ParamsBuilder(5).set(0, in).set(1, out).set(2, 1024).set(3, 2.0f).set(4, 42L).build();
+    }
+
+    @Benchmark
+    public ParamsBuilder setScalar() {
+        return reused.set(2, 1024);
+    }
+
+    @Benchmark
+    public ParamsBuilder setBuffer() {
+        return reused.set(0, in);
+    }
+}
@@ -0,0 +1,66 @@
+package net.deer.cuda;
+
+import java.lang.ref.Reference;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The three ways {@link ReachabilityFence#protect(Object)} can keep an object
+ * alive, plus {@code protect} itself (which picks one of them at class
+ * initialization).
+ * <p>
+ * {@link #fence()} requires Java 9 or later, {@link #jni(Library)} the
+ * {@code deercuda} library (but no device); {@link BenchmarkMain} skips it
+ * when the library is missing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.deer.cuda.SystemProps.backend=host")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ReachabilityFenceBenchmark {
+
+    private final Object ref = new Object();
+
+    @State(Scope.Benchmark)
+    public static class Library {
+
+        @Setup
+        public void setup() throws ClassNotFoundException {
+            // initializing CudaBackend loads the library that contains
+            // protectN, it doesn't touch a device
+            Class.forName(CudaBackend.class.getName());
+        }
+    }
+
+    @Benchmark
+    public void protect() {
+        ReachabilityFence.protect(ref);
+    }
+
+    @Benchmark
+    public void fence() {
+        Reference.reachabilityFence(ref);
+    }
+
+    @Benchmark
+    public void jni(Library library) {
+        ReachabilityFence.protectN(ref);
+    }
+
+    @Benchmark
+    public void java() {
+        ReachabilityFence.protectJ(ref);
+    }
+}
@@ -0,0 +1,119 @@
+package net.deer.cuda;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongBinaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link ParallelPrimitives} radix sort and prefix sum against
+ * {@link Arrays#parallelSort(int[])} and {@link Arrays#parallelPrefix} on
+ * Java arrays of the same size. The input gets restored before every
+ * invocation (outside of the measurement).
+ * <p>
+ * Runs on the host backend by default, i.e. it measures the fork/join radix
+ * sort. Pass {@code -jvmArgsAppend -Dnet.deer.cuda.SystemProps.backend=cuda}
+ * to measure the device (the data then doesn't leave the device).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.deer.cuda.SystemProps.backend=host")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SortBenchmark {
+
+    private static final LongBinaryOperator SUM = new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+            return left + right;
+        }
+    };
+
+    @Param({ "65536", "1048576", "16777216" })
+    public int length;
+
+    private int[] input;
+    private int[] array;
+    private long[] longInput;
+    private long[] longArray;
+    private DeviceMemory keys;
+    private DeviceMemory longKeys;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42L);
+        input = new int[length];
+        longInput = new long[length];
+        for (int i = 0; i < length; ++i) {
+            input[i] = rnd.nextInt();
+            longInput[i] = rnd.nextLong();
+        }
+        array = new int[length];
+        longArray = new long[length];
+        GPUDevice device = new GPUDevice(0);
+        keys = new DeviceMemory(device, 4L * length);
+        longKeys = new DeviceMemory(device, 8L * length);
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        System.arraycopy(input, 0, array, 0, length);
+        System.arraycopy(longInput, 0, longArray, 0, length);
+        keys.transferToDevice(input);
+        longKeys.transferToDevice(longInput);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        keys.close();
+        longKeys.close();
+    }
+
+    @Benchmark
+    public void radixSortInt() {
+        ParallelPrimitives.sortInt(keys);
+    }
+
+    @Benchmark
+    public int[] parallelSortInt() {
+        Arrays.parallelSort(array);
+        return array;
+    }
+
+    @Benchmark
+    public void radixSortLong() {
+        ParallelPrimitives.sortLong(longKeys);
+    }
+
+    @Benchmark
+    public long[] parallelSortLong() {
+        Arrays.parallelSort(longArray);
+        return longArray;
+    }
+
+    @Benchmark
+    public void inclusiveScanLong() {
+        ParallelPrimitives.inclusiveScanLong(longKeys, longKeys);
+    }
+
+    @Benchmark
+    public long[] parallelPrefixLong() {
+        Arrays.parallelPrefix(longArray, SUM);
+        return longArray;
+    }
+}
@@ -0,0 +1,65 @@
+package net.deer.cuda;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Synchronous array transfers from 4 bytes up to 256 MiB. The small sizes
+ * show the per-call overhead, the large ones the bandwidth (including the
+ * staging through pinned memory above
+ * {@code net.deer.cuda.SystemProps.staging.threshold}).
+ * <p>
+ * Runs on the host backend by default, pass
+ * {@code -jvmArgsAppend -Dnet.deer.cuda.SystemProps.backend=cuda} to measure
+ * a real device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-Dnet.deer.cuda.SystemProps.backend=host" })
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TransferBenchmark {
+
+    @Param({ "4", "256", "4096", "65536", "1048576", "16777216", "268435456" })
+    public int byteCount;
+
+    private byte[] array;
+    private DeviceMemory buffer;
+
+    @Setup
+    public void setup() {
+        array = new byte[byteCount];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = (byte) i;
+        }
+        buffer = new DeviceMemory(new GPUDevice(0), byteCount);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        buffer.close();
+    }
+
+    @Benchmark
+    public void transferToDevice() {
+        buffer.transferToDevice(array);
+    }
+
+    @Benchmark
+    public void fetchToHost() {
+        buffer.fetchToHost(array);
+    }
+}
@@ -0,0 +1,116 @@
+package net.deer.cuda;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link VectorOps} on float vectors against sequential loops over plain
+ * Java arrays of the same size (the {@code array} benchmarks).
+ * <p>
+ * Runs on the host backend by default, i.e. it measures the fork/join
+ * fallback. Pass
+ * {@code -jvmArgsAppend -Dnet.deer.cuda.SystemProps.backend=cuda} to measure
+ * the device kernels, which includes the launch and synchronization cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.deer.cuda.SystemProps.backend=host")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class VectorOpsBenchmark {
+
+    @Param({ "4096", "1048576", "16777216" })
+    public int length;
+
+    private float[] xa;
+    private float[] ya;
+    private DeviceMemory x;
+    private DeviceMemory y;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42L);
+        xa = new float[length];
+        ya = new float[length];
+        for (int i = 0; i < length; ++i) {
+            xa[i] = rnd.nextFloat();
+            ya[i] = rnd.nextFloat();
+        }
+        GPUDevice device = new GPUDevice(0);
+        x = new DeviceMemory(device, 4L * length);
+        y = new DeviceMemory(device, 4L * length);
+        x.transferToDevice(xa);
+        y.transferToDevice(ya);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        x.close();
+        y.close();
+    }
+
+    @Benchmark
+    public void axpy() {
+        VectorOps.axpyFloat(1e-6f, x, y);
+    }
+
+    @Benchmark
+    public double dot() {
+        return VectorOps.dotFloat(x, y);
+    }
+
+    @Benchmark
+    public double sum() {
+        return VectorOps.sumFloat(x);
+    }
+
+    @Benchmark
+    public float max() {
+        return VectorOps.maxFloat(x);
+    }
+
+    @Benchmark
+    public float[] arrayAxpy() {
+        float[] xs = xa;
+        float[] ys = ya;
+        for (int i = 0; i < ys.length; ++i) {
+            ys[i] = 1e-6f * xs[i] + ys[i];
+        }
+        return ys;
+    }
+
+    @Benchmark
+    public double arrayDot() {
+        float[] xs = xa;
+        float[] ys = ya;
+        double dot = 0.0;
+        for (int i = 0; i < xs.length; ++i) {
+            dot += (double) xs[i] * ys[i];
+        }
+        return dot;
+    }
+
+    @Benchmark
+    public double arraySum() {
+        float[] xs = xa;
+        double sum = 0.0;
+        for (int i = 0; i < xs.length; ++i) {
+            sum += xs[i];
+        }
+        return sum;
+    }
+}
@@ -29,6 +29,8 @@
 
 //////////////////////////////////////////////////////////////////////
 // Private helper function for determining the Java stacktrace
+// (the wrappers below only ask for the pending exception, which creates
+// a local reference, after the cheap ExceptionCheck() has reported one)
 //////////////////////////////////////////////////////////////////////
 static void throwJException(JNIEnv* env, jthrowable error, char* contextMethod) {
     SlimString stackTrace;
@@ -65,10 +67,9 @@ jint Context::GetVersion()
     clearException();
     jint result = JNIEnv_::GetVersion();
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetVersion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetVersion");
     }
 
     return result;
@@ -80,10 +81,9 @@ jclass Context::DefineClass(const char* name, jobject loader, const jbyte* buf,
     clearException();
     jclass result = JNIEnv_::DefineClass(name, loader, buf, len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::DefineClass");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::DefineClass");
     }
 
     return result;
@@ -95,10 +95,9 @@ jclass Context::FindClass(const char* name)
     clearException();
     jclass result = JNIEnv_::FindClass(name);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::FindClass");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::FindClass");
     }
 
     return result;
@@ -110,10 +109,9 @@ jmethodID Context::FromReflectedMethod(jobject method)
     clearException();
     jmethodID result = JNIEnv_::FromReflectedMethod(method);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::FromReflectedMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::FromReflectedMethod");
     }
 
     return result;
@@ -125,10 +123,9 @@ jfieldID Context::FromReflectedField(jobject field)
     clearException();
     jfieldID result = JNIEnv_::FromReflectedField(field);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::FromReflectedField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::FromReflectedField");
     }
 
     return result;
@@ -140,10 +137,9 @@ jobject Context::ToReflectedMethod(jclass clazz, jmethodID methodID, jboolean is
     clearException();
     jobject result = JNIEnv_::ToReflectedMethod(clazz, methodID, isStatic);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::ToReflectedMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::ToReflectedMethod");
     }
 
     return result;
@@ -155,10 +151,9 @@ jclass Context::GetSuperclass(jclass sub)
     clearException();
     jclass result = JNIEnv_::GetSuperclass(sub);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetSuperclass");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetSuperclass");
     }
 
     return result;
@@ -170,10 +165,9 @@ jboolean Context::IsAssignableFrom(jclass sub, jclass sup)
     clearException();
     jboolean result = JNIEnv_::IsAssignableFrom(sub, sup);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::IsAssignableFrom");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::IsAssignableFrom");
     }
 
     return result;
@@ -185,10 +179,9 @@ jobject Context::ToReflectedField(jclass clazz, jfieldID fieldID, jboolean isSta
     clearException();
     jobject result = JNIEnv_::ToReflectedField(clazz, fieldID, isStatic);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::ToReflectedField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::ToReflectedField");
     }
 
     return result;
@@ -242,10 +235,9 @@ jint Context::PushLocalFrame(jint capacity)
     clearException();
     jint result = JNIEnv_::PushLocalFrame(capacity);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::PushLocalFrame");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::PushLocalFrame");
     }
 
     return result;
@@ -257,10 +249,9 @@ jobject Context::PopLocalFrame(jobject res)
     clearException();
     jobject result = JNIEnv_::PopLocalFrame(res);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::PopLocalFrame");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::PopLocalFrame");
     }
 
     return result;
@@ -272,10 +263,9 @@ jobject Context::NewGlobalRef(jobject obj)
     clearException();
     jobject result = JNIEnv_::NewGlobalRef(obj);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewGlobalRef");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewGlobalRef");
     }
 
     return result;
@@ -301,10 +291,9 @@ jboolean Context::IsSameObject(jobject obj1, jobject obj2)
     clearException();
     jboolean result = JNIEnv_::IsSameObject(obj1, obj2);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::IsSameObject");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::IsSameObject");
     }
 
     return result;
@@ -316,10 +305,9 @@ jobject Context::NewLocalRef(jobject ref)
     clearException();
     jobject result = JNIEnv_::NewLocalRef(ref);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewLocalRef");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewLocalRef");
     }
 
     return result;
@@ -331,10 +319,9 @@ jint Context::EnsureLocalCapacity(jint capacity)
     clearException();
     jint result = JNIEnv_::EnsureLocalCapacity(capacity);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::EnsureLocalCapacity");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::EnsureLocalCapacity");
     }
 
     return result;
@@ -346,10 +333,9 @@ jobject Context::AllocObject(jclass clazz)
     clearException();
     jobject result = JNIEnv_::AllocObject(clazz);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::AllocObject");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::AllocObject");
     }
 
     return result;
@@ -366,10 +352,9 @@ jobject Context::NewObject(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewObject");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewObject");
     }
 
     return result;
@@ -381,10 +366,9 @@ jobject Context::NewObjectV(jclass clazz, jmethodID methodID, va_list args)
     clearException();
     jobject result = JNIEnv_::NewObjectV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewObjectV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewObjectV");
     }
 
     return result;
@@ -396,10 +380,9 @@ jobject Context::NewObjectA(jclass clazz, jmethodID methodID, jvalue* args)
     clearException();
     jobject result = JNIEnv_::NewObjectA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewObjectA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewObjectA");
     }
 
     return result;
@@ -411,10 +394,9 @@ jclass Context::GetObjectClass(jobject obj)
     clearException();
     jclass result = JNIEnv_::GetObjectClass(obj);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetObjectClass");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetObjectClass");
     }
 
     return result;
@@ -426,10 +408,9 @@ jboolean Context::IsInstanceOf(jobject obj, jclass clazz)
     clearException();
     jboolean result = JNIEnv_::IsInstanceOf(obj, clazz);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::IsInstanceOf");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::IsInstanceOf");
     }
 
     return result;
@@ -441,10 +422,9 @@ jmethodID Context::GetMethodID(jclass clazz, const char* name, const char* sig)
     clearException();
     jmethodID result = JNIEnv_::GetMethodID(clazz, name, sig);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetMethodID");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetMethodID");
     }
 
     return result;
@@ -461,10 +441,9 @@ jobject Context::CallObjectMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallObjectMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallObjectMethod");
     }
 
     return result;
@@ -476,10 +455,9 @@ jobject Context::CallObjectMethodV(jobject obj, jmethodID methodID, va_list args
     clearException();
     jobject result = JNIEnv_::CallObjectMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallObjectMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallObjectMethodV");
     }
 
     return result;
@@ -491,10 +469,9 @@ jobject Context::CallObjectMethodA(jobject obj, jmethodID methodID, jvalue* args
     clearException();
     jobject result = JNIEnv_::CallObjectMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallObjectMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallObjectMethodA");
     }
 
     return result;
@@ -511,10 +488,9 @@ jboolean Context::CallBooleanMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallBooleanMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallBooleanMethod");
     }
 
     return result;
@@ -526,10 +502,9 @@ jboolean Context::CallBooleanMethodV(jobject obj, jmethodID methodID, va_list ar
     clearException();
     jboolean result = JNIEnv_::CallBooleanMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallBooleanMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallBooleanMethodV");
     }
 
     return result;
@@ -541,10 +516,9 @@ jboolean Context::CallBooleanMethodA(jobject obj, jmethodID methodID, jvalue* ar
     clearException();
     jboolean result = JNIEnv_::CallBooleanMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallBooleanMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallBooleanMethodA");
     }
 
     return result;
@@ -561,10 +535,9 @@ jbyte Context::CallByteMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallByteMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallByteMethod");
     }
 
     return result;
@@ -576,10 +549,9 @@ jbyte Context::CallByteMethodV(jobject obj, jmethodID methodID, va_list args)
     clearException();
     jbyte result = JNIEnv_::CallByteMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallByteMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallByteMethodV");
     }
 
     return result;
@@ -591,10 +563,9 @@ jbyte Context::CallByteMethodA(jobject obj, jmethodID methodID, jvalue* args)
     clearException();
     jbyte result = JNIEnv_::CallByteMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallByteMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallByteMethodA");
     }
 
     return result;
@@ -611,10 +582,9 @@ jchar Context::CallCharMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallCharMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallCharMethod");
     }
 
     return result;
@@ -626,10 +596,9 @@ jchar Context::CallCharMethodV(jobject obj, jmethodID methodID, va_list args)
     clearException();
     jchar result = JNIEnv_::CallCharMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallCharMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallCharMethodV");
     }
 
     return result;
@@ -641,10 +610,9 @@ jchar Context::CallCharMethodA(jobject obj, jmethodID methodID, jvalue* args)
     clearException();
     jchar result = JNIEnv_::CallCharMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallCharMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallCharMethodA");
     }
 
     return result;
@@ -661,10 +629,9 @@ jshort Context::CallShortMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallShortMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallShortMethod");
     }
 
     return result;
@@ -676,10 +643,9 @@ jshort Context::CallShortMethodV(jobject obj, jmethodID methodID, va_list args)
     clearException();
     jshort result = JNIEnv_::CallShortMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallShortMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallShortMethodV");
     }
 
     return result;
@@ -691,10 +657,9 @@ jshort Context::CallShortMethodA(jobject obj, jmethodID methodID, jvalue* args)
     clearException();
     jshort result = JNIEnv_::CallShortMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallShortMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallShortMethodA");
     }
 
     return result;
@@ -711,10 +676,9 @@ jint Context::CallIntMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallIntMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallIntMethod");
     }
 
     return result;
@@ -726,10 +690,9 @@ jint Context::CallIntMethodV(jobject obj, jmethodID methodID, va_list args)
     clearException();
     jint result = JNIEnv_::CallIntMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallIntMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallIntMethodV");
     }
 
     return result;
@@ -741,10 +704,9 @@ jint Context::CallIntMethodA(jobject obj, jmethodID methodID, jvalue* args)
     clearException();
     jint result = JNIEnv_::CallIntMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallIntMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallIntMethodA");
     }
 
     return result;
@@ -761,10 +723,9 @@ jlong Context::CallLongMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallLongMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallLongMethod");
     }
 
     return result;
@@ -776,10 +737,9 @@ jlong Context::CallLongMethodV(jobject obj, jmethodID methodID, va_list args)
     clearException();
     jlong result = JNIEnv_::CallLongMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallLongMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallLongMethodV");
     }
 
     return result;
@@ -791,10 +751,9 @@ jlong Context::CallLongMethodA(jobject obj, jmethodID methodID, jvalue* args)
     clearException();
     jlong result = JNIEnv_::CallLongMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallLongMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallLongMethodA");
     }
 
     return result;
@@ -811,10 +770,9 @@ jfloat Context::CallFloatMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallFloatMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallFloatMethod");
     }
 
     return result;
@@ -826,10 +784,9 @@ jfloat Context::CallFloatMethodV(jobject obj, jmethodID methodID, va_list args)
     clearException();
     jfloat result = JNIEnv_::CallFloatMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallFloatMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallFloatMethodV");
     }
 
     return result;
@@ -841,10 +798,9 @@ jfloat Context::CallFloatMethodA(jobject obj, jmethodID methodID, jvalue* args)
     clearException();
     jfloat result = JNIEnv_::CallFloatMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallFloatMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallFloatMethodA");
     }
 
     return result;
@@ -861,10 +817,9 @@ jdouble Context::CallDoubleMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallDoubleMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallDoubleMethod");
     }
 
     return result;
@@ -876,10 +831,9 @@ jdouble Context::CallDoubleMethodV(jobject obj, jmethodID methodID, va_list args
     clearException();
     jdouble result = JNIEnv_::CallDoubleMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallDoubleMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallDoubleMethodV");
     }
 
     return result;
@@ -891,10 +845,9 @@ jdouble Context::CallDoubleMethodA(jobject obj, jmethodID methodID, jvalue* args
     clearException();
     jdouble result = JNIEnv_::CallDoubleMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallDoubleMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallDoubleMethodA");
     }
 
     return result;
@@ -911,10 +864,9 @@ void Context::CallVoidMethod(jobject obj, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallVoidMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallVoidMethod");
     }
 }
 
@@ -924,10 +876,9 @@ void Context::CallVoidMethodV(jobject obj, jmethodID methodID, va_list args)
     clearException();
     JNIEnv_::CallVoidMethodV(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallVoidMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallVoidMethodV");
     }
 }
 
@@ -937,10 +888,9 @@ void Context::CallVoidMethodA(jobject obj, jmethodID methodID, jvalue* args)
     clearException();
     JNIEnv_::CallVoidMethodA(obj, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallVoidMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallVoidMethodA");
     }
 }
 
@@ -955,10 +905,9 @@ jobject Context::CallNonvirtualObjectMethod(jobject obj, jclass clazz, jmethodID
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualObjectMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualObjectMethod");
     }
 
     return result;
@@ -970,10 +919,9 @@ jobject Context::CallNonvirtualObjectMethodV(jobject obj, jclass clazz, jmethodI
     clearException();
     jobject result = JNIEnv_::CallNonvirtualObjectMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualObjectMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualObjectMethodV");
     }
 
     return result;
@@ -985,10 +933,9 @@ jobject Context::CallNonvirtualObjectMethodA(jobject obj, jclass clazz, jmethodI
     clearException();
     jobject result = JNIEnv_::CallNonvirtualObjectMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualObjectMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualObjectMethodA");
     }
 
     return result;
@@ -1005,10 +952,9 @@ jboolean Context::CallNonvirtualBooleanMethod(jobject obj, jclass clazz, jmethod
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualBooleanMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualBooleanMethod");
     }
 
     return result;
@@ -1020,10 +966,9 @@ jboolean Context::CallNonvirtualBooleanMethodV(jobject obj, jclass clazz, jmetho
     clearException();
     jboolean result = JNIEnv_::CallNonvirtualBooleanMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualBooleanMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualBooleanMethodV");
     }
 
     return result;
@@ -1035,10 +980,9 @@ jboolean Context::CallNonvirtualBooleanMethodA(jobject obj, jclass clazz, jmetho
     clearException();
     jboolean result = JNIEnv_::CallNonvirtualBooleanMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualBooleanMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualBooleanMethodA");
     }
 
     return result;
@@ -1055,10 +999,9 @@ jbyte Context::CallNonvirtualByteMethod(jobject obj, jclass clazz, jmethodID met
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualByteMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualByteMethod");
     }
 
     return result;
@@ -1070,10 +1013,9 @@ jbyte Context::CallNonvirtualByteMethodV(jobject obj, jclass clazz, jmethodID me
     clearException();
     jbyte result = JNIEnv_::CallNonvirtualByteMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualByteMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualByteMethodV");
     }
 
     return result;
@@ -1085,10 +1027,9 @@ jbyte Context::CallNonvirtualByteMethodA(jobject obj, jclass clazz, jmethodID me
     clearException();
     jbyte result = JNIEnv_::CallNonvirtualByteMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualByteMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualByteMethodA");
     }
 
     return result;
@@ -1105,10 +1046,9 @@ jchar Context::CallNonvirtualCharMethod(jobject obj, jclass clazz, jmethodID met
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualCharMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualCharMethod");
     }
 
     return result;
@@ -1120,10 +1060,9 @@ jchar Context::CallNonvirtualCharMethodV(jobject obj, jclass clazz, jmethodID me
     clearException();
     jchar result = JNIEnv_::CallNonvirtualCharMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualCharMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualCharMethodV");
     }
 
     return result;
@@ -1135,10 +1074,9 @@ jchar Context::CallNonvirtualCharMethodA(jobject obj, jclass clazz, jmethodID me
     clearException();
     jchar result = JNIEnv_::CallNonvirtualCharMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualCharMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualCharMethodA");
     }
 
     return result;
@@ -1155,10 +1093,9 @@ jshort Context::CallNonvirtualShortMethod(jobject obj, jclass clazz, jmethodID m
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualShortMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualShortMethod");
     }
 
     return result;
@@ -1170,10 +1107,9 @@ jshort Context::CallNonvirtualShortMethodV(jobject obj, jclass clazz, jmethodID
     clearException();
     jshort result = JNIEnv_::CallNonvirtualShortMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualShortMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualShortMethodV");
     }
 
     return result;
@@ -1185,10 +1121,9 @@ jshort Context::CallNonvirtualShortMethodA(jobject obj, jclass clazz, jmethodID
     clearException();
     jshort result = JNIEnv_::CallNonvirtualShortMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualShortMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualShortMethodA");
     }
 
     return result;
@@ -1205,10 +1140,9 @@ jint Context::CallNonvirtualIntMethod(jobject obj, jclass clazz, jmethodID metho
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualIntMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualIntMethod");
     }
 
     return result;
@@ -1220,10 +1154,9 @@ jint Context::CallNonvirtualIntMethodV(jobject obj, jclass clazz, jmethodID meth
     clearException();
     jint result = JNIEnv_::CallNonvirtualIntMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualIntMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualIntMethodV");
     }
 
     return result;
@@ -1235,10 +1168,9 @@ jint Context::CallNonvirtualIntMethodA(jobject obj, jclass clazz, jmethodID meth
     clearException();
     jint result = JNIEnv_::CallNonvirtualIntMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualIntMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualIntMethodA");
     }
 
     return result;
@@ -1255,10 +1187,9 @@ jlong Context::CallNonvirtualLongMethod(jobject obj, jclass clazz, jmethodID met
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualLongMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualLongMethod");
     }
 
     return result;
@@ -1270,10 +1201,9 @@ jlong Context::CallNonvirtualLongMethodV(jobject obj, jclass clazz, jmethodID me
     clearException();
     jlong result = JNIEnv_::CallNonvirtualLongMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualLongMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualLongMethodV");
     }
 
     return result;
@@ -1285,10 +1215,9 @@ jlong Context::CallNonvirtualLongMethodA(jobject obj, jclass clazz, jmethodID me
     clearException();
     jlong result = JNIEnv_::CallNonvirtualLongMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualLongMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualLongMethodA");
     }
 
     return result;
@@ -1305,10 +1234,9 @@ jfloat Context::CallNonvirtualFloatMethod(jobject obj, jclass clazz, jmethodID m
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualFloatMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualFloatMethod");
     }
 
     return result;
@@ -1320,10 +1248,9 @@ jfloat Context::CallNonvirtualFloatMethodV(jobject obj, jclass clazz, jmethodID
     clearException();
     jfloat result = JNIEnv_::CallNonvirtualFloatMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualFloatMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualFloatMethodV");
     }
 
     return result;
@@ -1335,10 +1262,9 @@ jfloat Context::CallNonvirtualFloatMethodA(jobject obj, jclass clazz, jmethodID
     clearException();
     jfloat result = JNIEnv_::CallNonvirtualFloatMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualFloatMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualFloatMethodA");
     }
 
     return result;
@@ -1355,10 +1281,9 @@ jdouble Context::CallNonvirtualDoubleMethod(jobject obj, jclass clazz, jmethodID
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualDoubleMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualDoubleMethod");
     }
 
     return result;
@@ -1370,10 +1295,9 @@ jdouble Context::CallNonvirtualDoubleMethodV(jobject obj, jclass clazz, jmethodI
     clearException();
     jdouble result = JNIEnv_::CallNonvirtualDoubleMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualDoubleMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualDoubleMethodV");
     }
 
     return result;
@@ -1385,10 +1309,9 @@ jdouble Context::CallNonvirtualDoubleMethodA(jobject obj, jclass clazz, jmethodI
     clearException();
     jdouble result = JNIEnv_::CallNonvirtualDoubleMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualDoubleMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualDoubleMethodA");
     }
 
     return result;
@@ -1405,10 +1328,9 @@ void Context::CallNonvirtualVoidMethod(jobject obj, jclass clazz, jmethodID meth
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualVoidMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualVoidMethod");
     }
 }
 
@@ -1418,10 +1340,9 @@ void Context::CallNonvirtualVoidMethodV(jobject obj, jclass clazz, jmethodID met
     clearException();
     JNIEnv_::CallNonvirtualVoidMethodV(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualVoidMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualVoidMethodV");
     }
 }
 
@@ -1431,10 +1352,9 @@ void Context::CallNonvirtualVoidMethodA(jobject obj, jclass clazz, jmethodID met
     clearException();
     JNIEnv_::CallNonvirtualVoidMethodA(obj, clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallNonvirtualVoidMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallNonvirtualVoidMethodA");
     }
 }
 
@@ -1444,10 +1364,9 @@ jfieldID Context::GetFieldID(jclass clazz, const char* name, const char* sig)
     clearException();
     jfieldID result = JNIEnv_::GetFieldID(clazz, name, sig);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetFieldID");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetFieldID");
     }
 
     return result;
@@ -1459,10 +1378,9 @@ jobject Context::GetObjectField(jobject obj, jfieldID fieldID)
     clearException();
     jobject result = JNIEnv_::GetObjectField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetObjectField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetObjectField");
     }
 
     return result;
@@ -1474,10 +1392,9 @@ jboolean Context::GetBooleanField(jobject obj, jfieldID fieldID)
     clearException();
     jboolean result = JNIEnv_::GetBooleanField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetBooleanField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetBooleanField");
     }
 
     return result;
@@ -1489,10 +1406,9 @@ jbyte Context::GetByteField(jobject obj, jfieldID fieldID)
     clearException();
     jbyte result = JNIEnv_::GetByteField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetByteField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetByteField");
     }
 
     return result;
@@ -1504,10 +1420,9 @@ jchar Context::GetCharField(jobject obj, jfieldID fieldID)
     clearException();
     jchar result = JNIEnv_::GetCharField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetCharField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetCharField");
     }
 
     return result;
@@ -1519,10 +1434,9 @@ jshort Context::GetShortField(jobject obj, jfieldID fieldID)
     clearException();
     jshort result = JNIEnv_::GetShortField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetShortField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetShortField");
     }
 
     return result;
@@ -1534,10 +1448,9 @@ jint Context::GetIntField(jobject obj, jfieldID fieldID)
     clearException();
     jint result = JNIEnv_::GetIntField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetIntField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetIntField");
     }
 
     return result;
@@ -1549,10 +1462,9 @@ jlong Context::GetLongField(jobject obj, jfieldID fieldID)
     clearException();
     jlong result = JNIEnv_::GetLongField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetLongField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetLongField");
     }
 
     return result;
@@ -1564,10 +1476,9 @@ jfloat Context::GetFloatField(jobject obj, jfieldID fieldID)
     clearException();
     jfloat result = JNIEnv_::GetFloatField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetFloatField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetFloatField");
     }
 
     return result;
@@ -1579,10 +1490,9 @@ jdouble Context::GetDoubleField(jobject obj, jfieldID fieldID)
     clearException();
     jdouble result = JNIEnv_::GetDoubleField(obj, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetDoubleField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetDoubleField");
     }
 
     return result;
@@ -1594,10 +1504,9 @@ void Context::SetObjectField(jobject obj, jfieldID fieldID, jobject val)
     clearException();
     JNIEnv_::SetObjectField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetObjectField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetObjectField");
     }
 }
 
@@ -1607,10 +1516,9 @@ void Context::SetBooleanField(jobject obj, jfieldID fieldID, jboolean val)
     clearException();
     JNIEnv_::SetBooleanField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetBooleanField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetBooleanField");
     }
 }
 
@@ -1620,10 +1528,9 @@ void Context::SetByteField(jobject obj, jfieldID fieldID, jbyte val)
     clearException();
     JNIEnv_::SetByteField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetByteField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetByteField");
     }
 }
 
@@ -1633,10 +1540,9 @@ void Context::SetCharField(jobject obj, jfieldID fieldID, jchar val)
     clearException();
     JNIEnv_::SetCharField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetCharField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetCharField");
     }
 }
 
@@ -1646,10 +1552,9 @@ void Context::SetShortField(jobject obj, jfieldID fieldID, jshort val)
     clearException();
     JNIEnv_::SetShortField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetShortField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetShortField");
     }
 }
 
@@ -1659,10 +1564,9 @@ void Context::SetIntField(jobject obj, jfieldID fieldID, jint val)
     clearException();
     JNIEnv_::SetIntField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetIntField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetIntField");
     }
 }
 
@@ -1672,10 +1576,9 @@ void Context::SetLongField(jobject obj, jfieldID fieldID, jlong val)
     clearException();
     JNIEnv_::SetLongField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetLongField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetLongField");
     }
 }
 
@@ -1685,10 +1588,9 @@ void Context::SetFloatField(jobject obj, jfieldID fieldID, jfloat val)
     clearException();
     JNIEnv_::SetFloatField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetFloatField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetFloatField");
     }
 }
 
@@ -1698,10 +1600,9 @@ void Context::SetDoubleField(jobject obj, jfieldID fieldID, jdouble val)
     clearException();
     JNIEnv_::SetDoubleField(obj, fieldID, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetDoubleField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetDoubleField");
     }
 }
 
@@ -1711,10 +1612,9 @@ jmethodID Context::GetStaticMethodID(jclass clazz, const char* name, const char*
     clearException();
     jmethodID result = JNIEnv_::GetStaticMethodID(clazz, name, sig);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticMethodID");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticMethodID");
     }
 
     return result;
@@ -1731,10 +1631,9 @@ jobject Context::CallStaticObjectMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticObjectMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticObjectMethod");
     }
 
     return result;
@@ -1746,10 +1645,9 @@ jobject Context::CallStaticObjectMethodV(jclass clazz, jmethodID methodID, va_li
     clearException();
     jobject result = JNIEnv_::CallStaticObjectMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticObjectMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticObjectMethodV");
     }
 
     return result;
@@ -1761,10 +1659,9 @@ jobject Context::CallStaticObjectMethodA(jclass clazz, jmethodID methodID, jvalu
     clearException();
     jobject result = JNIEnv_::CallStaticObjectMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticObjectMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticObjectMethodA");
     }
 
     return result;
@@ -1781,10 +1678,9 @@ jboolean Context::CallStaticBooleanMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticBooleanMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticBooleanMethod");
     }
 
     return result;
@@ -1796,10 +1692,9 @@ jboolean Context::CallStaticBooleanMethodV(jclass clazz, jmethodID methodID, va_
     clearException();
     jboolean result = JNIEnv_::CallStaticBooleanMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticBooleanMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticBooleanMethodV");
     }
 
     return result;
@@ -1811,10 +1706,9 @@ jboolean Context::CallStaticBooleanMethodA(jclass clazz, jmethodID methodID, jva
     clearException();
     jboolean result = JNIEnv_::CallStaticBooleanMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticBooleanMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticBooleanMethodA");
     }
 
     return result;
@@ -1831,10 +1725,9 @@ jbyte Context::CallStaticByteMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticByteMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticByteMethod");
     }
 
     return result;
@@ -1846,10 +1739,9 @@ jbyte Context::CallStaticByteMethodV(jclass clazz, jmethodID methodID, va_list a
     clearException();
     jbyte result = JNIEnv_::CallStaticByteMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticByteMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticByteMethodV");
     }
 
     return result;
@@ -1861,10 +1753,9 @@ jbyte Context::CallStaticByteMethodA(jclass clazz, jmethodID methodID, jvalue* a
     clearException();
     jbyte result = JNIEnv_::CallStaticByteMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticByteMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticByteMethodA");
     }
 
     return result;
@@ -1881,10 +1772,9 @@ jchar Context::CallStaticCharMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticCharMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticCharMethod");
     }
 
     return result;
@@ -1896,10 +1786,9 @@ jchar Context::CallStaticCharMethodV(jclass clazz, jmethodID methodID, va_list a
     clearException();
     jchar result = JNIEnv_::CallStaticCharMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticCharMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticCharMethodV");
     }
 
     return result;
@@ -1911,10 +1800,9 @@ jchar Context::CallStaticCharMethodA(jclass clazz, jmethodID methodID, jvalue* a
     clearException();
     jchar result = JNIEnv_::CallStaticCharMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticCharMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticCharMethodA");
     }
 
     return result;
@@ -1931,10 +1819,9 @@ jshort Context::CallStaticShortMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticShortMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticShortMethod");
     }
 
     return result;
@@ -1946,10 +1833,9 @@ jshort Context::CallStaticShortMethodV(jclass clazz, jmethodID methodID, va_list
     clearException();
     jshort result = JNIEnv_::CallStaticShortMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticShortMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticShortMethodV");
     }
 
     return result;
@@ -1961,10 +1847,9 @@ jshort Context::CallStaticShortMethodA(jclass clazz, jmethodID methodID, jvalue*
     clearException();
     jshort result = JNIEnv_::CallStaticShortMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticShortMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticShortMethodA");
     }
 
     return result;
@@ -1981,10 +1866,9 @@ jint Context::CallStaticIntMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticIntMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticIntMethod");
     }
 
     return result;
@@ -1996,10 +1880,9 @@ jint Context::CallStaticIntMethodV(jclass clazz, jmethodID methodID, va_list arg
     clearException();
     jint result = JNIEnv_::CallStaticIntMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticIntMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticIntMethodV");
     }
 
     return result;
@@ -2011,10 +1894,9 @@ jint Context::CallStaticIntMethodA(jclass clazz, jmethodID methodID, jvalue* arg
     clearException();
     jint result = JNIEnv_::CallStaticIntMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticIntMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticIntMethodA");
     }
 
     return result;
@@ -2031,10 +1913,9 @@ jlong Context::CallStaticLongMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticLongMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticLongMethod");
     }
 
     return result;
@@ -2046,10 +1927,9 @@ jlong Context::CallStaticLongMethodV(jclass clazz, jmethodID methodID, va_list a
     clearException();
     jlong result = JNIEnv_::CallStaticLongMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticLongMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticLongMethodV");
     }
 
     return result;
@@ -2061,10 +1941,9 @@ jlong Context::CallStaticLongMethodA(jclass clazz, jmethodID methodID, jvalue* a
     clearException();
     jlong result = JNIEnv_::CallStaticLongMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticLongMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticLongMethodA");
     }
 
     return result;
@@ -2081,10 +1960,9 @@ jfloat Context::CallStaticFloatMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticFloatMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticFloatMethod");
     }
 
     return result;
@@ -2096,10 +1974,9 @@ jfloat Context::CallStaticFloatMethodV(jclass clazz, jmethodID methodID, va_list
     clearException();
     jfloat result = JNIEnv_::CallStaticFloatMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticFloatMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticFloatMethodV");
     }
 
     return result;
@@ -2111,10 +1988,9 @@ jfloat Context::CallStaticFloatMethodA(jclass clazz, jmethodID methodID, jvalue*
     clearException();
     jfloat result = JNIEnv_::CallStaticFloatMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticFloatMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticFloatMethodA");
     }
 
     return result;
@@ -2131,10 +2007,9 @@ jdouble Context::CallStaticDoubleMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticDoubleMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticDoubleMethod");
     }
 
     return result;
@@ -2146,10 +2021,9 @@ jdouble Context::CallStaticDoubleMethodV(jclass clazz, jmethodID methodID, va_li
     clearException();
     jdouble result = JNIEnv_::CallStaticDoubleMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticDoubleMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticDoubleMethodV");
     }
 
     return result;
@@ -2161,10 +2035,9 @@ jdouble Context::CallStaticDoubleMethodA(jclass clazz, jmethodID methodID, jvalu
     clearException();
     jdouble result = JNIEnv_::CallStaticDoubleMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticDoubleMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticDoubleMethodA");
     }
 
     return result;
@@ -2181,10 +2054,9 @@ void Context::CallStaticVoidMethod(jclass clazz, jmethodID methodID, ...)
 
     va_end(args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticVoidMethod");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticVoidMethod");
     }
 }
 
@@ -2194,10 +2066,9 @@ void Context::CallStaticVoidMethodV(jclass clazz, jmethodID methodID, va_list ar
     clearException();
     JNIEnv_::CallStaticVoidMethodV(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticVoidMethodV");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticVoidMethodV");
     }
 }
 
@@ -2207,10 +2078,9 @@ void Context::CallStaticVoidMethodA(jclass clazz, jmethodID methodID, jvalue* ar
     clearException();
     JNIEnv_::CallStaticVoidMethodA(clazz, methodID, args);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::CallStaticVoidMethodA");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::CallStaticVoidMethodA");
     }
 }
 
@@ -2220,10 +2090,9 @@ jfieldID Context::GetStaticFieldID(jclass clazz, const char* name, const char* s
     clearException();
     jfieldID result = JNIEnv_::GetStaticFieldID(clazz, name, sig);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticFieldID");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticFieldID");
     }
 
     return result;
@@ -2235,10 +2104,9 @@ jobject Context::GetStaticObjectField(jclass clazz, jfieldID fieldID)
     clearException();
     jobject result = JNIEnv_::GetStaticObjectField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticObjectField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticObjectField");
     }
 
     return result;
@@ -2250,10 +2118,9 @@ jboolean Context::GetStaticBooleanField(jclass clazz, jfieldID fieldID)
     clearException();
     jboolean result = JNIEnv_::GetStaticBooleanField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticBooleanField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticBooleanField");
     }
 
     return result;
@@ -2265,10 +2132,9 @@ jbyte Context::GetStaticByteField(jclass clazz, jfieldID fieldID)
     clearException();
     jbyte result = JNIEnv_::GetStaticByteField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticByteField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticByteField");
     }
 
     return result;
@@ -2280,10 +2146,9 @@ jchar Context::GetStaticCharField(jclass clazz, jfieldID fieldID)
     clearException();
     jchar result = JNIEnv_::GetStaticCharField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticCharField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticCharField");
     }
 
     return result;
@@ -2295,10 +2160,9 @@ jshort Context::GetStaticShortField(jclass clazz, jfieldID fieldID)
     clearException();
     jshort result = JNIEnv_::GetStaticShortField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticShortField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticShortField");
     }
 
     return result;
@@ -2310,10 +2174,9 @@ jint Context::GetStaticIntField(jclass clazz, jfieldID fieldID)
     clearException();
     jint result = JNIEnv_::GetStaticIntField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticIntField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticIntField");
     }
 
     return result;
@@ -2325,10 +2188,9 @@ jlong Context::GetStaticLongField(jclass clazz, jfieldID fieldID)
     clearException();
     jlong result = JNIEnv_::GetStaticLongField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticLongField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticLongField");
     }
 
     return result;
@@ -2340,10 +2202,9 @@ jfloat Context::GetStaticFloatField(jclass clazz, jfieldID fieldID)
     clearException();
     jfloat result = JNIEnv_::GetStaticFloatField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticFloatField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticFloatField");
     }
 
     return result;
@@ -2355,10 +2216,9 @@ jdouble Context::GetStaticDoubleField(jclass clazz, jfieldID fieldID)
     clearException();
     jdouble result = JNIEnv_::GetStaticDoubleField(clazz, fieldID);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStaticDoubleField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStaticDoubleField");
     }
 
     return result;
@@ -2370,10 +2230,9 @@ void Context::SetStaticObjectField(jclass clazz, jfieldID fieldID, jobject value
     clearException();
     JNIEnv_::SetStaticObjectField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticObjectField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticObjectField");
     }
 }
 
@@ -2383,10 +2242,9 @@ void Context::SetStaticBooleanField(jclass clazz, jfieldID fieldID, jboolean val
     clearException();
     JNIEnv_::SetStaticBooleanField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticBooleanField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticBooleanField");
     }
 }
 
@@ -2396,10 +2254,9 @@ void Context::SetStaticByteField(jclass clazz, jfieldID fieldID, jbyte value)
     clearException();
     JNIEnv_::SetStaticByteField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticByteField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticByteField");
     }
 }
 
@@ -2409,10 +2266,9 @@ void Context::SetStaticCharField(jclass clazz, jfieldID fieldID, jchar value)
     clearException();
     JNIEnv_::SetStaticCharField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticCharField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticCharField");
     }
 }
 
@@ -2422,10 +2278,9 @@ void Context::SetStaticShortField(jclass clazz, jfieldID fieldID, jshort value)
     clearException();
     JNIEnv_::SetStaticShortField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticShortField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticShortField");
     }
 }
 
@@ -2435,10 +2290,9 @@ void Context::SetStaticIntField(jclass clazz, jfieldID fieldID, jint value)
     clearException();
     JNIEnv_::SetStaticIntField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticIntField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticIntField");
     }
 }
 
@@ -2448,10 +2302,9 @@ void Context::SetStaticLongField(jclass clazz, jfieldID fieldID, jlong value)
     clearException();
     JNIEnv_::SetStaticLongField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticLongField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticLongField");
     }
 }
 
@@ -2461,10 +2314,9 @@ void Context::SetStaticFloatField(jclass clazz, jfieldID fieldID, jfloat value)
     clearException();
     JNIEnv_::SetStaticFloatField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticFloatField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticFloatField");
     }
 }
 
@@ -2474,10 +2326,9 @@ void Context::SetStaticDoubleField(jclass clazz, jfieldID fieldID, jdouble value
     clearException();
     JNIEnv_::SetStaticDoubleField(clazz, fieldID, value);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetStaticDoubleField");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetStaticDoubleField");
     }
 }
 
@@ -2487,10 +2338,9 @@ jstring Context::NewString(const jchar* unicode, jsize len)
     clearException();
     jstring result = JNIEnv_::NewString(unicode, len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewString");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewString");
     }
 
     return result;
@@ -2502,10 +2352,9 @@ jsize Context::GetStringLength(jstring str)
     clearException();
     jsize result = JNIEnv_::GetStringLength(str);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStringLength");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStringLength");
     }
 
     return result;
@@ -2517,10 +2366,9 @@ const jchar* Context::GetStringChars(jstring str, jboolean* isCopy)
     clearException();
     const jchar* result = JNIEnv_::GetStringChars(str, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStringChars");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStringChars");
     }
 
     return result;
@@ -2539,10 +2387,9 @@ jstring Context::NewStringUTF(const char* utf)
     clearException();
     jstring result = JNIEnv_::NewStringUTF(utf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewStringUTF");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewStringUTF");
     }
 
     return result;
@@ -2554,10 +2401,9 @@ jsize Context::GetStringUTFLength(jstring str)
     clearException();
     jsize result = JNIEnv_::GetStringUTFLength(str);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStringUTFLength");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStringUTFLength");
     }
 
     return result;
@@ -2569,10 +2415,9 @@ const char* Context::GetStringUTFChars(jstring str, jboolean* isCopy)
     clearException();
     const char* result = JNIEnv_::GetStringUTFChars(str, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStringUTFChars");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStringUTFChars");
     }
 
     return result;
@@ -2591,10 +2436,9 @@ jsize Context::GetArrayLength(jarray array)
     clearException();
     jsize result = JNIEnv_::GetArrayLength(array);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetArrayLength");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetArrayLength");
     }
 
     return result;
@@ -2606,10 +2450,9 @@ jobjectArray Context::NewObjectArray(jsize len, jclass clazz, jobject init)
     clearException();
     jobjectArray result = JNIEnv_::NewObjectArray(len, clazz, init);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewObjectArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewObjectArray");
     }
 
     return result;
@@ -2621,10 +2464,9 @@ jobject Context::GetObjectArrayElement(jobjectArray array, jsize index)
     clearException();
     jobject result = JNIEnv_::GetObjectArrayElement(array, index);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetObjectArrayElement");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetObjectArrayElement");
     }
 
     return result;
@@ -2636,10 +2478,9 @@ void Context::SetObjectArrayElement(jobjectArray array, jsize index, jobject val
     clearException();
     JNIEnv_::SetObjectArrayElement(array, index, val);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetObjectArrayElement");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetObjectArrayElement");
     }
 }
 
@@ -2649,10 +2490,9 @@ jbooleanArray Context::NewBooleanArray(jsize len)
     clearException();
     jbooleanArray result = JNIEnv_::NewBooleanArray(len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewBooleanArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewBooleanArray");
     }
 
     return result;
@@ -2664,10 +2504,9 @@ jbyteArray Context::NewByteArray(jsize len)
     clearException();
     jbyteArray result = JNIEnv_::NewByteArray(len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewByteArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewByteArray");
     }
 
     return result;
@@ -2679,10 +2518,9 @@ jcharArray Context::NewCharArray(jsize len)
     clearException();
     jcharArray result = JNIEnv_::NewCharArray(len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewCharArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewCharArray");
     }
 
     return result;
@@ -2694,10 +2532,9 @@ jshortArray Context::NewShortArray(jsize len)
     clearException();
     jshortArray result = JNIEnv_::NewShortArray(len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewShortArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewShortArray");
     }
 
     return result;
@@ -2709,10 +2546,9 @@ jintArray Context::NewIntArray(jsize len)
     clearException();
     jintArray result = JNIEnv_::NewIntArray(len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewIntArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewIntArray");
     }
 
     return result;
@@ -2724,10 +2560,9 @@ jlongArray Context::NewLongArray(jsize len)
     clearException();
     jlongArray result = JNIEnv_::NewLongArray(len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewLongArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewLongArray");
     }
 
     return result;
@@ -2739,10 +2574,9 @@ jfloatArray Context::NewFloatArray(jsize len)
     clearException();
     jfloatArray result = JNIEnv_::NewFloatArray(len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewFloatArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewFloatArray");
     }
 
     return result;
@@ -2754,10 +2588,9 @@ jdoubleArray Context::NewDoubleArray(jsize len)
     clearException();
     jdoubleArray result = JNIEnv_::NewDoubleArray(len);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewDoubleArray");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewDoubleArray");
     }
 
     return result;
@@ -2769,10 +2602,9 @@ jboolean* Context::GetBooleanArrayElements(jbooleanArray array, jboolean* isCopy
     clearException();
     jboolean* result = JNIEnv_::GetBooleanArrayElements(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetBooleanArrayElements");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetBooleanArrayElements");
     }
 
     return result;
@@ -2784,10 +2616,9 @@ jbyte* Context::GetByteArrayElements(jbyteArray array, jboolean* isCopy)
     clearException();
     jbyte* result = JNIEnv_::GetByteArrayElements(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetByteArrayElements");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetByteArrayElements");
     }
 
     return result;
@@ -2799,10 +2630,9 @@ jchar* Context::GetCharArrayElements(jcharArray array, jboolean* isCopy)
     clearException();
     jchar* result = JNIEnv_::GetCharArrayElements(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetCharArrayElements");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetCharArrayElements");
     }
 
     return result;
@@ -2814,10 +2644,9 @@ jshort* Context::GetShortArrayElements(jshortArray array, jboolean* isCopy)
     clearException();
     jshort* result = JNIEnv_::GetShortArrayElements(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetShortArrayElements");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetShortArrayElements");
     }
 
     return result;
@@ -2829,10 +2658,9 @@ jint* Context::GetIntArrayElements(jintArray array, jboolean* isCopy)
     clearException();
     jint* result = JNIEnv_::GetIntArrayElements(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetIntArrayElements");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetIntArrayElements");
     }
 
     return result;
@@ -2844,10 +2672,9 @@ jlong* Context::GetLongArrayElements(jlongArray array, jboolean* isCopy)
     clearException();
     jlong* result = JNIEnv_::GetLongArrayElements(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetLongArrayElements");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetLongArrayElements");
     }
 
     return result;
@@ -2859,10 +2686,9 @@ jfloat* Context::GetFloatArrayElements(jfloatArray array, jboolean* isCopy)
     clearException();
     jfloat* result = JNIEnv_::GetFloatArrayElements(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetFloatArrayElements");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetFloatArrayElements");
     }
 
     return result;
@@ -2874,10 +2700,9 @@ jdouble* Context::GetDoubleArrayElements(jdoubleArray array, jboolean* isCopy)
     clearException();
     jdouble* result = JNIEnv_::GetDoubleArrayElements(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetDoubleArrayElements");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetDoubleArrayElements");
     }
 
     return result;
@@ -2945,10 +2770,9 @@ void Context::GetBooleanArrayRegion(jbooleanArray array, jsize start, jsize len,
     clearException();
     JNIEnv_::GetBooleanArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetBooleanArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetBooleanArrayRegion");
     }
 }
 
@@ -2958,10 +2782,9 @@ void Context::GetByteArrayRegion(jbyteArray array, jsize start, jsize len, jbyte
     clearException();
     JNIEnv_::GetByteArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetByteArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetByteArrayRegion");
     }
 }
 
@@ -2971,10 +2794,9 @@ void Context::GetCharArrayRegion(jcharArray array, jsize start, jsize len, jchar
     clearException();
     JNIEnv_::GetCharArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetCharArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetCharArrayRegion");
     }
 }
 
@@ -2984,10 +2806,9 @@ void Context::GetShortArrayRegion(jshortArray array, jsize start, jsize len, jsh
     clearException();
     JNIEnv_::GetShortArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetShortArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetShortArrayRegion");
     }
 }
 
@@ -2997,10 +2818,9 @@ void Context::GetIntArrayRegion(jintArray array, jsize start, jsize len, jint* b
     clearException();
     JNIEnv_::GetIntArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetIntArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetIntArrayRegion");
     }
 }
 
@@ -3010,10 +2830,9 @@ void Context::GetLongArrayRegion(jlongArray array, jsize start, jsize len, jlong
     clearException();
     JNIEnv_::GetLongArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetLongArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetLongArrayRegion");
     }
 }
 
@@ -3023,10 +2842,9 @@ void Context::GetFloatArrayRegion(jfloatArray array, jsize start, jsize len, jfl
     clearException();
     JNIEnv_::GetFloatArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetFloatArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetFloatArrayRegion");
     }
 }
 
@@ -3036,10 +2854,9 @@ void Context::GetDoubleArrayRegion(jdoubleArray array, jsize start, jsize len, j
     clearException();
     JNIEnv_::GetDoubleArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetDoubleArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetDoubleArrayRegion");
     }
 }
 
@@ -3049,10 +2866,9 @@ void Context::SetBooleanArrayRegion(jbooleanArray array, jsize start, jsize len,
     clearException();
     JNIEnv_::SetBooleanArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetBooleanArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetBooleanArrayRegion");
     }
 }
 
@@ -3062,10 +2878,9 @@ void Context::SetByteArrayRegion(jbyteArray array, jsize start, jsize len, jbyte
     clearException();
     JNIEnv_::SetByteArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetByteArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetByteArrayRegion");
     }
 }
 
@@ -3075,10 +2890,9 @@ void Context::SetCharArrayRegion(jcharArray array, jsize start, jsize len, jchar
     clearException();
     JNIEnv_::SetCharArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetCharArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetCharArrayRegion");
     }
 }
 
@@ -3088,10 +2902,9 @@ void Context::SetShortArrayRegion(jshortArray array, jsize start, jsize len, jsh
     clearException();
     JNIEnv_::SetShortArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetShortArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetShortArrayRegion");
     }
 }
 
@@ -3101,10 +2914,9 @@ void Context::SetIntArrayRegion(jintArray array, jsize start, jsize len, jint* b
     clearException();
     JNIEnv_::SetIntArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetIntArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetIntArrayRegion");
     }
 }
 
@@ -3114,10 +2926,9 @@ void Context::SetLongArrayRegion(jlongArray array, jsize start, jsize len, jlong
     clearException();
     JNIEnv_::SetLongArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetLongArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetLongArrayRegion");
     }
 }
 
@@ -3127,10 +2938,9 @@ void Context::SetFloatArrayRegion(jfloatArray array, jsize start, jsize len, jfl
     clearException();
     JNIEnv_::SetFloatArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetFloatArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetFloatArrayRegion");
     }
 }
 
@@ -3140,10 +2950,9 @@ void Context::SetDoubleArrayRegion(jdoubleArray array, jsize start, jsize len, j
     clearException();
     JNIEnv_::SetDoubleArrayRegion(array, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::SetDoubleArrayRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::SetDoubleArrayRegion");
     }
 }
 
@@ -3153,10 +2962,9 @@ jint Context::RegisterNatives(jclass clazz, const JNINativeMethod* methods, jint
     clearException();
     jint result = JNIEnv_::RegisterNatives(clazz, methods, nMethods);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::RegisterNatives");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::RegisterNatives");
     }
 
     return result;
@@ -3168,10 +2976,9 @@ jint Context::UnregisterNatives(jclass clazz)
     clearException();
     jint result = JNIEnv_::UnregisterNatives(clazz);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::UnregisterNatives");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::UnregisterNatives");
     }
 
     return result;
@@ -3184,10 +2991,9 @@ jint Context::MonitorEnter(jobject obj)
     // should return 0 on success, not sure if it ever throws
     jint result = JNIEnv_::MonitorEnter(obj);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::MonitorEnter");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::MonitorEnter");
     }
 
     return result;
@@ -3200,10 +3006,9 @@ jint Context::MonitorExit(jobject obj)
     // should return 0 on success, not sure if it ever throws
     jint result = JNIEnv_::MonitorExit(obj);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::MonitorExit");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::MonitorExit");
     }
 
     return result;
@@ -3215,10 +3020,9 @@ jint Context::GetJavaVM(JavaVM** vm)
     clearException();
     jint result = JNIEnv_::GetJavaVM(vm);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetJavaVM");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetJavaVM");
     }
 
     return result;
@@ -3230,10 +3034,9 @@ void Context::GetStringRegion(jstring str, jsize start, jsize len, jchar* buf)
     clearException();
     JNIEnv_::GetStringRegion(str, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStringRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStringRegion");
     }
 }
 
@@ -3243,10 +3046,9 @@ void Context::GetStringUTFRegion(jstring str, jsize start, jsize len, char* buf)
     clearException();
     JNIEnv_::GetStringUTFRegion(str, start, len, buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStringUTFRegion");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStringUTFRegion");
     }
 }
 
@@ -3256,10 +3058,9 @@ void* Context::GetPrimitiveArrayCritical(jarray array, jboolean* isCopy)
     clearException();
     void* result = JNIEnv_::GetPrimitiveArrayCritical(array, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetPrimitiveArrayCritical");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetPrimitiveArrayCritical");
     }
 
     return result;
@@ -3278,10 +3079,9 @@ const jchar* Context::GetStringCritical(jstring string, jboolean* isCopy)
     clearException();
     const jchar* result = JNIEnv_::GetStringCritical(string, isCopy);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetStringCritical");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetStringCritical");
     }
 
     return result;
@@ -3300,10 +3100,9 @@ jweak Context::NewWeakGlobalRef(jobject obj)
     clearException();
     jweak result = JNIEnv_::NewWeakGlobalRef(obj);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewWeakGlobalRef");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewWeakGlobalRef");
     }
 
     return result;
@@ -3329,10 +3128,9 @@ jobject Context::NewDirectByteBuffer(void* address, jlong capacity)
     clearException();
     jobject result = JNIEnv_::NewDirectByteBuffer(address, capacity);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::NewDirectByteBuffer");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::NewDirectByteBuffer");
     }
 
     return result;
@@ -3344,10 +3142,9 @@ void* Context::GetDirectBufferAddress(jobject buf)
     clearException();
     void* result = JNIEnv_::GetDirectBufferAddress(buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetDirectBufferAddress");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetDirectBufferAddress");
     }
 
     return result;
@@ -3359,10 +3156,9 @@ jlong Context::GetDirectBufferCapacity(jobject buf)
     clearException();
     jlong result = JNIEnv_::GetDirectBufferCapacity(buf);
 
-    jthrowable error = JNIEnv_::ExceptionOccurred();
-    if (error)
+    if (JNIEnv_::ExceptionCheck() == JNI_TRUE)
     {
-        throwJException(this, error, "Context::GetDirectBufferCapacity");
+        throwJException(this, JNIEnv_::ExceptionOccurred(), "Context::GetDirectBufferCapacity");
     }
 
     return result;
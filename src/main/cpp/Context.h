@@ -487,6 +487,15 @@ public:
 
     jlong GetDirectBufferCapacity(jobject buf);
 
+    // The plain JNI functions, without the checking done by the wrappers
+    // above (no clearing of a pending exception before the call and no
+    // JException with the Java stack trace after it). For hot paths that
+    // only make calls which can't throw or which report a failure through
+    // their return value; initialization code should use the wrappers.
+    JNIEnv_* unchecked() {
+        return this;
+    }
+
 private:
     void clearException();
 };
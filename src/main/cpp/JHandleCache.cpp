@@ -1,18 +1,14 @@
 
 #include "JHandleCache.h"
 
-#ifndef JEXCEPTION_INCLUDED_
-#include "JException.h"
-#endif /* JEXCEPTION_INCLUDED_ */
-
-#ifndef SLIMSTRING_INCLUDED_
-#include "SlimString.h"
-#endif /* SLIMSTRING_INCLUDED_ */
 
 
 
 // static data
-JHandleCache* JHandleCache::m_instance = 0;
+// (a static object rather than a lazily created one, so that instance() is
+// thread-safe without any locking)
+JHandleCache JHandleCache::m_instance;
+void* JHandleCache::m_handles[JH_COUNT] = { 0 };
 
 
 // constructor
@@ -22,37 +18,30 @@ JHandleCache::JHandleCache()
 
 // destructor
 JHandleCache::~JHandleCache() {
-    m_cache.clear();
 }
 
-// member methods
-void JHandleCache::add(const char* pszUniqueKey, void* jvmHandle) {
-    m_cache[pszUniqueKey] = jvmHandle;
+// the classes are global references, all other handles are field or
+// method IDs (which aren't references)
+static bool isGlobalRef(int id) {
+    return id == JH_Address_class || id == JH_StreamCallback_class;
 }
 
-void* JHandleCache::get(const char* pszUniqueKey) {
-    void* handle = 0;
-    bool found = m_cache.getValue(pszUniqueKey, handle);
-    if (!found) {
-        SlimString msg("JHandleCache::get - Lookup of non-existing key: ");
-        msg.append(pszUniqueKey);
-        throw JException(msg);
-    }
-    return handle;
+// member methods
+void JHandleCache::set(JHandle id, void* jvmHandle) {
+    m_handles[id] = jvmHandle;
 }
 
 // static member methods
 JHandleCache* JHandleCache::instance() {
-    if (m_instance == 0) {
-        m_instance = new JHandleCache();
-    }
-    return m_instance;
+    return &m_instance;
 }
 
-void JHandleCache::clear() {
-    if (m_instance) {
-        delete m_instance;
-        m_instance = 0;
+void JHandleCache::clear(JNIEnv* env) {
+    for (int i = 0; i < JH_COUNT; ++i) {
+        if (m_handles[i] != 0 && isGlobalRef(i)) {
+            env->DeleteGlobalRef(static_cast<jobject>(m_handles[i]));
+        }
+        m_handles[i] = 0;
     }
 }
 
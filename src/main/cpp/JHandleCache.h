@@ -6,27 +6,49 @@
 #include "stdafx.h"
 #endif /* STDAFX_INCLUDED_ */
 
-#ifndef __STRTOPTRMAP_H_INCLUDED_
-#include "StrToPtrMap.h"
-#endif /* __STRTOPTRMAP_H_INCLUDED_ */
+#ifndef _JAVASOFT_JNI_H_
+#include "jni.h"
+#endif /* _JAVASOFT_JNI_H_ */
 
 
 
+// The handles needed on the hot path. They are looked up by index instead
+// of by name (see JHandleCache::handle).
+enum JHandle {
+    JH_Address_class,
+    JH_Address_deviceId,
+    JH_Address_address,
+    JH_StreamCallback_class,
+    JH_StreamCallback_done,
+    JH_COUNT // must be last
+};
+
+
+// All handles are populated once by Native.initializeHandleCacheN() which
+// runs in the static initializer of CudaBackend, i.e. before any other
+// native method can be called. After that the cache is only ever read, so
+// readers need no synchronization.
 class __GCC_DONT_EXPORT JHandleCache {
 public:
     ~JHandleCache();
 
     static JHandleCache* instance();
-    static void clear();
+    // deletes the global references among the handles
+    static void clear(JNIEnv* env);
+
+    // takes ownership of a global reference (see isGlobalRef)
+    void set(JHandle id, void* jvmHandle);
 
-    void add(const char* pszUniqueKey, void* jvmHandle);
-    void* get(const char* pszUniqueKey);
+    // lock-free, no hashing: just an array load
+    static void* handle(JHandle id) {
+        return m_handles[id];
+    }
 
 private: // constructor
     JHandleCache();
 private: // data
-    static JHandleCache* m_instance;
-    StrToPtrMap m_cache;
+    static JHandleCache m_instance;
+    static void* m_handles[JH_COUNT];
 };
 
 
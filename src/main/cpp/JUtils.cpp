@@ -75,6 +75,36 @@ bool throwJavaRuntimeException(Context* pCtx, const char* format, ...) {
 }
 
 
+bool throwCudaException(Context* pCtx, int errorCode) {
+    try {
+        jclass exceptClass = pCtx->FindClass(PACKAGE "CudaException");
+        if (exceptClass == NULL) {
+            return false;
+        }
+        jmethodID constructor = pCtx->GetMethodID(exceptClass, "<init>", "(I)V");
+        if (constructor == NULL) {
+            pCtx->DeleteLocalRef(exceptClass);
+            return false;
+        }
+        jthrowable exception = reinterpret_cast<jthrowable>(pCtx->NewObject(exceptClass, constructor, errorCode));
+        pCtx->DeleteLocalRef(exceptClass);
+        if (exception == NULL) {
+            return false;
+        }
+        jint rc = pCtx->Throw(exception);
+        pCtx->DeleteLocalRef(exception);
+        if (rc < 0) {
+            return false;
+        }
+    } catch (const JException& /*ignore*/) {
+        return false;
+    } catch (...) {
+        return false;
+    }
+    return true;
+}
+
+
 void convJByteArr2Chars(Context* pCtx, jbyteArray jarray, unsigned char* psz, long maxlen) {
     
     long len = pCtx->GetArrayLength(jarray);
@@ -33,6 +33,8 @@ const SlimString convJString2UTF8SlimString(Context* pCtx, jstring jstr);
 
 bool throwJavaRuntimeException(Context* pCtx, const char* format, ...);
 
+bool throwCudaException(Context* pCtx, int errorCode);
+
 void convJByteArr2Chars(Context* pCtx, jbyteArray jarray, unsigned char* psz, long maxlen);
 
 
@@ -150,6 +150,18 @@ int gettimeofday_portable(struct timeval* tv, struct timezone* tz) {
 
 
 
+void* casPointer_portable(void* volatile* target, void* expected, void* desired) {
+
+#if defined (_WIN64) || defined (_WIN32)
+    return InterlockedCompareExchangePointer(target, desired, expected);
+#else
+    return __sync_val_compare_and_swap(target, expected, desired);
+#endif
+
+}
+
+
+
 #ifdef __cplusplus
 }
 #endif /* __cplusplus */
@@ -92,6 +92,22 @@ __GCC_DONT_EXPORT int gettimeofday_portable(struct timeval* tv, struct timezone*
 
 
 
+/**
+ * casPointer_portable - atomically replace a pointer
+ *
+ * Purpose:
+ *   Stores "desired" into "*target" if "*target" equals "expected", as a
+ *   single atomic operation with full memory barrier semantics.
+ *
+ * Exit:
+ *   The value of "*target" before the operation (the swap took place if
+ *   and only if it equals "expected").
+ *
+*******************************************************************************/
+__GCC_DONT_EXPORT void* casPointer_portable(void* volatile* target, void* expected, void* desired);
+
+
+
 #ifdef __cplusplus
 }
 #endif /* __cplusplus */
@@ -0,0 +1,192 @@
+// Primitives.cu : Radix sort, prefix sums and stream compaction on top of
+// CUB. Compiled with nvcc, the JNI entry points live in
+// net_deer_cuda_CudaBackend.cpp
+//
+
+#ifndef PRIMITIVES_INCLUDED_
+#include "Primitives.h"
+#endif /* PRIMITIVES_INCLUDED_ */
+
+#include <cub/cub.cuh>
+
+
+
+// the alignment of the sub-allocations carved out of a scratch block
+#define SCRATCH_ALIGNMENT 256
+
+
+static size_t aligned(size_t byteCount) {
+    return (byteCount + SCRATCH_ALIGNMENT - 1) & ~static_cast<size_t>(SCRATCH_ALIGNMENT - 1);
+}
+
+
+// the operations are stream-ordered, wait for the outcome (the scratch
+// block has already been released in stream order at this point)
+static cudaError_t completed(cudaError_t rc, char* scratch) {
+    cudaError_t rcFree = (scratch != NULL) ? cudaFreeAsync(scratch, 0) : cudaSuccess;
+    if (rc == cudaSuccess) {
+        rc = rcFree;
+    }
+    cudaError_t rcSync = cudaStreamSynchronize(0);
+    return (rc == cudaSuccess) ? rcSync : rc;
+}
+
+
+// CUB sorts between a pair of buffers, the alternate buffers and the CUB
+// temporary storage share one scratch block
+template<typename K, typename V>
+static cudaError_t sortPairs(int n, K* keys, V* values) {
+    cub::DoubleBuffer<K> keyBuffers(keys, NULL);
+    cub::DoubleBuffer<V> valueBuffers(values, NULL);
+    size_t tempBytes = 0;
+    cudaError_t rc = (values != NULL) ? cub::DeviceRadixSort::SortPairs(NULL, tempBytes, keyBuffers, valueBuffers, n)
+            : cub::DeviceRadixSort::SortKeys(NULL, tempBytes, keyBuffers, n);
+    if (rc != cudaSuccess) {
+        return rc;
+    }
+    size_t keyBytes = aligned(n * sizeof(K));
+    size_t valueBytes = (values != NULL) ? aligned(n * sizeof(V)) : 0;
+    char* scratch = NULL;
+    rc = cudaMallocAsync(reinterpret_cast<void**>(&scratch), keyBytes + valueBytes + tempBytes, 0);
+    if (rc != cudaSuccess) {
+        return rc;
+    }
+    keyBuffers.d_buffers[1] = reinterpret_cast<K*>(scratch);
+    void* temp = scratch + keyBytes + valueBytes;
+    if (values != NULL) {
+        valueBuffers.d_buffers[1] = reinterpret_cast<V*>(scratch + keyBytes);
+        rc = cub::DeviceRadixSort::SortPairs(temp, tempBytes, keyBuffers, valueBuffers, n);
+    } else {
+        rc = cub::DeviceRadixSort::SortKeys(temp, tempBytes, keyBuffers, n);
+    }
+    // the result ends up in whichever buffer the last pass wrote to
+    if (rc == cudaSuccess && keyBuffers.Current() != keys) {
+        rc = cudaMemcpyAsync(keys, keyBuffers.Current(), n * sizeof(K), cudaMemcpyDeviceToDevice, 0);
+        if (rc == cudaSuccess && values != NULL) {
+            rc = cudaMemcpyAsync(values, valueBuffers.Current(), n * sizeof(V), cudaMemcpyDeviceToDevice, 0);
+        }
+    }
+    return completed(rc, scratch);
+}
+
+
+template<typename K>
+static cudaError_t sortKeysAs(int n, void* keys, void* values, int valueSize) {
+    if (values == NULL) {
+        return sortPairs<K, unsigned int>(n, static_cast<K*>(keys), NULL);
+    }
+    if (valueSize == 4) {
+        return sortPairs<K, unsigned int>(n, static_cast<K*>(keys), static_cast<unsigned int*>(values));
+    }
+    if (valueSize == 8) {
+        return sortPairs<K, unsigned long long>(n, static_cast<K*>(keys), static_cast<unsigned long long*>(values));
+    }
+    return cudaErrorInvalidValue;
+}
+
+
+cudaError_t sortKeys(int keyType, int n, void* keys, void* values, int valueSize) {
+    if (n <= 1) {
+        return cudaSuccess;
+    }
+    switch (keyType) {
+    case PRIMITIVE_INT:
+        return sortKeysAs<int>(n, keys, values, valueSize);
+    case PRIMITIVE_LONG:
+        return sortKeysAs<long long>(n, keys, values, valueSize);
+    case PRIMITIVE_FLOAT:
+        return sortKeysAs<float>(n, keys, values, valueSize);
+    case PRIMITIVE_DOUBLE:
+        return sortKeysAs<double>(n, keys, values, valueSize);
+    default:
+        return cudaErrorInvalidValue;
+    }
+}
+
+
+template<typename T>
+static cudaError_t prefixSumAs(bool inclusive, int n, const T* in, T* out) {
+    size_t tempBytes = 0;
+    cudaError_t rc = inclusive ? cub::DeviceScan::InclusiveSum(NULL, tempBytes, in, out, n)
+            : cub::DeviceScan::ExclusiveSum(NULL, tempBytes, in, out, n);
+    if (rc != cudaSuccess) {
+        return rc;
+    }
+    char* scratch = NULL;
+    rc = cudaMallocAsync(reinterpret_cast<void**>(&scratch), tempBytes, 0);
+    if (rc != cudaSuccess) {
+        return rc;
+    }
+    rc = inclusive ? cub::DeviceScan::InclusiveSum(scratch, tempBytes, in, out, n)
+            : cub::DeviceScan::ExclusiveSum(scratch, tempBytes, in, out, n);
+    return completed(rc, scratch);
+}
+
+
+cudaError_t prefixSum(int type, bool inclusive, int n, const void* in, void* out) {
+    if (n <= 0) {
+        return cudaSuccess;
+    }
+    switch (type) {
+    case PRIMITIVE_INT:
+        return prefixSumAs<int>(inclusive, n, static_cast<const int*>(in), static_cast<int*>(out));
+    case PRIMITIVE_LONG:
+        return prefixSumAs<long long>(inclusive, n, static_cast<const long long*>(in), static_cast<long long*>(out));
+    case PRIMITIVE_FLOAT:
+        return prefixSumAs<float>(inclusive, n, static_cast<const float*>(in), static_cast<float*>(out));
+    case PRIMITIVE_DOUBLE:
+        return prefixSumAs<double>(inclusive, n, static_cast<const double*>(in), static_cast<double*>(out));
+    default:
+        return cudaErrorInvalidValue;
+    }
+}
+
+
+// The elements are moved as opaque unsigned integers, so unique compares
+// them bitwise. flags == NULL selects unique instead of flagged.
+template<typename T>
+static cudaError_t selectAs(int n, const T* in, const unsigned char* flags, T* out, int* selected) {
+    size_t tempBytes = 0;
+    int* d_selected = NULL;
+    cudaError_t rc = (flags != NULL) ? cub::DeviceSelect::Flagged(NULL, tempBytes, in, flags, out, d_selected, n)
+            : cub::DeviceSelect::Unique(NULL, tempBytes, in, out, d_selected, n);
+    if (rc != cudaSuccess) {
+        return rc;
+    }
+    char* scratch = NULL;
+    rc = cudaMallocAsync(reinterpret_cast<void**>(&scratch), aligned(sizeof(int)) + tempBytes, 0);
+    if (rc != cudaSuccess) {
+        return rc;
+    }
+    d_selected = reinterpret_cast<int*>(scratch);
+    void* temp = scratch + aligned(sizeof(int));
+    rc = (flags != NULL) ? cub::DeviceSelect::Flagged(temp, tempBytes, in, flags, out, d_selected, n)
+            : cub::DeviceSelect::Unique(temp, tempBytes, in, out, d_selected, n);
+    if (rc == cudaSuccess) {
+        rc = cudaMemcpyAsync(selected, d_selected, sizeof(int), cudaMemcpyDeviceToHost, 0);
+    }
+    return completed(rc, scratch);
+}
+
+
+cudaError_t selectFlagged(int elementSize, int n, const void* in, const unsigned char* flags, void* out,
+        int* selected) {
+    *selected = 0;
+    if (n <= 0) {
+        return cudaSuccess;
+    }
+    if (elementSize == 4) {
+        return selectAs<unsigned int>(n, static_cast<const unsigned int*>(in), flags,
+                static_cast<unsigned int*>(out), selected);
+    }
+    if (elementSize == 8) {
+        return selectAs<unsigned long long>(n, static_cast<const unsigned long long*>(in), flags,
+                static_cast<unsigned long long*>(out), selected);
+    }
+    return cudaErrorInvalidValue;
+}
+
+
+cudaError_t selectUnique(int elementSize, int n, const void* in, void* out, int* selected) {
+    return selectFlagged(elementSize, n, in, NULL, out, selected);
+}
@@ -0,0 +1,43 @@
+#ifndef PRIMITIVES_INCLUDED_
+#define PRIMITIVES_INCLUDED_
+
+
+#include <stddef.h> // size_t
+
+#ifndef __CUDA_RUNTIME_H__
+#include <cuda_runtime.h>
+#endif /* __CUDA_RUNTIME_H__ */
+
+
+
+// The element types of sortKeys() and prefixSum(), same values as the
+// TYPE_XXX constants of net.deer.cuda.DeviceBackend
+#define PRIMITIVE_INT 0
+#define PRIMITIVE_LONG 1
+#define PRIMITIVE_FLOAT 2
+#define PRIMITIVE_DOUBLE 3
+
+
+// The primitives run on the current device and the default stream and
+// return once they have completed. Their temporary storage comes from the
+// stream-ordered allocator.
+
+// Sorts the n keys in ascending order (stable). If values isn't NULL, the
+// values (of valueSize bytes, 4 or 8) are permuted along with the keys.
+cudaError_t sortKeys(int keyType, int n, void* keys, void* values, int valueSize);
+
+// out[i] = in[0] + ... + in[i] (inclusive) or in[0] + ... + in[i - 1]
+// (exclusive). in and out may be the same.
+cudaError_t prefixSum(int type, bool inclusive, int n, const void* in, void* out);
+
+// Copies the elements (of elementSize bytes, 4 or 8) whose byte flag is
+// non-zero to out, in order, and stores their number in *selected.
+cudaError_t selectFlagged(int elementSize, int n, const void* in, const unsigned char* flags, void* out,
+        int* selected);
+
+// Copies the first element of every run of bitwise equal elements to out,
+// in order, and stores their number in *selected.
+cudaError_t selectUnique(int elementSize, int n, const void* in, void* out, int* selected);
+
+
+#endif /* PRIMITIVES_INCLUDED_ */
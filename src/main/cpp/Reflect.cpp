@@ -34,8 +34,7 @@
 
 int __GCC_DONT_EXPORT getDeviceId(Context* ctx, jobject obj)
 {
-    JHandleCache* cache = JHandleCache::instance();
-    jfieldID deviceId = (jfieldID) cache->get("Address/deviceId");
+    jfieldID deviceId = static_cast<jfieldID>(JHandleCache::handle(JH_Address_deviceId));
 
     return ctx->GetIntField(obj, deviceId);
 }
@@ -43,8 +42,7 @@ int __GCC_DONT_EXPORT getDeviceId(Context* ctx, jobject obj)
 
 void* __GCC_DONT_EXPORT getAddress(Context* ctx, jobject obj)
 {
-    JHandleCache* cache = JHandleCache::instance();
-    jfieldID address = (jfieldID) cache->get("Address/address");
+    jfieldID address = static_cast<jfieldID>(JHandleCache::handle(JH_Address_address));
 
     jlong addr = ctx->GetLongField(obj, address);
     return (void*) (uintptr_t) addr;
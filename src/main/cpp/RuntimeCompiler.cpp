@@ -0,0 +1,96 @@
+// RuntimeCompiler.cpp : Compilation of generated kernels at runtime (NVRTC).
+//
+
+#ifndef RUNTIMECOMPILER_INCLUDED_
+#include "RuntimeCompiler.h"
+#endif /* RUNTIMECOMPILER_INCLUDED_ */
+
+#ifndef __CUDA_RUNTIME_H__
+#include <cuda_runtime.h>
+#endif /* __CUDA_RUNTIME_H__ */
+
+#include <nvrtc.h>
+#include <stdio.h>
+#include <string.h>
+
+
+
+static int failed(const char* reason, char* log, size_t logSize) {
+    if (logSize > 0) {
+        strncpy(log, reason, logSize - 1);
+        log[logSize - 1] = '\0';
+    }
+    return COMPILE_FAILED;
+}
+
+
+int compileKernel(const char* source, const char* name, CUfunction* function, char* log, size_t logSize) {
+    int device = 0;
+    int major = 0;
+    int minor = 0;
+    cudaError_t rc = cudaGetDevice(&device);
+    if (rc == cudaSuccess) {
+        rc = cudaDeviceGetAttribute(&major, cudaDevAttrComputeCapabilityMajor, device);
+    }
+    if (rc == cudaSuccess) {
+        rc = cudaDeviceGetAttribute(&minor, cudaDevAttrComputeCapabilityMinor, device);
+    }
+    if (rc == cudaSuccess) {
+        // initializes the primary context that the driver API calls below
+        // rely on (cudaSetDevice alone doesn't on older runtimes)
+        rc = cudaFree(0);
+    }
+    if (rc != cudaSuccess) {
+        return static_cast<int>(rc);
+    }
+
+    nvrtcProgram program;
+    nvrtcResult nr = nvrtcCreateProgram(&program, source, "fused.cu", 0, NULL, NULL);
+    if (nr != NVRTC_SUCCESS) {
+        return failed(nvrtcGetErrorString(nr), log, logSize);
+    }
+    // virtual architecture: the driver JIT-compiles the PTX for the device
+    char arch[64];
+    sprintf(arch, "--gpu-architecture=compute_%d%d", major, minor);
+    const char* options[] = { arch };
+    nr = nvrtcCompileProgram(program, 1, options);
+    if (nr != NVRTC_SUCCESS) {
+        size_t size = 0;
+        if (nvrtcGetProgramLogSize(program, &size) == NVRTC_SUCCESS && size > 1) {
+            char* programLog = new char[size];
+            if (nvrtcGetProgramLog(program, programLog) == NVRTC_SUCCESS) {
+                failed(programLog, log, logSize);
+            } else {
+                failed(nvrtcGetErrorString(nr), log, logSize);
+            }
+            delete[] programLog;
+        } else {
+            failed(nvrtcGetErrorString(nr), log, logSize);
+        }
+        nvrtcDestroyProgram(&program);
+        return COMPILE_FAILED;
+    }
+    size_t ptxSize = 0;
+    nr = nvrtcGetPTXSize(program, &ptxSize);
+    char* ptx = NULL;
+    if (nr == NVRTC_SUCCESS) {
+        ptx = new char[ptxSize];
+        nr = nvrtcGetPTX(program, ptx);
+    }
+    nvrtcDestroyProgram(&program);
+    if (nr != NVRTC_SUCCESS) {
+        delete[] ptx;
+        return failed(nvrtcGetErrorString(nr), log, logSize);
+    }
+
+    CUmodule module;
+    CUresult cr = cuModuleLoadData(&module, ptx);
+    delete[] ptx;
+    if (cr == CUDA_SUCCESS) {
+        cr = cuModuleGetFunction(function, module, name);
+        if (cr != CUDA_SUCCESS) {
+            cuModuleUnload(module);
+        }
+    }
+    return static_cast<int>(cr);
+}
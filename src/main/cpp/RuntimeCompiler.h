@@ -0,0 +1,26 @@
+#ifndef RUNTIMECOMPILER_INCLUDED_
+#define RUNTIMECOMPILER_INCLUDED_
+
+
+#include <stddef.h> // size_t
+
+#ifndef __cuda_cuda_h__
+#include <cuda.h>
+#endif /* __cuda_cuda_h__ */
+
+
+
+// The result of compileKernel() if NVRTC rejected the source (the reason
+// is in the log), all other non-zero results are CUresult codes
+#define COMPILE_FAILED (-1)
+
+
+// Compiles the CUDA C++ source with NVRTC for the compute capability of the
+// current device, loads the PTX into the current context and looks up the
+// extern "C" kernel name. The module stays loaded for the life of the
+// context. On failure at most logSize - 1 characters of the reason are
+// copied to log.
+int compileKernel(const char* source, const char* name, CUfunction* function, char* log, size_t logSize);
+
+
+#endif /* RUNTIMECOMPILER_INCLUDED_ */
@@ -0,0 +1,205 @@
+// VectorOps.cu : The device kernels of the BLAS-1 style vector operations.
+// Compiled with nvcc, the JNI entry points live in net_deer_cuda_CudaBackend.cpp
+//
+
+#ifndef VECTOROPS_INCLUDED_
+#include "VectorOps.h"
+#endif /* VECTOROPS_INCLUDED_ */
+
+#include <math.h>
+#include <math_constants.h>
+
+
+
+// the block size of all kernels (a power of two, the reduction relies on it)
+#define THREADS_PER_BLOCK 256
+
+// the grid size limit, the kernels use grid-stride loops beyond it (this is
+// also the number of partial results a reduction copies back to the host)
+#define MAX_BLOCKS 1024
+
+
+static unsigned int blocksFor(size_t n) {
+    size_t blocks = (n + THREADS_PER_BLOCK - 1) / THREADS_PER_BLOCK;
+    return static_cast<unsigned int>(blocks < MAX_BLOCKS ? blocks : MAX_BLOCKS);
+}
+
+
+template<typename T>
+__global__ void axpyKernel(size_t n, T alpha, const T* x, T* y) {
+    size_t stride = static_cast<size_t>(blockDim.x) * gridDim.x;
+    for (size_t i = static_cast<size_t>(blockIdx.x) * blockDim.x + threadIdx.x; i < n; i += stride) {
+        y[i] = alpha * x[i] + y[i];
+    }
+}
+
+
+template<typename T>
+__global__ void scaleKernel(size_t n, T alpha, T* x) {
+    size_t stride = static_cast<size_t>(blockDim.x) * gridDim.x;
+    for (size_t i = static_cast<size_t>(blockIdx.x) * blockDim.x + threadIdx.x; i < n; i += stride) {
+        x[i] = alpha * x[i];
+    }
+}
+
+
+template<int R>
+__host__ __device__ inline double identity() {
+    return (R == VECTOR_MIN || R == VECTOR_MAX) ? CUDART_NAN : 0.0;
+}
+
+
+// fmin / fmax return the other operand if one is NaN, so NaN doubles as
+// the identity of MIN and MAX
+template<int R>
+__host__ __device__ inline double combine(double a, double b) {
+    if (R == VECTOR_MIN) {
+        return fmin(a, b);
+    }
+    if (R == VECTOR_MAX) {
+        return fmax(a, b);
+    }
+    return a + b;
+}
+
+
+template<int R>
+__device__ inline double accumulate(double acc, double v, double w) {
+    if (R == VECTOR_DOT) {
+        return fma(v, w, acc);
+    }
+    if (R == VECTOR_SUM_OF_SQUARES) {
+        return fma(v, v, acc);
+    }
+    return combine<R>(acc, v);
+}
+
+
+// Every block reduces its grid-stride share of the elements to a single
+// partial result, the partials get combined on the host
+template<typename T, int R>
+__global__ void reduceKernel(size_t n, const T* x, const T* y, double* partials) {
+    __shared__ double cache[THREADS_PER_BLOCK];
+    double acc = identity<R>();
+    size_t stride = static_cast<size_t>(blockDim.x) * gridDim.x;
+    for (size_t i = static_cast<size_t>(blockIdx.x) * blockDim.x + threadIdx.x; i < n; i += stride) {
+        double w = (R == VECTOR_DOT) ? static_cast<double>(y[i]) : 0.0;
+        acc = accumulate<R>(acc, static_cast<double>(x[i]), w);
+    }
+    cache[threadIdx.x] = acc;
+    __syncthreads();
+    for (unsigned int s = blockDim.x / 2; s > 0; s >>= 1) {
+        if (threadIdx.x < s) {
+            cache[threadIdx.x] = combine<R>(cache[threadIdx.x], cache[threadIdx.x + s]);
+        }
+        __syncthreads();
+    }
+    if (threadIdx.x == 0) {
+        partials[blockIdx.x] = cache[0];
+    }
+}
+
+
+template<typename T, int R>
+static cudaError_t reduceWith(size_t n, const T* x, const T* y, double* result) {
+    *result = identity<R>();
+    if (n == 0) {
+        return cudaSuccess;
+    }
+    unsigned int blocks = blocksFor(n);
+    double* d_partials = NULL;
+    // the stream-ordered allocator keeps the partials off the cudaMalloc path
+    cudaError_t rc = cudaMallocAsync(reinterpret_cast<void**>(&d_partials), blocks * sizeof(double), 0);
+    if (rc != cudaSuccess) {
+        return rc;
+    }
+    reduceKernel<T, R><<<blocks, THREADS_PER_BLOCK>>>(n, x, y, d_partials);
+    rc = cudaGetLastError();
+    double partials[MAX_BLOCKS];
+    if (rc == cudaSuccess) {
+        rc = cudaMemcpy(partials, d_partials, blocks * sizeof(double), cudaMemcpyDeviceToHost);
+    }
+    cudaError_t rcFree = cudaFreeAsync(d_partials, 0);
+    if (rc != cudaSuccess) {
+        return rc;
+    }
+    double acc = identity<R>();
+    for (unsigned int i = 0; i < blocks; ++i) {
+        acc = combine<R>(acc, partials[i]);
+    }
+    *result = acc;
+    return rcFree;
+}
+
+
+template<typename T>
+static cudaError_t reduce(int reduction, size_t n, const T* x, const T* y, double* result) {
+    switch (reduction) {
+    case VECTOR_SUM:
+        return reduceWith<T, VECTOR_SUM>(n, x, y, result);
+    case VECTOR_MIN:
+        return reduceWith<T, VECTOR_MIN>(n, x, y, result);
+    case VECTOR_MAX:
+        return reduceWith<T, VECTOR_MAX>(n, x, y, result);
+    case VECTOR_DOT:
+        return reduceWith<T, VECTOR_DOT>(n, x, y, result);
+    case VECTOR_SUM_OF_SQUARES:
+        return reduceWith<T, VECTOR_SUM_OF_SQUARES>(n, x, y, result);
+    default:
+        return cudaErrorInvalidValue;
+    }
+}
+
+
+// kernel launches are asynchronous, wait for the outcome
+static cudaError_t completed() {
+    cudaError_t rc = cudaGetLastError();
+    if (rc == cudaSuccess) {
+        rc = cudaStreamSynchronize(0);
+    }
+    return rc;
+}
+
+
+cudaError_t axpyVector(int elementSize, size_t n, double alpha, const void* x, void* y) {
+    if (n == 0) {
+        return cudaSuccess;
+    }
+    if (elementSize == 4) {
+        axpyKernel<float><<<blocksFor(n), THREADS_PER_BLOCK>>>(n, static_cast<float>(alpha),
+                static_cast<const float*>(x), static_cast<float*>(y));
+    } else if (elementSize == 8) {
+        axpyKernel<double><<<blocksFor(n), THREADS_PER_BLOCK>>>(n, alpha, static_cast<const double*>(x),
+                static_cast<double*>(y));
+    } else {
+        return cudaErrorInvalidValue;
+    }
+    return completed();
+}
+
+
+cudaError_t scaleVector(int elementSize, size_t n, double alpha, void* x) {
+    if (n == 0) {
+        return cudaSuccess;
+    }
+    if (elementSize == 4) {
+        scaleKernel<float><<<blocksFor(n), THREADS_PER_BLOCK>>>(n, static_cast<float>(alpha),
+                static_cast<float*>(x));
+    } else if (elementSize == 8) {
+        scaleKernel<double><<<blocksFor(n), THREADS_PER_BLOCK>>>(n, alpha, static_cast<double*>(x));
+    } else {
+        return cudaErrorInvalidValue;
+    }
+    return completed();
+}
+
+
+cudaError_t reduceVector(int reduction, int elementSize, size_t n, const void* x, const void* y, double* result) {
+    if (elementSize == 4) {
+        return reduce<float>(reduction, n, static_cast<const float*>(x), static_cast<const float*>(y), result);
+    }
+    if (elementSize == 8) {
+        return reduce<double>(reduction, n, static_cast<const double*>(x), static_cast<const double*>(y), result);
+    }
+    return cudaErrorInvalidValue;
+}
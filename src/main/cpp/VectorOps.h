@@ -0,0 +1,38 @@
+#ifndef VECTOROPS_INCLUDED_
+#define VECTOROPS_INCLUDED_
+
+
+#include <stddef.h> // size_t
+
+#ifndef __CUDA_RUNTIME_H__
+#include <cuda_runtime.h>
+#endif /* __CUDA_RUNTIME_H__ */
+
+
+
+// The reductions of reduceVector(), same values as the REDUCE_XXX
+// constants of net.deer.cuda.DeviceBackend
+#define VECTOR_SUM 0
+#define VECTOR_MIN 1
+#define VECTOR_MAX 2
+#define VECTOR_DOT 3
+#define VECTOR_SUM_OF_SQUARES 4
+
+
+// The vector operations run on the current device and the default stream
+// and return once they have completed. elementSize selects the element
+// type: 4 for float, 8 for double.
+
+// y = alpha * x + y
+cudaError_t axpyVector(int elementSize, size_t n, double alpha, const void* x, void* y);
+
+// x = alpha * x
+cudaError_t scaleVector(int elementSize, size_t n, double alpha, void* x);
+
+// Reduces the n elements of x (for VECTOR_DOT: the element-wise products
+// of x and y) in double precision. MIN and MAX ignore NaN elements and
+// yield NaN for an empty or all-NaN vector.
+cudaError_t reduceVector(int reduction, int elementSize, size_t n, const void* x, const void* y, double* result);
+
+
+#endif /* VECTOROPS_INCLUDED_ */
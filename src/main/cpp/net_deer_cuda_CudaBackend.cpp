@@ -0,0 +1,1149 @@
+
+#ifndef JUTILS_INCLUDED_
+#include "JUtils.h"
+#endif /* JUTILS_INCLUDED_ */
+
+#ifndef JEXCEPTION_INCLUDED_
+#include "JException.h"
+#endif /* JEXCEPTION_INCLUDED_ */
+
+#ifndef __CONTEXT_H_INCLUDED_
+#include "Context.h"
+#endif /* __CONTEXT_H_INCLUDED_ */
+
+#ifndef _JAVASOFT_JNI_H_
+#include "jni.h"
+#endif /* _JAVASOFT_JNI_H_ */
+
+#ifndef JVMPROVIDER_INCLUDED_
+#include "JvmProvider.h"
+#endif /* JVMPROVIDER_INCLUDED_ */
+
+#ifndef JHANDLECACHE_INCLUDED_
+#include "JHandleCache.h"
+#endif /* JHANDLECACHE_INCLUDED_ */
+
+#ifndef __CUDA_RUNTIME_H__
+#include <cuda_runtime.h>
+#endif /* __CUDA_RUNTIME_H__ */
+
+// the runtime API has no 16 / 32 bit memset
+#ifndef __cuda_cuda_h__
+#include <cuda.h>
+#endif /* __cuda_cuda_h__ */
+
+#ifndef VECTOROPS_INCLUDED_
+#include "VectorOps.h"
+#endif /* VECTOROPS_INCLUDED_ */
+
+#ifndef PRIMITIVES_INCLUDED_
+#include "Primitives.h"
+#endif /* PRIMITIVES_INCLUDED_ */
+
+#ifndef RUNTIMECOMPILER_INCLUDED_
+#include "RuntimeCompiler.h"
+#endif /* RUNTIMECOMPILER_INCLUDED_ */
+
+
+
+#ifndef POTABILITY_INCLUDED_
+#include "Portability.h"
+#endif /* POTABILITY_INCLUDED_ */
+
+
+
+//////////////////////////////////////////////////////////////////////
+// The user data of runJavaCallback: a global reference to the
+// net.deer.cuda.StreamCallback (and a link for the list of orphans)
+//////////////////////////////////////////////////////////////////////
+struct JavaCallback {
+    jobject callback;
+    JavaCallback* next;
+};
+
+// Callbacks whose thread couldn't be attached to the VM: their global
+// references can only be deleted on a thread that has a JNIEnv, which is
+// done by the next cudaStreamAddCallbackN. A lock-free stack.
+static void* volatile orphanedCallbacks = NULL;
+
+static void orphanCallback(JavaCallback* orphan) {
+    void* head;
+    do {
+        head = orphanedCallbacks;
+        orphan->next = static_cast<JavaCallback*>(head);
+    } while (casPointer_portable(&orphanedCallbacks, head, orphan) != head);
+}
+
+static void releaseOrphanedCallbacks(JNIEnv* env) {
+    void* head;
+    do {
+        head = orphanedCallbacks;
+    } while (head != NULL && casPointer_portable(&orphanedCallbacks, head, NULL) != head);
+    JavaCallback* orphan = static_cast<JavaCallback*>(head);
+    while (orphan != NULL) {
+        JavaCallback* next = orphan->next;
+        env->DeleteGlobalRef(orphan->callback);
+        delete orphan;
+        orphan = next;
+    }
+}
+
+
+
+//////////////////////////////////////////////////////////////////////
+// Stream callback that runs a net.deer.cuda.StreamCallback queued on a
+// stream. CUDA invokes it on an internal thread which gets attached to
+// the VM (as a daemon) on first use and stays attached. Unlike a host
+// function (cudaLaunchHostFunc) a stream callback is also invoked if the
+// stream or the context has failed, and the error status is passed on to
+// the StreamCallback.
+//////////////////////////////////////////////////////////////////////
+static void CUDART_CB runJavaCallback(cudaStream_t /*stream*/, cudaError_t status, void* userData) {
+    JavaCallback* javaCallback = static_cast<JavaCallback*>(userData);
+    JNIEnv* env = NULL;
+    try {
+        JavaVM* vm = JvmProvider::instance()->getJavaVM();
+        jint rc = vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_6);
+        if (rc == JNI_EDETACHED) {
+            rc = vm->AttachCurrentThreadAsDaemon(reinterpret_cast<void**>(&env), NULL);
+        }
+        if (rc != JNI_OK) {
+            env = NULL;
+        }
+        if (env != NULL) {
+            jmethodID done = static_cast<jmethodID>(JHandleCache::handle(JH_StreamCallback_done));
+            env->CallVoidMethod(javaCallback->callback, done, static_cast<jint>(status), NULL);
+            if (env->ExceptionCheck() == JNI_TRUE) {
+                env->ExceptionDescribe();
+                env->ExceptionClear();
+            }
+        }
+    } catch (...) {
+        // must not propagate into the CUDA runtime
+    }
+    if (env != NULL) {
+        env->DeleteGlobalRef(javaCallback->callback);
+        delete javaCallback;
+    } else {
+        orphanCallback(javaCallback);
+    }
+}
+
+
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMallocN
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaMallocN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    void* d_address = NULL;
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaMalloc(&d_address, static_cast<size_t>(byteCount));
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(pCtx, rc);
+        return 0L;
+    }
+    return toJavaLong(d_address);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaFreeN
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaFreeN
+  (JNIEnv* /*env*/, jclass /*clazz*/, jint deviceId, jlong address)
+{
+    // never throw an exception
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaFree((void*) (uintptr_t) address);
+    }
+    return static_cast<jlong>(rc);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaFreeBatchN
+ * Signature: (I[JI)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaFreeBatchN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlongArray addresses, jint count)
+{
+    // never throw an exception
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc != cudaSuccess) {
+        return static_cast<jlong>(rc);
+    }
+    // copy out in chunks: cudaFree may block, so no critical region here
+    jlong chunk[64];
+    JNIEnv_* uncheckedEnv = getContext(env)->unchecked();
+    for (jint i = 0; i < count; i += 64) {
+        jint n = (count - i < 64) ? (count - i) : 64;
+        uncheckedEnv->GetLongArrayRegion(addresses, i, n, chunk);
+        for (jint j = 0; j < n; ++j) {
+            cudaError_t freeRc = cudaFree((void*) (uintptr_t) chunk[j]);
+            if (freeRc != cudaSuccess && rc == cudaSuccess) {
+                // report the first failure but still try to free the rest
+                rc = freeRc;
+            }
+        }
+    }
+    return static_cast<jlong>(rc);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMallocHostN
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaMallocHostN
+  (JNIEnv* env, jclass /*clazz*/, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    void* h_address = NULL;
+    cudaError_t rc = cudaMallocHost(&h_address, static_cast<size_t>(byteCount));
+    if (rc != cudaSuccess) {
+        throwCudaException(pCtx, rc);
+        return 0L;
+    }
+    return toJavaLong(h_address);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaFreeHostN
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaFreeHostN
+  (JNIEnv* /*env*/, jclass /*clazz*/, jlong address)
+{
+    // never throw an exception
+    return static_cast<jlong>(cudaFreeHost((void*) (uintptr_t) address));
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemcpyHostToDeviceN
+ * Signature: (IJLjava/lang/Object;JJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemcpyHostToDeviceN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong address, jobject array, jlong byteOffset, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    if (byteCount <= 0) {
+        return;
+    }
+    try {
+        void* d_address = (void*) (uintptr_t) address;
+        cudaError_t rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            // Pin the array instead of copying it into a temporary native buffer.
+            // No JNI calls are allowed until the array is released again.
+            jarray jarr = reinterpret_cast<jarray>(array);
+            char* h_array = static_cast<char*>(pCtx->unchecked()->GetPrimitiveArrayCritical(jarr, NULL));
+            if (h_array == NULL) {
+                throwJavaRuntimeException(pCtx, "%s", "cudaMemcpyHostToDeviceN: GetPrimitiveArrayCritical failed");
+                return;
+            }
+            rc = cudaMemcpy(d_address, h_array + byteOffset, static_cast<size_t>(byteCount), cudaMemcpyHostToDevice);
+            // nothing has been modified, no need to copy back
+            pCtx->unchecked()->ReleasePrimitiveArrayCritical(jarr, h_array, JNI_ABORT);
+        }
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+        }
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaMemcpyHostToDeviceN", ex.what());
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemcpyDeviceToHostN
+ * Signature: (IJLjava/lang/Object;JJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemcpyDeviceToHostN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong address, jobject array, jlong byteOffset, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    if (byteCount <= 0) {
+        return;
+    }
+    try {
+        void* d_address = (void*) (uintptr_t) address;
+        cudaError_t rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            // Pin the array instead of copying through a temporary native buffer.
+            // No JNI calls are allowed until the array is released again.
+            jarray jarr = reinterpret_cast<jarray>(array);
+            char* h_array = static_cast<char*>(pCtx->unchecked()->GetPrimitiveArrayCritical(jarr, NULL));
+            if (h_array == NULL) {
+                throwJavaRuntimeException(pCtx, "%s", "cudaMemcpyDeviceToHostN: GetPrimitiveArrayCritical failed");
+                return;
+            }
+            rc = cudaMemcpy(h_array + byteOffset, d_address, static_cast<size_t>(byteCount), cudaMemcpyDeviceToHost);
+            // mode 0: copy back (if the VM made a copy at all) and release
+            pCtx->unchecked()->ReleasePrimitiveArrayCritical(jarr, h_array, 0);
+        }
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+        }
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaMemcpyDeviceToHostN", ex.what());
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemcpyHostPtrToDeviceN
+ * Signature: (IJJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemcpyHostPtrToDeviceN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong address, jlong hostAddress, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    if (byteCount <= 0) {
+        return;
+    }
+    try {
+        void* d_address = (void*) (uintptr_t) address;
+        cudaError_t rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            rc = cudaMemcpy(d_address, (const void*) (uintptr_t) hostAddress, static_cast<size_t>(byteCount),
+                    cudaMemcpyHostToDevice);
+        }
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+        }
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaMemcpyHostPtrToDeviceN", ex.what());
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemcpyDeviceToHostPtrN
+ * Signature: (IJJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemcpyDeviceToHostPtrN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong address, jlong hostAddress, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    if (byteCount <= 0) {
+        return;
+    }
+    try {
+        void* d_address = (void*) (uintptr_t) address;
+        cudaError_t rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            rc = cudaMemcpy((void*) (uintptr_t) hostAddress, d_address, static_cast<size_t>(byteCount),
+                    cudaMemcpyDeviceToHost);
+        }
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+        }
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaMemcpyDeviceToHostPtrN", ex.what());
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaStreamCreateN
+ * Signature: (II)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaStreamCreateN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint flags)
+{
+    Context* pCtx = getContext(env);
+    cudaStream_t stream = NULL;
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaStreamCreateWithFlags(&stream, static_cast<unsigned int>(flags));
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(pCtx, rc);
+        return 0L;
+    }
+    return toJavaLong(stream);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaStreamDestroyN
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaStreamDestroyN
+  (JNIEnv* /*env*/, jclass /*clazz*/, jint deviceId, jlong stream)
+{
+    // never throw an exception
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaStreamDestroy((cudaStream_t) (uintptr_t) stream);
+    }
+    return static_cast<jlong>(rc);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaStreamSynchronizeN
+ * Signature: (IJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaStreamSynchronizeN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong stream)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaStreamSynchronize((cudaStream_t) (uintptr_t) stream);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaStreamQueryN
+ * Signature: (IJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_net_deer_cuda_CudaBackend_cudaStreamQueryN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong stream)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaStreamQuery((cudaStream_t) (uintptr_t) stream);
+    }
+    if (rc == cudaSuccess) {
+        return JNI_TRUE;
+    }
+    if (rc != cudaErrorNotReady) {
+        throwCudaException(getContext(env), rc);
+    }
+    return JNI_FALSE;
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaStreamAddCallbackN
+ * Signature: (IJLnet/deer/cuda/StreamCallback;)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaStreamAddCallbackN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong stream, jobject callback)
+{
+    Context* pCtx = getContext(env);
+    try {
+        releaseOrphanedCallbacks(env);
+        // released by runJavaCallback
+        jobject globalCallback = pCtx->unchecked()->NewGlobalRef(callback);
+        if (globalCallback == NULL) {
+            throwJavaRuntimeException(pCtx, "%s", "cudaStreamAddCallbackN: unable to create global reference");
+            return;
+        }
+        JavaCallback* javaCallback = new JavaCallback();
+        javaCallback->callback = globalCallback;
+        javaCallback->next = NULL;
+        cudaError_t rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            rc = cudaStreamAddCallback((cudaStream_t) (uintptr_t) stream, runJavaCallback, javaCallback, 0);
+        }
+        if (rc != cudaSuccess) {
+            pCtx->DeleteGlobalRef(globalCallback);
+            delete javaCallback;
+            throwCudaException(pCtx, rc);
+        }
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaStreamAddCallbackN", ex.what());
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaEventCreateN
+ * Signature: (II)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaEventCreateN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint flags)
+{
+    cudaEvent_t event = NULL;
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaEventCreateWithFlags(&event, static_cast<unsigned int>(flags));
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+        return 0L;
+    }
+    return toJavaLong(event);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaEventDestroyN
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaEventDestroyN
+  (JNIEnv* /*env*/, jclass /*clazz*/, jint deviceId, jlong event)
+{
+    // never throw an exception
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaEventDestroy((cudaEvent_t) (uintptr_t) event);
+    }
+    return static_cast<jlong>(rc);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaEventRecordN
+ * Signature: (IJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaEventRecordN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong event, jlong stream)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaEventRecord((cudaEvent_t) (uintptr_t) event, (cudaStream_t) (uintptr_t) stream);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaEventQueryN
+ * Signature: (IJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_net_deer_cuda_CudaBackend_cudaEventQueryN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong event)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaEventQuery((cudaEvent_t) (uintptr_t) event);
+    }
+    if (rc == cudaSuccess) {
+        return JNI_TRUE;
+    }
+    if (rc != cudaErrorNotReady) {
+        throwCudaException(getContext(env), rc);
+    }
+    return JNI_FALSE;
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaEventSynchronizeN
+ * Signature: (IJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaEventSynchronizeN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong event)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaEventSynchronize((cudaEvent_t) (uintptr_t) event);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaEventElapsedTimeN
+ * Signature: (IJJ)F
+ */
+JNIEXPORT jfloat JNICALL Java_net_deer_cuda_CudaBackend_cudaEventElapsedTimeN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong start, jlong end)
+{
+    float millis = 0.0f;
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaEventElapsedTime(&millis, (cudaEvent_t) (uintptr_t) start, (cudaEvent_t) (uintptr_t) end);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+        return 0.0f;
+    }
+    return static_cast<jfloat>(millis);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemcpyHostPtrToDeviceAsyncN
+ * Signature: (JIJJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemcpyHostPtrToDeviceAsyncN
+  (JNIEnv* env, jclass /*clazz*/, jlong stream, jint deviceId, jlong address, jlong hostAddress, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    if (byteCount <= 0) {
+        return;
+    }
+    try {
+        void* d_address = (void*) (uintptr_t) address;
+        cudaError_t rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            rc = cudaMemcpyAsync(d_address, (const void*) (uintptr_t) hostAddress, static_cast<size_t>(byteCount),
+                    cudaMemcpyHostToDevice, (cudaStream_t) (uintptr_t) stream);
+        }
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+        }
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaMemcpyHostPtrToDeviceAsyncN", ex.what());
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemcpyDeviceToHostPtrAsyncN
+ * Signature: (JIJJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemcpyDeviceToHostPtrAsyncN
+  (JNIEnv* env, jclass /*clazz*/, jlong stream, jint deviceId, jlong address, jlong hostAddress, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    if (byteCount <= 0) {
+        return;
+    }
+    try {
+        void* d_address = (void*) (uintptr_t) address;
+        cudaError_t rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            rc = cudaMemcpyAsync((void*) (uintptr_t) hostAddress, d_address, static_cast<size_t>(byteCount),
+                    cudaMemcpyDeviceToHost, (cudaStream_t) (uintptr_t) stream);
+        }
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+        }
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaMemcpyDeviceToHostPtrAsyncN", ex.what());
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaGetDeviceCountN
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_net_deer_cuda_CudaBackend_cudaGetDeviceCountN
+  (JNIEnv* env, jclass /*clazz*/)
+{
+    int count = 0;
+    cudaError_t rc = cudaGetDeviceCount(&count);
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+        return 0;
+    }
+    return static_cast<jint>(count);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaGetDevicePropertiesN
+ * Signature: (I[J)Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_net_deer_cuda_CudaBackend_cudaGetDevicePropertiesN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlongArray values)
+{
+    Context* pCtx = getContext(env);
+    try {
+        cudaDeviceProp prop;
+        cudaError_t rc = cudaGetDeviceProperties(&prop, deviceId);
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+            return NULL;
+        }
+        // the order must match the indices in DeviceProperties
+        jlong buf[15];
+        buf[0] = static_cast<jlong>(prop.totalGlobalMem);
+        buf[1] = static_cast<jlong>(prop.sharedMemPerBlock);
+        buf[2] = prop.warpSize;
+        buf[3] = prop.maxThreadsPerBlock;
+        buf[4] = prop.maxThreadsDim[0];
+        buf[5] = prop.maxThreadsDim[1];
+        buf[6] = prop.maxThreadsDim[2];
+        buf[7] = prop.maxGridSize[0];
+        buf[8] = prop.maxGridSize[1];
+        buf[9] = prop.maxGridSize[2];
+        buf[10] = prop.multiProcessorCount;
+        buf[11] = prop.maxThreadsPerMultiProcessor;
+        buf[12] = prop.major;
+        buf[13] = prop.minor;
+        buf[14] = prop.clockRate;
+        pCtx->SetLongArrayRegion(values, 0, 15, buf);
+        return pCtx->NewStringUTF(prop.name);
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaGetDevicePropertiesN", ex.what());
+    }
+    return NULL;
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemcpyDeviceToDeviceN
+ * Signature: (IJJJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemcpyDeviceToDeviceN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong dstAddress, jlong srcAddress, jlong byteCount, jlong stream)
+{
+    if (byteCount <= 0) {
+        return;
+    }
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaMemcpyAsync((void*) (uintptr_t) dstAddress, (const void*) (uintptr_t) srcAddress,
+                static_cast<size_t>(byteCount), cudaMemcpyDeviceToDevice, (cudaStream_t) (uintptr_t) stream);
+    }
+    if (rc == cudaSuccess && stream == 0L) {
+        // a device to device copy returns before it is done
+        rc = cudaStreamSynchronize(0);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaDeviceEnablePeerAccessN
+ * Signature: (II)Z
+ */
+JNIEXPORT jboolean JNICALL Java_net_deer_cuda_CudaBackend_cudaDeviceEnablePeerAccessN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint peerDeviceId)
+{
+    int canAccess = 0;
+    cudaError_t rc = cudaDeviceCanAccessPeer(&canAccess, deviceId, peerDeviceId);
+    if (rc == cudaSuccess && !canAccess) {
+        return JNI_FALSE;
+    }
+    if (rc == cudaSuccess) {
+        rc = cudaSetDevice(deviceId);
+    }
+    if (rc == cudaSuccess) {
+        rc = cudaDeviceEnablePeerAccess(peerDeviceId, 0);
+        if (rc == cudaErrorPeerAccessAlreadyEnabled) {
+            // not an error for us, but reset the sticky last error
+            cudaGetLastError();
+            rc = cudaSuccess;
+        }
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemcpyPeerN
+ * Signature: (IJIJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemcpyPeerN
+  (JNIEnv* env, jclass /*clazz*/, jint dstDeviceId, jlong dstAddress, jint srcDeviceId, jlong srcAddress,
+        jlong byteCount)
+{
+    if (byteCount <= 0) {
+        return;
+    }
+    cudaError_t rc = cudaSetDevice(dstDeviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaMemcpyPeer((void*) (uintptr_t) dstAddress, dstDeviceId, (const void*) (uintptr_t) srcAddress,
+                srcDeviceId, static_cast<size_t>(byteCount));
+    }
+    if (rc == cudaSuccess) {
+        // cudaMemcpyPeer is queued on the default stream of the current
+        // device and is asynchronous with respect to the host
+        rc = cudaStreamSynchronize(0);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemsetN
+ * Signature: (IJJIJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemsetN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong address, jlong pattern, jint patternSize, jlong count,
+        jlong stream)
+{
+    if (count <= 0) {
+        return;
+    }
+    // cudaSetDevice makes the primary context current, which the driver API
+    // calls below rely on. Their CUresult codes coincide with the cudaError_t
+    // codes for the errors that can occur here (e.g., invalid value).
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        CUdeviceptr d_address = static_cast<CUdeviceptr>(address);
+        size_t n = static_cast<size_t>(count);
+        // the runtime and the driver API handles of a stream are the same
+        cudaStream_t s = (cudaStream_t) (uintptr_t) stream;
+        CUstream hStream = (CUstream) (uintptr_t) stream;
+        switch (patternSize) {
+        case 1:
+            rc = cudaMemsetAsync((void*) (uintptr_t) address, static_cast<int>(pattern & 0xFF), n, s);
+            break;
+        case 2:
+            rc = static_cast<cudaError_t>(cuMemsetD16Async(d_address, static_cast<unsigned short>(pattern), n,
+                    hStream));
+            break;
+        case 4:
+            rc = static_cast<cudaError_t>(cuMemsetD32Async(d_address, static_cast<unsigned int>(pattern), n,
+                    hStream));
+            break;
+        case 8:
+            // two strided 32 bit fills with a pitch of 8 bytes: first the low
+            // words, then the high words (little-endian)
+            rc = static_cast<cudaError_t>(cuMemsetD2D32Async(d_address, 8, static_cast<unsigned int>(pattern), 1, n,
+                    hStream));
+            if (rc == cudaSuccess) {
+                rc = static_cast<cudaError_t>(cuMemsetD2D32Async(d_address + 4, 8,
+                        static_cast<unsigned int>(static_cast<unsigned long long>(pattern) >> 32), 1, n, hStream));
+            }
+            break;
+        default:
+            rc = cudaErrorInvalidValue;
+            break;
+        }
+    }
+    if (rc == cudaSuccess && stream == 0L) {
+        // memsets of device memory are asynchronous with respect to the host
+        rc = cudaStreamSynchronize(0);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMallocManagedN
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaMallocManagedN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong byteCount)
+{
+    Context* pCtx = getContext(env);
+    void* d_address = NULL;
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaMallocManaged(&d_address, static_cast<size_t>(byteCount), cudaMemAttachGlobal);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(pCtx, rc);
+        return 0L;
+    }
+    return toJavaLong(d_address);
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemPrefetchAsyncN
+ * Signature: (IJJIJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemPrefetchAsyncN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong address, jlong byteCount, jint dstDeviceId, jlong stream)
+{
+    if (byteCount <= 0) {
+        return;
+    }
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        // a negative destination denotes the host (cudaCpuDeviceId)
+        rc = cudaMemPrefetchAsync((const void*) (uintptr_t) address, static_cast<size_t>(byteCount),
+                (dstDeviceId < 0) ? cudaCpuDeviceId : dstDeviceId, (cudaStream_t) (uintptr_t) stream);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaMemAdviseN
+ * Signature: (IJJII)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaMemAdviseN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong address, jlong byteCount, jint advice, jint adviceDeviceId)
+{
+    if (byteCount <= 0) {
+        return;
+    }
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = cudaMemAdvise((const void*) (uintptr_t) address, static_cast<size_t>(byteCount),
+                static_cast<cudaMemoryAdvise>(advice), (adviceDeviceId < 0) ? cudaCpuDeviceId : adviceDeviceId);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    vectorAxpyN
+ * Signature: (IIJDJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_vectorAxpyN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint elementSize, jlong n, jdouble alpha, jlong x, jlong y)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = axpyVector(elementSize, static_cast<size_t>(n), alpha, (const void*) (uintptr_t) x,
+                (void*) (uintptr_t) y);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    vectorScaleN
+ * Signature: (IIJDJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_vectorScaleN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint elementSize, jlong n, jdouble alpha, jlong x)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = scaleVector(elementSize, static_cast<size_t>(n), alpha, (void*) (uintptr_t) x);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    vectorReduceN
+ * Signature: (IIIJJJ)D
+ */
+JNIEXPORT jdouble JNICALL Java_net_deer_cuda_CudaBackend_vectorReduceN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint reduction, jint elementSize, jlong n, jlong x, jlong y)
+{
+    double result = 0.0;
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = reduceVector(reduction, elementSize, static_cast<size_t>(n), (const void*) (uintptr_t) x,
+                (const void*) (uintptr_t) y, &result);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+        return 0.0;
+    }
+    return result;
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    radixSortN
+ * Signature: (IIIJJI)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_radixSortN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint keyType, jint n, jlong keys, jlong values, jint valueSize)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = sortKeys(keyType, n, (void*) (uintptr_t) keys, (void*) (uintptr_t) values, valueSize);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    prefixScanN
+ * Signature: (IIZIJJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_prefixScanN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint type, jboolean inclusive, jint n, jlong in, jlong out)
+{
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = prefixSum(type, inclusive == JNI_TRUE, n, (const void*) (uintptr_t) in, (void*) (uintptr_t) out);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+    }
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    selectFlaggedN
+ * Signature: (IIIJJJ)I
+ */
+JNIEXPORT jint JNICALL Java_net_deer_cuda_CudaBackend_selectFlaggedN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint elementSize, jint n, jlong in, jlong flags, jlong out)
+{
+    int selected = 0;
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = selectFlagged(elementSize, n, (const void*) (uintptr_t) in, (const unsigned char*) (uintptr_t) flags,
+                (void*) (uintptr_t) out, &selected);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+        return 0;
+    }
+    return selected;
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    selectUniqueN
+ * Signature: (IIIJJ)I
+ */
+JNIEXPORT jint JNICALL Java_net_deer_cuda_CudaBackend_selectUniqueN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jint elementSize, jint n, jlong in, jlong out)
+{
+    int selected = 0;
+    cudaError_t rc = cudaSetDevice(deviceId);
+    if (rc == cudaSuccess) {
+        rc = selectUnique(elementSize, n, (const void*) (uintptr_t) in, (void*) (uintptr_t) out, &selected);
+    }
+    if (rc != cudaSuccess) {
+        throwCudaException(getContext(env), rc);
+        return 0;
+    }
+    return selected;
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaCompileKernelN
+ * Signature: (ILjava/lang/String;Ljava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_net_deer_cuda_CudaBackend_cudaCompileKernelN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jstring source, jstring name)
+{
+    Context* pCtx = getContext(env);
+    try {
+        const SlimString src = convJString2UTF8SlimString(pCtx, source);
+        const SlimString kernel = convJString2UTF8SlimString(pCtx, name);
+        // leave room for the prefix in the 4K message of the exception
+        char log[2048] = {0};
+        CUfunction function = NULL;
+        int rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            rc = compileKernel(src.c_str(), kernel.c_str(), &function, log, sizeof(log));
+        }
+        if (rc == COMPILE_FAILED) {
+            throwJavaRuntimeException(pCtx, "%s %s", "cudaCompileKernelN:", log);
+            return 0L;
+        }
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+            return 0L;
+        }
+        return toJavaLong(function);
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaCompileKernelN", ex.what());
+    }
+    return 0L;
+}
+
+
+/*
+ * Class:     net_deer_cuda_CudaBackend
+ * Method:    cudaLaunchKernelN
+ * Signature: (IJII[JIJ)V
+ */
+JNIEXPORT void JNICALL Java_net_deer_cuda_CudaBackend_cudaLaunchKernelN
+  (JNIEnv* env, jclass /*clazz*/, jint deviceId, jlong function, jint gridSize, jint blockSize, jlongArray params,
+  jint paramsSize, jlong stream)
+{
+    Context* pCtx = getContext(env);
+    try {
+        // a KernelParams block has at most 64 slots of at most 8 bytes
+        jlong buf[64];
+        size_t size = static_cast<size_t>(paramsSize);
+        if (paramsSize < 0 || size > sizeof(buf)) {
+            throwCudaException(pCtx, cudaErrorInvalidValue);
+            return;
+        }
+        pCtx->GetLongArrayRegion(params, 0, (paramsSize + 7) / 8, buf);
+        void* extra[] = {
+            CU_LAUNCH_PARAM_BUFFER_POINTER, buf,
+            CU_LAUNCH_PARAM_BUFFER_SIZE, &size,
+            CU_LAUNCH_PARAM_END
+        };
+        cudaError_t rc = cudaSetDevice(deviceId);
+        if (rc == cudaSuccess) {
+            // the CUresult codes of a launch coincide with the cudaError_t codes
+            rc = static_cast<cudaError_t>(cuLaunchKernel((CUfunction) (uintptr_t) function, gridSize, 1, 1,
+                    blockSize, 1, 1, 0, (CUstream) (uintptr_t) stream, NULL, extra));
+        }
+        // the launch has copied the parameters, only a launch on the default
+        // stream waits for the kernel
+        if (rc == cudaSuccess && stream == 0L) {
+            rc = cudaStreamSynchronize(0);
+        }
+        if (rc != cudaSuccess) {
+            throwCudaException(pCtx, rc);
+        }
+    } catch (const JException& ex) {
+        throwJavaRuntimeException(pCtx, "%s %s", "cudaLaunchKernelN", ex.what());
+    }
+}
+
+
+#ifdef __cplusplus
+}
+#endif
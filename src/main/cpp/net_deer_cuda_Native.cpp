@@ -15,6 +15,10 @@
 #include "Context.h"
 #endif /* __CONTEXT_H_INCLUDED_ */
 
+#ifndef REFLECT_INCLUDED_
+#include "Reflect.h"
+#endif /* REFLECT_INCLUDED_ */
+
 #ifndef NAMECONSTANTS_INCLUDED_
 #include "NameConstants.h"
 #endif /* NAMECONSTANTS_INCLUDED_ */
@@ -44,6 +48,7 @@ static jfieldID findNonPrimitiveFieldId(Context* pCtx, jclass clazz, const char*
 
 // Module-private helper functions for caching the Java descriptors
 static void cache_Address_Handles(Context* pCtx, JHandleCache* cache);
+static void cache_StreamCallback_Handles(Context* pCtx, JHandleCache* cache);
 
 
 
@@ -62,10 +67,11 @@ JNIEXPORT jboolean JNICALL Java_net_deer_cuda_Native_initializeHandleCacheN(JNIE
 
     Context* pCtx = getContext(env);
     try {
-        JHandleCache::clear();
+        JHandleCache::clear(env);
         JHandleCache* cache = JHandleCache::instance();
 
         cache_Address_Handles(pCtx, cache);
+        cache_StreamCallback_Handles(pCtx, cache);
 
     } catch (const JException& ex) {
         if (!throwJavaRuntimeException(pCtx, "%s %s", "initializeHandleCacheN", ex.what())) {
@@ -98,10 +104,23 @@ void cache_Address_Handles(Context* pCtx, JHandleCache* cache) {
     jfieldID deviceId = findIntFieldId(pCtx, clazz, "deviceId");
     jfieldID address = findLongFieldId(pCtx, clazz, "address");
 
-    cache->add("Address", clazz);
+    cache->set(JH_Address_class, clazz);
+
+    cache->set(JH_Address_deviceId, deviceId);
+    cache->set(JH_Address_address, address);
+}
+
+void cache_StreamCallback_Handles(Context* pCtx, JHandleCache* cache) {
+    jclass clazz = findClass(pCtx, PACKAGE "StreamCallback");
+
+    jmethodID done = pCtx->GetMethodID(clazz, "done", "(ILjava/lang/Throwable;)V");
+    if (done == NULL) {
+        throw JException("CacheInitialization::cache_StreamCallback_Handles - couldn't find method done(int, Throwable)");
+    }
+
+    cache->set(JH_StreamCallback_class, clazz);
 
-    cache->add("Address/deviceId", deviceId);
-    cache->add("Address/address", address);
+    cache->set(JH_StreamCallback_done, done);
 }
 
 
@@ -0,0 +1,27 @@
+package java.lang.foreign;
+
+/**
+ * A compilation stub only - <b>must not</b> be included in the
+ * binary distribution!
+ */
+public interface MemorySegment {
+    /**
+     * @since 22
+     */
+    long address();
+
+    /**
+     * @since 22
+     */
+    long byteSize();
+
+    /**
+     * @since 22
+     */
+    boolean isNative();
+
+    /**
+     * @since 22
+     */
+    boolean isReadOnly();
+}
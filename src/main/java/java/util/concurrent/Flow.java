@@ -0,0 +1,55 @@
+package java.util.concurrent;
+
+/**
+ * A compilation stub only - <b>must not</b> be included in the
+ * binary distribution!
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    public static interface Publisher<T> {
+        /**
+         * @since 9
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public static interface Subscriber<T> {
+        /**
+         * @since 9
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * @since 9
+         */
+        void onNext(T item);
+
+        /**
+         * @since 9
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * @since 9
+         */
+        void onComplete();
+    }
+
+    public static interface Subscription {
+        /**
+         * @since 9
+         */
+        void request(long n);
+
+        /**
+         * @since 9
+         */
+        void cancel();
+    }
+
+    public static interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
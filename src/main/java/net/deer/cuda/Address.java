@@ -14,6 +14,21 @@ interface Address extends AutoCloseable {
      */
     boolean isClosed();
 
+    /**
+     * Returns the raw value of the native pointer or handle.
+     * 
+     * @return the native pointer or handle value
+     */
+    long getValue();
+
+    /**
+     * Returns the id of the device this address belongs to (or {@code -1} if
+     * the address isn't associated with a specific device).
+     * 
+     * @return the device id of this address
+     */
+    int getDeviceId();
+
     /**
      * {@inheritDoc}
      */
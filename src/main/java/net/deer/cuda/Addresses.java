@@ -4,8 +4,50 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 final class Addresses {
 
-    /* package */static Address of(Object referent, long address, Cleaner deallocatorFunction, int deviceId) {
-        return AddressImpl.create(address, referent, deallocatorFunction, null, deviceId);
+    /* package */static Address of(Object referent, long address, long byteCount, Cleaner deallocatorFunction,
+            int deviceId) {
+        AddressImpl created = AddressImpl.create(address, referent, deallocatorFunction, null, deviceId);
+        if (deallocatorFunction != null) {
+            // the Address must not reference the referent, otherwise the
+            // referent could never become phantom reachable
+            created.registration = Reclaimer.register(referent, created);
+            if (deviceId >= 0) {
+                created.byteCount = byteCount;
+                created.stats = DeviceMemoryStats.forDevice(deviceId);
+                created.stats.allocated(created, byteCount);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Marks an address whose referent has become unreachable as closed.
+     *
+     * @return {@code true} if the caller is now responsible for releasing the
+     *         address, {@code false} if it had already been closed
+     */
+    /* package */static boolean markReclaimed(Address address) {
+        AddressImpl reclaimed = (AddressImpl) address;
+        if (reclaimed.isClosed.compareAndSet(false, true)) {
+            if (reclaimed.stats != null) {
+                reclaimed.stats.released(reclaimed, reclaimed.byteCount, true);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /* package */static Cleaner cleanerOf(Address address) {
+        return ((AddressImpl) address).cleaner;
+    }
+
+    // guarded by the lock of the address (see CachingAllocator.recordStream)
+    /* package */static CachingAllocator.StreamUse streamUsesOf(Address address) {
+        return ((AddressImpl) address).streamUses;
+    }
+
+    /* package */static void setStreamUses(Address address, CachingAllocator.StreamUse uses) {
+        ((AddressImpl) address).streamUses = uses;
     }
 
     // A sliced address has no cleaner since it is always the primordial root
@@ -29,15 +71,22 @@ final class Addresses {
     private static final class AddressImpl implements Address {
         private final int deviceId;
         private final long address;
-        private final Object referent;
+        private final int referentHash;
         private final Address root;
         private final Cleaner cleaner;
         private final AtomicBoolean isClosed = new AtomicBoolean();
+        // null for addresses without a cleaner
+        private Reclaimer.Registration registration;
+        // the accounting of device allocations (null otherwise)
+        private DeviceMemoryStats stats;
+        private long byteCount;
+        // the streams that have used a cached block (null otherwise)
+        private CachingAllocator.StreamUse streamUses;
 
         private AddressImpl(long address, Object referent, Cleaner deallocatorFunction, Address root, int deviceId) {
             this.deviceId = deviceId;
             this.address = address;
-            this.referent = referent;
+            this.referentHash = System.identityHashCode(referent);
             this.root = root;
             this.cleaner = deallocatorFunction;
         }
@@ -48,6 +97,12 @@ final class Addresses {
         @Override
         public void close() throws Exception {
             if (isClosed.compareAndSet(false, true)) {
+                if (registration != null) {
+                    Reclaimer.unregister(registration);
+                }
+                if (stats != null) {
+                    stats.released(this, byteCount, false);
+                }
                 long rc = tryClose();
                 if (rc != 0L) {
                     throw new LeakedResourceException("rc = " + rc + " " + this.toString());
@@ -70,13 +125,29 @@ final class Addresses {
             return isClosed.get();
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getValue() {
+            return address;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getDeviceId() {
+            return deviceId;
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
         public int hashCode() {
             int h = 0x7FFFF + (int) (address ^ (address >>> 32));
-            h = (h << 19) - h + System.identityHashCode(referent);
+            h = (h << 19) - h + referentHash;
             return (h << 19) - h + deviceId;
         }
 
@@ -90,7 +161,7 @@ final class Addresses {
             }
             if (otherAddress instanceof AddressImpl) {
                 AddressImpl o = (AddressImpl) otherAddress;
-                return address == o.address && referent == o.referent && deviceId == o.deviceId;
+                return address == o.address && referentHash == o.referentHash && deviceId == o.deviceId;
             }
             return false;
         }
@@ -101,10 +172,8 @@ final class Addresses {
         @Override
         public String toString() {
             StringBuilder buf = new StringBuilder(128);
-            return buf.append("[Address: ").append(address).append(" @").append(System.identityHashCode(referent))
-                    .append(" device: ").append(deviceId).append(" , ")
-                    .append((referent == null) ? "null" : referent.toString()).append(" , closed: ")
-                    .append(isClosed.get()).append(" ]").toString();
+            return buf.append("[Address: ").append(address).append(" @").append(referentHash).append(" device: ")
+                    .append(deviceId).append(" , closed: ").append(isClosed.get()).append(" ]").toString();
         }
 
         static AddressImpl create(long address, Object referent, Cleaner deallocatorFunction, Address root,
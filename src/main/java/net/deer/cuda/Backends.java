@@ -0,0 +1,39 @@
+package net.deer.cuda;
+
+final class Backends {
+
+    private static final String CUDA = "cuda";
+    private static final String HOST = "host";
+
+    private static final DeviceBackend BACKEND = instrument(create(SystemProps.BACKEND));
+
+    /**
+     * Returns the {@code DeviceBackend} that has been selected through the
+     * {@link SystemProps#BACKEND} property (wrapped in an
+     * {@link InstrumentedBackend} if {@link SystemProps#INSTRUMENTATION} is
+     * set).
+     *
+     * @return the active backend
+     */
+    /* package */static DeviceBackend get() {
+        return BACKEND;
+    }
+
+    private static DeviceBackend create(String name) {
+        if (CUDA.equalsIgnoreCase(name)) {
+            return new CudaBackend();
+        }
+        if (HOST.equalsIgnoreCase(name)) {
+            return new HostBackend(SystemProps.HOST_DEVICE_COUNT);
+        }
+        throw new IllegalArgumentException("Unknown device backend: " + name);
+    }
+
+    private static DeviceBackend instrument(DeviceBackend backend) {
+        return SystemProps.INSTRUMENTATION ? new InstrumentedBackend(backend) : backend;
+    }
+
+    private Backends() {
+        throw new AssertionError();
+    }
+}
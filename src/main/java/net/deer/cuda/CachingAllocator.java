@@ -0,0 +1,485 @@
+package net.deer.cuda;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code CachingAllocator} class keeps released device memory blocks of a
+ * specific device around for reuse, so that most allocations of a
+ * {@link DeviceMemory} don't have to go through {@code cudaMalloc} /
+ * {@code cudaFree} (which both implicitly synchronize the device).
+ * <p>
+ * Requests are rounded up to a size class. Every power-of-two interval is
+ * split into 4 classes, so at most 25% of a block are wasted. Requests above
+ * {@code net.deer.cuda.SystemProps.allocator.maxBlock} bytes are never cached.
+ * The amount of idle memory held by the cache is bounded by the high-water
+ * mark {@code net.deer.cuda.SystemProps.allocator.highWater}: blocks that
+ * would exceed it are released immediately. When an allocation fails for lack
+ * of device memory the cache gets trimmed and the allocation is retried once.
+ * <p>
+ * Since {@code cudaFree} isn't called for a cached block, releasing it doesn't
+ * wait for asynchronous work that still uses it. Therefore every stream on
+ * which such work has been queued gets recorded with the block (see
+ * {@link #recordStream(Address, CudaStream)}) and a released block is only
+ * handed out again once the work queued on those streams before its release
+ * has completed.
+ * <p>
+ * The cache can be disabled entirely by setting
+ * {@code net.deer.cuda.SystemProps.allocator.caching.enabled} to
+ * {@code false}.
+ */
+public final class CachingAllocator {
+
+    // the smallest size class (512 bytes)
+    private static final int LOG_MIN_BLOCK = 9;
+
+    // number of size classes per power of two
+    private static final int LOG_STEPS = 2;
+    private static final int STEPS = 1 << LOG_STEPS;
+
+    // cudaErrorMemoryAllocation
+    private static final int ERROR_MEMORY_ALLOCATION = 2;
+
+    private static final boolean ENABLED = SystemProps.ALLOCATOR_CACHING;
+    private static final long HIGH_WATER = Math.max(0L, SystemProps.ALLOCATOR_HIGH_WATER);
+    private static final long MAX_BLOCK = Math.max(1L << LOG_MIN_BLOCK, SystemProps.ALLOCATOR_MAX_BLOCK);
+    private static final int CLASS_COUNT = classIndex(MAX_BLOCK) + 1;
+
+    private static final ConcurrentHashMap<Integer, CachingAllocator> allocators = new ConcurrentHashMap<Integer, CachingAllocator>();
+
+    private final int deviceId;
+    private final DeviceBackend backend;
+    private final SizeClass[] classes;
+    private final Cleaner uncachedCleaner;
+
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong trims = new AtomicLong();
+
+    /* package */CachingAllocator(int deviceId, DeviceBackend backend) {
+        this.deviceId = deviceId;
+        this.backend = backend;
+        this.classes = new SizeClass[CLASS_COUNT];
+        for (int i = 0; i < classes.length; ++i) {
+            classes[i] = new SizeClass(classSize(i));
+        }
+        this.uncachedCleaner = new Cleaner() {
+            @Override
+            public long release(Address address) {
+                return CachingAllocator.this.backend.free(CachingAllocator.this.deviceId, address.getValue());
+            }
+        };
+    }
+
+    /**
+     * Returns the allocator of the specified {@code device}.
+     *
+     * @param device
+     *            the device of interest
+     * @return the allocator serving the device
+     */
+    public static CachingAllocator forDevice(GPUDevice device) {
+        return forDevice(device.getDeviceId());
+    }
+
+    /* package */static CachingAllocator forDevice(int deviceId) {
+        CachingAllocator allocator = allocators.get(deviceId);
+        if (allocator == null) {
+            CachingAllocator created = new CachingAllocator(deviceId, Backends.get());
+            allocator = allocators.putIfAbsent(deviceId, created);
+            if (allocator == null) {
+                allocator = created;
+            }
+        }
+        return allocator;
+    }
+
+    /**
+     * Returns the device address of a block of at least {@code byteCount}
+     * bytes. The block must be released through the {@link Cleaner} returned
+     * from {@link #cleaner(long)} for the same {@code byteCount}.
+     */
+    /* package */long malloc(long byteCount) throws CudaException {
+        if (!isCached(byteCount)) {
+            return mallocOrTrim(byteCount);
+        }
+        SizeClass sizeClass = classes[classIndex(byteCount)];
+        long block = sizeClass.pop();
+        if (block != 0L) {
+            cachedBytes.addAndGet(-sizeClass.size);
+            hits.incrementAndGet();
+            return block;
+        }
+        misses.incrementAndGet();
+        return mallocOrTrim(sizeClass.size);
+    }
+
+    /**
+     * Notes that work which uses the block of {@code address} has been queued
+     * on {@code stream}, so that the block won't be reused before that work
+     * has completed. Must be called after the work has been queued. Blocks
+     * that aren't cached are freed through {@code cudaFree}, which waits for
+     * all outstanding work anyway, and need no recording.
+     */
+    /* package */static void recordStream(Address address, CudaStream stream) throws CudaException {
+        Cleaner cleaner = Addresses.cleanerOf(address);
+        if (cleaner instanceof SizeClass) {
+            ((SizeClass) cleaner).allocator().recordUse(address, stream);
+        }
+    }
+
+    private void recordUse(Address address, CudaStream stream) throws CudaException {
+        long handle = stream.getHandle();
+        synchronized (address) {
+            for (StreamUse use = Addresses.streamUsesOf(address); use != null; use = use.next) {
+                if (use.stream == stream) {
+                    // moves the event behind the newly queued work
+                    backend.recordEvent(deviceId, use.event, handle);
+                    return;
+                }
+            }
+            long event;
+            try {
+                event = backend.createEvent(deviceId, CudaEvent.FLAG_DISABLE_TIMING);
+            } catch (CudaException e) {
+                // no event to wait for later: wait for the work right away
+                stream.synchronize();
+                return;
+            }
+            try {
+                backend.recordEvent(deviceId, event, handle);
+            } catch (CudaException e) {
+                backend.destroyEvent(deviceId, event);
+                throw e;
+            }
+            Addresses.setStreamUses(address, new StreamUse(stream, event, Addresses.streamUsesOf(address)));
+        }
+    }
+
+    // takes the events recorded for the block of address (null if none)
+    private static long[] takeEvents(Address address) {
+        StreamUse uses;
+        synchronized (address) {
+            uses = Addresses.streamUsesOf(address);
+            Addresses.setStreamUses(address, null);
+        }
+        if (uses == null) {
+            return null;
+        }
+        int n = 0;
+        for (StreamUse use = uses; use != null; use = use.next) {
+            ++n;
+        }
+        long[] events = new long[n];
+        n = 0;
+        for (StreamUse use = uses; use != null; use = use.next) {
+            events[n++] = use.event;
+        }
+        return events;
+    }
+
+    private boolean isCompleted(long[] events) {
+        for (long event : events) {
+            try {
+                if (!backend.queryEvent(deviceId, event)) {
+                    return false;
+                }
+            } catch (CudaException e) {
+                // the work failed: keep the block until the next trim
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void destroyEvents(long[] events) {
+        if (events != null) {
+            for (long event : events) {
+                backend.destroyEvent(deviceId, event);
+            }
+        }
+    }
+
+    /* package */Cleaner cleaner(long byteCount) {
+        if (!isCached(byteCount)) {
+            return uncachedCleaner;
+        }
+        return classes[classIndex(byteCount)];
+    }
+
+    /**
+     * Releases the blocks of {@code count} reclaimed addresses of this device
+     * at once. Blocks that can't be cached are freed with a single batched
+     * call to the backend.
+     *
+     * @return 0 on success, otherwise the first non-zero error code
+     */
+    /* package */long release(Address[] addresses, int count) {
+        long[] uncached = new long[count];
+        long[][] unusedEvents = null;
+        int n = 0;
+        long firstError = 0L;
+        for (int i = 0; i < count; ++i) {
+            Address address = addresses[i];
+            Cleaner cleaner = Addresses.cleanerOf(address);
+            if (cleaner == uncachedCleaner) {
+                uncached[n++] = address.getValue();
+            } else if (cleaner instanceof SizeClass) {
+                long[] events = takeEvents(address);
+                if (!((SizeClass) cleaner).offer(address.getValue(), events)) {
+                    if (events != null) {
+                        if (unusedEvents == null) {
+                            unusedEvents = new long[count][];
+                        }
+                        unusedEvents[n] = events;
+                    }
+                    uncached[n++] = address.getValue();
+                }
+            } else {
+                long rc = cleaner.release(address);
+                if (rc != 0L && firstError == 0L) {
+                    firstError = rc;
+                }
+            }
+        }
+        if (n > 0) {
+            long rc = backend.free(deviceId, uncached, n);
+            if (rc != 0L && firstError == 0L) {
+                firstError = rc;
+            }
+            if (unusedEvents != null) {
+                for (long[] events : unusedEvents) {
+                    destroyEvents(events);
+                }
+            }
+        }
+        return firstError;
+    }
+
+    /**
+     * Releases all idle blocks held by this allocator back to the device,
+     * including those that are still waiting for the completion of work queued
+     * before their release ({@code cudaFree} waits for that work).
+     *
+     * @return the number of bytes released
+     */
+    public long trim() {
+        long released = 0L;
+        for (SizeClass sizeClass : classes) {
+            long block;
+            while ((block = sizeClass.pop()) != 0L) {
+                cachedBytes.addAndGet(-sizeClass.size);
+                backend.free(deviceId, block);
+                released += sizeClass.size;
+            }
+            released += sizeClass.freePending();
+        }
+        trims.incrementAndGet();
+        return released;
+    }
+
+    /**
+     * Returns the number of allocations that have been served from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of cacheable allocations that had to go to the
+     * device.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of times the cache has been trimmed.
+     *
+     * @return the number of trims
+     */
+    public long getTrimCount() {
+        return trims.get();
+    }
+
+    /**
+     * Returns the number of idle bytes currently held by the cache.
+     *
+     * @return the number of cached bytes
+     */
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    /**
+     * Returns the id of the device this allocator serves.
+     *
+     * @return the device id
+     */
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    private long mallocOrTrim(long byteCount) throws CudaException {
+        try {
+            return backend.malloc(deviceId, byteCount);
+        } catch (CudaException e) {
+            if (e.getCode() != ERROR_MEMORY_ALLOCATION || trim() == 0L) {
+                throw e;
+            }
+        }
+        // memory pressure: retry once after the cache has been emptied
+        return backend.malloc(deviceId, byteCount);
+    }
+
+    private static boolean isCached(long byteCount) {
+        return ENABLED && 0L < byteCount && byteCount <= MAX_BLOCK;
+    }
+
+    /* package */static int classIndex(long byteCount) {
+        if (byteCount <= (1L << LOG_MIN_BLOCK)) {
+            return 0;
+        }
+        // 2^(log2 - 1) < byteCount <= 2^log2
+        int log2 = Long.SIZE - Long.numberOfLeadingZeros(byteCount - 1L);
+        int shift = log2 - 1 - LOG_STEPS;
+        long step = ((byteCount - 1L) >>> shift) - STEPS;
+        return 1 + ((log2 - 1 - LOG_MIN_BLOCK) << LOG_STEPS) + (int) step;
+    }
+
+    /* package */static long classSize(int classIndex) {
+        if (classIndex == 0) {
+            return 1L << LOG_MIN_BLOCK;
+        }
+        int group = (classIndex - 1) >>> LOG_STEPS;
+        long base = 1L << (LOG_MIN_BLOCK + group);
+        return base + (((classIndex - 1) & (STEPS - 1)) + 1) * (base >>> LOG_STEPS);
+    }
+
+    // The stream uses recorded for a block (a singly linked list)
+    /* package */static final class StreamUse {
+        final CudaStream stream;
+        final long event;
+        final StreamUse next;
+
+        StreamUse(CudaStream stream, long event, StreamUse next) {
+            this.stream = stream;
+            this.event = event;
+            this.next = next;
+        }
+    }
+
+    // A size class doubles as the Cleaner of the blocks it hands out
+    private final class SizeClass implements Cleaner {
+        final long size;
+        private long[] blocks = new long[4];
+        private int count;
+        // released blocks waiting for their stream events (oldest first)
+        private long[] pendingBlocks = new long[4];
+        private long[][] pendingEvents = new long[4][];
+        private int pendingCount;
+
+        SizeClass(long size) {
+            this.size = size;
+        }
+
+        CachingAllocator allocator() {
+            return CachingAllocator.this;
+        }
+
+        synchronized long pop() {
+            if (count > 0) {
+                return blocks[--count];
+            }
+            for (int i = 0; i < pendingCount; ++i) {
+                long[] events = pendingEvents[i];
+                if (isCompleted(events)) {
+                    long block = pendingBlocks[i];
+                    --pendingCount;
+                    System.arraycopy(pendingBlocks, i + 1, pendingBlocks, i, pendingCount - i);
+                    System.arraycopy(pendingEvents, i + 1, pendingEvents, i, pendingCount - i);
+                    pendingEvents[pendingCount] = null;
+                    destroyEvents(events);
+                    return block;
+                }
+            }
+            return 0L;
+        }
+
+        // frees the pending blocks regardless of their events
+        long freePending() {
+            long[] blocks;
+            long[][] events;
+            int n;
+            synchronized (this) {
+                blocks = pendingBlocks;
+                events = pendingEvents;
+                n = pendingCount;
+                pendingBlocks = new long[4];
+                pendingEvents = new long[4][];
+                pendingCount = 0;
+            }
+            for (int i = 0; i < n; ++i) {
+                cachedBytes.addAndGet(-size);
+                backend.free(deviceId, blocks[i]);
+                destroyEvents(events[i]);
+            }
+            return n * size;
+        }
+
+        private synchronized void push(long block) {
+            if (count == blocks.length) {
+                long[] grown = new long[count << 1];
+                System.arraycopy(blocks, 0, grown, 0, count);
+                blocks = grown;
+            }
+            blocks[count++] = block;
+        }
+
+        private synchronized void pushPending(long block, long[] events) {
+            if (pendingCount == pendingBlocks.length) {
+                long[] grown = new long[pendingCount << 1];
+                System.arraycopy(pendingBlocks, 0, grown, 0, pendingCount);
+                pendingBlocks = grown;
+                long[][] grownEvents = new long[pendingCount << 1][];
+                System.arraycopy(pendingEvents, 0, grownEvents, 0, pendingCount);
+                pendingEvents = grownEvents;
+            }
+            pendingBlocks[pendingCount] = block;
+            pendingEvents[pendingCount++] = events;
+        }
+
+        // returns false if caching the block would exceed the high-water mark
+        // (the events then still belong to the caller)
+        boolean offer(long block, long[] events) {
+            long cached = cachedBytes.addAndGet(size);
+            if (cached > HIGH_WATER) {
+                cachedBytes.addAndGet(-size);
+                return false;
+            }
+            if (events == null) {
+                push(block);
+            } else {
+                pushPending(block, events);
+            }
+            return true;
+        }
+
+        @Override
+        public long release(Address address) {
+            long block = address.getValue();
+            long[] events = takeEvents(address);
+            if (offer(block, events)) {
+                return 0L;
+            }
+            long rc = backend.free(deviceId, block);
+            destroyEvents(events);
+            return rc;
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package net.deer.cuda;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code DeviceBackend} that delegates to the CUDA runtime.
+ */
+final class CudaBackend implements DeviceBackend {
+
+    private static final String LIBRARY_NAME = "deercuda";
+
+    static {
+        System.loadLibrary(LIBRARY_NAME);
+        if (!Native.initializeHandleCacheN()) {
+            throw new Error("Initialization of the JNI handle cache failed");
+        }
+    }
+
+    private static native int cudaGetDeviceCountN() throws CudaException;
+
+    // fills values in the order of the DeviceProperties indices and returns the name
+    private static native String cudaGetDevicePropertiesN(int deviceId, long[] values) throws CudaException;
+
+    private static native long cudaMallocN(int deviceId, long byteCount) throws CudaException;
+
+    // never throw an exception
+    private static native long cudaFreeN(int deviceId, long address);
+
+    // never throw an exception
+    private static native long cudaFreeBatchN(int deviceId, long[] addresses, int count);
+
+    private static native long cudaMallocHostN(long byteCount) throws CudaException;
+
+    // never throw an exception
+    private static native long cudaFreeHostN(long address);
+
+    // Device addresses are passed as (deviceId, address) rather than as the
+    // Address object to spare the native side two JNI field reads per call
+
+    private static native void cudaMemcpyHostToDeviceN(int deviceId, long address, Object array, long byteOffset,
+            long byteCount) throws CudaException;
+
+    private static native void cudaMemcpyDeviceToHostN(int deviceId, long address, Object array, long byteOffset,
+            long byteCount) throws CudaException;
+
+    private static native long cudaStreamCreateN(int deviceId, int flags) throws CudaException;
+
+    // never throw an exception
+    private static native long cudaStreamDestroyN(int deviceId, long stream);
+
+    private static native void cudaStreamSynchronizeN(int deviceId, long stream) throws CudaException;
+
+    private static native boolean cudaStreamQueryN(int deviceId, long stream) throws CudaException;
+
+    private static native void cudaStreamAddCallbackN(int deviceId, long stream, StreamCallback callback)
+            throws CudaException;
+
+    private static native long cudaEventCreateN(int deviceId, int flags) throws CudaException;
+
+    // never throw an exception
+    private static native long cudaEventDestroyN(int deviceId, long event);
+
+    private static native void cudaEventRecordN(int deviceId, long event, long stream) throws CudaException;
+
+    private static native boolean cudaEventQueryN(int deviceId, long event) throws CudaException;
+
+    private static native void cudaEventSynchronizeN(int deviceId, long event) throws CudaException;
+
+    private static native float cudaEventElapsedTimeN(int deviceId, long start, long end) throws CudaException;
+
+    private static native void cudaMemcpyHostPtrToDeviceAsyncN(long stream, int deviceId, long address,
+            long hostAddress, long byteCount) throws CudaException;
+
+    private static native void cudaMemcpyDeviceToHostPtrAsyncN(long stream, int deviceId, long address,
+            long hostAddress, long byteCount) throws CudaException;
+
+    private static native void cudaMemcpyHostPtrToDeviceN(int deviceId, long address, long hostAddress,
+            long byteCount) throws CudaException;
+
+    private static native void cudaMemcpyDeviceToHostPtrN(int deviceId, long address, long hostAddress,
+            long byteCount) throws CudaException;
+
+    // synchronous on the default stream (0), queued on any other stream
+    private static native void cudaMemcpyDeviceToDeviceN(int deviceId, long dstAddress, long srcAddress,
+            long byteCount, long stream) throws CudaException;
+
+    private static native boolean cudaDeviceEnablePeerAccessN(int deviceId, int peerDeviceId) throws CudaException;
+
+    // synchronous on the default stream (0), queued on any other stream
+    private static native void cudaMemsetN(int deviceId, long address, long pattern, int patternSize, long count,
+            long stream) throws CudaException;
+
+    private static native long cudaMallocManagedN(int deviceId, long byteCount) throws CudaException;
+
+    private static native void cudaMemPrefetchAsyncN(int deviceId, long address, long byteCount, int dstDeviceId,
+            long stream) throws CudaException;
+
+    private static native void cudaMemAdviseN(int deviceId, long address, long byteCount, int advice,
+            int adviceDeviceId) throws CudaException;
+
+    private static native void vectorAxpyN(int deviceId, int elementSize, long n, double alpha, long x, long y)
+            throws CudaException;
+
+    private static native void vectorScaleN(int deviceId, int elementSize, long n, double alpha, long x)
+            throws CudaException;
+
+    private static native double vectorReduceN(int deviceId, int reduction, int elementSize, long n, long x,
+            long y) throws CudaException;
+
+    private static native void radixSortN(int deviceId, int keyType, int n, long keys, long values, int valueSize)
+            throws CudaException;
+
+    private static native void prefixScanN(int deviceId, int type, boolean inclusive, int n, long in, long out)
+            throws CudaException;
+
+    private static native int selectFlaggedN(int deviceId, int elementSize, int n, long in, long flags, long out)
+            throws CudaException;
+
+    private static native int selectUniqueN(int deviceId, int elementSize, int n, long in, long out)
+            throws CudaException;
+
+    private static native void cudaMemcpyPeerN(int dstDeviceId, long dstAddress, int srcDeviceId, long srcAddress,
+            long byteCount) throws CudaException;
+
+    // compiles the source with NVRTC and returns the CUfunction of the kernel
+    // name, a compilation error is reported as a RuntimeException
+    private static native long cudaCompileKernelN(int deviceId, String source, String name) throws CudaException;
+
+    // params is a packed KernelParams block of paramsSize bytes, waits for
+    // the kernel if stream is the default stream (0)
+    private static native void cudaLaunchKernelN(int deviceId, long function, int gridSize, int blockSize,
+            long[] params, int paramsSize, long stream) throws CudaException;
+
+    // the compiled ElementwiseProgram kernels, by device and program key (the
+    // modules stay loaded for the life of the process)
+    private static final ConcurrentHashMap<String, Long> kernels = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDeviceCount() throws CudaException {
+        return cudaGetDeviceCountN();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DeviceProperties getDeviceProperties(int deviceId) throws CudaException {
+        long[] values = new long[DeviceProperties.VALUE_COUNT];
+        String name = cudaGetDevicePropertiesN(deviceId, values);
+        return new DeviceProperties(deviceId, name, values);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long malloc(int deviceId, long byteCount) throws CudaException {
+        return cudaMallocN(deviceId, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long free(int deviceId, long address) {
+        return cudaFreeN(deviceId, address);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long free(int deviceId, long[] addresses, int count) {
+        return cudaFreeBatchN(deviceId, addresses, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long mallocManaged(int deviceId, long byteCount) throws CudaException {
+        return cudaMallocManagedN(deviceId, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prefetch(int deviceId, long address, long byteCount, int dstDeviceId, long stream)
+            throws CudaException {
+        cudaMemPrefetchAsyncN(deviceId, address, byteCount, dstDeviceId, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void advise(int deviceId, long address, long byteCount, int advice, int adviceDeviceId)
+            throws CudaException {
+        cudaMemAdviseN(deviceId, address, byteCount, advice, adviceDeviceId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long mallocHost(long byteCount) throws CudaException {
+        return cudaMallocHostN(byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long freeHost(long address) {
+        return cudaFreeHostN(address);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDevice(int deviceId, long address, Object array, long byteOffset, long byteCount)
+            throws CudaException {
+        cudaMemcpyHostToDeviceN(deviceId, address, array, byteOffset, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHost(int deviceId, long address, Object array, long byteOffset, long byteCount)
+            throws CudaException {
+        cudaMemcpyDeviceToHostN(deviceId, address, array, byteOffset, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDevice(int deviceId, long address, long hostAddress, long byteCount) throws CudaException {
+        cudaMemcpyHostPtrToDeviceN(deviceId, address, hostAddress, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHost(int deviceId, long address, long hostAddress, long byteCount) throws CudaException {
+        cudaMemcpyDeviceToHostPtrN(deviceId, address, hostAddress, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long createStream(int deviceId, int flags) throws CudaException {
+        return cudaStreamCreateN(deviceId, flags);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long destroyStream(int deviceId, long stream) {
+        return cudaStreamDestroyN(deviceId, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void synchronizeStream(int deviceId, long stream) throws CudaException {
+        cudaStreamSynchronizeN(deviceId, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queryStream(int deviceId, long stream) throws CudaException {
+        return cudaStreamQueryN(deviceId, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addCallback(int deviceId, long stream, StreamCallback callback) throws CudaException {
+        cudaStreamAddCallbackN(deviceId, stream, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long createEvent(int deviceId, int flags) throws CudaException {
+        return cudaEventCreateN(deviceId, flags);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long destroyEvent(int deviceId, long event) {
+        return cudaEventDestroyN(deviceId, event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordEvent(int deviceId, long event, long stream) throws CudaException {
+        cudaEventRecordN(deviceId, event, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queryEvent(int deviceId, long event) throws CudaException {
+        return cudaEventQueryN(deviceId, event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void synchronizeEvent(int deviceId, long event) throws CudaException {
+        cudaEventSynchronizeN(deviceId, event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float elapsedTime(int deviceId, long start, long end) throws CudaException {
+        return cudaEventElapsedTimeN(deviceId, start, end);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDeviceAsync(long stream, int deviceId, long address, long hostAddress, long byteCount)
+            throws CudaException {
+        cudaMemcpyHostPtrToDeviceAsyncN(stream, deviceId, address, hostAddress, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHostAsync(long stream, int deviceId, long address, long hostAddress, long byteCount)
+            throws CudaException {
+        cudaMemcpyDeviceToHostPtrAsyncN(stream, deviceId, address, hostAddress, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToDevice(int deviceId, long dstAddress, long srcAddress, long byteCount)
+            throws CudaException {
+        cudaMemcpyDeviceToDeviceN(deviceId, dstAddress, srcAddress, byteCount, 0L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToDeviceAsync(long stream, int deviceId, long dstAddress, long srcAddress, long byteCount)
+            throws CudaException {
+        cudaMemcpyDeviceToDeviceN(deviceId, dstAddress, srcAddress, byteCount, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean enablePeerAccess(int deviceId, int peerDeviceId) throws CudaException {
+        return cudaDeviceEnablePeerAccessN(deviceId, peerDeviceId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyPeer(int dstDeviceId, long dstAddress, int srcDeviceId, long srcAddress, long byteCount)
+            throws CudaException {
+        cudaMemcpyPeerN(dstDeviceId, dstAddress, srcDeviceId, srcAddress, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void memset(int deviceId, long address, long pattern, int patternSize, long count) throws CudaException {
+        cudaMemsetN(deviceId, address, pattern, patternSize, count, 0L);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void memsetAsync(long stream, int deviceId, long address, long pattern, int patternSize, long count)
+            throws CudaException {
+        cudaMemsetN(deviceId, address, pattern, patternSize, count, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void axpy(int deviceId, int elementSize, long n, double alpha, long x, long y) throws CudaException {
+        vectorAxpyN(deviceId, elementSize, n, alpha, x, y);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void scale(int deviceId, int elementSize, long n, double alpha, long x) throws CudaException {
+        vectorScaleN(deviceId, elementSize, n, alpha, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double reduce(int deviceId, int reduction, int elementSize, long n, long x, long y)
+            throws CudaException {
+        return vectorReduceN(deviceId, reduction, elementSize, n, x, y);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sort(int deviceId, int keyType, int n, long keys, long values, int valueSize) throws CudaException {
+        radixSortN(deviceId, keyType, n, keys, values, valueSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void scan(int deviceId, int type, boolean inclusive, int n, long in, long out) throws CudaException {
+        prefixScanN(deviceId, type, inclusive, n, in, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int selectFlagged(int deviceId, int elementSize, int n, long in, long flags, long out)
+            throws CudaException {
+        return selectFlaggedN(deviceId, elementSize, n, in, flags, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int selectUnique(int deviceId, int elementSize, int n, long in, long out) throws CudaException {
+        return selectUniqueN(deviceId, elementSize, n, in, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The kernel of a program is generated (see {@link ElementwiseKernels})
+     * and compiled with NVRTC on its first use on a device.
+     */
+    @Override
+    public void evaluate(int deviceId, ElementwiseProgram program, long n, long out, long[] inputs,
+            double[] scalars, long stream) throws CudaException {
+        if (n <= 0L) {
+            return;
+        }
+        long function = kernel(deviceId, program);
+        int size = program.getElementSize();
+        KernelParams params = new KernelParams(2 + inputs.length + scalars.length);
+        params.set(0, Long.BYTES, n);
+        params.set(1, Long.BYTES, out);
+        for (int i = 0; i < inputs.length; ++i) {
+            params.set(2 + i, Long.BYTES, inputs[i]);
+        }
+        for (int i = 0; i < scalars.length; ++i) {
+            long bits = (size == 4) ? Float.floatToRawIntBits((float) scalars[i])
+                    : Double.doubleToRawLongBits(scalars[i]);
+            params.set(2 + inputs.length + i, size, bits);
+        }
+        long[] packed = params.pack();
+        cudaLaunchKernelN(deviceId, function, ElementwiseKernels.blocksFor(n), ElementwiseKernels.THREADS_PER_BLOCK,
+                packed, params.getPackedSize(), stream);
+    }
+
+    private static long kernel(int deviceId, ElementwiseProgram program) throws CudaException {
+        String key = deviceId + "/" + program.getKey();
+        Long function = kernels.get(key);
+        if (function == null) {
+            // compiling takes milliseconds, don't let racing threads compile
+            // (and load) the same module twice
+            synchronized (kernels) {
+                function = kernels.get(key);
+                if (function == null) {
+                    function = Long.valueOf(cudaCompileKernelN(deviceId, ElementwiseKernels.source(program),
+                            ElementwiseKernels.KERNEL_NAME));
+                    kernels.put(key, function);
+                }
+            }
+        }
+        return function.longValue();
+    }
+}
@@ -21,10 +21,17 @@
  *******************************************************************************/
 package net.deer.cuda;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * The {@code CudaEvent} class represents an event that can be queued in a
  * stream on a CUDA-capable device.
  * <p>
+ * An event completes once all work that has been queued on the stream before
+ * it was {@link #record(CudaStream) record}ed has completed. Two completed
+ * events (created without {@link #FLAG_DISABLE_TIMING}) measure the device
+ * time that elapsed between them, see {@link #elapsedMillis(CudaEvent, CudaEvent)}.
+ * <p>
  * When no longer required, an event must be {@code close}d.
  */
 public final class CudaEvent implements AutoCloseable {
@@ -43,8 +50,12 @@ public final class CudaEvent implements AutoCloseable {
      */
     public static final int FLAG_INTERPROCESS = 4;
 
+    private static final DeviceBackend backend = Backends.get();
+
     private final int deviceId;
 
+    private final AtomicLong nativeHandle;
+
     /**
      * Creates a new event on the specified device with default flags.
      *
@@ -70,7 +81,98 @@ public final class CudaEvent implements AutoCloseable {
      */
     public CudaEvent(GPUDevice device, int flags) throws CudaException {
         this.deviceId = device.getDeviceId();
-//      this.nativeHandle = new AtomicLong(create(deviceId, flags)); // TODO
+        this.nativeHandle = new AtomicLong(backend.createEvent(deviceId, flags));
+    }
+
+    /**
+     * Returns the elapsed device time between two completed events in
+     * milliseconds (with a resolution of around half a microsecond).
+     *
+     * @param start
+     *            the event recorded first
+     * @param end
+     *            the event recorded last
+     * @return the elapsed time in milliseconds
+     * @throws CudaException
+     *             if a CUDA exception occurs, in particular if either event
+     *             has not been recorded or has not completed yet, or has been
+     *             created with {@link #FLAG_DISABLE_TIMING}
+     * @throws IllegalArgumentException
+     *             if the events belong to different devices
+     * @throws IllegalStateException
+     *             if either event has been closed
+     */
+    public static float elapsedMillis(CudaEvent start, CudaEvent end) throws CudaException {
+        if (start.deviceId != end.deviceId) {
+            throw new IllegalArgumentException(
+                    "events of different devices: " + start.deviceId + " != " + end.deviceId);
+        }
+        return backend.elapsedTime(start.deviceId, start.getHandle(), end.getHandle());
+    }
+
+    /**
+     * Returns the id of the device this event belongs to.
+     *
+     * @return the device id of this event
+     */
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Records this event on the specified stream. The event completes once all
+     * work currently queued on the stream has completed. Recording an event
+     * again supersedes the previous record.
+     *
+     * @param stream
+     *            a stream of the same device
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this event or the stream has been closed
+     */
+    public void record(CudaStream stream) throws CudaException {
+        backend.recordEvent(deviceId, getHandle(), stream.getHandle());
+    }
+
+    /**
+     * Records this event on the default stream of the device.
+     *
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this event has been closed
+     */
+    public void record() throws CudaException {
+        backend.recordEvent(deviceId, getHandle(), 0L);
+    }
+
+    /**
+     * Queries the state of this event.
+     *
+     * @return {@code true} if the work captured by the most recent
+     *         {@code record} has completed (or if this event has never been
+     *         recorded), {@code false} otherwise
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this event has been closed
+     */
+    public boolean query() throws CudaException {
+        return backend.queryEvent(deviceId, getHandle());
+    }
+
+    /**
+     * Blocks until the work captured by the most recent {@code record} of
+     * this event has completed.
+     *
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this event has been closed
+     */
+    public void synchronize() throws CudaException {
+        backend.synchronizeEvent(deviceId, getHandle());
     }
 
     /**
@@ -81,6 +183,20 @@ public final class CudaEvent implements AutoCloseable {
      */
     @Override
     public void close() throws CudaException {
-        // TODO
+        long handle = nativeHandle.getAndSet(0L);
+        if (handle != 0L) {
+            long rc = backend.destroyEvent(deviceId, handle);
+            if (rc != 0L) {
+                throw new CudaException((int) rc);
+            }
+        }
+    }
+
+    long getHandle() {
+        long handle = nativeHandle.get();
+        if (handle == 0L) {
+            throw new IllegalStateException("event is already closed");
+        }
+        return handle;
     }
 }
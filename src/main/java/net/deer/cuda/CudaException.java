@@ -34,6 +34,15 @@ public class CudaException extends RuntimeException {
         this.code = code;
     }
 
+    /**
+     * Returns the CUDA error code of this exception.
+     *
+     * @return the CUDA error code
+     */
+    public int getCode() {
+        return code;
+    }
+
     /**
      * {@inheritDoc}
      */
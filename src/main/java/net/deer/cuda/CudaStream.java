@@ -21,10 +21,18 @@
  *******************************************************************************/
 package net.deer.cuda;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * The {@code CudaStream} class represents an independent queue of work for a
  * specific {@link GPUDevice}.
  * <p>
+ * Work queued on different streams may execute concurrently, e.g. the
+ * asynchronous copies of {@link DeviceMemory} on one stream overlap with
+ * copies or compute on another stream.
+ * <p>
  * When no longer required, a stream must be {@code close}d.
  */
 public final class CudaStream implements AutoCloseable {
@@ -40,10 +48,12 @@ public final class CudaStream implements AutoCloseable {
      */
     public static final int FLAG_NON_BLOCKING = 1;
 
-    // TODO ...
+    private static final DeviceBackend backend = Backends.get();
 
     private final int deviceId;
 
+    private final AtomicLong nativeHandle;
+
     /**
      * Creates a new stream on the specified device, with the default flags
      * and the default priority.
@@ -54,8 +64,76 @@ public final class CudaStream implements AutoCloseable {
      *          if a CUDA exception occurs
      */
     public CudaStream(GPUDevice device) throws CudaException {
+        this(device, FLAG_DEFAULT);
+    }
+
+    /**
+     * Creates a new stream on the specified device, with the specified
+     * {@code flags} and the default priority.
+     *
+     * @param device
+     *          the specified device
+     * @param flags
+     *          the desired flags
+     * @throws CudaException
+     *          if a CUDA exception occurs
+     */
+    public CudaStream(GPUDevice device, int flags) throws CudaException {
         this.deviceId = device.getDeviceId();
-//      this.nativeHandle = new AtomicLong(create(this.deviceId)); // TODO
+        this.nativeHandle = new AtomicLong(backend.createStream(deviceId, flags));
+    }
+
+    /**
+     * Returns the id of the device this stream belongs to.
+     *
+     * @return the device id of this stream
+     */
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Blocks until all work queued on this stream has completed.
+     *
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this stream has been closed
+     */
+    public void synchronize() throws CudaException {
+        backend.synchronizeStream(deviceId, getHandle());
+    }
+
+    /**
+     * Queries the state of this stream.
+     *
+     * @return {@code true} if all work queued on this stream has completed,
+     *         {@code false} otherwise
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this stream has been closed
+     */
+    public boolean query() throws CudaException {
+        return backend.queryStream(deviceId, getHandle());
+    }
+
+    /**
+     * Returns a future that completes once all work that is currently queued
+     * on this stream has finished. The future completes exceptionally with a
+     * {@link CudaException} if any of that work failed.
+     * <p>
+     * Dependent actions never run on a thread owned by the CUDA runtime, so
+     * they may use the CUDA API.
+     *
+     * @return a future signalling the completion of the queued work
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this stream has been closed
+     */
+    public CompletableFuture<Void> completion() throws CudaException {
+        return whenDone(null);
     }
 
     /**
@@ -67,6 +145,71 @@ public final class CudaStream implements AutoCloseable {
      */
     @Override
     public void close() throws CudaException {
-        // TODO
+        long handle = nativeHandle.getAndSet(0L);
+        if (handle != 0L) {
+            long rc = backend.destroyStream(deviceId, handle);
+            if (rc != 0L) {
+                throw new CudaException((int) rc);
+            }
+        }
+    }
+
+    long getHandle() {
+        long handle = nativeHandle.get();
+        if (handle == 0L) {
+            throw new IllegalStateException("stream is already closed");
+        }
+        return handle;
+    }
+
+    /**
+     * Queues a callback on this stream that runs {@code action} (if not
+     * {@code null}) and then completes the returned future, exceptionally
+     * with the status passed to the callback if the preceding work has
+     * failed. {@code action} runs in any case. Both happen on a pool thread,
+     * never on the callback thread of the runtime (which must not call CUDA
+     * functions).
+     */
+    CompletableFuture<Void> whenDone(final Runnable action) throws CudaException {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        backend.addCallback(deviceId, getHandle(), new StreamCallback() {
+            @Override
+            public void done(final int status, final Throwable cause) {
+                ForkJoinPool.commonPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        complete(future, action, status, cause);
+                    }
+                });
+            }
+        });
+        return future;
+    }
+
+    private static void complete(CompletableFuture<Void> future, Runnable action, int status, Throwable cause) {
+        Throwable failure = null;
+        if (status != 0) {
+            CudaException e = new CudaException(status);
+            if (cause != null) {
+                e.initCause(cause);
+            }
+            failure = e;
+        }
+        // must run in any case, it may release resources (e.g. staging
+        // buffers) of the failed work
+        if (action != null) {
+            try {
+                action.run();
+            } catch (Throwable t) {
+                if (failure == null) {
+                    failure = t;
+                }
+            }
+        }
+        if (failure == null) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(failure);
+        }
     }
 }
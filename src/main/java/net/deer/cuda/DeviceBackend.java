@@ -0,0 +1,399 @@
+package net.deer.cuda;
+
+/**
+ * The service provider interface between the public API of this package and
+ * the runtime that actually owns the device memory.
+ * <p>
+ * Two implementations exist: {@link CudaBackend} which delegates to the CUDA
+ * runtime via JNI and {@link HostBackend} which emulates devices in (off-heap)
+ * host memory and is meant for hosts that don't have a CUDA driver. The active
+ * implementation is selected once through {@link SystemProps#BACKEND} (see
+ * {@link Backends#get()}).
+ * <p>
+ * Device memory is addressed by the pair of a {@code deviceId} and the raw
+ * {@code address} on that device.
+ */
+interface DeviceBackend {
+
+    /**
+     * The destination "device" of {@link #prefetch} that denotes the host
+     * (same as {@code cudaCpuDeviceId}).
+     */
+    int HOST_DEVICE_ID = -1;
+
+    // the subset of cudaMemoryAdvise understood by advise()
+    int ADVISE_SET_READ_MOSTLY = 1;
+    int ADVISE_UNSET_READ_MOSTLY = 2;
+
+    // the reductions of reduce()
+    int REDUCE_SUM = 0;
+    int REDUCE_MIN = 1;
+    int REDUCE_MAX = 2;
+    int REDUCE_DOT = 3;
+    int REDUCE_SUM_OF_SQUARES = 4;
+
+    // the element types of sort() and scan()
+    int TYPE_INT = 0;
+    int TYPE_LONG = 1;
+    int TYPE_FLOAT = 2;
+    int TYPE_DOUBLE = 3;
+
+    /**
+     * Returns the number of devices.
+     *
+     * @return the number of devices
+     * @throws CudaException
+     *             if the device count can't be determined
+     */
+    int getDeviceCount() throws CudaException;
+
+    /**
+     * Queries the properties of the device {@code deviceId}.
+     *
+     * @param deviceId
+     *            the device of interest
+     * @return a snapshot of the device properties
+     * @throws CudaException
+     *             if {@code deviceId} is invalid
+     */
+    DeviceProperties getDeviceProperties(int deviceId) throws CudaException;
+
+    /**
+     * Allocates {@code byteCount} bytes on the device {@code deviceId}.
+     *
+     * @param deviceId
+     *            the device on which the region is to be allocated
+     * @param byteCount
+     *            the allocation size in bytes
+     * @return the device address of the allocated region
+     * @throws CudaException
+     *             if the allocation fails
+     */
+    long malloc(int deviceId, long byteCount) throws CudaException;
+
+    /**
+     * Releases a region previously allocated through
+     * {@link #malloc(int, long)}.
+     *
+     * @param deviceId
+     *            the device on which the region has been allocated
+     * @param address
+     *            the device address of the region to be released
+     * @return 0 on success (&lt;&gt; 0 otherwise), never throws an exception
+     */
+    long free(int deviceId, long address);
+
+    /**
+     * Releases the first {@code count} regions of {@code addresses}, all of
+     * which must have been allocated on the same device through
+     * {@link #malloc(int, long)}. A failure doesn't stop the release of the
+     * remaining regions.
+     *
+     * @param deviceId
+     *            the device on which the regions have been allocated
+     * @param addresses
+     *            the device addresses of the regions to be released
+     * @param count
+     *            the number of addresses to release
+     * @return 0 on success, otherwise the first non-zero error code
+     *         encountered, never throws an exception
+     */
+    long free(int deviceId, long[] addresses, int count);
+
+    /**
+     * Allocates {@code byteCount} bytes of managed (unified) memory that is
+     * accessible from the host and from every device and migrates on demand,
+     * page by page. The region is associated with the device
+     * {@code deviceId} and is released through {@link #free(int, long)}.
+     *
+     * @param deviceId
+     *            the device with which the region is associated
+     * @param byteCount
+     *            the allocation size in bytes
+     * @return the address of the allocated region
+     * @throws CudaException
+     *             if the allocation fails or managed memory isn't supported
+     */
+    long mallocManaged(int deviceId, long byteCount) throws CudaException;
+
+    /**
+     * Queues the migration of {@code byteCount} bytes of managed memory
+     * starting at {@code address} to the device {@code dstDeviceId} (or to the
+     * host for {@link #HOST_DEVICE_ID}) on the stream (0 denotes the default
+     * stream). This is a hint only, the data stays accessible from anywhere.
+     */
+    void prefetch(int deviceId, long address, long byteCount, int dstDeviceId, long stream) throws CudaException;
+
+    /**
+     * Applies one of the {@code ADVISE_XXX} hints to {@code byteCount} bytes
+     * of managed memory starting at {@code address}. {@code adviceDeviceId}
+     * is the device the advice refers to (the read-mostly advice ignores
+     * it).
+     */
+    void advise(int deviceId, long address, long byteCount, int advice, int adviceDeviceId) throws CudaException;
+
+    /**
+     * Allocates {@code byteCount} bytes of page-locked host memory.
+     *
+     * @param byteCount
+     *            the allocation size in bytes
+     * @return the host address of the allocated region
+     * @throws CudaException
+     *             if the allocation fails
+     */
+    long mallocHost(long byteCount) throws CudaException;
+
+    /**
+     * Releases host memory previously allocated through
+     * {@link #mallocHost(long)}.
+     *
+     * @param address
+     *            the host address of the region to be released
+     * @return 0 on success (&lt;&gt; 0 otherwise), never throws an exception
+     */
+    long freeHost(long address);
+
+    /**
+     * Creates a new stream on the specified device.
+     *
+     * @param deviceId
+     *            the device on which the stream is to be created
+     * @param flags
+     *            the stream creation flags (see {@link CudaStream})
+     * @return the handle of the new stream
+     * @throws CudaException
+     *             if the stream can't be created
+     */
+    long createStream(int deviceId, int flags) throws CudaException;
+
+    /**
+     * Destroys a stream. Work already queued on the stream is allowed to
+     * complete.
+     *
+     * @return 0 on success (&lt;&gt; 0 otherwise), never throws an exception
+     */
+    long destroyStream(int deviceId, long stream);
+
+    /**
+     * Blocks until all work queued on the stream has completed.
+     */
+    void synchronizeStream(int deviceId, long stream) throws CudaException;
+
+    /**
+     * Returns {@code true} if all work queued on the stream has completed,
+     * {@code false} if there is still work pending. Throws if a previous
+     * asynchronous operation on the stream has failed.
+     */
+    boolean queryStream(int deviceId, long stream) throws CudaException;
+
+    /**
+     * Queues {@code callback} on the stream. The callback runs once all work
+     * queued on the stream before it has completed, also if that work has
+     * failed, and is passed the status of that work.
+     */
+    void addCallback(int deviceId, long stream, StreamCallback callback) throws CudaException;
+
+    /**
+     * Creates a new event on the specified device.
+     *
+     * @param deviceId
+     *            the device on which the event is to be created
+     * @param flags
+     *            the event creation flags (see {@link CudaEvent})
+     * @return the handle of the new event
+     * @throws CudaException
+     *             if the event can't be created
+     */
+    long createEvent(int deviceId, int flags) throws CudaException;
+
+    /**
+     * Destroys an event.
+     *
+     * @return 0 on success (&lt;&gt; 0 otherwise), never throws an exception
+     */
+    long destroyEvent(int deviceId, long event);
+
+    /**
+     * Records the event on the stream (0 denotes the default stream).
+     */
+    void recordEvent(int deviceId, long event, long stream) throws CudaException;
+
+    /**
+     * Returns {@code true} if all work captured by the most recent record of
+     * the event has completed (or if the event hasn't been recorded at all).
+     */
+    boolean queryEvent(int deviceId, long event) throws CudaException;
+
+    /**
+     * Blocks until all work captured by the most recent record of the event
+     * has completed.
+     */
+    void synchronizeEvent(int deviceId, long event) throws CudaException;
+
+    /**
+     * Returns the elapsed time in milliseconds between two completed events.
+     */
+    float elapsedTime(int deviceId, long start, long end) throws CudaException;
+
+    /**
+     * Queues a copy of {@code byteCount} bytes from page-locked host memory at
+     * {@code hostAddress} to the device on the stream.
+     */
+    void copyHostToDeviceAsync(long stream, int deviceId, long address, long hostAddress, long byteCount)
+            throws CudaException;
+
+    /**
+     * Queues a copy of {@code byteCount} bytes from the device to page-locked
+     * host memory at {@code hostAddress} on the stream.
+     */
+    void copyDeviceToHostAsync(long stream, int deviceId, long address, long hostAddress, long byteCount)
+            throws CudaException;
+
+    /**
+     * Copies {@code byteCount} bytes from the primitive {@code array} to the
+     * device. {@code byteOffset} is the offset in bytes of the first byte to
+     * be copied relative to the first element of {@code array}. No
+     * intermediate copy of the array is made.
+     */
+    void copyHostToDevice(int deviceId, long address, Object array, long byteOffset, long byteCount)
+            throws CudaException;
+
+    /**
+     * Copies {@code byteCount} bytes from the device to the primitive
+     * {@code array}. {@code byteOffset} is the offset in bytes of the first
+     * byte to be written relative to the first element of {@code array}. No
+     * intermediate copy of the array is made.
+     */
+    void copyDeviceToHost(int deviceId, long address, Object array, long byteOffset, long byteCount)
+            throws CudaException;
+
+    /**
+     * Copies {@code byteCount} bytes from native host memory starting at
+     * {@code hostAddress} to the device.
+     */
+    void copyHostToDevice(int deviceId, long address, long hostAddress, long byteCount) throws CudaException;
+
+    /**
+     * Copies {@code byteCount} bytes from the device to native host memory
+     * starting at {@code hostAddress}.
+     */
+    void copyDeviceToHost(int deviceId, long address, long hostAddress, long byteCount) throws CudaException;
+
+    /**
+     * Copies {@code byteCount} bytes between two (non-overlapping) regions of
+     * the same device.
+     */
+    void copyDeviceToDevice(int deviceId, long dstAddress, long srcAddress, long byteCount) throws CudaException;
+
+    /**
+     * Queues a copy of {@code byteCount} bytes between two (non-overlapping)
+     * regions of the same device on the stream.
+     */
+    void copyDeviceToDeviceAsync(long stream, int deviceId, long dstAddress, long srcAddress, long byteCount)
+            throws CudaException;
+
+    /**
+     * Enables direct access of the device {@code deviceId} to the memory of
+     * {@code peerDeviceId}, if the hardware supports it. Enabling access that
+     * is already enabled isn't an error.
+     *
+     * @return {@code true} if peer access is enabled, {@code false} if the
+     *         devices can't access each other directly
+     */
+    boolean enablePeerAccess(int deviceId, int peerDeviceId) throws CudaException;
+
+    /**
+     * Copies {@code byteCount} bytes from the device {@code srcDeviceId} to
+     * the device {@code dstDeviceId}.
+     */
+    void copyPeer(int dstDeviceId, long dstAddress, int srcDeviceId, long srcAddress, long byteCount)
+            throws CudaException;
+
+    /**
+     * Sets {@code count} consecutive elements of {@code patternSize} bytes (1,
+     * 2, 4 or 8) starting at the device {@code address} to the low-order
+     * {@code patternSize} bytes of {@code pattern}, without involving the
+     * host. The address must be aligned to {@code patternSize}.
+     */
+    void memset(int deviceId, long address, long pattern, int patternSize, long count) throws CudaException;
+
+    /**
+     * Queues the fill of {@link #memset(int, long, long, int, long)} on the
+     * stream.
+     */
+    void memsetAsync(long stream, int deviceId, long address, long pattern, int patternSize, long count)
+            throws CudaException;
+
+    /**
+     * Computes {@code y = alpha * x + y} for the {@code n} elements of
+     * {@code elementSize} bytes (4 for float, 8 for double) at the device
+     * addresses {@code x} and {@code y}. Both addresses must be aligned to
+     * {@code elementSize}.
+     */
+    void axpy(int deviceId, int elementSize, long n, double alpha, long x, long y) throws CudaException;
+
+    /**
+     * Computes {@code x = alpha * x} for the {@code n} elements of
+     * {@code elementSize} bytes at the device address {@code x}.
+     */
+    void scale(int deviceId, int elementSize, long n, double alpha, long x) throws CudaException;
+
+    /**
+     * Reduces the {@code n} elements of {@code elementSize} bytes at the
+     * device address {@code x} (for {@link #REDUCE_DOT} the element-wise
+     * products of {@code x} and {@code y}, {@code y} is ignored otherwise) in
+     * double precision. {@link #REDUCE_MIN} and {@link #REDUCE_MAX} ignore NaN
+     * elements and return NaN for an empty or all-NaN vector.
+     *
+     * @return the sum, minimum, maximum, dot product or sum of squares
+     */
+    double reduce(int deviceId, int reduction, int elementSize, long n, long x, long y) throws CudaException;
+
+    /**
+     * Sorts the {@code n} keys of type {@code keyType} (one of the
+     * {@code TYPE_XXX} constants) at the device address {@code keys} in
+     * ascending order. The sort is stable. Unless {@code values} is 0, the
+     * {@code n} values of {@code valueSize} bytes (4 or 8) at {@code values}
+     * are permuted along with the keys.
+     */
+    void sort(int deviceId, int keyType, int n, long keys, long values, int valueSize) throws CudaException;
+
+    /**
+     * Computes the inclusive or exclusive prefix sums of the {@code n}
+     * elements of type {@code type} at {@code in} into {@code out}, which may
+     * be the same address as {@code in}.
+     */
+    void scan(int deviceId, int type, boolean inclusive, int n, long in, long out) throws CudaException;
+
+    /**
+     * Copies those of the {@code n} elements of {@code elementSize} bytes (4
+     * or 8) at {@code in} whose byte at {@code flags} is non-zero to
+     * {@code out}, keeping their order. {@code out} must not overlap
+     * {@code in}.
+     *
+     * @return the number of elements copied
+     */
+    int selectFlagged(int deviceId, int elementSize, int n, long in, long flags, long out) throws CudaException;
+
+    /**
+     * Copies the first element of every run of bitwise equal elements among
+     * the {@code n} elements of {@code elementSize} bytes (4 or 8) at
+     * {@code in} to {@code out}, keeping their order. {@code out} must not
+     * overlap {@code in}.
+     *
+     * @return the number of elements copied
+     */
+    int selectUnique(int deviceId, int elementSize, int n, long in, long out) throws CudaException;
+
+    /**
+     * Evaluates the element-wise {@code program} for the {@code n} elements
+     * of the vectors at the device addresses {@code inputs} (in the order of
+     * the program's inputs) and the {@code scalars}, storing the results at
+     * {@code out} in a single pass. {@code out} may be one of the inputs. All
+     * vectors must be aligned to the element size of the program. With a
+     * {@code stream} of 0 the evaluation has completed on return, otherwise
+     * it is only queued on {@code stream}.
+     */
+    void evaluate(int deviceId, ElementwiseProgram program, long n, long out, long[] inputs, double[] scalars,
+            long stream) throws CudaException;
+}
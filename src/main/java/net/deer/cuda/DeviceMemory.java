@@ -21,6 +21,19 @@
  *******************************************************************************/
 package net.deer.cuda;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The {@code DeviceMemory} class represents a region of memory on a specific
  * device.
@@ -30,7 +43,20 @@ package net.deer.cuda;
  * filled with a specific pattern through use of one of the {@code fillXxx}
  * methods.
  * <p>
+ * A buffer created through {@link #allocateManaged(GPUDevice, long)} lives in
+ * managed (unified) memory, which migrates between the host and the devices
+ * on demand, page by page. Its pages can be moved ahead of time with
+ * {@code prefetchToDevice} / {@code prefetchToHost}.
+ * <p>
+ * The methods without a {@link CudaStream} parameter return once their work
+ * has completed, but they aren't ordered against work queued on other
+ * streams. The copies and fills that have to run in order with such work take
+ * the stream as an argument (e.g. {@link #copyTo(DeviceMemory, CudaStream)}
+ * or {@link #fillFloat(float, CudaStream)}) and return a future instead.
+ * <p>
  * When no longer required, a DeviceMemory instance must be {@code close}d.
+ * Instances that become unreachable without having been closed are released
+ * by the {@link Reclaimer}.
  */
 public final class DeviceMemory implements AutoCloseable {
 
@@ -38,31 +64,42 @@ public final class DeviceMemory implements AutoCloseable {
 
     private final long length;
 
+    // the root buffer of a slice, null for a root buffer
     private final DeviceMemory root;
 
+    // whether the (root) region lives in managed memory
+    private final boolean managed;
+
+    // the allocation of a root buffer, null for a slice
     private final Address memoryAddress;
 
-    private static native long cudaMallocN(int deviceId, long byteCount) throws CudaException;
+    // the byte offset of a slice within its root buffer (0 for a root buffer)
+    private final long offset;
 
-    // never throw an exception
-    private static native long cudaFreeN(Address address);
+    // the statistics of the device, looked up once per root buffer (null for
+    // a slice) to keep the map lookup off the slice() path
+    private final DeviceMemoryStats stats;
 
-    private static native void cudaMemcpyHostToDeviceN(Address address, float[] array, int fromIndex, int toIndex)
-            throws CudaException;
+    // A slice is a flyweight (root, offset, length) view without an Address
+    // of its own: closing it only sets this flag
+    private volatile boolean closed;
 
-    private static native void cudaMemcpyDeviceToHostN(Address address, float[] array, int fromIndex, int toIndex)
-            throws CudaException;
+    private static final DeviceBackend backend = Backends.get();
 
-    private static final Cleaner cudaFreeCleaner = new Cleaner() {
+    // managed regions bypass the CachingAllocator
+    private static final Cleaner managedCleaner = new Cleaner() {
         @Override
-        public long release(Address address) throws CudaException {
-            return cudaFreeN(address);
+        public long release(Address address) {
+            return backend.free(address.getDeviceId(), address.getValue());
         }
     };
 
     /**
      * Allocates a new region on the specified {@code device} of size
      * {@code byteCount} bytes.
+     * <p>
+     * The region is drawn from the {@link CachingAllocator} of the device and
+     * is returned to it on {@link #close()}.
      *
      * @param device
      *            the device on which the region is to be allocated
@@ -73,39 +110,83 @@ public final class DeviceMemory implements AutoCloseable {
      */
     public DeviceMemory(GPUDevice device, long byteCount) throws CudaException {
         this.deviceId = device.getDeviceId();
-        this.memoryAddress = Addresses.of(this, cudaMallocN(deviceId, byteCount), cudaFreeCleaner, deviceId);
+        CachingAllocator allocator = CachingAllocator.forDevice(deviceId);
+        this.memoryAddress = Addresses.of(this, allocator.malloc(byteCount), byteCount, allocator.cleaner(byteCount),
+                deviceId);
         this.length = byteCount;
         this.root = null;
+        this.offset = 0L;
+        this.managed = false;
+        this.stats = DeviceMemoryStats.forDevice(deviceId);
     }
 
-    private DeviceMemory(DeviceMemory parent, int deviceId, Address parentAddress, long fromOffset, long length) {
+    private DeviceMemory(int deviceId, long byteCount) throws CudaException {
         this.deviceId = deviceId;
-        this.memoryAddress = Addresses.slice(this, parentAddress, fromOffset);
+        this.memoryAddress = Addresses.of(this, backend.mallocManaged(deviceId, byteCount), byteCount,
+                managedCleaner, deviceId);
+        this.length = byteCount;
+        this.root = null;
+        this.offset = 0L;
+        this.managed = true;
+        this.stats = DeviceMemoryStats.forDevice(deviceId);
+    }
+
+    private DeviceMemory(DeviceMemory root, long offset, long length) {
+        this.deviceId = root.deviceId;
+        this.memoryAddress = null;
         this.length = length;
-        this.root = parent;
+        this.root = root;
+        this.offset = offset;
+        this.managed = root.managed;
+        this.stats = null;
     }
 
-    Address getAddress() {
-        if ((root == null || !root.memoryAddress.isClosed()) && !memoryAddress.isClosed()) {
-            return memoryAddress;
-        }
-        try {
-            memoryAddress.close();
-        } catch (Exception ignore) {
-        }
-        throw new IllegalStateException("Root address or this address is already closed (or both)");
+    /**
+     * Allocates a new region of managed (unified) memory of size
+     * {@code byteCount} bytes that is associated with the specified
+     * {@code device}.
+     * <p>
+     * Managed memory is accessible from the host and from every device and
+     * migrates on demand, page by page, so a sparse access pattern only moves
+     * the pages it actually touches instead of the whole buffer. Apart from
+     * that the returned buffer behaves like any other {@code DeviceMemory}
+     * (it can be sliced, transferred to and from, closed or reclaimed). The
+     * region isn't drawn from the {@link CachingAllocator} but freed directly
+     * on {@link #close()}.
+     *
+     * @param device
+     *            the device with which the region is to be associated
+     * @param byteCount
+     *            the allocation size in bytes
+     * @return the new managed buffer
+     * @throws CudaException
+     *             if a CUDA exception occurs (e.g., if the device doesn't
+     *             support managed memory)
+     */
+    public static DeviceMemory allocateManaged(GPUDevice device, long byteCount) throws CudaException {
+        return new DeviceMemory(device.getDeviceId(), byteCount);
     }
 
     /**
-     * {@inheritDoc}
+     * Returns the device address of the first byte of this buffer. The state
+     * of the root buffer is checked on every call, so a slice becomes unusable
+     * as soon as its root has been closed.
+     *
+     * @throws IllegalStateException
+     *             if this buffer or its root buffer has been closed
      */
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            close();
-        } finally {
-            super.finalize();
+    long getAddress() {
+        Address rootAddress = (root != null) ? root.memoryAddress : memoryAddress;
+        if (!closed && !rootAddress.isClosed()) {
+            return rootAddress.getValue() + offset;
         }
+        closed = true;
+        throw new IllegalStateException("Root address or this address is already closed (or both)");
+    }
+
+    // the id of the device this buffer lives on
+    int getDeviceId() {
+        return deviceId;
     }
 
     /**
@@ -113,12 +194,21 @@ public final class DeviceMemory implements AutoCloseable {
      */
     @Override
     public void close() throws Exception {
-        memoryAddress.close();
+        if (root == null) {
+            memoryAddress.close();
+        } else {
+            closed = true;
+        }
     }
 
     /**
      * Returns a sub-region of this buffer. The new buffer begins at the
      * specified fromOffset and extends to the specified toOffset (exclusive).
+     * <p>
+     * A slice is a lightweight view of the root allocation: it holds no
+     * resources of its own, so closing it only makes the slice itself
+     * unusable. Once the root buffer has been closed, every slice of it is
+     * unusable as well.
      *
      * @param fromOffset
      *            the byte offset of the start of the sub-region within this
@@ -141,11 +231,13 @@ public final class DeviceMemory implements AutoCloseable {
             return this;
         } else {
             rangeCheck(length, fromOffset, toOffset);
+            // fail fast, validated again on every use
+            getAddress();
+            DeviceMemory rootMemory = (root != null) ? root : this;
+            rootMemory.stats.sliced();
             return new DeviceMemory( // <br>
-                    (root != null) ? root : this, // <br>
-                    deviceId, // <br>
-                    getAddress(), // <br>
-                    fromOffset, // <br>
+                    rootMemory, // <br>
+                    offset + fromOffset, // <br>
                     (toOffset - fromOffset)); // <br>
         }
     }
@@ -159,6 +251,356 @@ public final class DeviceMemory implements AutoCloseable {
         return length;
     }
 
+    /**
+     * Is this buffer (or the root buffer of this slice) in managed memory?
+     *
+     * @return {@code true} if this buffer has been allocated through
+     *         {@link #allocateManaged(GPUDevice, long)}
+     */
+    public boolean isManaged() {
+        return managed;
+    }
+
+    /**
+     * Starts migrating the pages of this managed buffer to its device on the
+     * default stream. Work subsequently queued on the default stream finds the
+     * pages resident on the device. This is a hint only and returns without
+     * waiting for the migration.
+     *
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer isn't managed or has been closed
+     */
+    public void prefetchToDevice() throws CudaException {
+        prefetch(deviceId, 0L);
+    }
+
+    /**
+     * Starts migrating the pages of this managed buffer to its device on the
+     * specified {@code stream}. This is a hint only and returns without
+     * waiting for the migration.
+     *
+     * @param stream
+     *            the stream on which the migration is to be queued
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer isn't managed, this buffer or {@code stream}
+     *             has been closed
+     */
+    public void prefetchToDevice(CudaStream stream) throws CudaException {
+        streamCheck(stream);
+        prefetch(deviceId, stream.getHandle());
+    }
+
+    /**
+     * Starts migrating the pages of this managed buffer to the host on the
+     * default stream. This is a hint only and returns without waiting for the
+     * migration.
+     *
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer isn't managed or has been closed
+     */
+    public void prefetchToHost() throws CudaException {
+        prefetch(DeviceBackend.HOST_DEVICE_ID, 0L);
+    }
+
+    /**
+     * Starts migrating the pages of this managed buffer to the host on the
+     * specified {@code stream}. This is a hint only and returns without
+     * waiting for the migration.
+     *
+     * @param stream
+     *            the stream on which the migration is to be queued
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer isn't managed, this buffer or {@code stream}
+     *             has been closed
+     */
+    public void prefetchToHost(CudaStream stream) throws CudaException {
+        streamCheck(stream);
+        prefetch(DeviceBackend.HOST_DEVICE_ID, stream.getHandle());
+    }
+
+    /**
+     * Advises that this managed buffer is mostly read and rarely written.
+     * Pages of a read-mostly region get duplicated on every processor that
+     * reads them instead of migrating back and forth; a write invalidates all
+     * copies but one. The advice applies to the pages spanned by this buffer,
+     * so it may be given for a slice only.
+     *
+     * @param readMostly
+     *            {@code true} to set the advice, {@code false} to withdraw it
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer isn't managed or has been closed
+     */
+    public void setReadMostly(boolean readMostly) throws CudaException {
+        backend.advise(deviceId, managedAddress(), length,
+                readMostly ? DeviceBackend.ADVISE_SET_READ_MOSTLY : DeviceBackend.ADVISE_UNSET_READ_MOSTLY, deviceId);
+        ReachabilityFence.protect(this);
+    }
+
+    /**
+     * Sets every byte of this buffer to the specified {@code value}. The fill
+     * runs entirely on the device and returns once it has completed.
+     *
+     * @param value
+     *            the fill value
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     */
+    public void fillByte(byte value) throws CudaException {
+        fill(value, 0);
+    }
+
+    /**
+     * Queues setting every byte of this buffer to the specified {@code value}
+     * on {@code stream}, after the work queued on it before, and returns at
+     * once.
+     *
+     * @param value
+     *            the fill value
+     * @param stream
+     *            the stream on which the fill is queued
+     * @return a future that completes once the fill has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     */
+    public CompletableFuture<Void> fillByte(byte value, CudaStream stream) throws CudaException {
+        return fill(value, 0, stream);
+    }
+
+    /**
+     * Sets every short of this buffer to the specified {@code value}. The fill
+     * runs entirely on the device and returns once it has completed.
+     * If the length of this buffer isn't a multiple of 2, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 2 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @throws CudaException
+     *             if a CUDA exception occurs (e.g., if the buffer
+     *             is misaligned)
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     */
+    public void fillShort(short value) throws CudaException {
+        fill(value, 1);
+    }
+
+    /**
+     * Queues setting every short of this buffer to the specified {@code value}
+     * on {@code stream}, after the work queued on it before, and returns at
+     * once.
+     * If the length of this buffer isn't a multiple of 2, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 2 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @param stream
+     *            the stream on which the fill is queued
+     * @return a future that completes once the fill has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     */
+    public CompletableFuture<Void> fillShort(short value, CudaStream stream) throws CudaException {
+        return fill(value, 1, stream);
+    }
+
+    /**
+     * Sets every int of this buffer to the specified {@code value}. The fill
+     * runs entirely on the device and returns once it has completed.
+     * If the length of this buffer isn't a multiple of 4, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 4 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @throws CudaException
+     *             if a CUDA exception occurs (e.g., if the buffer
+     *             is misaligned)
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     */
+    public void fillInt(int value) throws CudaException {
+        fill(value, 2);
+    }
+
+    /**
+     * Queues setting every int of this buffer to the specified {@code value}
+     * on {@code stream}, after the work queued on it before, and returns at
+     * once.
+     * If the length of this buffer isn't a multiple of 4, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 4 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @param stream
+     *            the stream on which the fill is queued
+     * @return a future that completes once the fill has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     */
+    public CompletableFuture<Void> fillInt(int value, CudaStream stream) throws CudaException {
+        return fill(value, 2, stream);
+    }
+
+    /**
+     * Sets every float of this buffer to the specified {@code value}. The fill
+     * runs entirely on the device and returns once it has completed.
+     * If the length of this buffer isn't a multiple of 4, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 4 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @throws CudaException
+     *             if a CUDA exception occurs (e.g., if the buffer
+     *             is misaligned)
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     */
+    public void fillFloat(float value) throws CudaException {
+        fill(Float.floatToRawIntBits(value), 2);
+    }
+
+    /**
+     * Queues setting every float of this buffer to the specified {@code value}
+     * on {@code stream}, after the work queued on it before, and returns at
+     * once.
+     * If the length of this buffer isn't a multiple of 4, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 4 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @param stream
+     *            the stream on which the fill is queued
+     * @return a future that completes once the fill has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     */
+    public CompletableFuture<Void> fillFloat(float value, CudaStream stream) throws CudaException {
+        return fill(Float.floatToRawIntBits(value), 2, stream);
+    }
+
+    /**
+     * Sets every long of this buffer to the specified {@code value}. The fill
+     * runs entirely on the device and returns once it has completed.
+     * If the length of this buffer isn't a multiple of 8, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 8 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @throws CudaException
+     *             if a CUDA exception occurs (e.g., if the buffer
+     *             is misaligned)
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     */
+    public void fillLong(long value) throws CudaException {
+        fill(value, 3);
+    }
+
+    /**
+     * Queues setting every long of this buffer to the specified {@code value}
+     * on {@code stream}, after the work queued on it before, and returns at
+     * once.
+     * If the length of this buffer isn't a multiple of 8, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 8 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @param stream
+     *            the stream on which the fill is queued
+     * @return a future that completes once the fill has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     */
+    public CompletableFuture<Void> fillLong(long value, CudaStream stream) throws CudaException {
+        return fill(value, 3, stream);
+    }
+
+    /**
+     * Sets every double of this buffer to the specified {@code value}. The fill
+     * runs entirely on the device and returns once it has completed.
+     * If the length of this buffer isn't a multiple of 8, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 8 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @throws CudaException
+     *             if a CUDA exception occurs (e.g., if the buffer
+     *             is misaligned)
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     */
+    public void fillDouble(double value) throws CudaException {
+        fill(Double.doubleToRawLongBits(value), 3);
+    }
+
+    /**
+     * Queues setting every double of this buffer to the specified {@code value}
+     * on {@code stream}, after the work queued on it before, and returns at
+     * once.
+     * If the length of this buffer isn't a multiple of 8, the trailing
+     * bytes are left unchanged. Unless all bytes of {@code value} are equal
+     * (as with zero), the buffer must start at a multiple of 8 bytes.
+     *
+     * @param value
+     *            the fill value
+     * @param stream
+     *            the stream on which the fill is queued
+     * @return a future that completes once the fill has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     */
+    public CompletableFuture<Void> fillDouble(double value, CudaStream stream) throws CudaException {
+        return fill(Double.doubleToRawLongBits(value), 3, stream);
+    }
+
     /**
      * Copies all data from the specified {@code array} (on the Java host) to
      * this buffer (on the device). Equivalent to
@@ -177,7 +619,7 @@ public final class DeviceMemory implements AutoCloseable {
      *             if the number of source bytes is larger than the length of
      *             this buffer
      */
-    public void transferToDevice(float[] array) throws CudaException {
+    public void transferToDevice(byte[] array) throws CudaException {
         transferToDevice(array, 0, array.length);
     }
 
@@ -207,49 +649,47 @@ public final class DeviceMemory implements AutoCloseable {
      *             {@code toIndex > array.length}, or the number of source bytes
      *             is larger than the length of this buffer
      */
-    public void transferToDevice(float[] array, int fromIndex, int toIndex) throws CudaException {
-        rangeCheck(array.length, fromIndex, toIndex);
-        lengthCheck(toIndex - fromIndex, 2);
-        cudaMemcpyHostToDeviceN(getAddress(), array, fromIndex, toIndex);
+    public void transferToDevice(byte[] array, int fromIndex, int toIndex) throws CudaException {
+        transferToDevice(array, array.length, fromIndex, toIndex, 0);
     }
 
     /**
-     * Copies data from this buffer (on the device) to the specified
-     * {@code array} (on the Java host). Equivalent to
+     * Copies all data from the specified {@code array} (on the Java host) to
+     * this buffer (on the device). Equivalent to
      * 
      * <pre>
-     * fetchToHost(array, 0, array.length);
+     * transferToDevice(array, 0, array.length);
      * </pre>
      *
      * @param array
-     *            the destination array
+     *            the source array
      * @throws CudaException
      *             if a CUDA exception occurs
      * @throws IllegalStateException
      *             if this buffer has been closed (see {@link #close()})
      * @throws IndexOutOfBoundsException
-     *             if the number of required source bytes is larger than the
-     *             length of this buffer
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
      */
-    public void fetchToHost(float[] array) throws CudaException {
-        fetchToHost(array, 0, array.length);
+    public void transferToDevice(char[] array) throws CudaException {
+        transferToDevice(array, 0, array.length);
     }
 
     /**
-     * Copies data from this buffer (on the device) to the specified
-     * {@code array} (on the Java host). Elements are read starting at the
-     * beginning of this buffer and stored in {@code array} beginning at
-     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}.
+     * Copies data from the specified {@code array} (on the Java host) to this
+     * buffer (on the device). Elements are read from {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}
+     * storing them in the same order in this buffer.
      * <p>
-     * A sub-buffer may be created (see {@link #atOffset(long)}) when the source
-     * data are not located at the beginning of this buffer.
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the data
+     * are to be copied somewhere other than the beginning of this buffer.
      *
      * @param array
-     *            the destination array
+     *            the source array
      * @param fromIndex
-     *            the destination starting offset (inclusive)
+     *            the source starting offset (inclusive)
      * @param toIndex
-     *            the destination ending offset (exclusive)
+     *            the source ending offset (exclusive)
      * @throws CudaException
      *             if a CUDA exception occurs
      * @throws IllegalArgumentException
@@ -258,13 +698,3133 @@ public final class DeviceMemory implements AutoCloseable {
      *             if this buffer has been closed (see {@link #close()})
      * @throws IndexOutOfBoundsException
      *             if {@code fromIndex} is negative,
-     *             {@code toIndex > array.length}, or the number of required
-     *             source bytes is larger than the length of this buffer
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
      */
-    public void fetchToHost(float[] array, int fromIndex, int toIndex) throws CudaException {
-        rangeCheck(array.length, fromIndex, toIndex);
-        lengthCheck(toIndex - fromIndex, 2);
-        cudaMemcpyDeviceToHostN(getAddress(), array, fromIndex, toIndex);
+    public void transferToDevice(char[] array, int fromIndex, int toIndex) throws CudaException {
+        transferToDevice(array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Copies all data from the specified {@code array} (on the Java host) to
+     * this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDevice(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the source array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public void transferToDevice(double[] array) throws CudaException {
+        transferToDevice(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from the specified {@code array} (on the Java host) to this
+     * buffer (on the device). Elements are read from {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}
+     * storing them in the same order in this buffer.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the data
+     * are to be copied somewhere other than the beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void transferToDevice(double[] array, int fromIndex, int toIndex) throws CudaException {
+        transferToDevice(array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Copies all data from the specified {@code array} (on the Java host) to
+     * this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDevice(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the source array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public void transferToDevice(float[] array) throws CudaException {
+        transferToDevice(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from the specified {@code array} (on the Java host) to this
+     * buffer (on the device). Elements are read from {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}
+     * storing them in the same order in this buffer.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the data
+     * are to be copied somewhere other than the beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void transferToDevice(float[] array, int fromIndex, int toIndex) throws CudaException {
+        transferToDevice(array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Copies all data from the specified {@code array} (on the Java host) to
+     * this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDevice(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the source array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public void transferToDevice(int[] array) throws CudaException {
+        transferToDevice(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from the specified {@code array} (on the Java host) to this
+     * buffer (on the device). Elements are read from {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}
+     * storing them in the same order in this buffer.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the data
+     * are to be copied somewhere other than the beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void transferToDevice(int[] array, int fromIndex, int toIndex) throws CudaException {
+        transferToDevice(array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Copies all data from the specified {@code array} (on the Java host) to
+     * this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDevice(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the source array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public void transferToDevice(long[] array) throws CudaException {
+        transferToDevice(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from the specified {@code array} (on the Java host) to this
+     * buffer (on the device). Elements are read from {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}
+     * storing them in the same order in this buffer.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the data
+     * are to be copied somewhere other than the beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void transferToDevice(long[] array, int fromIndex, int toIndex) throws CudaException {
+        transferToDevice(array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Copies all data from the specified {@code array} (on the Java host) to
+     * this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDevice(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the source array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public void transferToDevice(short[] array) throws CudaException {
+        transferToDevice(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from the specified {@code array} (on the Java host) to this
+     * buffer (on the device). Elements are read from {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}
+     * storing them in the same order in this buffer.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the data
+     * are to be copied somewhere other than the beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void transferToDevice(short[] array, int fromIndex, int toIndex) throws CudaException {
+        transferToDevice(array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHost(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the destination array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public void fetchToHost(byte[] array) throws CudaException {
+        fetchToHost(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Elements are read starting at the
+     * beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the source
+     * data are not located at the beginning of this buffer.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void fetchToHost(byte[] array, int fromIndex, int toIndex) throws CudaException {
+        fetchToHost(array, array.length, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHost(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the destination array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public void fetchToHost(char[] array) throws CudaException {
+        fetchToHost(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Elements are read starting at the
+     * beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the source
+     * data are not located at the beginning of this buffer.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void fetchToHost(char[] array, int fromIndex, int toIndex) throws CudaException {
+        fetchToHost(array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHost(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the destination array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public void fetchToHost(double[] array) throws CudaException {
+        fetchToHost(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Elements are read starting at the
+     * beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the source
+     * data are not located at the beginning of this buffer.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void fetchToHost(double[] array, int fromIndex, int toIndex) throws CudaException {
+        fetchToHost(array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHost(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the destination array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public void fetchToHost(float[] array) throws CudaException {
+        fetchToHost(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Elements are read starting at the
+     * beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the source
+     * data are not located at the beginning of this buffer.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void fetchToHost(float[] array, int fromIndex, int toIndex) throws CudaException {
+        fetchToHost(array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHost(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the destination array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public void fetchToHost(int[] array) throws CudaException {
+        fetchToHost(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Elements are read starting at the
+     * beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the source
+     * data are not located at the beginning of this buffer.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void fetchToHost(int[] array, int fromIndex, int toIndex) throws CudaException {
+        fetchToHost(array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHost(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the destination array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public void fetchToHost(long[] array) throws CudaException {
+        fetchToHost(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Elements are read starting at the
+     * beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the source
+     * data are not located at the beginning of this buffer.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void fetchToHost(long[] array, int fromIndex, int toIndex) throws CudaException {
+        fetchToHost(array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHost(array, 0, array.length);
+     * </pre>
+     *
+     * @param array
+     *            the destination array
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public void fetchToHost(short[] array) throws CudaException {
+        fetchToHost(array, 0, array.length);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified
+     * {@code array} (on the Java host). Elements are read starting at the
+     * beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}.
+     * <p>
+     * A sub-buffer may be created (see {@link #atOffset(long)}) when the source
+     * data are not located at the beginning of this buffer.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void fetchToHost(short[] array, int fromIndex, int toIndex) throws CudaException {
+        fetchToHost(array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Copies the remaining bytes of the specified direct {@code buffer} (on the
+     * Java host) to this buffer (on the device). Bytes are read beginning at
+     * the position of {@code buffer} up to its limit, the position of
+     * {@code buffer} is advanced to its limit. The bytes are handed to the
+     * device directly from the native memory of {@code buffer} without any
+     * intermediate copy.
+     *
+     * @param buffer
+     *            the direct source buffer
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code buffer} is not a direct buffer
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of remaining source bytes is larger than the
+     *             length of this buffer
+     */
+    public void transferToDevice(ByteBuffer buffer) throws CudaException {
+        transferToDevice(buffer, 0);
+    }
+
+    /**
+     * Copies the remaining elements of the specified direct {@code buffer} (on
+     * the Java host) to this buffer (on the device). Elements are read
+     * beginning at the position of {@code buffer} up to its limit, the
+     * position of {@code buffer} is advanced to its limit. The elements are
+     * handed to the device directly from the native memory of {@code buffer}
+     * without any intermediate copy.
+     *
+     * @param buffer
+     *            the direct source buffer
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code buffer} is not a direct buffer or if its byte order
+     *             isn't the native byte order
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of remaining source bytes is larger than the
+     *             length of this buffer
+     */
+    public void transferToDevice(FloatBuffer buffer) throws CudaException {
+        nativeOrderCheck(buffer.order());
+        transferToDevice(buffer, 2);
+    }
+
+    /**
+     * Copies all bytes of the specified native {@code segment} (on the Java
+     * host) to this buffer (on the device) without any intermediate copy.
+     * <p>
+     * The caller must make sure that the segment isn't closed concurrently.
+     *
+     * @param segment
+     *            the native source segment
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code segment} is not a native segment
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the size of {@code segment} is larger than the length of
+     *             this buffer
+     * @throws UnsupportedOperationException
+     *             if the running Java version has no {@code MemorySegment}
+     *             support
+     */
+    public void transferToDevice(MemorySegment segment) throws CudaException {
+        segmentCheck(segment);
+        long byteCount = segment.byteSize();
+        lengthCheck(byteCount, 0);
+        backend.copyHostToDevice(deviceId, getAddress(), segment.address(), byteCount);
+        ReachabilityFence.protect(this);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified direct
+     * {@code buffer} (on the Java host). Bytes are read starting at the
+     * beginning of this buffer and stored in {@code buffer} beginning at its
+     * position up to its limit, the position of {@code buffer} is advanced to
+     * its limit. The bytes are written directly into the native memory of
+     * {@code buffer} without any intermediate copy.
+     *
+     * @param buffer
+     *            the direct destination buffer
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code buffer} is not a direct buffer
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     * @throws ReadOnlyBufferException
+     *             if {@code buffer} is read-only
+     */
+    public void fetchToHost(ByteBuffer buffer) throws CudaException {
+        fetchToHost(buffer, 0);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified direct
+     * {@code buffer} (on the Java host). Elements are read starting at the
+     * beginning of this buffer and stored in {@code buffer} beginning at its
+     * position up to its limit, the position of {@code buffer} is advanced to
+     * its limit. The elements are written directly into the native memory of
+     * {@code buffer} without any intermediate copy.
+     *
+     * @param buffer
+     *            the direct destination buffer
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code buffer} is not a direct buffer or if its byte order
+     *             isn't the native byte order
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     * @throws ReadOnlyBufferException
+     *             if {@code buffer} is read-only
+     */
+    public void fetchToHost(FloatBuffer buffer) throws CudaException {
+        nativeOrderCheck(buffer.order());
+        fetchToHost(buffer, 2);
+    }
+
+    /**
+     * Copies data from this buffer (on the device) to the specified native
+     * {@code segment} (on the Java host), filling the whole segment. The bytes
+     * are written directly into the segment without any intermediate copy.
+     * <p>
+     * The caller must make sure that the segment isn't closed concurrently.
+     *
+     * @param segment
+     *            the native destination segment
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code segment} is not a native segment or if it is
+     *             read-only
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if the size of {@code segment} is larger than the length of
+     *             this buffer
+     * @throws UnsupportedOperationException
+     *             if the running Java version has no {@code MemorySegment}
+     *             support
+     */
+    public void fetchToHost(MemorySegment segment) throws CudaException {
+        segmentCheck(segment);
+        if (segment.isReadOnly()) {
+            throw new IllegalArgumentException("read-only segment");
+        }
+        long byteCount = segment.byteSize();
+        lengthCheck(byteCount, 0);
+        backend.copyDeviceToHost(deviceId, getAddress(), segment.address(), byteCount);
+        ReachabilityFence.protect(this);
+    }
+
+    /**
+     * Copies all data from the specified pinned {@code buffer} (on the Java
+     * host) to the beginning of this buffer (on the device).
+     *
+     * @param buffer
+     *            the source buffer
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer or {@code buffer} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the length of {@code buffer} is larger than the length of
+     *             this buffer
+     */
+    public void transferToDevice(PinnedHostMemory buffer) throws CudaException {
+        long byteCount = buffer.getLength();
+        lengthCheck(byteCount, 0);
+        backend.copyHostToDevice(deviceId, getAddress(), buffer.getAddress().getValue(), byteCount);
+        ReachabilityFence.protect(buffer);
+        ReachabilityFence.protect(this);
+    }
+
+    /**
+     * Copies data from the beginning of this buffer (on the device) to the
+     * specified pinned {@code buffer} (on the Java host), filling the whole
+     * {@code buffer}.
+     *
+     * @param buffer
+     *            the destination buffer
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer or {@code buffer} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the length of {@code buffer} is larger than the length of
+     *             this buffer
+     */
+    public void fetchToHost(PinnedHostMemory buffer) throws CudaException {
+        long byteCount = buffer.getLength();
+        lengthCheck(byteCount, 0);
+        backend.copyDeviceToHost(deviceId, getAddress(), buffer.getAddress().getValue(), byteCount);
+        ReachabilityFence.protect(buffer);
+        ReachabilityFence.protect(this);
+    }
+
+    /**
+     * Copies the specified byte {@code segments} (on the Java host) back to
+     * back to this buffer (on the device), beginning {@code byteOffset} bytes
+     * after its start. Small segments are gathered into a pinned staging
+     * buffer and uploaded together, large ones are copied on their own, so a
+     * buffer of any size can be filled with a single call.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be written
+     * @param segments
+     *            the source arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void transferToDevice(long byteOffset, byte[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 0;
+        }
+        transferSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Copies the specified char {@code segments} (on the Java host) back to
+     * back to this buffer (on the device), beginning {@code byteOffset} bytes
+     * after its start. Small segments are gathered into a pinned staging
+     * buffer and uploaded together, large ones are copied on their own, so a
+     * buffer of any size can be filled with a single call.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be written
+     * @param segments
+     *            the source arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void transferToDevice(long byteOffset, char[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 1;
+        }
+        transferSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Copies the specified double {@code segments} (on the Java host) back to
+     * back to this buffer (on the device), beginning {@code byteOffset} bytes
+     * after its start. Small segments are gathered into a pinned staging
+     * buffer and uploaded together, large ones are copied on their own, so a
+     * buffer of any size can be filled with a single call.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be written
+     * @param segments
+     *            the source arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void transferToDevice(long byteOffset, double[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 3;
+        }
+        transferSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Copies the specified float {@code segments} (on the Java host) back to
+     * back to this buffer (on the device), beginning {@code byteOffset} bytes
+     * after its start. Small segments are gathered into a pinned staging
+     * buffer and uploaded together, large ones are copied on their own, so a
+     * buffer of any size can be filled with a single call.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be written
+     * @param segments
+     *            the source arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void transferToDevice(long byteOffset, float[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 2;
+        }
+        transferSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Copies the specified int {@code segments} (on the Java host) back to
+     * back to this buffer (on the device), beginning {@code byteOffset} bytes
+     * after its start. Small segments are gathered into a pinned staging
+     * buffer and uploaded together, large ones are copied on their own, so a
+     * buffer of any size can be filled with a single call.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be written
+     * @param segments
+     *            the source arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void transferToDevice(long byteOffset, int[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 2;
+        }
+        transferSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Copies the specified long {@code segments} (on the Java host) back to
+     * back to this buffer (on the device), beginning {@code byteOffset} bytes
+     * after its start. Small segments are gathered into a pinned staging
+     * buffer and uploaded together, large ones are copied on their own, so a
+     * buffer of any size can be filled with a single call.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be written
+     * @param segments
+     *            the source arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void transferToDevice(long byteOffset, long[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 3;
+        }
+        transferSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Copies the specified short {@code segments} (on the Java host) back to
+     * back to this buffer (on the device), beginning {@code byteOffset} bytes
+     * after its start. Small segments are gathered into a pinned staging
+     * buffer and uploaded together, large ones are copied on their own, so a
+     * buffer of any size can be filled with a single call.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be written
+     * @param segments
+     *            the source arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void transferToDevice(long byteOffset, short[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 1;
+        }
+        transferSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Fills the specified byte {@code segments} (on the Java host) back to back
+     * with data from this buffer (on the device), beginning
+     * {@code byteOffset} bytes after its start. The reverse of
+     * {@link #transferToDevice(long, byte[][])}.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be read
+     * @param segments
+     *            the destination arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void fetchToHost(long byteOffset, byte[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 0;
+        }
+        fetchSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Fills the specified char {@code segments} (on the Java host) back to back
+     * with data from this buffer (on the device), beginning
+     * {@code byteOffset} bytes after its start. The reverse of
+     * {@link #transferToDevice(long, char[][])}.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be read
+     * @param segments
+     *            the destination arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void fetchToHost(long byteOffset, char[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 1;
+        }
+        fetchSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Fills the specified double {@code segments} (on the Java host) back to back
+     * with data from this buffer (on the device), beginning
+     * {@code byteOffset} bytes after its start. The reverse of
+     * {@link #transferToDevice(long, double[][])}.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be read
+     * @param segments
+     *            the destination arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void fetchToHost(long byteOffset, double[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 3;
+        }
+        fetchSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Fills the specified float {@code segments} (on the Java host) back to back
+     * with data from this buffer (on the device), beginning
+     * {@code byteOffset} bytes after its start. The reverse of
+     * {@link #transferToDevice(long, float[][])}.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be read
+     * @param segments
+     *            the destination arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void fetchToHost(long byteOffset, float[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 2;
+        }
+        fetchSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Fills the specified int {@code segments} (on the Java host) back to back
+     * with data from this buffer (on the device), beginning
+     * {@code byteOffset} bytes after its start. The reverse of
+     * {@link #transferToDevice(long, int[][])}.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be read
+     * @param segments
+     *            the destination arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void fetchToHost(long byteOffset, int[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 2;
+        }
+        fetchSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Fills the specified long {@code segments} (on the Java host) back to back
+     * with data from this buffer (on the device), beginning
+     * {@code byteOffset} bytes after its start. The reverse of
+     * {@link #transferToDevice(long, long[][])}.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be read
+     * @param segments
+     *            the destination arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void fetchToHost(long byteOffset, long[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 3;
+        }
+        fetchSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Fills the specified short {@code segments} (on the Java host) back to back
+     * with data from this buffer (on the device), beginning
+     * {@code byteOffset} bytes after its start. The reverse of
+     * {@link #transferToDevice(long, short[][])}.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be read
+     * @param segments
+     *            the destination arrays, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the segments don't fit
+     *             into this buffer at {@code byteOffset}
+     */
+    public void fetchToHost(long byteOffset, short[][] segments) throws CudaException {
+        long[] sizes = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i) {
+            sizes[i] = (long) segments[i].length << 1;
+        }
+        fetchSegments(byteOffset, segments, null, sizes);
+    }
+
+    /**
+     * Copies the remaining bytes of the specified direct {@code buffers} (on
+     * the Java host) back to back to this buffer (on the device), beginning
+     * {@code byteOffset} bytes after its start. The position of every buffer
+     * is advanced to its limit. Small buffers are gathered into a pinned
+     * staging buffer and uploaded together, large ones are handed to the
+     * device directly.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be written
+     * @param buffers
+     *            the direct source buffers, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if one of the {@code buffers} is not a direct buffer
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the remaining bytes
+     *             don't fit into this buffer at {@code byteOffset}
+     */
+    public void transferToDevice(long byteOffset, ByteBuffer[] buffers) throws CudaException {
+        long[] addresses = new long[buffers.length];
+        long[] sizes = new long[buffers.length];
+        regionsOf(buffers, addresses, sizes);
+        transferSegments(byteOffset, null, addresses, sizes);
+        // the native memory of the buffers must not be freed before we're done
+        ReachabilityFence.protect(buffers);
+        advance(buffers);
+    }
+
+    /**
+     * Fills the remaining bytes of the specified direct {@code buffers} (on
+     * the Java host) back to back with data from this buffer (on the device),
+     * beginning {@code byteOffset} bytes after its start. The position of
+     * every buffer is advanced to its limit. The reverse of
+     * {@link #transferToDevice(long, ByteBuffer[])}.
+     *
+     * @param byteOffset
+     *            the offset in this buffer of the first byte to be read
+     * @param buffers
+     *            the direct destination buffers, in order
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if one of the {@code buffers} is not a direct buffer
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code byteOffset} is negative or the remaining bytes
+     *             don't fit into this buffer at {@code byteOffset}
+     * @throws ReadOnlyBufferException
+     *             if one of the {@code buffers} is read-only
+     */
+    public void fetchToHost(long byteOffset, ByteBuffer[] buffers) throws CudaException {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.isReadOnly()) {
+                throw new ReadOnlyBufferException();
+            }
+        }
+        long[] addresses = new long[buffers.length];
+        long[] sizes = new long[buffers.length];
+        regionsOf(buffers, addresses, sizes);
+        fetchSegments(byteOffset, null, addresses, sizes);
+        ReachabilityFence.protect(buffers);
+        advance(buffers);
+    }
+
+    /**
+     * Allocates a new buffer on the specified {@code device} that has the size
+     * of the specified {@code file} and loads the whole file into it (see
+     * {@link #transferToDevice(FileChannel, long)}).
+     *
+     * @param device
+     *            the device on which the buffer is to be allocated
+     * @param file
+     *            the file to load
+     * @return the new buffer holding the file content
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IOException
+     *             if the file can't be read
+     */
+    public static DeviceMemory load(GPUDevice device, Path file) throws CudaException, IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            DeviceMemory memory = new DeviceMemory(device, channel.size());
+            boolean loaded = false;
+            try {
+                memory.transferToDevice(channel, 0L);
+                loaded = true;
+            } finally {
+                if (!loaded) {
+                    try {
+                        memory.close();
+                    } catch (Exception ignore) {
+                    }
+                }
+            }
+            return memory;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the content of this buffer to the specified {@code file}, which is
+     * created or truncated (see {@link #fetchToFile(FileChannel, long)}), and
+     * forces it to the storage device before returning.
+     *
+     * @param file
+     *            the file to write
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed
+     * @throws IOException
+     *             if the file can't be written
+     */
+    public void spill(Path file) throws CudaException, IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        try {
+            fetchToFile(channel, 0L);
+            // the spilled content must survive a crash, not just the close
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Fills this buffer with {@code getLength()} bytes of the specified file
+     * {@code channel}, starting at the file offset {@code position}. The
+     * position of the channel isn't changed.
+     * <p>
+     * The file is read chunk by chunk directly into two alternating pinned
+     * staging buffers, so reading the next chunk overlaps with the upload of
+     * the previous one. No part of the file is copied to the Java heap.
+     *
+     * @param channel
+     *            the source file, open for reading
+     * @param position
+     *            the file offset of the first byte to be transferred
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed
+     * @throws EOFException
+     *             if the file has fewer than {@code position + getLength()}
+     *             bytes
+     * @throws IOException
+     *             if the file can't be read
+     */
+    public void transferToDevice(FileChannel channel, long position) throws CudaException, IOException {
+        if (position < 0L) {
+            throw new IllegalArgumentException("position: " + position);
+        }
+        if (position > channel.size() - length) {
+            throw new EOFException("file size " + channel.size() + " < " + (position + length));
+        }
+        long address = getAddress();
+        if (length > 0L) {
+            stagedReadFile(channel, position, address);
+        }
+        ReachabilityFence.protect(this);
+    }
+
+    /**
+     * Writes the whole content of this buffer to the specified file
+     * {@code channel}, starting at the file offset {@code position}. The file
+     * grows if necessary, the position of the channel isn't changed.
+     * <p>
+     * The buffer is downloaded chunk by chunk into two alternating pinned
+     * staging buffers, which are written to the file directly, so the download
+     * of the next chunk overlaps with writing the previous one. The data isn't
+     * forced to the storage device (see {@link FileChannel#force(boolean)}).
+     *
+     * @param channel
+     *            the destination file, open for writing
+     * @param position
+     *            the file offset of the first byte to be written
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer has been closed
+     * @throws IOException
+     *             if the file can't be written
+     */
+    public void fetchToFile(FileChannel channel, long position) throws CudaException, IOException {
+        if (position < 0L) {
+            throw new IllegalArgumentException("position: " + position);
+        }
+        long address = getAddress();
+        if (length > 0L) {
+            stagedWriteFile(channel, position, address);
+        }
+        ReachabilityFence.protect(this);
+    }
+
+    /**
+     * Copies all data from this buffer to the beginning of the specified
+     * {@code destination} buffer, which may reside on a different device.
+     * Equivalent to
+     * 
+     * <pre>
+     * copyTo(0, getLength(), destination, 0);
+     * </pre>
+     *
+     * @param destination
+     *            the destination buffer
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalStateException
+     *             if this buffer or {@code destination} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the length of this buffer is larger than the length of
+     *             {@code destination}
+     */
+    public void copyTo(DeviceMemory destination) throws CudaException {
+        copyTo(0L, length, destination, 0L);
+    }
+
+    /**
+     * Copies the bytes of this buffer from {@code fromOffset} (inclusive) to
+     * {@code toOffset} (exclusive) to the specified {@code destination}
+     * buffer, starting at {@code destinationOffset}.
+     * <p>
+     * A copy within a device doesn't leave the device. A copy to a buffer on
+     * another device goes directly from device to device if the devices
+     * support peer access (which gets enabled once per device pair) and is
+     * staged through pinned host memory otherwise. In either case the method
+     * returns once the copy has completed. The source and the destination
+     * region must not overlap.
+     *
+     * @param fromOffset
+     *            the byte offset of the first byte to be copied
+     * @param toOffset
+     *            the byte offset of the end of the range to be copied
+     * @param destination
+     *            the destination buffer
+     * @param destinationOffset
+     *            the byte offset in {@code destination} of the first byte to
+     *            be written
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromOffset > toOffset}
+     * @throws IllegalStateException
+     *             if this buffer or {@code destination} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromOffset < 0}, {@code toOffset > getLength()}
+     *             or if the range doesn't fit into {@code destination} at
+     *             {@code destinationOffset}
+     */
+    public void copyTo(long fromOffset, long toOffset, DeviceMemory destination, long destinationOffset)
+            throws CudaException {
+        rangeCheck(length, fromOffset, toOffset);
+        long byteCount = toOffset - fromOffset;
+        if (destinationOffset < 0L || destinationOffset > destination.length - byteCount) {
+            throw new IndexOutOfBoundsException("destinationOffset: " + destinationOffset);
+        }
+        long src = getAddress() + fromOffset;
+        long dst = destination.getAddress() + destinationOffset;
+        if (byteCount > 0L) {
+            int dstDeviceId = destination.deviceId;
+            if (dstDeviceId == deviceId) {
+                backend.copyDeviceToDevice(deviceId, dst, src, byteCount);
+            } else if (PeerAccess.isEnabled(backend, dstDeviceId, deviceId)) {
+                backend.copyPeer(dstDeviceId, dst, deviceId, src, byteCount);
+            } else {
+                stagedCopyTo(src, dstDeviceId, dst, byteCount);
+            }
+        }
+        ReachabilityFence.protect(destination);
+        ReachabilityFence.protect(this);
+    }
+
+    /**
+     * Queues a copy of all data of this buffer to the specified
+     * {@code destination} buffer on the same device on {@code stream}.
+     * Equivalent to
+     * 
+     * <pre>
+     * copyTo(0, getLength(), destination, 0, stream);
+     * </pre>
+     *
+     * @param destination
+     *            the destination buffer
+     * @param stream
+     *            the stream on which the copy is queued
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code destination} or {@code stream} belongs to a
+     *             different device
+     * @throws IllegalStateException
+     *             if this buffer, {@code destination} or {@code stream} has
+     *             been closed
+     * @throws IndexOutOfBoundsException
+     *             if the length of this buffer is larger than the length of
+     *             {@code destination}
+     */
+    public CompletableFuture<Void> copyTo(DeviceMemory destination, CudaStream stream) throws CudaException {
+        return copyTo(0L, length, destination, 0L, stream);
+    }
+
+    /**
+     * Queues a copy of the bytes of this buffer from {@code fromOffset}
+     * (inclusive) to {@code toOffset} (exclusive) to the specified
+     * {@code destination} buffer, starting at {@code destinationOffset}, on
+     * {@code stream}, after the work queued on it before, and returns at
+     * once. Both buffers must live on the device of the stream. The source
+     * and the destination region must not overlap.
+     *
+     * @param fromOffset
+     *            the byte offset of the first byte to be copied
+     * @param toOffset
+     *            the byte offset of the end of the range to be copied
+     * @param destination
+     *            the destination buffer
+     * @param destinationOffset
+     *            the byte offset in {@code destination} of the first byte to
+     *            be written
+     * @param stream
+     *            the stream on which the copy is queued
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromOffset > toOffset} or if {@code destination}
+     *             or {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer, {@code destination} or {@code stream} has
+     *             been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromOffset < 0}, {@code toOffset > getLength()}
+     *             or if the range doesn't fit into {@code destination} at
+     *             {@code destinationOffset}
+     */
+    public CompletableFuture<Void> copyTo(long fromOffset, long toOffset, DeviceMemory destination,
+            long destinationOffset, CudaStream stream) throws CudaException {
+        streamCheck(stream);
+        if (destination.deviceId != deviceId) {
+            throw new IllegalArgumentException("destination device " + destination.deviceId + " <> buffer device "
+                    + deviceId);
+        }
+        rangeCheck(length, fromOffset, toOffset);
+        long byteCount = toOffset - fromOffset;
+        if (destinationOffset < 0L || destinationOffset > destination.length - byteCount) {
+            throw new IndexOutOfBoundsException("destinationOffset: " + destinationOffset);
+        }
+        backend.copyDeviceToDeviceAsync(stream.getHandle(), deviceId, destination.getAddress() + destinationOffset,
+                getAddress() + fromOffset, byteCount);
+        recordStream(stream);
+        destination.recordStream(stream);
+        return stream.whenDone(keepReachable(destination));
+    }
+
+    /**
+     * Asynchronously copies all data from the specified {@code array} (on the
+     * Java host) to this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDeviceAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, byte[] array) throws CudaException {
+        return transferToDeviceAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from the specified {@code array} (on the Java
+     * host) to this buffer (on the device). Elements are read from
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}. The elements are captured in a pinned staging
+     * buffer before this method returns, so {@code array} may be reused
+     * immediately.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, byte[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return transferToDeviceAsync(stream, array, array.length, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * Asynchronously copies all data from the specified {@code array} (on the
+     * Java host) to this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDeviceAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, char[] array) throws CudaException {
+        return transferToDeviceAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from the specified {@code array} (on the Java
+     * host) to this buffer (on the device). Elements are read from
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}. The elements are captured in a pinned staging
+     * buffer before this method returns, so {@code array} may be reused
+     * immediately.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, char[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return transferToDeviceAsync(stream, array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Asynchronously copies all data from the specified {@code array} (on the
+     * Java host) to this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDeviceAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, double[] array) throws CudaException {
+        return transferToDeviceAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from the specified {@code array} (on the Java
+     * host) to this buffer (on the device). Elements are read from
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}. The elements are captured in a pinned staging
+     * buffer before this method returns, so {@code array} may be reused
+     * immediately.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, double[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return transferToDeviceAsync(stream, array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Asynchronously copies all data from the specified {@code array} (on the
+     * Java host) to this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDeviceAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, float[] array) throws CudaException {
+        return transferToDeviceAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from the specified {@code array} (on the Java
+     * host) to this buffer (on the device). Elements are read from
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}. The elements are captured in a pinned staging
+     * buffer before this method returns, so {@code array} may be reused
+     * immediately.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, float[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return transferToDeviceAsync(stream, array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Asynchronously copies all data from the specified {@code array} (on the
+     * Java host) to this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDeviceAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, int[] array) throws CudaException {
+        return transferToDeviceAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from the specified {@code array} (on the Java
+     * host) to this buffer (on the device). Elements are read from
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}. The elements are captured in a pinned staging
+     * buffer before this method returns, so {@code array} may be reused
+     * immediately.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, int[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return transferToDeviceAsync(stream, array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Asynchronously copies all data from the specified {@code array} (on the
+     * Java host) to this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDeviceAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, long[] array) throws CudaException {
+        return transferToDeviceAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from the specified {@code array} (on the Java
+     * host) to this buffer (on the device). Elements are read from
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}. The elements are captured in a pinned staging
+     * buffer before this method returns, so {@code array} may be reused
+     * immediately.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, long[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return transferToDeviceAsync(stream, array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Asynchronously copies all data from the specified {@code array} (on the
+     * Java host) to this buffer (on the device). Equivalent to
+     * 
+     * <pre>
+     * transferToDeviceAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, short[] array) throws CudaException {
+        return transferToDeviceAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from the specified {@code array} (on the Java
+     * host) to this buffer (on the device). Elements are read from
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}. The elements are captured in a pinned staging
+     * buffer before this method returns, so {@code array} may be reused
+     * immediately.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, short[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return transferToDeviceAsync(stream, array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHostAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, byte[] array) throws CudaException {
+        return fetchToHostAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Elements are read starting at
+     * the beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}. The
+     * contents of {@code array} are undefined until the returned future has
+     * completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, byte[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return fetchToHostAsync(stream, array, array.length, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHostAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, char[] array) throws CudaException {
+        return fetchToHostAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Elements are read starting at
+     * the beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}. The
+     * contents of {@code array} are undefined until the returned future has
+     * completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, char[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return fetchToHostAsync(stream, array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHostAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, double[] array) throws CudaException {
+        return fetchToHostAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Elements are read starting at
+     * the beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}. The
+     * contents of {@code array} are undefined until the returned future has
+     * completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, double[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return fetchToHostAsync(stream, array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHostAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, float[] array) throws CudaException {
+        return fetchToHostAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Elements are read starting at
+     * the beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}. The
+     * contents of {@code array} are undefined until the returned future has
+     * completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, float[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return fetchToHostAsync(stream, array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHostAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, int[] array) throws CudaException {
+        return fetchToHostAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Elements are read starting at
+     * the beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}. The
+     * contents of {@code array} are undefined until the returned future has
+     * completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, int[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return fetchToHostAsync(stream, array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHostAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, long[] array) throws CudaException {
+        return fetchToHostAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Elements are read starting at
+     * the beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}. The
+     * contents of {@code array} are undefined until the returned future has
+     * completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, long[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return fetchToHostAsync(stream, array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Equivalent to
+     * 
+     * <pre>
+     * fetchToHostAsync(stream, array, 0, array.length);
+     * </pre>
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if the number of required source bytes is larger than the
+     *             length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, short[] array) throws CudaException {
+        return fetchToHostAsync(stream, array, 0, array.length);
+    }
+
+    /**
+     * Asynchronously copies data from this buffer (on the device) to the
+     * specified {@code array} (on the Java host). Elements are read starting at
+     * the beginning of this buffer and stored in {@code array} beginning at
+     * {@code fromIndex} continuing up to, but excluding, {@code toIndex}. The
+     * contents of {@code array} are undefined until the returned future has
+     * completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @return a future that completes once {@code array} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex} or if {@code stream} belongs to
+     *             a different device
+     * @throws IllegalStateException
+     *             if this buffer or {@code stream} has been closed
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, short[] array, int fromIndex, int toIndex)
+            throws CudaException {
+        return fetchToHostAsync(stream, array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Asynchronously copies all data from the specified pinned {@code buffer}
+     * (on the Java host) to the beginning of this buffer (on the device).
+     * {@code buffer} must neither be modified nor closed before the returned
+     * future has completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param buffer
+     *            the source buffer
+     * @return a future that completes once the copy has finished
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer, {@code buffer} or {@code stream} has been
+     *             closed
+     * @throws IndexOutOfBoundsException
+     *             if the length of {@code buffer} is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, PinnedHostMemory buffer)
+            throws CudaException {
+        streamCheck(stream);
+        long byteCount = buffer.getLength();
+        lengthCheck(byteCount, 0);
+        backend.copyHostToDeviceAsync(stream.getHandle(), deviceId, getAddress(), buffer.getAddress().getValue(),
+                byteCount);
+        recordStream(stream);
+        return stream.whenDone(keepReachable(buffer));
+    }
+
+    /**
+     * Asynchronously copies data from the beginning of this buffer (on the
+     * device) to the specified pinned {@code buffer} (on the Java host),
+     * filling the whole {@code buffer}. {@code buffer} must not be closed
+     * before the returned future has completed.
+     *
+     * @param stream
+     *            the stream on which the copy is queued
+     * @param buffer
+     *            the destination buffer
+     * @return a future that completes once {@code buffer} has been filled
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code stream} belongs to a different device
+     * @throws IllegalStateException
+     *             if this buffer, {@code buffer} or {@code stream} has been
+     *             closed
+     * @throws IndexOutOfBoundsException
+     *             if the length of {@code buffer} is larger than the length of
+     *             this buffer
+     */
+    public CompletableFuture<Void> fetchToHostAsync(CudaStream stream, PinnedHostMemory buffer)
+            throws CudaException {
+        streamCheck(stream);
+        long byteCount = buffer.getLength();
+        lengthCheck(byteCount, 0);
+        backend.copyDeviceToHostAsync(stream.getHandle(), deviceId, getAddress(), buffer.getAddress().getValue(),
+                byteCount);
+        recordStream(stream);
+        return stream.whenDone(keepReachable(buffer));
+    }
+
+    private void transferToDevice(Object array, int arrayLength, int fromIndex, int toIndex, int logBase2UnitSize)
+            throws CudaException {
+        rangeCheck(arrayLength, fromIndex, toIndex);
+        lengthCheck(toIndex - fromIndex, logBase2UnitSize);
+        long byteOffset = (long) fromIndex << logBase2UnitSize;
+        long byteCount = (long) (toIndex - fromIndex) << logBase2UnitSize;
+        copyToDevice(getAddress(), array, byteOffset, byteCount);
+        // the device memory must not be released before we're done
+        ReachabilityFence.protect(this);
+    }
+
+    // Copies byteCount bytes at byteOffset of this buffer to the start of the
+    // primitive array, used by the chunked views of DeviceStreams
+    void fetchToHost(long byteOffset, Object array, long byteCount) throws CudaException {
+        rangeCheck(length, byteOffset, byteOffset + byteCount);
+        copyToHost(getAddress() + byteOffset, array, 0L, byteCount);
+        ReachabilityFence.protect(this);
+    }
+
+    private void fetchToHost(Object array, int arrayLength, int fromIndex, int toIndex, int logBase2UnitSize)
+            throws CudaException {
+        rangeCheck(arrayLength, fromIndex, toIndex);
+        lengthCheck(toIndex - fromIndex, logBase2UnitSize);
+        long byteOffset = (long) fromIndex << logBase2UnitSize;
+        long byteCount = (long) (toIndex - fromIndex) << logBase2UnitSize;
+        copyToHost(getAddress(), array, byteOffset, byteCount);
+        ReachabilityFence.protect(this);
+    }
+
+    private void prefetch(int dstDeviceId, long stream) throws CudaException {
+        backend.prefetch(deviceId, managedAddress(), length, dstDeviceId, stream);
+        ReachabilityFence.protect(this);
+    }
+
+    private long managedAddress() {
+        if (!managed) {
+            throw new IllegalStateException("Not a managed buffer");
+        }
+        return getAddress();
+    }
+
+    private void fill(long value, int logBase2UnitSize) throws CudaException {
+        fill(value, logBase2UnitSize, 0L);
+        ReachabilityFence.protect(this);
+    }
+
+    private CompletableFuture<Void> fill(long value, int logBase2UnitSize, CudaStream stream) throws CudaException {
+        streamCheck(stream);
+        fill(value, logBase2UnitSize, stream.getHandle());
+        recordStream(stream);
+        return stream.whenDone(keepReachable(null));
+    }
+
+    // fills synchronously if stream is 0, otherwise queues the fill
+    private void fill(long value, int logBase2UnitSize, long stream) throws CudaException {
+        int unitSize = 1 << logBase2UnitSize;
+        long count = length >> logBase2UnitSize;
+        long pattern = (unitSize == 8) ? value : value & ((1L << (unitSize << 3)) - 1L);
+        long replicated = (pattern & 0xFFL) * (0x0101010101010101L >>> (64 - (unitSize << 3)));
+        if (pattern == replicated) {
+            // all bytes are equal: a byte memset has no alignment requirement
+            pattern &= 0xFFL;
+            count <<= logBase2UnitSize;
+            unitSize = 1;
+        }
+        long address = getAddress();
+        if (stream == 0L) {
+            backend.memset(deviceId, address, pattern, unitSize, count);
+        } else {
+            backend.memsetAsync(stream, deviceId, address, pattern, unitSize, count);
+        }
+    }
+
+    // copies a range of the array to the device address, staged if it's large
+    private void copyToDevice(long address, Object array, long byteOffset, long byteCount) throws CudaException {
+        if (!PinnedStagingPool.isStaged(byteCount) || !stagedTransferToDevice(address, array, byteOffset, byteCount)) {
+            backend.copyHostToDevice(deviceId, address, array, byteOffset, byteCount);
+        }
+    }
+
+    private void copyToHost(long address, Object array, long byteOffset, long byteCount) throws CudaException {
+        if (!PinnedStagingPool.isStaged(byteCount) || !stagedFetchToHost(address, array, byteOffset, byteCount)) {
+            backend.copyDeviceToHost(deviceId, address, array, byteOffset, byteCount);
+        }
+    }
+
+    // Copies the array chunk by chunk through two alternating pooled staging
+    // buffers: while a private stream uploads one of them, the next chunk gets
+    // copied out of the array into the other one. The stream has the default
+    // flags, so it's ordered against the legacy default stream just like the
+    // direct copy. Returns false (without having copied anything) if the pool
+    // can't provide both buffers.
+    private boolean stagedTransferToDevice(long address, Object array, long byteOffset, long byteCount)
+            throws CudaException {
+        PinnedHostMemory[] staging = acquirePooledStaging();
+        if (staging == null) {
+            return false;
+        }
+        CudaEvent[] uploaded = new CudaEvent[2];
+        CudaStream stream = null;
+        try {
+            stream = openStagingStream(uploaded);
+            long chunk = Math.min(staging[0].getLength(), staging[1].getLength());
+            boolean[] inFlight = new boolean[2];
+            int turn = 0;
+            for (long done = 0L; done < byteCount; done += chunk) {
+                long size = Math.min(chunk, byteCount - done);
+                if (inFlight[turn]) {
+                    uploaded[turn].synchronize();
+                }
+                staging[turn].putBytes(array, byteOffset + done, size);
+                backend.copyHostToDeviceAsync(stream.getHandle(), deviceId, address + done,
+                        staging[turn].getAddress().getValue(), size);
+                uploaded[turn].record(stream);
+                inFlight[turn] = true;
+                turn ^= 1;
+            }
+            stream.synchronize();
+        } finally {
+            closeStaging(staging, uploaded, stream);
+        }
+        return true;
+    }
+
+    // The reverse of stagedTransferToDevice: while the stream downloads the
+    // next chunk, the previous one gets copied into the array
+    private boolean stagedFetchToHost(long address, Object array, long byteOffset, long byteCount)
+            throws CudaException {
+        PinnedHostMemory[] staging = acquirePooledStaging();
+        if (staging == null) {
+            return false;
+        }
+        CudaEvent[] downloaded = new CudaEvent[2];
+        CudaStream stream = null;
+        try {
+            stream = openStagingStream(downloaded);
+            long chunk = Math.min(staging[0].getLength(), staging[1].getLength());
+            int turn = 0;
+            long pending = -1L;
+            for (long done = 0L; done < byteCount; done += chunk) {
+                long size = Math.min(chunk, byteCount - done);
+                backend.copyDeviceToHostAsync(stream.getHandle(), deviceId, address + done,
+                        staging[turn].getAddress().getValue(), size);
+                downloaded[turn].record(stream);
+                if (pending >= 0L) {
+                    downloaded[turn ^ 1].synchronize();
+                    staging[turn ^ 1].getBytes(array, byteOffset + pending, chunk);
+                }
+                pending = done;
+                turn ^= 1;
+            }
+            downloaded[turn ^ 1].synchronize();
+            staging[turn ^ 1].getBytes(array, byteOffset + pending, byteCount - pending);
+        } finally {
+            closeStaging(staging, downloaded, stream);
+        }
+        return true;
+    }
+
+    // two idle buffers of the staging pool, or null if it can't provide both
+    private static PinnedHostMemory[] acquirePooledStaging() {
+        PinnedHostMemory first = PinnedStagingPool.acquire();
+        if (first == null) {
+            return null;
+        }
+        PinnedHostMemory second = PinnedStagingPool.acquire();
+        if (second == null) {
+            PinnedStagingPool.release(first);
+            return null;
+        }
+        return new PinnedHostMemory[] { first, second };
+    }
+
+    // creates the stream of a staged array transfer and its two events
+    private CudaStream openStagingStream(CudaEvent[] events) throws CudaException {
+        GPUDevice device = new GPUDevice(deviceId);
+        CudaStream stream = new CudaStream(device);
+        try {
+            for (int i = 0; i < events.length; ++i) {
+                events[i] = new CudaEvent(device, CudaEvent.FLAG_DISABLE_TIMING);
+            }
+        } catch (CudaException e) {
+            // the events created so far are closed by the caller
+            try {
+                stream.close();
+            } catch (CudaException ignore) {
+            }
+            throw e;
+        }
+        return stream;
+    }
+
+    // Copies consecutive host segments (either arrays or, if arrays is null,
+    // native addresses) to the device. Segments below the staging threshold
+    // are gathered into a pinned buffer so that a run of them costs a single
+    // native crossing, the others are copied on their own.
+    private void transferSegments(long byteOffset, Object[] arrays, long[] addresses, long[] sizes)
+            throws CudaException {
+        long address = getAddress() + segmentsCheck(byteOffset, sizes);
+        PinnedHostMemory staging = PinnedStagingPool.acquire();
+        try {
+            long host = (staging != null) ? staging.getAddress().getValue() : 0L;
+            long capacity = (staging != null) ? staging.getLength() : 0L;
+            long fill = 0L;
+            for (int i = 0; i < sizes.length; ++i) {
+                long size = sizes[i];
+                if (size <= capacity && !PinnedStagingPool.isStaged(size)) {
+                    if (fill + size > capacity) {
+                        backend.copyHostToDevice(deviceId, address - fill, host, fill);
+                        fill = 0L;
+                    }
+                    if (arrays != null) {
+                        UnsafeAccess.copy(arrays[i], UnsafeAccess.arrayBase(arrays[i]), null, host + fill, size);
+                    } else {
+                        UnsafeAccess.copy(null, addresses[i], null, host + fill, size);
+                    }
+                    fill += size;
+                } else {
+                    if (fill > 0L) {
+                        backend.copyHostToDevice(deviceId, address - fill, host, fill);
+                        fill = 0L;
+                    }
+                    if (arrays != null) {
+                        copyToDevice(address, arrays[i], 0L, size);
+                    } else {
+                        backend.copyHostToDevice(deviceId, address, addresses[i], size);
+                    }
+                }
+                address += size;
+            }
+            if (fill > 0L) {
+                backend.copyHostToDevice(deviceId, address - fill, host, fill);
+            }
+        } finally {
+            if (staging != null) {
+                PinnedStagingPool.release(staging);
+            }
+        }
+        ReachabilityFence.protect(this);
+    }
+
+    // The reverse of transferSegments: a run of small segments is downloaded
+    // into the staging buffer at once and then scattered to the segments
+    private void fetchSegments(long byteOffset, Object[] arrays, long[] addresses, long[] sizes)
+            throws CudaException {
+        long address = getAddress() + segmentsCheck(byteOffset, sizes);
+        PinnedHostMemory staging = PinnedStagingPool.acquire();
+        try {
+            long host = (staging != null) ? staging.getAddress().getValue() : 0L;
+            long capacity = (staging != null) ? staging.getLength() : 0L;
+            long fill = 0L;
+            int runStart = 0;
+            for (int i = 0; i < sizes.length; ++i) {
+                long size = sizes[i];
+                boolean gathered = size <= capacity && !PinnedStagingPool.isStaged(size);
+                if (fill > 0L && (!gathered || fill + size > capacity)) {
+                    scatter(address - fill, host, fill, arrays, addresses, sizes, runStart, i);
+                    fill = 0L;
+                }
+                if (gathered) {
+                    if (fill == 0L) {
+                        runStart = i;
+                    }
+                    fill += size;
+                } else if (arrays != null) {
+                    copyToHost(address, arrays[i], 0L, size);
+                } else {
+                    backend.copyDeviceToHost(deviceId, address, addresses[i], size);
+                }
+                address += size;
+            }
+            if (fill > 0L) {
+                scatter(address - fill, host, fill, arrays, addresses, sizes, runStart, sizes.length);
+            }
+        } finally {
+            if (staging != null) {
+                PinnedStagingPool.release(staging);
+            }
+        }
+        ReachabilityFence.protect(this);
+    }
+
+    private void scatter(long address, long host, long byteCount, Object[] arrays, long[] addresses, long[] sizes,
+            int from, int to) throws CudaException {
+        backend.copyDeviceToHost(deviceId, address, host, byteCount);
+        for (int i = from; i < to; ++i) {
+            if (arrays != null) {
+                UnsafeAccess.copy(null, host, arrays[i], UnsafeAccess.arrayBase(arrays[i]), sizes[i]);
+            } else {
+                UnsafeAccess.copy(null, host, null, addresses[i], sizes[i]);
+            }
+            host += sizes[i];
+        }
+    }
+
+    // returns byteOffset if all segments fit into this buffer at byteOffset
+    private long segmentsCheck(long byteOffset, long[] sizes) {
+        if (byteOffset < 0L || byteOffset > length) {
+            throw new IndexOutOfBoundsException("byteOffset: " + byteOffset);
+        }
+        long total = 0L;
+        for (long size : sizes) {
+            total += size;
+        }
+        if (total > length - byteOffset) {
+            throw new IndexOutOfBoundsException("byteCount: " + total);
+        }
+        return byteOffset;
+    }
+
+    private static void regionsOf(ByteBuffer[] buffers, long[] addresses, long[] sizes) {
+        for (int i = 0; i < buffers.length; ++i) {
+            ByteBuffer buffer = buffers[i];
+            directCheck(buffer);
+            addresses[i] = UnsafeAccess.addressOf(buffer) + buffer.position();
+            sizes[i] = buffer.remaining();
+        }
+    }
+
+    private static void advance(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            buffer.position(buffer.limit());
+        }
+    }
+
+    // Uploads a file through two alternating staging buffers: while the stream
+    // uploads one of them, the next chunk gets read from the file into the
+    // other one
+    private void stagedReadFile(FileChannel channel, long position, long address) throws CudaException, IOException {
+        PinnedHostMemory[] staging = new PinnedHostMemory[2];
+        CudaEvent[] uploaded = new CudaEvent[2];
+        CudaStream stream = new CudaStream(new GPUDevice(deviceId), CudaStream.FLAG_NON_BLOCKING);
+        try {
+            int chunk = fileChunk(openStaging(staging, uploaded));
+            ByteBuffer[] views = viewsOf(staging, chunk);
+            boolean[] inFlight = new boolean[2];
+            int turn = 0;
+            for (long done = 0L; done < length; done += chunk) {
+                int size = (int) Math.min(chunk, length - done);
+                if (inFlight[turn]) {
+                    uploaded[turn].synchronize();
+                }
+                readFully(channel, views[turn], position + done, size);
+                backend.copyHostToDeviceAsync(stream.getHandle(), deviceId, address + done,
+                        staging[turn].getAddress().getValue(), size);
+                uploaded[turn].record(stream);
+                inFlight[turn] = true;
+                turn ^= 1;
+            }
+            stream.synchronize();
+        } finally {
+            closeStaging(staging, uploaded, stream);
+        }
+    }
+
+    // Downloads into a file through two alternating staging buffers: while
+    // the stream downloads the next chunk, the previous one gets written to
+    // the file
+    private void stagedWriteFile(FileChannel channel, long position, long address) throws CudaException, IOException {
+        PinnedHostMemory[] staging = new PinnedHostMemory[2];
+        CudaEvent[] downloaded = new CudaEvent[2];
+        CudaStream stream = new CudaStream(new GPUDevice(deviceId), CudaStream.FLAG_NON_BLOCKING);
+        try {
+            int chunk = fileChunk(openStaging(staging, downloaded));
+            ByteBuffer[] views = viewsOf(staging, chunk);
+            int turn = 0;
+            long pending = -1L;
+            for (long done = 0L; done < length; done += chunk) {
+                int size = (int) Math.min(chunk, length - done);
+                backend.copyDeviceToHostAsync(stream.getHandle(), deviceId, address + done,
+                        staging[turn].getAddress().getValue(), size);
+                downloaded[turn].record(stream);
+                if (pending >= 0L) {
+                    downloaded[turn ^ 1].synchronize();
+                    writeFully(channel, views[turn ^ 1], position + pending, chunk);
+                }
+                pending = done;
+                turn ^= 1;
+            }
+            downloaded[turn ^ 1].synchronize();
+            writeFully(channel, views[turn ^ 1], position + pending, (int) (length - pending));
+        } finally {
+            closeStaging(staging, downloaded, stream);
+        }
+    }
+
+    // FileChannel transfers are limited to a ByteBuffer's int capacity
+    private static int fileChunk(long chunk) {
+        return (int) Math.min(chunk, Integer.MAX_VALUE);
+    }
+
+    private static ByteBuffer[] viewsOf(PinnedHostMemory[] staging, int chunk) {
+        ByteBuffer[] views = new ByteBuffer[staging.length];
+        for (int i = 0; i < staging.length; ++i) {
+            views[i] = UnsafeAccess.wrap(staging[i].getAddress().getValue(), chunk);
+        }
+        return views;
+    }
+
+    // reads size bytes at the file offset position into the start of view
+    private static void readFully(FileChannel channel, ByteBuffer view, long position, int size) throws IOException {
+        view.clear();
+        view.limit(size);
+        while (view.hasRemaining()) {
+            int read = channel.read(view, position + view.position());
+            if (read < 0) {
+                throw new EOFException("file ends at " + (position + view.position()));
+            }
+        }
+    }
+
+    // writes the first size bytes of view at the file offset position
+    private static void writeFully(FileChannel channel, ByteBuffer view, long position, int size)
+            throws IOException {
+        view.clear();
+        view.limit(size);
+        while (view.hasRemaining()) {
+            channel.write(view, position + view.position());
+        }
+    }
+
+    // Acquires the two staging buffers and their events, returns the chunk
+    // size that fits into both buffers
+    private long openStaging(PinnedHostMemory[] staging, CudaEvent[] events) throws CudaException {
+        long wanted = Math.min(length, PinnedStagingPool.getChunkSize());
+        GPUDevice device = new GPUDevice(deviceId);
+        for (int i = 0; i < staging.length; ++i) {
+            staging[i] = acquireStaging(wanted);
+            events[i] = new CudaEvent(device, CudaEvent.FLAG_DISABLE_TIMING);
+        }
+        return Math.min(staging[0].getLength(), staging[1].getLength());
+    }
+
+    // stream may be null if it couldn't be created (then nothing is in flight)
+    private static void closeStaging(PinnedHostMemory[] staging, CudaEvent[] events, CudaStream stream) {
+        if (stream != null) {
+            try {
+                // nothing may still be in flight when the buffers are given back
+                stream.synchronize();
+            } catch (CudaException ignore) {
+            }
+        }
+        for (int i = 0; i < staging.length; ++i) {
+            if (events[i] != null) {
+                try {
+                    events[i].close();
+                } catch (CudaException ignore) {
+                }
+            }
+            if (staging[i] != null) {
+                releaseStaging(staging[i]);
+            }
+        }
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (CudaException ignore) {
+            }
+        }
+    }
+
+    // The fallback for devices without peer access: every chunk crosses the
+    // bus twice, through a single pinned staging buffer
+    private void stagedCopyTo(long src, int dstDeviceId, long dst, long byteCount) throws CudaException {
+        PinnedHostMemory staging = acquireStaging(Math.min(byteCount, PinnedStagingPool.getChunkSize()));
+        try {
+            long host = staging.getAddress().getValue();
+            long chunk = staging.getLength();
+            for (long done = 0L; done < byteCount; done += chunk) {
+                long size = Math.min(chunk, byteCount - done);
+                backend.copyDeviceToHost(deviceId, src + done, host, size);
+                backend.copyHostToDevice(dstDeviceId, dst + done, host, size);
+            }
+        } finally {
+            releaseStaging(staging);
+        }
+    }
+
+    private CompletableFuture<Void> transferToDeviceAsync(CudaStream stream, Object array, int arrayLength,
+            int fromIndex, int toIndex, int logBase2UnitSize) throws CudaException {
+        streamCheck(stream);
+        rangeCheck(arrayLength, fromIndex, toIndex);
+        lengthCheck(toIndex - fromIndex, logBase2UnitSize);
+        long byteCount = (long) (toIndex - fromIndex) << logBase2UnitSize;
+        final PinnedHostMemory staging = acquireStaging(byteCount);
+        CompletableFuture<Void> done;
+        try {
+            staging.putBytes(array, (long) fromIndex << logBase2UnitSize, byteCount);
+            backend.copyHostToDeviceAsync(stream.getHandle(), deviceId, getAddress(),
+                    staging.getAddress().getValue(), byteCount);
+            done = stream.whenDone(new Runnable() {
+                @Override
+                public void run() {
+                    releaseStaging(staging);
+                    ReachabilityFence.protect(DeviceMemory.this);
+                }
+            });
+        } catch (RuntimeException e) {
+            releaseStaging(staging);
+            throw e;
+        }
+        recordStream(stream);
+        return done;
+    }
+
+    private CompletableFuture<Void> fetchToHostAsync(CudaStream stream, final Object array, int arrayLength,
+            int fromIndex, int toIndex, int logBase2UnitSize) throws CudaException {
+        streamCheck(stream);
+        rangeCheck(arrayLength, fromIndex, toIndex);
+        lengthCheck(toIndex - fromIndex, logBase2UnitSize);
+        final long byteOffset = (long) fromIndex << logBase2UnitSize;
+        final long byteCount = (long) (toIndex - fromIndex) << logBase2UnitSize;
+        final PinnedHostMemory staging = acquireStaging(byteCount);
+        CompletableFuture<Void> done;
+        try {
+            backend.copyDeviceToHostAsync(stream.getHandle(), deviceId, getAddress(),
+                    staging.getAddress().getValue(), byteCount);
+            done = stream.whenDone(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        staging.getBytes(array, byteOffset, byteCount);
+                    } finally {
+                        releaseStaging(staging);
+                        ReachabilityFence.protect(DeviceMemory.this);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            releaseStaging(staging);
+            throw e;
+        }
+        recordStream(stream);
+        return done;
+    }
+
+    // Asynchronous copies need pinned memory: use a pooled staging buffer if
+    // the data fit into one (and one is available), a dedicated one otherwise
+    private static PinnedHostMemory acquireStaging(long byteCount) throws CudaException {
+        if (byteCount <= PinnedStagingPool.getChunkSize()) {
+            PinnedHostMemory staging = PinnedStagingPool.acquire();
+            if (staging != null) {
+                return staging;
+            }
+        }
+        return new PinnedHostMemory(byteCount);
+    }
+
+    private static void releaseStaging(PinnedHostMemory staging) {
+        if (PinnedStagingPool.isPooled(staging)) {
+            PinnedStagingPool.release(staging);
+        } else {
+            try {
+                staging.close();
+            } catch (Exception ignore) {
+            }
+        }
+    }
+
+    // keeps this buffer and the given memory (if any) reachable until the
+    // asynchronous work that uses them has completed
+    private Runnable keepReachable(final Object hostMemory) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ReachabilityFence.protect(hostMemory);
+                ReachabilityFence.protect(DeviceMemory.this);
+            }
+        };
+    }
+
+    // Notes that work using this buffer has been queued on the stream, so that
+    // its block isn't reused before that work has completed (even if the
+    // buffer gets closed right away)
+    /* package */void recordStream(CudaStream stream) throws CudaException {
+        CachingAllocator.recordStream((root != null) ? root.memoryAddress : memoryAddress, stream);
+    }
+
+    private void streamCheck(CudaStream stream) {
+        if (stream.getDeviceId() != deviceId) {
+            throw new IllegalArgumentException("stream device " + stream.getDeviceId() + " <> buffer device "
+                    + deviceId);
+        }
+    }
+
+    private void transferToDevice(Buffer buffer, int logBase2UnitSize) throws CudaException {
+        directCheck(buffer);
+        int position = buffer.position();
+        int count = buffer.limit() - position;
+        lengthCheck(count, logBase2UnitSize);
+        long hostAddress = UnsafeAccess.addressOf(buffer) + ((long) position << logBase2UnitSize);
+        backend.copyHostToDevice(deviceId, getAddress(), hostAddress, (long) count << logBase2UnitSize);
+        // the native memory of the buffer must not be freed before we're done
+        ReachabilityFence.protect(buffer);
+        ReachabilityFence.protect(this);
+        buffer.position(position + count);
+    }
+
+    private void fetchToHost(Buffer buffer, int logBase2UnitSize) throws CudaException {
+        directCheck(buffer);
+        if (buffer.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        int position = buffer.position();
+        int count = buffer.limit() - position;
+        lengthCheck(count, logBase2UnitSize);
+        long hostAddress = UnsafeAccess.addressOf(buffer) + ((long) position << logBase2UnitSize);
+        backend.copyDeviceToHost(deviceId, getAddress(), hostAddress, (long) count << logBase2UnitSize);
+        ReachabilityFence.protect(buffer);
+        ReachabilityFence.protect(this);
+        buffer.position(position + count);
+    }
+
+    private static void directCheck(Buffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("not a direct buffer: " + buffer);
+        }
+    }
+
+    private static void nativeOrderCheck(ByteOrder order) {
+        if (order != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("byte order: " + order);
+        }
+    }
+
+    private static void segmentCheck(MemorySegment segment) {
+        if (!JavaVersion.isAtLeastJava22()) {
+            throw new UnsupportedOperationException("MemorySegment requires Java 22 or later");
+        }
+        if (!segment.isNative()) {
+            throw new IllegalArgumentException("not a native segment: " + segment);
+        }
     }
 
     private void lengthCheck(long elementCount, int logBase2UnitSize) {
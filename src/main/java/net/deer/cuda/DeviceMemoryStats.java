@@ -0,0 +1,275 @@
+package net.deer.cuda;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/**
+ * The {@code DeviceMemoryStats} class keeps the live memory accounting of a
+ * specific device: the bytes held by open {@link DeviceMemory} buffers, their
+ * peak, the number of live buffers, the number of slices, the allocation rate
+ * and the number of buffers that had to be reclaimed by the garbage collector.
+ * <p>
+ * The statistics of every device that has been used are registered with the
+ * platform MBean server as
+ * {@code net.deer.cuda:type=DeviceMemory,device=<deviceId>}.
+ * <p>
+ * Setting {@code net.deer.cuda.SystemProps.leakTracking.enabled} to
+ * {@code true} additionally records the allocation stack trace of every
+ * buffer, which can be dumped through {@link #dumpLeaks()}. This is costly and
+ * meant for debugging only.
+ */
+public final class DeviceMemoryStats implements DeviceMemoryStatsMXBean {
+
+    private static final String OBJECT_NAME = "net.deer.cuda:type=DeviceMemory,device=";
+
+    private static final boolean LEAK_TRACKING = SystemProps.LEAK_TRACKING;
+
+    // the number of reclaimed allocation sites kept for dumpLeaks()
+    private static final int MAX_RECLAIMED_SITES = 64;
+
+    // the window of getAllocationRate()
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private static final ConcurrentHashMap<Integer, DeviceMemoryStats> stats = new ConcurrentHashMap<Integer, DeviceMemoryStats>();
+
+    private final int deviceId;
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong peakBytes = new AtomicLong();
+    private final AtomicLong liveBuffers = new AtomicLong();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder slices = new LongAdder();
+    private final AtomicLong reclaimed = new AtomicLong();
+
+    // the allocation counts of the last RATE_WINDOW_SECONDS seconds (the
+    // current one included) since the creation of this instance,
+    // the slot of second s is s % length and holds s << 32 | count
+    private final long createdNanos = System.nanoTime();
+    private final AtomicLongArray rateSlots = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+
+    private final ConcurrentHashMap<Address, Throwable> openSites = new ConcurrentHashMap<Address, Throwable>();
+    private final ArrayDeque<Throwable> reclaimedSites = new ArrayDeque<Throwable>();
+
+    private DeviceMemoryStats(int deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    /**
+     * Returns the memory statistics of the specified {@code device}.
+     *
+     * @param device
+     *            the device of interest
+     * @return the statistics of the device
+     */
+    public static DeviceMemoryStats forDevice(GPUDevice device) {
+        return forDevice(device.getDeviceId());
+    }
+
+    /* package */static DeviceMemoryStats forDevice(int deviceId) {
+        DeviceMemoryStats deviceStats = stats.get(deviceId);
+        if (deviceStats == null) {
+            DeviceMemoryStats created = new DeviceMemoryStats(deviceId);
+            deviceStats = stats.putIfAbsent(deviceId, created);
+            if (deviceStats == null) {
+                deviceStats = created;
+                register(created);
+            }
+        }
+        return deviceStats;
+    }
+
+    private static void register(DeviceMemoryStats deviceStats) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(deviceStats,
+                    new ObjectName(OBJECT_NAME + deviceStats.deviceId));
+        } catch (Exception ignore) {
+            // JMX is optional, the statistics are still available directly
+        } catch (LinkageError ignore) {
+            // java.management isn't available
+        }
+    }
+
+    /* package */void allocated(Address address, long byteCount) {
+        long bytes = allocatedBytes.addAndGet(byteCount);
+        long peak;
+        while (bytes > (peak = peakBytes.get()) && !peakBytes.compareAndSet(peak, bytes)) {
+            // retry
+        }
+        liveBuffers.incrementAndGet();
+        allocations.increment();
+        countAllocation();
+        if (LEAK_TRACKING) {
+            openSites.put(address, new Throwable(
+                    "DeviceMemory of " + byteCount + " bytes allocated on device " + deviceId));
+        }
+    }
+
+    /* package */void released(Address address, long byteCount, boolean byReclaimer) {
+        allocatedBytes.addAndGet(-byteCount);
+        liveBuffers.decrementAndGet();
+        if (byReclaimer) {
+            reclaimed.incrementAndGet();
+        }
+        if (LEAK_TRACKING) {
+            Throwable site = openSites.remove(address);
+            if (byReclaimer && site != null) {
+                synchronized (reclaimedSites) {
+                    if (reclaimedSites.size() == MAX_RECLAIMED_SITES) {
+                        reclaimedSites.removeFirst();
+                    }
+                    reclaimedSites.addLast(site);
+                }
+            }
+        }
+    }
+
+    /* package */void sliced() {
+        slices.increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPeakBytes() {
+        return peakBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLiveBuffers() {
+        return liveBuffers.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSliceCount() {
+        return slices.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAllocationCount() {
+        return allocations.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getAllocationRate() {
+        long elapsedNanos = System.nanoTime() - createdNanos;
+        long now = elapsedNanos / 1000000000L;
+        // the window starts RATE_WINDOW_SECONDS - 1 completed seconds before
+        // the current (partial) one, or at the creation if that's later
+        long first = Math.max(0L, now - RATE_WINDOW_SECONDS + 1L);
+        long count = 0L;
+        for (int i = 0; i < rateSlots.length(); ++i) {
+            long slot = rateSlots.get(i);
+            long second = slot >>> 32;
+            if (second >= first && second <= now) {
+                count += slot & 0xFFFFFFFFL;
+            }
+        }
+        long windowNanos = elapsedNanos - first * 1000000000L;
+        return (windowNanos > 0L) ? count * 1e9 / windowNanos : 0.0;
+    }
+
+    private void countAllocation() {
+        long second = secondsSinceCreation();
+        int i = (int) (second % rateSlots.length());
+        long slot;
+        long next;
+        do {
+            slot = rateSlots.get(i);
+            // a slot left over from an earlier second starts again
+            next = ((slot >>> 32) == second) ? slot + 1L : (second << 32) | 1L;
+        } while (!rateSlots.compareAndSet(i, slot, next));
+    }
+
+    private long secondsSinceCreation() {
+        return (System.nanoTime() - createdNanos) / 1000000000L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getReclaimedCount() {
+        return reclaimed.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLeakTracking() {
+        return LEAK_TRACKING;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dumpLeaks() {
+        if (!LEAK_TRACKING) {
+            return "Leak tracking is disabled (set net.deer.cuda.SystemProps.leakTracking.enabled=true)";
+        }
+        ArrayList<Throwable> open = new ArrayList<Throwable>(openSites.values());
+        ArrayList<Throwable> lost;
+        synchronized (reclaimedSites) {
+            lost = new ArrayList<Throwable>(reclaimedSites);
+        }
+        StringWriter out = new StringWriter();
+        PrintWriter pw = new PrintWriter(out);
+        pw.println("Device " + deviceId + ": " + open.size() + " open buffer(s)");
+        for (Throwable site : open) {
+            site.printStackTrace(pw);
+        }
+        pw.println("Device " + deviceId + ": " + lost.size() + " recently reclaimed unclosed buffer(s)");
+        for (Throwable site : lost) {
+            site.printStackTrace(pw);
+        }
+        pw.flush();
+        return out.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetPeak() {
+        peakBytes.set(allocatedBytes.get());
+    }
+}
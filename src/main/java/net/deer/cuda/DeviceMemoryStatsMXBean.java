@@ -0,0 +1,97 @@
+package net.deer.cuda;
+
+/**
+ * The management interface of the per-device memory accounting, registered
+ * with the platform MBean server as
+ * {@code net.deer.cuda:type=DeviceMemory,device=<deviceId>}.
+ *
+ * @see DeviceMemoryStats
+ */
+public interface DeviceMemoryStatsMXBean {
+
+    /**
+     * Returns the id of the device these statistics belong to.
+     *
+     * @return the device id
+     */
+    int getDeviceId();
+
+    /**
+     * Returns the number of bytes currently held by open {@link DeviceMemory}
+     * buffers (as requested, i.e. without the rounding of the allocator).
+     *
+     * @return the number of allocated bytes
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Returns the highest value {@link #getAllocatedBytes()} has reached since
+     * startup or the last {@link #resetPeak()}.
+     *
+     * @return the peak number of allocated bytes
+     */
+    long getPeakBytes();
+
+    /**
+     * Returns the number of open (neither closed nor reclaimed) buffers.
+     *
+     * @return the number of live buffers
+     */
+    long getLiveBuffers();
+
+    /**
+     * Returns the number of slices that have been created so far. Slices are
+     * untracked views, so only their creation is counted.
+     *
+     * @return the total number of slices
+     */
+    long getSliceCount();
+
+    /**
+     * Returns the total number of buffers allocated so far.
+     *
+     * @return the total number of allocations
+     */
+    long getAllocationCount();
+
+    /**
+     * Returns the number of allocations per second over the last 10 seconds,
+     * the current one up to now included (or since the statistics of the
+     * device were created, if that's shorter). The rate is based on the time
+     * that has actually elapsed, so it isn't 0 during the first second.
+     * Reading the rate has no side effects.
+     *
+     * @return the allocation rate
+     */
+    double getAllocationRate();
+
+    /**
+     * Returns the number of buffers that were released by the
+     * {@link Reclaimer} because they became unreachable without being closed.
+     *
+     * @return the number of buffers reclaimed by the garbage collector
+     */
+    long getReclaimedCount();
+
+    /**
+     * Is leak tracking ({@code net.deer.cuda.SystemProps.leakTracking.enabled})
+     * turned on?
+     *
+     * @return {@code true} if allocation sites are recorded
+     */
+    boolean isLeakTracking();
+
+    /**
+     * Returns the allocation stack traces of all open buffers and of the most
+     * recent buffers that have been reclaimed without being closed. Returns a
+     * short note if leak tracking is turned off.
+     *
+     * @return a human readable dump of the recorded allocation sites
+     */
+    String dumpLeaks();
+
+    /**
+     * Resets the peak to the current number of allocated bytes.
+     */
+    void resetPeak();
+}
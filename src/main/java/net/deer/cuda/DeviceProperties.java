@@ -0,0 +1,189 @@
+package net.deer.cuda;
+
+/**
+ * An immutable snapshot of the properties of a {@link GPUDevice} (a subset of
+ * {@code cudaDeviceProp}).
+ * <p>
+ * The properties of a device are queried once and cached, see
+ * {@link GPUDevice#getProperties()}.
+ */
+public final class DeviceProperties {
+
+    // the layout of the values array filled in by the backends
+    /* package */static final int TOTAL_GLOBAL_MEM = 0;
+    /* package */static final int SHARED_MEM_PER_BLOCK = 1;
+    /* package */static final int WARP_SIZE = 2;
+    /* package */static final int MAX_THREADS_PER_BLOCK = 3;
+    /* package */static final int MAX_THREADS_DIM_X = 4;
+    /* package */static final int MAX_THREADS_DIM_Y = 5;
+    /* package */static final int MAX_THREADS_DIM_Z = 6;
+    /* package */static final int MAX_GRID_SIZE_X = 7;
+    /* package */static final int MAX_GRID_SIZE_Y = 8;
+    /* package */static final int MAX_GRID_SIZE_Z = 9;
+    /* package */static final int MULTI_PROCESSOR_COUNT = 10;
+    /* package */static final int MAX_THREADS_PER_MULTI_PROCESSOR = 11;
+    /* package */static final int MAJOR = 12;
+    /* package */static final int MINOR = 13;
+    /* package */static final int CLOCK_RATE = 14;
+    /* package */static final int VALUE_COUNT = 15;
+
+    private final int deviceId;
+    private final String name;
+    private final long totalGlobalMem;
+    private final long sharedMemPerBlock;
+    private final int warpSize;
+    private final int maxThreadsPerBlock;
+    private final Dim3 maxThreadsDim;
+    private final Dim3 maxGridSize;
+    private final int multiProcessorCount;
+    private final int maxThreadsPerMultiProcessor;
+    private final int major;
+    private final int minor;
+    private final int clockRate;
+
+    /* package */DeviceProperties(int deviceId, String name, long[] values) {
+        this.deviceId = deviceId;
+        this.name = name;
+        this.totalGlobalMem = values[TOTAL_GLOBAL_MEM];
+        this.sharedMemPerBlock = values[SHARED_MEM_PER_BLOCK];
+        this.warpSize = (int) values[WARP_SIZE];
+        this.maxThreadsPerBlock = (int) values[MAX_THREADS_PER_BLOCK];
+        this.maxThreadsDim = new Dim3((int) values[MAX_THREADS_DIM_X], (int) values[MAX_THREADS_DIM_Y],
+                (int) values[MAX_THREADS_DIM_Z]);
+        this.maxGridSize = new Dim3((int) values[MAX_GRID_SIZE_X], (int) values[MAX_GRID_SIZE_Y],
+                (int) values[MAX_GRID_SIZE_Z]);
+        this.multiProcessorCount = (int) values[MULTI_PROCESSOR_COUNT];
+        this.maxThreadsPerMultiProcessor = (int) values[MAX_THREADS_PER_MULTI_PROCESSOR];
+        this.major = (int) values[MAJOR];
+        this.minor = (int) values[MINOR];
+        this.clockRate = (int) values[CLOCK_RATE];
+    }
+
+    /**
+     * Returns the id of the device these properties belong to.
+     *
+     * @return the device id
+     */
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the name of the device.
+     *
+     * @return the device name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the amount of global memory of the device in bytes.
+     *
+     * @return the total global memory in bytes
+     */
+    public long getTotalGlobalMem() {
+        return totalGlobalMem;
+    }
+
+    /**
+     * Returns the amount of shared memory available to a thread block in
+     * bytes.
+     *
+     * @return the shared memory per block in bytes
+     */
+    public long getSharedMemPerBlock() {
+        return sharedMemPerBlock;
+    }
+
+    /**
+     * Returns the warp size in threads.
+     *
+     * @return the warp size
+     */
+    public int getWarpSize() {
+        return warpSize;
+    }
+
+    /**
+     * Returns the maximum number of threads per block.
+     *
+     * @return the maximum number of threads per block
+     */
+    public int getMaxThreadsPerBlock() {
+        return maxThreadsPerBlock;
+    }
+
+    /**
+     * Returns the maximum size of each dimension of a block.
+     *
+     * @return the maximum block dimensions
+     */
+    public Dim3 getMaxThreadsDim() {
+        return maxThreadsDim;
+    }
+
+    /**
+     * Returns the maximum size of each dimension of a grid.
+     *
+     * @return the maximum grid dimensions
+     */
+    public Dim3 getMaxGridSize() {
+        return maxGridSize;
+    }
+
+    /**
+     * Returns the number of multiprocessors (SMs) of the device.
+     *
+     * @return the number of multiprocessors
+     */
+    public int getMultiProcessorCount() {
+        return multiProcessorCount;
+    }
+
+    /**
+     * Returns the maximum number of resident threads per multiprocessor.
+     *
+     * @return the maximum number of threads per multiprocessor
+     */
+    public int getMaxThreadsPerMultiProcessor() {
+        return maxThreadsPerMultiProcessor;
+    }
+
+    /**
+     * Returns the major revision number of the compute capability.
+     *
+     * @return the major compute capability
+     */
+    public int getMajor() {
+        return major;
+    }
+
+    /**
+     * Returns the minor revision number of the compute capability.
+     *
+     * @return the minor compute capability
+     */
+    public int getMinor() {
+        return minor;
+    }
+
+    /**
+     * Returns the clock frequency in kilohertz.
+     *
+     * @return the clock rate in kHz
+     */
+    public int getClockRate() {
+        return clockRate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[DeviceProperties: device " + deviceId + " \"" + name + "\", compute " + major + "." + minor
+                + ", " + multiProcessorCount + " SMs, " + totalGlobalMem + " bytes, " + maxThreadsPerBlock
+                + " threads/block ]";
+    }
+}
@@ -0,0 +1,486 @@
+package net.deer.cuda;
+
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy {@link DoubleStream}, {@link IntStream} and {@link LongStream} views
+ * (and the {@link Spliterator}s behind them) of the elements of a
+ * {@link DeviceMemory}, e.g.
+ *
+ * <pre>
+ * double max = DeviceStreams.doubles(result).parallel().max().getAsDouble();
+ * boolean any = DeviceStreams.ints(labels).anyMatch(...);
+ * </pre>
+ *
+ * A view doesn't copy the buffer to the host at once. It fetches the elements
+ * in chunks of {@code chunkSize} elements ({@value #DEFAULT_CHUNK_SIZE} by
+ * default) into a host array that is allocated on the first fetch and reused
+ * for all further chunks, so scanning a buffer of any size needs one chunk of
+ * heap per traversing thread. A chunk is fetched only when the stream asks
+ * for its first element: a short-circuiting operation ({@code anyMatch},
+ * {@code findFirst}, {@code limit}, ...) stops fetching as soon as it has its
+ * result.
+ * <p>
+ * The spliterators split at chunk boundaries into disjoint sub-ranges of the
+ * device region, so a parallel stream fetches the chunks of its parts
+ * concurrently, each part into its own chunk array. A spliterator whose
+ * current chunk hasn't been consumed completely doesn't split.
+ * <p>
+ * The element count of a view is the length of the buffer divided by the
+ * element size (trailing bytes are ignored). The elements are read when their
+ * chunk is fetched, i.e. while the stream runs: the buffer must neither be
+ * modified nor closed before the terminal operation has completed. A closed
+ * buffer makes the traversal fail with an {@link IllegalStateException}, a
+ * failed copy with a {@link CudaException}.
+ */
+public final class DeviceStreams {
+
+    /**
+     * The default number of elements fetched at once.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+            | Spliterator.NONNULL;
+
+    /**
+     * Returns a sequential stream of the doubles in {@code memory}, fetched
+     * in chunks of {@value #DEFAULT_CHUNK_SIZE} elements.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @return a sequential stream of the elements of {@code memory}
+     */
+    public static DoubleStream doubles(DeviceMemory memory) {
+        return doubles(memory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns a sequential stream of the doubles in {@code memory}, fetched
+     * in chunks of {@code chunkSize} elements.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @param chunkSize
+     *            the number of elements fetched at once
+     * @return a sequential stream of the elements of {@code memory}
+     * @throws IllegalArgumentException
+     *             if {@code chunkSize} isn't positive
+     */
+    public static DoubleStream doubles(DeviceMemory memory, int chunkSize) {
+        return StreamSupport.doubleStream(doubleSpliterator(memory, chunkSize), false);
+    }
+
+    /**
+     * Returns a sequential stream of the floats in {@code memory}, widened to
+     * double, fetched in chunks of {@value #DEFAULT_CHUNK_SIZE} elements.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @return a sequential stream of the elements of {@code memory}
+     */
+    public static DoubleStream floats(DeviceMemory memory) {
+        return floats(memory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns a sequential stream of the floats in {@code memory}, widened to
+     * double, fetched in chunks of {@code chunkSize} elements.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @param chunkSize
+     *            the number of elements fetched at once
+     * @return a sequential stream of the elements of {@code memory}
+     * @throws IllegalArgumentException
+     *             if {@code chunkSize} isn't positive
+     */
+    public static DoubleStream floats(DeviceMemory memory, int chunkSize) {
+        return StreamSupport.doubleStream(floatSpliterator(memory, chunkSize), false);
+    }
+
+    /**
+     * Returns a sequential stream of the ints in {@code memory}, fetched in
+     * chunks of {@value #DEFAULT_CHUNK_SIZE} elements.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @return a sequential stream of the elements of {@code memory}
+     */
+    public static IntStream ints(DeviceMemory memory) {
+        return ints(memory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns a sequential stream of the ints in {@code memory}, fetched in
+     * chunks of {@code chunkSize} elements.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @param chunkSize
+     *            the number of elements fetched at once
+     * @return a sequential stream of the elements of {@code memory}
+     * @throws IllegalArgumentException
+     *             if {@code chunkSize} isn't positive
+     */
+    public static IntStream ints(DeviceMemory memory, int chunkSize) {
+        return StreamSupport.intStream(intSpliterator(memory, chunkSize), false);
+    }
+
+    /**
+     * Returns a sequential stream of the longs in {@code memory}, fetched in
+     * chunks of {@value #DEFAULT_CHUNK_SIZE} elements.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @return a sequential stream of the elements of {@code memory}
+     */
+    public static LongStream longs(DeviceMemory memory) {
+        return longs(memory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns a sequential stream of the longs in {@code memory}, fetched in
+     * chunks of {@code chunkSize} elements.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @param chunkSize
+     *            the number of elements fetched at once
+     * @return a sequential stream of the elements of {@code memory}
+     * @throws IllegalArgumentException
+     *             if {@code chunkSize} isn't positive
+     */
+    public static LongStream longs(DeviceMemory memory, int chunkSize) {
+        return StreamSupport.longStream(longSpliterator(memory, chunkSize), false);
+    }
+
+    /**
+     * Returns a spliterator over the doubles in {@code memory} that fetches
+     * chunks of {@code chunkSize} elements on demand.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @param chunkSize
+     *            the number of elements fetched at once
+     * @return a spliterator over the elements of {@code memory}
+     * @throws IllegalArgumentException
+     *             if {@code chunkSize} isn't positive
+     */
+    public static Spliterator.OfDouble doubleSpliterator(DeviceMemory memory, int chunkSize) {
+        return new DoubleChunks(memory, chunkSizeCheck(chunkSize), 0L, memory.getLength() >>> 3);
+    }
+
+    /**
+     * Returns a spliterator over the floats in {@code memory}, widened to
+     * double, that fetches chunks of {@code chunkSize} elements on demand.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @param chunkSize
+     *            the number of elements fetched at once
+     * @return a spliterator over the elements of {@code memory}
+     * @throws IllegalArgumentException
+     *             if {@code chunkSize} isn't positive
+     */
+    public static Spliterator.OfDouble floatSpliterator(DeviceMemory memory, int chunkSize) {
+        return new FloatChunks(memory, chunkSizeCheck(chunkSize), 0L, memory.getLength() >>> 2);
+    }
+
+    /**
+     * Returns a spliterator over the ints in {@code memory} that fetches
+     * chunks of {@code chunkSize} elements on demand.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @param chunkSize
+     *            the number of elements fetched at once
+     * @return a spliterator over the elements of {@code memory}
+     * @throws IllegalArgumentException
+     *             if {@code chunkSize} isn't positive
+     */
+    public static Spliterator.OfInt intSpliterator(DeviceMemory memory, int chunkSize) {
+        return new IntChunks(memory, chunkSizeCheck(chunkSize), 0L, memory.getLength() >>> 2);
+    }
+
+    /**
+     * Returns a spliterator over the longs in {@code memory} that fetches
+     * chunks of {@code chunkSize} elements on demand.
+     *
+     * @param memory
+     *            the buffer or slice to be read
+     * @param chunkSize
+     *            the number of elements fetched at once
+     * @return a spliterator over the elements of {@code memory}
+     * @throws IllegalArgumentException
+     *             if {@code chunkSize} isn't positive
+     */
+    public static Spliterator.OfLong longSpliterator(DeviceMemory memory, int chunkSize) {
+        return new LongChunks(memory, chunkSizeCheck(chunkSize), 0L, memory.getLength() >>> 3);
+    }
+
+    private static int chunkSizeCheck(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        return chunkSize;
+    }
+
+    // The elements [index, fence) of the memory that haven't been fetched
+    // yet and the elements [pos, end) of the chunk array that haven't been
+    // consumed yet
+    private abstract static class Chunks {
+        final DeviceMemory memory;
+        final int logBase2UnitSize;
+        final int chunkSize;
+        final long fence;
+        long index;
+        int pos;
+        int end;
+
+        Chunks(DeviceMemory memory, int logBase2UnitSize, int chunkSize, long index, long fence) {
+            this.memory = memory;
+            this.logBase2UnitSize = logBase2UnitSize;
+            this.chunkSize = chunkSize;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        // Returns the chunk array, allocated with the given length on the
+        // first call
+        abstract Object array(int length);
+
+        // Fetches the next chunk, returns false if there is none
+        final boolean fetch() {
+            long remaining = fence - index;
+            if (remaining <= 0L) {
+                return false;
+            }
+            int count = (int) Math.min(chunkSize, remaining);
+            memory.fetchToHost(index << logBase2UnitSize, array(count), (long) count << logBase2UnitSize);
+            index += count;
+            pos = 0;
+            end = count;
+            return true;
+        }
+
+        // Returns the end of the prefix to be split off or -1 if this
+        // doesn't split. The prefix is a whole number of chunks, which
+        // leaves the suffix at least one chunk.
+        final long splitPoint() {
+            long remaining = fence - index;
+            if (pos < end || remaining <= chunkSize) {
+                return -1L;
+            }
+            long half = (remaining >>> 1) / chunkSize * chunkSize;
+            return index + Math.max(half, chunkSize);
+        }
+
+        public final long estimateSize() {
+            return (fence - index) + (end - pos);
+        }
+
+        public final int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+
+    private static final class DoubleChunks extends Chunks implements Spliterator.OfDouble {
+        private double[] chunk;
+
+        DoubleChunks(DeviceMemory memory, int chunkSize, long index, long fence) {
+            super(memory, 3, chunkSize, index, fence);
+        }
+
+        @Override
+        Object array(int length) {
+            if (chunk == null) {
+                chunk = new double[length];
+            }
+            return chunk;
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (pos == end && !fetch()) {
+                return false;
+            }
+            action.accept(chunk[pos++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            do {
+                double[] a = chunk;
+                for (int i = pos, n = end; i < n; ++i) {
+                    action.accept(a[i]);
+                }
+                pos = end;
+            } while (fetch());
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            long mid = splitPoint();
+            if (mid < 0L) {
+                return null;
+            }
+            DoubleChunks prefix = new DoubleChunks(memory, chunkSize, index, mid);
+            index = mid;
+            return prefix;
+        }
+    }
+
+    private static final class FloatChunks extends Chunks implements Spliterator.OfDouble {
+        private float[] chunk;
+
+        FloatChunks(DeviceMemory memory, int chunkSize, long index, long fence) {
+            super(memory, 2, chunkSize, index, fence);
+        }
+
+        @Override
+        Object array(int length) {
+            if (chunk == null) {
+                chunk = new float[length];
+            }
+            return chunk;
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (pos == end && !fetch()) {
+                return false;
+            }
+            action.accept(chunk[pos++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            do {
+                float[] a = chunk;
+                for (int i = pos, n = end; i < n; ++i) {
+                    action.accept(a[i]);
+                }
+                pos = end;
+            } while (fetch());
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            long mid = splitPoint();
+            if (mid < 0L) {
+                return null;
+            }
+            FloatChunks prefix = new FloatChunks(memory, chunkSize, index, mid);
+            index = mid;
+            return prefix;
+        }
+    }
+
+    private static final class IntChunks extends Chunks implements Spliterator.OfInt {
+        private int[] chunk;
+
+        IntChunks(DeviceMemory memory, int chunkSize, long index, long fence) {
+            super(memory, 2, chunkSize, index, fence);
+        }
+
+        @Override
+        Object array(int length) {
+            if (chunk == null) {
+                chunk = new int[length];
+            }
+            return chunk;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (pos == end && !fetch()) {
+                return false;
+            }
+            action.accept(chunk[pos++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            do {
+                int[] a = chunk;
+                for (int i = pos, n = end; i < n; ++i) {
+                    action.accept(a[i]);
+                }
+                pos = end;
+            } while (fetch());
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            long mid = splitPoint();
+            if (mid < 0L) {
+                return null;
+            }
+            IntChunks prefix = new IntChunks(memory, chunkSize, index, mid);
+            index = mid;
+            return prefix;
+        }
+    }
+
+    private static final class LongChunks extends Chunks implements Spliterator.OfLong {
+        private long[] chunk;
+
+        LongChunks(DeviceMemory memory, int chunkSize, long index, long fence) {
+            super(memory, 3, chunkSize, index, fence);
+        }
+
+        @Override
+        Object array(int length) {
+            if (chunk == null) {
+                chunk = new long[length];
+            }
+            return chunk;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (pos == end && !fetch()) {
+                return false;
+            }
+            action.accept(chunk[pos++]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            do {
+                long[] a = chunk;
+                for (int i = pos, n = end; i < n; ++i) {
+                    action.accept(a[i]);
+                }
+                pos = end;
+            } while (fetch());
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long mid = splitPoint();
+            if (mid < 0L) {
+                return null;
+            }
+            LongChunks prefix = new LongChunks(memory, chunkSize, index, mid);
+            index = mid;
+            return prefix;
+        }
+    }
+
+    private DeviceStreams() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,124 @@
+package net.deer.cuda;
+
+/**
+ * Generates the CUDA C++ source of the kernel that evaluates an
+ * {@link ElementwiseProgram}, compiled at runtime by the {@link CudaBackend}.
+ * <p>
+ * The kernel has the signature
+ * {@code fused(unsigned long long n, T* out, const T* in0, ..., T s0, ...)},
+ * i.e. the parameters follow the order of the program's inputs and scalars.
+ * It is a grid-stride loop whose body evaluates the program for one element
+ * in registers, so every input element is read once and every output element
+ * is written once, however long the expression is. The output may be one of
+ * the inputs, hence the pointers aren't declared {@code __restrict__}.
+ */
+final class ElementwiseKernels {
+
+    /* package */static final String KERNEL_NAME = "fused";
+
+    // the block size of the launch
+    /* package */static final int THREADS_PER_BLOCK = 256;
+
+    // the grid size limit, the kernel loops beyond it (as in VectorOps.cu)
+    private static final long MAX_BLOCKS = 1024L;
+
+    /* package */static int blocksFor(long n) {
+        return (int) Math.min((n + THREADS_PER_BLOCK - 1) / THREADS_PER_BLOCK, MAX_BLOCKS);
+    }
+
+    /* package */static String source(ElementwiseProgram program) {
+        String t = (program.getElementSize() == 4) ? "float" : "double";
+        StringBuilder buf = new StringBuilder(512 + 48 * program.getLength());
+        buf.append("extern \"C\" __global__ void ").append(KERNEL_NAME).append("(unsigned long long n, ").append(t)
+                .append("* out");
+        for (int i = 0; i < program.getInputCount(); ++i) {
+            buf.append(", const ").append(t).append("* in").append(i);
+        }
+        for (int i = 0; i < program.getScalarCount(); ++i) {
+            buf.append(", ").append(t).append(" s").append(i);
+        }
+        buf.append(") {\n");
+        buf.append("    unsigned long long stride = (unsigned long long) blockDim.x * gridDim.x;\n");
+        buf.append("    for (unsigned long long i = (unsigned long long) blockIdx.x * blockDim.x + threadIdx.x;");
+        buf.append(" i < n; i += stride) {\n");
+        // every instruction defines a new temporary t<pc>, the stack holds
+        // the numbers of the temporaries that haven't been consumed yet
+        int[] code = program.getCode();
+        int[] stack = new int[program.getStackDepth()];
+        int sp = 0;
+        for (int pc = 0; pc < code.length; pc += 2) {
+            int opcode = code[pc];
+            int operand = code[pc + 1];
+            int tmp = pc >>> 1;
+            buf.append("        ").append(t).append(" t").append(tmp).append(" = ");
+            if (opcode == ElementwiseProgram.LOAD) {
+                buf.append("in").append(operand).append("[i]");
+            } else if (opcode == ElementwiseProgram.CONST) {
+                buf.append('s').append(operand);
+            } else if (ElementwiseProgram.isUnary(opcode)) {
+                unary(buf, opcode, t, stack[--sp]);
+            } else {
+                int right = stack[--sp];
+                binary(buf, opcode, t, stack[--sp], right);
+            }
+            buf.append(";\n");
+            stack[sp++] = tmp;
+        }
+        buf.append("        out[i] = t").append(stack[0]).append(";\n");
+        buf.append("    }\n");
+        buf.append("}\n");
+        return buf.toString();
+    }
+
+    private static void unary(StringBuilder buf, int opcode, String t, int arg) {
+        if (opcode == ElementwiseProgram.NEG) {
+            buf.append("-t").append(arg);
+            return;
+        }
+        switch (opcode) {
+        case ElementwiseProgram.ABS:
+            buf.append("fabs");
+            break;
+        case ElementwiseProgram.SQRT:
+            buf.append("sqrt");
+            break;
+        case ElementwiseProgram.EXP:
+            buf.append("exp");
+            break;
+        default:
+            buf.append("log");
+            break;
+        }
+        // the float variants of the math functions carry an 'f' suffix
+        buf.append(t.equals("float") ? "f(t" : "(t").append(arg).append(')');
+    }
+
+    private static void binary(StringBuilder buf, int opcode, String t, int left, int right) {
+        if (opcode == ElementwiseProgram.MIN || opcode == ElementwiseProgram.MAX) {
+            // fmin / fmax return the other operand if one of them is NaN
+            buf.append((opcode == ElementwiseProgram.MIN) ? "fmin" : "fmax").append(t.equals("float") ? "f(t" : "(t")
+                    .append(left).append(", t").append(right).append(')');
+            return;
+        }
+        char op;
+        switch (opcode) {
+        case ElementwiseProgram.ADD:
+            op = '+';
+            break;
+        case ElementwiseProgram.SUB:
+            op = '-';
+            break;
+        case ElementwiseProgram.MUL:
+            op = '*';
+            break;
+        default:
+            op = '/';
+            break;
+        }
+        buf.append('t').append(left).append(' ').append(op).append(" t").append(right);
+    }
+
+    private ElementwiseKernels() {
+        throw new AssertionError();
+    }
+}
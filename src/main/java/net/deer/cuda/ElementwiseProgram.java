@@ -0,0 +1,174 @@
+package net.deer.cuda;
+
+import java.util.Arrays;
+
+/**
+ * A flattened {@link Expr}: the postfix instruction sequence that computes
+ * one element of the result from the elements at the same index of the input
+ * buffers and from the scalars of the expression.
+ * <p>
+ * An instruction is a pair of an opcode and an operand in {@link #getCode()}.
+ * {@link #LOAD} and {@link #CONST} push the element of an input buffer or a
+ * scalar (the operand is its index), the unary and binary operations replace
+ * the topmost one or two values by their result. The value left on the stack
+ * is the result. The values of the scalars are not part of the program, so
+ * all expressions of the same shape share one program (and one compiled
+ * kernel).
+ * <p>
+ * A program is immutable.
+ */
+final class ElementwiseProgram {
+
+    // the opcodes
+    /* package */static final int LOAD = 0;
+    /* package */static final int CONST = 1;
+    /* package */static final int NEG = 2;
+    /* package */static final int ABS = 3;
+    /* package */static final int SQRT = 4;
+    /* package */static final int EXP = 5;
+    /* package */static final int LOG = 6;
+    /* package */static final int ADD = 7;
+    /* package */static final int SUB = 8;
+    /* package */static final int MUL = 9;
+    /* package */static final int DIV = 10;
+    /* package */static final int MIN = 11;
+    /* package */static final int MAX = 12;
+
+    private final int elementSize;
+    private final int[] code;
+    private final int inputCount;
+    private final int scalarCount;
+    private final int stackDepth;
+    private final String key;
+
+    /* package */ElementwiseProgram(int elementSize, int[] code, int inputCount, int scalarCount) {
+        if (elementSize != 4 && elementSize != 8) {
+            throw new IllegalArgumentException("elementSize: " + elementSize);
+        }
+        this.elementSize = elementSize;
+        this.code = code.clone();
+        this.inputCount = inputCount;
+        this.scalarCount = scalarCount;
+        this.stackDepth = verify(this.code, inputCount, scalarCount);
+        this.key = elementSize + ":" + Arrays.toString(this.code);
+    }
+
+    /* package */static boolean isUnary(int opcode) {
+        return NEG <= opcode && opcode <= LOG;
+    }
+
+    /* package */static boolean isBinary(int opcode) {
+        return ADD <= opcode && opcode <= MAX;
+    }
+
+    /**
+     * Returns the size of an element in bytes, 4 for float and 8 for double.
+     */
+    int getElementSize() {
+        return elementSize;
+    }
+
+    /**
+     * Returns the instructions (do not modify).
+     */
+    int[] getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the number of instructions.
+     */
+    int getLength() {
+        return code.length >>> 1;
+    }
+
+    /**
+     * Returns the number of input buffers the program reads.
+     */
+    int getInputCount() {
+        return inputCount;
+    }
+
+    /**
+     * Returns the number of scalars the program reads.
+     */
+    int getScalarCount() {
+        return scalarCount;
+    }
+
+    /**
+     * Returns the maximal number of values on the stack.
+     */
+    int getStackDepth() {
+        return stackDepth;
+    }
+
+    /**
+     * Returns a string that is equal for equal programs, suitable as the key
+     * of a cache of compiled programs.
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        return other instanceof ElementwiseProgram && key.equals(((ElementwiseProgram) other).key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[ElementwiseProgram: " + key + " ]";
+    }
+
+    // Checks that the program is well-formed and returns its stack depth
+    private static int verify(int[] code, int inputCount, int scalarCount) {
+        if (code.length == 0 || (code.length & 1) != 0) {
+            throw new IllegalArgumentException("malformed program of length " + code.length);
+        }
+        int depth = 0;
+        int maxDepth = 0;
+        for (int pc = 0; pc < code.length; pc += 2) {
+            int opcode = code[pc];
+            int operand = code[pc + 1];
+            if (opcode == LOAD || opcode == CONST) {
+                if (operand < 0 || operand >= ((opcode == LOAD) ? inputCount : scalarCount)) {
+                    throw new IllegalArgumentException("operand out of range at " + (pc >>> 1));
+                }
+                maxDepth = Math.max(maxDepth, ++depth);
+            } else if (isUnary(opcode)) {
+                if (depth < 1) {
+                    throw new IllegalArgumentException("stack underflow at " + (pc >>> 1));
+                }
+            } else if (isBinary(opcode)) {
+                if (depth < 2) {
+                    throw new IllegalArgumentException("stack underflow at " + (pc >>> 1));
+                }
+                --depth;
+            } else {
+                throw new IllegalArgumentException("unknown opcode " + opcode + " at " + (pc >>> 1));
+            }
+        }
+        if (depth != 1) {
+            throw new IllegalArgumentException("program leaves " + depth + " values on the stack");
+        }
+        return maxDepth;
+    }
+}
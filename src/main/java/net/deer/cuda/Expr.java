@@ -0,0 +1,664 @@
+package net.deer.cuda;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A lazy element-wise expression over float or double vectors that live in
+ * {@link DeviceMemory}.
+ * <p>
+ * An expression is built from buffers ({@link #floats(DeviceMemory)},
+ * {@link #doubles(DeviceMemory)}) and scalars ({@link #scalar(double)}) with
+ * arithmetic operations, e.g.
+ *
+ * <pre>
+ * Expr.floats(a).mul(Expr.floats(b)).add(Expr.floats(c)).into(d);
+ * </pre>
+ *
+ * Nothing is computed while the expression is built. The terminal operations
+ * {@code into} (which may also be queued on a {@link CudaStream}) and
+ * {@code fetch} evaluate the whole expression
+ * in a single pass over the memory: on a GPU one kernel, generated for the
+ * shape of the expression and compiled at runtime on its first use (and
+ * cached per device afterwards), reads every input element once and keeps
+ * the intermediate results in registers. A chain of {@code k} operations thus
+ * costs one launch and one pass instead of {@code k}. With the host backend
+ * the expression is evaluated in parallel on the common fork/join pool, tile
+ * by tile, with one fused loop per operation over a tile that stays in the
+ * cache.
+ * <p>
+ * A vector is a whole buffer or slice, its element count is its length
+ * divided by the element size (trailing bytes are ignored). All buffers of an
+ * expression must have the same element type and count, live on the same
+ * device and start at a multiple of the element size. Scalars are broadcast
+ * to every element and take on the element type of the expression (the
+ * values of the scalars aren't part of the generated kernel, so expressions
+ * that differ in their scalars only share a kernel). An expression may read
+ * at most {@value #MAX_OPERANDS} distinct buffers and scalars.
+ * <p>
+ * Float expressions are evaluated in float precision, one rounding per
+ * operation. Except for the rounding of the device's transcendental functions
+ * and a device compiler that may contract a multiplication and an addition
+ * into one fused multiply-add, both backends compute the same results.
+ * {@code min} and {@code max} return the other operand if one operand is NaN.
+ * <p>
+ * Expressions are immutable and may be shared between threads. The buffers
+ * are only referenced, they must stay open until the expression has been
+ * evaluated for the last time.
+ */
+public final class Expr {
+
+    /**
+     * The maximal number of distinct buffers and scalars an expression may
+     * read (the size limit of a {@link KernelParams} block minus the element
+     * count and the output buffer).
+     */
+    public static final int MAX_OPERANDS = 62;
+
+    // bounds the depth of the recursion while the expression is flattened
+    private static final int MAX_NODES = 4096;
+
+    private static final DeviceBackend backend = Backends.get();
+
+    // the names of the opcodes in toString()
+    private static final String[] NAMES = { "load", "const", "neg", "abs", "sqrt", "exp", "log", "add", "sub", "mul",
+            "div", "min", "max" };
+
+    // an ElementwiseProgram opcode
+    private final int opcode;
+    private final Expr left;
+    private final Expr right;
+    // the buffer of a LOAD
+    private final DeviceMemory buffer;
+    // the value of a CONST
+    private final double value;
+    // 4 or 8, 0 if the expression has no buffer operand
+    private final int elementSize;
+    // -1 if the expression has no buffer operand
+    private final long count;
+    private final int deviceId;
+    private final int nodes;
+
+    private Expr(int opcode, Expr left, Expr right, DeviceMemory buffer, double value, int elementSize, long count,
+            int deviceId, int nodes) {
+        if (nodes > MAX_NODES) {
+            throw new IllegalArgumentException("expression has more than " + MAX_NODES + " nodes");
+        }
+        this.opcode = opcode;
+        this.left = left;
+        this.right = right;
+        this.buffer = buffer;
+        this.value = value;
+        this.elementSize = elementSize;
+        this.count = count;
+        this.deviceId = deviceId;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Returns an expression that reads the elements of the float vector
+     * {@code buffer}.
+     *
+     * @param buffer
+     *            the vector of interest
+     * @return the expression for the elements of {@code buffer}
+     */
+    public static Expr floats(DeviceMemory buffer) {
+        return load(buffer, 4);
+    }
+
+    /**
+     * Returns an expression that reads the elements of the double vector
+     * {@code buffer}.
+     *
+     * @param buffer
+     *            the vector of interest
+     * @return the expression for the elements of {@code buffer}
+     */
+    public static Expr doubles(DeviceMemory buffer) {
+        return load(buffer, 8);
+    }
+
+    /**
+     * Returns an expression that has the given value for every element.
+     *
+     * @param value
+     *            the scalar value (rounded to float in a float expression)
+     * @return the expression for {@code value}
+     */
+    public static Expr scalar(double value) {
+        return new Expr(ElementwiseProgram.CONST, null, null, null, value, 0, -1L, -1, 1);
+    }
+
+    /**
+     * Returns {@code this + other}.
+     *
+     * @param other
+     *            the right operand
+     * @return the expression for the element-wise sum
+     * @throws IllegalArgumentException
+     *             if the operands differ in element type, count or device
+     */
+    public Expr add(Expr other) {
+        return binary(ElementwiseProgram.ADD, other);
+    }
+
+    /**
+     * Returns {@code this + value}.
+     *
+     * @param value
+     *            the scalar to be added
+     * @return the expression for the element-wise sum
+     */
+    public Expr add(double value) {
+        return binary(ElementwiseProgram.ADD, scalar(value));
+    }
+
+    /**
+     * Returns {@code this - other}.
+     *
+     * @param other
+     *            the right operand
+     * @return the expression for the element-wise difference
+     * @throws IllegalArgumentException
+     *             if the operands differ in element type, count or device
+     */
+    public Expr sub(Expr other) {
+        return binary(ElementwiseProgram.SUB, other);
+    }
+
+    /**
+     * Returns {@code this - value}.
+     *
+     * @param value
+     *            the scalar to be subtracted
+     * @return the expression for the element-wise difference
+     */
+    public Expr sub(double value) {
+        return binary(ElementwiseProgram.SUB, scalar(value));
+    }
+
+    /**
+     * Returns {@code this * other}.
+     *
+     * @param other
+     *            the right operand
+     * @return the expression for the element-wise product
+     * @throws IllegalArgumentException
+     *             if the operands differ in element type, count or device
+     */
+    public Expr mul(Expr other) {
+        return binary(ElementwiseProgram.MUL, other);
+    }
+
+    /**
+     * Returns {@code this * value}.
+     *
+     * @param value
+     *            the scalar multiplier
+     * @return the expression for the element-wise product
+     */
+    public Expr mul(double value) {
+        return binary(ElementwiseProgram.MUL, scalar(value));
+    }
+
+    /**
+     * Returns {@code this / other}.
+     *
+     * @param other
+     *            the divisor
+     * @return the expression for the element-wise quotient
+     * @throws IllegalArgumentException
+     *             if the operands differ in element type, count or device
+     */
+    public Expr div(Expr other) {
+        return binary(ElementwiseProgram.DIV, other);
+    }
+
+    /**
+     * Returns {@code this / value}.
+     *
+     * @param value
+     *            the scalar divisor
+     * @return the expression for the element-wise quotient
+     */
+    public Expr div(double value) {
+        return binary(ElementwiseProgram.DIV, scalar(value));
+    }
+
+    /**
+     * Returns the element-wise minimum of {@code this} and {@code other}.
+     *
+     * @param other
+     *            the right operand
+     * @return the expression for the element-wise minimum
+     * @throws IllegalArgumentException
+     *             if the operands differ in element type, count or device
+     */
+    public Expr min(Expr other) {
+        return binary(ElementwiseProgram.MIN, other);
+    }
+
+    /**
+     * Returns the element-wise minimum of {@code this} and {@code value}.
+     *
+     * @param value
+     *            the scalar bound
+     * @return the expression for the element-wise minimum
+     */
+    public Expr min(double value) {
+        return binary(ElementwiseProgram.MIN, scalar(value));
+    }
+
+    /**
+     * Returns the element-wise maximum of {@code this} and {@code other}.
+     *
+     * @param other
+     *            the right operand
+     * @return the expression for the element-wise maximum
+     * @throws IllegalArgumentException
+     *             if the operands differ in element type, count or device
+     */
+    public Expr max(Expr other) {
+        return binary(ElementwiseProgram.MAX, other);
+    }
+
+    /**
+     * Returns the element-wise maximum of {@code this} and {@code value}.
+     *
+     * @param value
+     *            the scalar bound
+     * @return the expression for the element-wise maximum
+     */
+    public Expr max(double value) {
+        return binary(ElementwiseProgram.MAX, scalar(value));
+    }
+
+    /**
+     * Returns {@code -this}.
+     *
+     * @return the expression for the element-wise negation
+     */
+    public Expr neg() {
+        return unary(ElementwiseProgram.NEG);
+    }
+
+    /**
+     * Returns the absolute value of {@code this}.
+     *
+     * @return the expression for the element-wise absolute value
+     */
+    public Expr abs() {
+        return unary(ElementwiseProgram.ABS);
+    }
+
+    /**
+     * Returns the square root of {@code this}.
+     *
+     * @return the expression for the element-wise square root
+     */
+    public Expr sqrt() {
+        return unary(ElementwiseProgram.SQRT);
+    }
+
+    /**
+     * Returns <i>e</i> raised to the power of {@code this}.
+     *
+     * @return the expression for the element-wise exponential
+     */
+    public Expr exp() {
+        return unary(ElementwiseProgram.EXP);
+    }
+
+    /**
+     * Returns the natural logarithm of {@code this}.
+     *
+     * @return the expression for the element-wise logarithm
+     */
+    public Expr log() {
+        return unary(ElementwiseProgram.LOG);
+    }
+
+    /**
+     * Evaluates this expression and stores the result in {@code out}. The
+     * output may be one of the input buffers of the expression (but must not
+     * overlap an input partially).
+     *
+     * @param out
+     *            the vector that receives the result, it must have the
+     *            element count of the expression
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code out} differs from the expression in device or
+     *             element count, a vector isn't aligned or the expression
+     *             reads more than {@value #MAX_OPERANDS} operands
+     * @throws IllegalStateException
+     *             if the expression has no buffer operand or one of the
+     *             buffers has been closed
+     */
+    public void into(DeviceMemory out) throws CudaException {
+        evaluate(out, null);
+    }
+
+    /**
+     * Queues the evaluation of this expression into {@code out} on
+     * {@code stream}, after the work queued on it before, and returns at
+     * once. The buffers of the expression and {@code out} must not be closed
+     * before the returned future has completed. As with
+     * {@link #into(DeviceMemory)} the output may be one of the input buffers.
+     *
+     * @param out
+     *            the vector that receives the result, it must have the
+     *            element count of the expression
+     * @param stream
+     *            the stream on which the evaluation is queued
+     * @return a future that completes when the result is in {@code out}
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code out} or {@code stream} differs from the
+     *             expression in device, {@code out} differs in element count,
+     *             a vector isn't aligned or the expression reads more than
+     *             {@value #MAX_OPERANDS} operands
+     * @throws IllegalStateException
+     *             if the expression has no buffer operand, one of the buffers
+     *             or the stream has been closed
+     */
+    public CompletableFuture<Void> into(DeviceMemory out, CudaStream stream) throws CudaException {
+        final List<DeviceMemory> buffers = enqueue(out, stream);
+        final DeviceMemory target = out;
+        return stream.whenDone(new Runnable() {
+            @Override
+            public void run() {
+                // the buffers must not be released before the kernel is done
+                for (int i = 0; i < buffers.size(); ++i) {
+                    ReachabilityFence.protect(buffers.get(i));
+                }
+                ReachabilityFence.protect(target);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #into(DeviceMemory, CudaStream)}, but without a completion
+     * callback: for callers that keep the buffers reachable until the work
+     * queued on {@code stream} has completed by other means (e.g. the batch
+     * callback of a {@link StreamPipeline}, which protects the buffers of the
+     * slot).
+     *
+     * @return the input buffers of the expression
+     */
+    /* package */List<DeviceMemory> enqueue(DeviceMemory out, CudaStream stream) throws CudaException {
+        if (stream.getDeviceId() != deviceId) {
+            throw new IllegalArgumentException(
+                    "expression lives on device " + deviceId + ", stream on device " + stream.getDeviceId());
+        }
+        return evaluate(out, stream);
+    }
+
+    // Evaluates into out, synchronously if stream is null, and returns the
+    // input buffers
+    private List<DeviceMemory> evaluate(DeviceMemory out, CudaStream stream) throws CudaException {
+        checkTyped();
+        if (out.getDeviceId() != deviceId) {
+            throw new IllegalArgumentException(
+                    "expression lives on device " + deviceId + ", out on device " + out.getDeviceId());
+        }
+        if (out.getLength() / elementSize != count) {
+            throw new IllegalArgumentException(
+                    "expression has " + count + " elements, out has " + out.getLength() / elementSize + " elements");
+        }
+        Compiler compiler = new Compiler();
+        compiler.emit(this);
+        ElementwiseProgram program = compiler.program(elementSize);
+        int inputCount = compiler.inputs.size();
+        long[] inputs = new long[inputCount];
+        for (int i = 0; i < inputCount; ++i) {
+            inputs[i] = VectorOps.addressOf(compiler.inputs.get(i), elementSize);
+        }
+        double[] scalars = compiler.scalars();
+        backend.evaluate(deviceId, program, count, VectorOps.addressOf(out, elementSize), inputs, scalars,
+                (stream == null) ? 0L : stream.getHandle());
+        if (stream != null) {
+            for (int i = 0; i < inputCount; ++i) {
+                compiler.inputs.get(i).recordStream(stream);
+            }
+            out.recordStream(stream);
+        }
+        for (int i = 0; i < inputCount; ++i) {
+            ReachabilityFence.protect(compiler.inputs.get(i));
+        }
+        ReachabilityFence.protect(out);
+        return compiler.inputs;
+    }
+
+    /**
+     * Evaluates this float expression and copies the result to {@code array}.
+     * The result is computed into a temporary device buffer, unless the
+     * expression is a single buffer.
+     *
+     * @param array
+     *            the destination array, its length must be the element
+     *            count of the expression
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if this is a double expression or the length of
+     *             {@code array} differs from the element count
+     * @throws IllegalStateException
+     *             if the expression has no buffer operand or one of the
+     *             buffers has been closed
+     */
+    public void fetch(float[] array) throws CudaException {
+        checkFetch(4, array.length);
+        if (opcode == ElementwiseProgram.LOAD) {
+            buffer.fetchToHost(array);
+            return;
+        }
+        DeviceMemory result = temporary();
+        try {
+            into(result);
+            result.fetchToHost(array);
+        } finally {
+            release(result);
+        }
+    }
+
+    /**
+     * Evaluates this double expression and copies the result to
+     * {@code array}. The result is computed into a temporary device buffer,
+     * unless the expression is a single buffer.
+     *
+     * @param array
+     *            the destination array, its length must be the element
+     *            count of the expression
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if this is a float expression or the length of
+     *             {@code array} differs from the element count
+     * @throws IllegalStateException
+     *             if the expression has no buffer operand or one of the
+     *             buffers has been closed
+     */
+    public void fetch(double[] array) throws CudaException {
+        checkFetch(8, array.length);
+        if (opcode == ElementwiseProgram.LOAD) {
+            buffer.fetchToHost(array);
+            return;
+        }
+        DeviceMemory result = temporary();
+        try {
+            into(result);
+            result.fetchToHost(array);
+        } finally {
+            release(result);
+        }
+    }
+
+    /**
+     * Returns the number of elements of this expression.
+     *
+     * @return the element count, -1 if the expression has no buffer operand
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(64);
+        append(buf);
+        return buf.toString();
+    }
+
+    private void append(StringBuilder buf) {
+        switch (opcode) {
+        case ElementwiseProgram.LOAD:
+            buf.append((elementSize == 4) ? "floats@" : "doubles@").append(System.identityHashCode(buffer));
+            return;
+        case ElementwiseProgram.CONST:
+            buf.append(value);
+            return;
+        default:
+            break;
+        }
+        buf.append(NAMES[opcode]).append('(');
+        left.append(buf);
+        if (right != null) {
+            buf.append(", ");
+            right.append(buf);
+        }
+        buf.append(')');
+    }
+
+    private static Expr load(DeviceMemory buffer, int elementSize) {
+        long count = buffer.getLength() / elementSize;
+        return new Expr(ElementwiseProgram.LOAD, null, null, buffer, 0.0, elementSize, count, buffer.getDeviceId(),
+                1);
+    }
+
+    private Expr unary(int op) {
+        return new Expr(op, this, null, null, 0.0, elementSize, count, deviceId, nodes + 1);
+    }
+
+    private Expr binary(int op, Expr other) {
+        int size = elementSize;
+        if (other.elementSize != 0) {
+            if (size != 0 && size != other.elementSize) {
+                throw new IllegalArgumentException("expression mixes float and double operands");
+            }
+            size = other.elementSize;
+        }
+        long n = count;
+        int device = deviceId;
+        if (other.count >= 0L) {
+            if (n >= 0L && n != other.count) {
+                throw new IllegalArgumentException("operands have " + n + " and " + other.count + " elements");
+            }
+            if (n >= 0L && device != other.deviceId) {
+                throw new IllegalArgumentException(
+                        "operands live on device " + device + " and on device " + other.deviceId);
+            }
+            n = other.count;
+            device = other.deviceId;
+        }
+        return new Expr(op, this, other, null, 0.0, size, n, device, nodes + other.nodes + 1);
+    }
+
+    private void checkTyped() {
+        if (elementSize == 0) {
+            throw new IllegalStateException("expression has no buffer operand");
+        }
+    }
+
+    private void checkFetch(int size, int length) {
+        checkTyped();
+        if (elementSize != size) {
+            throw new IllegalArgumentException(
+                    "this is a " + ((elementSize == 4) ? "float" : "double") + " expression");
+        }
+        if (length != count) {
+            throw new IllegalArgumentException("expression has " + count + " elements, array has " + length);
+        }
+    }
+
+    private DeviceMemory temporary() throws CudaException {
+        return new DeviceMemory(new GPUDevice(deviceId), count * elementSize);
+    }
+
+    private static void release(DeviceMemory temporary) {
+        try {
+            temporary.close();
+        } catch (Exception ignore) {
+            // the buffer is reclaimed anyway once it becomes unreachable
+        }
+    }
+
+    // Flattens an expression tree into postfix order, every distinct buffer
+    // (by identity) becomes one input, every scalar leaf one scalar
+    private static final class Compiler {
+        final ArrayList<DeviceMemory> inputs = new ArrayList<DeviceMemory>();
+        final IdentityHashMap<DeviceMemory, Integer> inputIndex = new IdentityHashMap<DeviceMemory, Integer>();
+        private double[] values = new double[8];
+        private int scalarCount;
+        private int[] code = new int[32];
+        private int length;
+
+        void emit(Expr e) {
+            if (e.opcode == ElementwiseProgram.LOAD) {
+                Integer index = inputIndex.get(e.buffer);
+                if (index == null) {
+                    index = Integer.valueOf(inputs.size());
+                    inputs.add(e.buffer);
+                    inputIndex.put(e.buffer, index);
+                    checkOperands();
+                }
+                append(ElementwiseProgram.LOAD, index.intValue());
+            } else if (e.opcode == ElementwiseProgram.CONST) {
+                if (scalarCount == values.length) {
+                    values = Arrays.copyOf(values, 2 * scalarCount);
+                }
+                values[scalarCount++] = e.value;
+                checkOperands();
+                append(ElementwiseProgram.CONST, scalarCount - 1);
+            } else {
+                emit(e.left);
+                if (e.right != null) {
+                    emit(e.right);
+                }
+                append(e.opcode, 0);
+            }
+        }
+
+        ElementwiseProgram program(int elementSize) {
+            return new ElementwiseProgram(elementSize, Arrays.copyOf(code, length), inputs.size(),
+                    scalarCount);
+        }
+
+        double[] scalars() {
+            return Arrays.copyOf(values, scalarCount);
+        }
+
+        private void checkOperands() {
+            if (inputs.size() + scalarCount > MAX_OPERANDS) {
+                throw new IllegalArgumentException("expression reads more than " + MAX_OPERANDS + " operands");
+            }
+        }
+
+        private void append(int opcode, int operand) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, 2 * length);
+            }
+            code[length++] = opcode;
+            code[length++] = operand;
+        }
+    }
+}
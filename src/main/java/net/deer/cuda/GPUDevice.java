@@ -21,6 +21,8 @@
  *******************************************************************************/
 package net.deer.cuda;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * The {@code GPUDevice} class represents a CUDA-capable device.
  */
@@ -28,6 +30,31 @@ public final class GPUDevice {
 
     private final int deviceId;
 
+    // filled in from the process-wide cache on first use
+    private volatile DeviceProperties properties;
+
+    private static final ConcurrentHashMap<Integer, DeviceProperties> propertiesCache = new ConcurrentHashMap<Integer, DeviceProperties>();
+
+    // -1 until the first call of getCount()
+    private static volatile int count = -1;
+
+    /**
+     * Returns the number of CUDA-capable devices available to the Java host.
+     * The count is queried once and cached.
+     *
+     * @return the number of available CUDA-capable devices
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     */
+    public static int getCount() throws CudaException {
+        int n = count;
+        if (n < 0) {
+            n = Backends.get().getDeviceCount();
+            count = n;
+        }
+        return n;
+    }
+
     /**
      * Creates a device handle corresponding to {@code deviceId}.
      * <p>
@@ -50,4 +77,29 @@ public final class GPUDevice {
     public int getDeviceId() {
         return deviceId;
     }
+
+    /**
+     * Returns the properties of this device. The properties are queried from
+     * the driver only once per device id and cached afterwards, so this method
+     * is cheap enough to be called on every kernel launch.
+     *
+     * @return an immutable snapshot of the device properties
+     * @throws CudaException
+     *             if a CUDA exception occurs (e.g., the device id is invalid)
+     */
+    public DeviceProperties getProperties() throws CudaException {
+        DeviceProperties props = properties;
+        if (props == null) {
+            props = propertiesCache.get(deviceId);
+            if (props == null) {
+                DeviceProperties queried = Backends.get().getDeviceProperties(deviceId);
+                props = propertiesCache.putIfAbsent(deviceId, queried);
+                if (props == null) {
+                    props = queried;
+                }
+            }
+            properties = props;
+        }
+        return props;
+    }
 }
@@ -0,0 +1,965 @@
+package net.deer.cuda;
+
+import static net.deer.cuda.UnsafeAccess.U;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@code DeviceBackend} that emulates CUDA devices in off-heap host memory.
+ * <p>
+ * Every emulated device has its own address space: an address obtained from
+ * one device is rejected by all other devices (like CUDA does without unified
+ * addressing) and copies are checked against the bounds of the allocation they
+ * target. Allocations are aligned the same way as {@code cudaMalloc} aligns
+ * them.
+ * <p>
+ * A stream is emulated by a single worker thread that executes the queued
+ * operations in order, so work on different streams runs concurrently. There
+ * is no implicit synchronization with a default stream, i.e. all streams behave
+ * as if created with {@link CudaStream#FLAG_NON_BLOCKING}. Events take a
+ * {@link System#nanoTime()} timestamp when the stream reaches them; recording
+ * on the default stream (handle 0) completes the event immediately. Like
+ * {@code cudaFree} (and {@code cudaFreeHost}), freeing memory waits until the
+ * work queued on the streams of the device (of all devices for pinned host
+ * memory, including destroyed streams) has completed. The first failure of a
+ * queued operation (any exception) is sticky: it is reported by every
+ * synchronize, query and callback that follows it on the stream.
+ */
+final class HostBackend implements DeviceBackend {
+
+    // cudaMalloc guarantees an alignment of at least 256 bytes
+    static final long ALIGNMENT = 256L;
+
+    // the subset of the cudaError_t codes that can occur here
+    static final int ERROR_INVALID_VALUE = 1;
+    static final int ERROR_MEMORY_ALLOCATION = 2;
+    static final int ERROR_INVALID_DEVICE = 101;
+    static final int ERROR_INVALID_RESOURCE_HANDLE = 400;
+    static final int ERROR_NOT_READY = 600;
+    // cudaErrorUnknown: the status of a failure that isn't a CudaException
+    static final int ERROR_UNKNOWN = 999;
+
+    private final HostDevice[] devices;
+
+    private final ConcurrentHashMap<Long, HostStream> streams = new ConcurrentHashMap<Long, HostStream>();
+    private final ConcurrentHashMap<Long, HostEvent> events = new ConcurrentHashMap<Long, HostEvent>();
+    private final AtomicLong nextHandle = new AtomicLong();
+
+    HostBackend(int deviceCount) {
+        if (deviceCount < 1) {
+            throw new IllegalArgumentException("deviceCount: " + deviceCount);
+        }
+        devices = new HostDevice[deviceCount];
+        for (int i = 0; i < deviceCount; ++i) {
+            devices[i] = new HostDevice(i);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long malloc(int deviceId, long byteCount) throws CudaException {
+        HostDevice device = device(deviceId);
+        if (byteCount < 0L || byteCount > Long.MAX_VALUE - ALIGNMENT) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        if (byteCount == 0L) {
+            // same as cudaMalloc for a zero-sized request
+            return 0L;
+        }
+        long base;
+        try {
+            base = U.allocateMemory(byteCount + ALIGNMENT - 1L);
+        } catch (OutOfMemoryError e) {
+            throw new CudaException(ERROR_MEMORY_ALLOCATION);
+        }
+        long aligned = (base + ALIGNMENT - 1L) & -ALIGNMENT;
+        device.blocks.put(aligned, new Block(base, aligned, byteCount));
+        return aligned;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long free(int deviceId, long address) {
+        if (address == 0L) {
+            return 0L;
+        }
+        if (deviceId < 0 || deviceId >= devices.length) {
+            return ERROR_INVALID_DEVICE;
+        }
+        HostDevice device = devices[deviceId];
+        Block block = device.blocks.remove(address);
+        if (block == null) {
+            // not allocated on this device (or freed twice)
+            return ERROR_INVALID_VALUE;
+        }
+        // queued asynchronous work may still access the block
+        device.drainStreams();
+        U.freeMemory(block.base);
+        return 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long free(int deviceId, long[] addresses, int count) {
+        if (deviceId < 0 || deviceId >= devices.length) {
+            for (int i = 0; i < count; ++i) {
+                if (addresses[i] != 0L) {
+                    return ERROR_INVALID_DEVICE;
+                }
+            }
+            return 0L;
+        }
+        HostDevice device = devices[deviceId];
+        Block[] blocks = new Block[count];
+        int blockCount = 0;
+        long firstError = 0L;
+        for (int i = 0; i < count; ++i) {
+            if (addresses[i] == 0L) {
+                continue;
+            }
+            Block block = device.blocks.remove(addresses[i]);
+            if (block != null) {
+                blocks[blockCount++] = block;
+            } else if (firstError == 0L) {
+                // not allocated on this device (or freed twice)
+                firstError = ERROR_INVALID_VALUE;
+            }
+        }
+        if (blockCount != 0) {
+            // queued asynchronous work may still access the blocks, drain
+            // the streams once for the whole batch
+            device.drainStreams();
+            for (int i = 0; i < blockCount; ++i) {
+                U.freeMemory(blocks[i].base);
+            }
+        }
+        return firstError;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The emulated device memory already lives in host memory, so managed
+     * memory is just a device allocation.
+     */
+    @Override
+    public long mallocManaged(int deviceId, long byteCount) throws CudaException {
+        return malloc(deviceId, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only validates the arguments, there's nothing to migrate.
+     */
+    @Override
+    public void prefetch(int deviceId, long address, long byteCount, int dstDeviceId, long stream)
+            throws CudaException {
+        if (dstDeviceId != HOST_DEVICE_ID) {
+            device(dstDeviceId);
+        }
+        if (stream != 0L) {
+            stream(stream);
+        }
+        checkRange(deviceId, address, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only validates the arguments, there's nothing to migrate.
+     */
+    @Override
+    public void advise(int deviceId, long address, long byteCount, int advice, int adviceDeviceId)
+            throws CudaException {
+        if (advice < ADVISE_SET_READ_MOSTLY || advice > ADVISE_UNSET_READ_MOSTLY) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        checkRange(deviceId, address, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long mallocHost(long byteCount) throws CudaException {
+        if (byteCount < 0L) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        if (byteCount == 0L) {
+            return 0L;
+        }
+        // there's no page-locking in the emulation, plain native memory will do
+        try {
+            return U.allocateMemory(byteCount);
+        } catch (OutOfMemoryError e) {
+            throw new CudaException(ERROR_MEMORY_ALLOCATION);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long freeHost(long address) {
+        if (address != 0L) {
+            // like cudaFreeHost, wait for the asynchronous copies of all
+            // devices that may still access the memory
+            for (HostDevice device : devices) {
+                device.drainStreams();
+            }
+            U.freeMemory(address);
+        }
+        return 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDevice(int deviceId, long address, Object array, long byteOffset, long byteCount)
+            throws CudaException {
+        long dst = checkRange(deviceId, address, byteCount);
+        UnsafeAccess.copy(array, UnsafeAccess.arrayBase(array) + byteOffset, null, dst, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHost(int deviceId, long address, Object array, long byteOffset, long byteCount)
+            throws CudaException {
+        long src = checkRange(deviceId, address, byteCount);
+        UnsafeAccess.copy(null, src, array, UnsafeAccess.arrayBase(array) + byteOffset, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDevice(int deviceId, long address, long hostAddress, long byteCount) throws CudaException {
+        long dst = checkRange(deviceId, address, byteCount);
+        UnsafeAccess.copy(null, hostAddress, null, dst, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHost(int deviceId, long address, long hostAddress, long byteCount) throws CudaException {
+        long src = checkRange(deviceId, address, byteCount);
+        UnsafeAccess.copy(null, src, null, hostAddress, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToDevice(int deviceId, long dstAddress, long srcAddress, long byteCount)
+            throws CudaException {
+        long src = checkRange(deviceId, srcAddress, byteCount);
+        long dst = checkRange(deviceId, dstAddress, byteCount);
+        UnsafeAccess.copy(null, src, null, dst, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToDeviceAsync(long stream, int deviceId, long dstAddress, long srcAddress,
+            final long byteCount) throws CudaException {
+        HostStream hostStream = stream(stream);
+        final long src = checkRange(deviceId, srcAddress, byteCount);
+        final long dst = checkRange(deviceId, dstAddress, byteCount);
+        hostStream.submit(new Runnable() {
+            @Override
+            public void run() {
+                UnsafeAccess.copy(null, src, null, dst, byteCount);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void memset(int deviceId, long address, long pattern, int patternSize, long count) throws CudaException {
+        fill(checkFill(deviceId, address, patternSize, count), pattern, patternSize, count * patternSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void memsetAsync(long stream, int deviceId, long address, final long pattern, final int patternSize,
+            final long count) throws CudaException {
+        HostStream hostStream = stream(stream);
+        final long dst = checkFill(deviceId, address, patternSize, count);
+        hostStream.submit(new Runnable() {
+            @Override
+            public void run() {
+                fill(dst, pattern, patternSize, count * patternSize);
+            }
+        });
+    }
+
+    // returns the host address of a valid fill
+    private long checkFill(int deviceId, long address, int patternSize, long count) {
+        if ((patternSize != 1 && patternSize != 2 && patternSize != 4 && patternSize != 8)
+                || (address & (patternSize - 1)) != 0L || count < 0L) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        return checkRange(deviceId, address, count * patternSize);
+    }
+
+    private static void fill(long dst, long pattern, int patternSize, long byteCount) {
+        if (patternSize == 1) {
+            U.setMemory(dst, byteCount, (byte) pattern);
+            return;
+        }
+        // write the first few elements one by one, then keep doubling the
+        // filled prefix with bulk copies (which are vectorized)
+        long prefix = Math.min(byteCount, 64L);
+        for (long off = 0L; off < prefix; off += patternSize) {
+            if (patternSize == 2) {
+                U.putShort(dst + off, (short) pattern);
+            } else if (patternSize == 4) {
+                U.putInt(dst + off, (int) pattern);
+            } else {
+                U.putLong(dst + off, pattern);
+            }
+        }
+        for (long filled = prefix; filled < byteCount;) {
+            long size = Math.min(filled, byteCount - filled);
+            UnsafeAccess.copy(null, dst, null, dst + filled, size);
+            filled += size;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean enablePeerAccess(int deviceId, int peerDeviceId) throws CudaException {
+        device(deviceId);
+        device(peerDeviceId);
+        return SystemProps.HOST_PEER_ACCESS && deviceId != peerDeviceId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyPeer(int dstDeviceId, long dstAddress, int srcDeviceId, long srcAddress, long byteCount)
+            throws CudaException {
+        long src = checkRange(srcDeviceId, srcAddress, byteCount);
+        long dst = checkRange(dstDeviceId, dstAddress, byteCount);
+        UnsafeAccess.copy(null, src, null, dst, byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long createStream(int deviceId, int flags) throws CudaException {
+        device(deviceId);
+        long handle = nextHandle.incrementAndGet();
+        HostStream hostStream = new HostStream(deviceId, handle);
+        devices[deviceId].streams.add(hostStream);
+        streams.put(handle, hostStream);
+        return handle;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long destroyStream(int deviceId, long stream) {
+        HostStream hostStream = streams.remove(stream);
+        if (hostStream == null) {
+            return ERROR_INVALID_RESOURCE_HANDLE;
+        }
+        // queued work is allowed to complete
+        hostStream.executor.shutdown();
+        return 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void synchronizeStream(int deviceId, long stream) throws CudaException {
+        final HostStream hostStream = stream(stream);
+        final CountDownLatch done = new CountDownLatch(1);
+        // the failure as of the position of the synchronize in the stream
+        final Throwable[] failure = new Throwable[1];
+        hostStream.submit(new Runnable() {
+            @Override
+            public void run() {
+                failure[0] = hostStream.failure;
+                done.countDown();
+            }
+        });
+        awaitUninterruptibly(done);
+        if (failure[0] != null) {
+            throw toCudaException(failure[0]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queryStream(int deviceId, long stream) throws CudaException {
+        HostStream hostStream = stream(stream);
+        Throwable failure = hostStream.failure;
+        if (failure != null) {
+            throw toCudaException(failure);
+        }
+        return hostStream.pending.get() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addCallback(int deviceId, long stream, final StreamCallback callback) throws CudaException {
+        final HostStream hostStream = stream(stream);
+        hostStream.submit(new Runnable() {
+            @Override
+            public void run() {
+                Throwable failure = hostStream.failure;
+                try {
+                    callback.done((failure == null) ? 0 : statusOf(failure), failure);
+                } catch (Throwable ignore) {
+                    // like a native callback, a failing callback doesn't
+                    // fail the stream
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long createEvent(int deviceId, int flags) throws CudaException {
+        device(deviceId);
+        long handle = nextHandle.incrementAndGet();
+        events.put(handle, new HostEvent(deviceId, flags));
+        return handle;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long destroyEvent(int deviceId, long event) {
+        return (events.remove(event) == null) ? ERROR_INVALID_RESOURCE_HANDLE : 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordEvent(int deviceId, long event, long stream) throws CudaException {
+        HostEvent hostEvent = event(event);
+        final Timestamp timestamp = new Timestamp();
+        Runnable mark = new Runnable() {
+            @Override
+            public void run() {
+                timestamp.nanos = System.nanoTime();
+                timestamp.done.countDown();
+            }
+        };
+        if (stream == 0L) {
+            hostEvent.last = timestamp;
+            mark.run();
+            return;
+        }
+        HostStream hostStream = stream(stream);
+        if (hostStream.deviceId != hostEvent.deviceId) {
+            throw new CudaException(ERROR_INVALID_RESOURCE_HANDLE);
+        }
+        hostEvent.last = timestamp;
+        hostStream.submit(mark);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queryEvent(int deviceId, long event) throws CudaException {
+        Timestamp timestamp = event(event).last;
+        return timestamp == null || timestamp.done.getCount() == 0L;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void synchronizeEvent(int deviceId, long event) throws CudaException {
+        Timestamp timestamp = event(event).last;
+        if (timestamp != null) {
+            awaitUninterruptibly(timestamp.done);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float elapsedTime(int deviceId, long start, long end) throws CudaException {
+        long startNanos = timestampOf(event(start));
+        long endNanos = timestampOf(event(end));
+        return (endNanos - startNanos) / 1e6f;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDeviceAsync(long stream, int deviceId, long address, final long hostAddress,
+            final long byteCount) throws CudaException {
+        HostStream hostStream = stream(stream);
+        final long dst = checkRange(deviceId, address, byteCount);
+        hostStream.submit(new Runnable() {
+            @Override
+            public void run() {
+                UnsafeAccess.copy(null, hostAddress, null, dst, byteCount);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHostAsync(long stream, int deviceId, long address, final long hostAddress,
+            final long byteCount) throws CudaException {
+        HostStream hostStream = stream(stream);
+        final long src = checkRange(deviceId, address, byteCount);
+        hostStream.submit(new Runnable() {
+            @Override
+            public void run() {
+                UnsafeAccess.copy(null, src, null, hostAddress, byteCount);
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDeviceCount() {
+        return devices.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DeviceProperties getDeviceProperties(int deviceId) throws CudaException {
+        device(deviceId);
+        long[] values = new long[DeviceProperties.VALUE_COUNT];
+        values[DeviceProperties.TOTAL_GLOBAL_MEM] = SystemProps.HOST_TOTAL_MEMORY;
+        values[DeviceProperties.SHARED_MEM_PER_BLOCK] = 48L << 10;
+        values[DeviceProperties.WARP_SIZE] = 32L;
+        values[DeviceProperties.MAX_THREADS_PER_BLOCK] = SystemProps.HOST_MAX_THREADS_PER_BLOCK;
+        values[DeviceProperties.MAX_THREADS_DIM_X] = 1024L;
+        values[DeviceProperties.MAX_THREADS_DIM_Y] = 1024L;
+        values[DeviceProperties.MAX_THREADS_DIM_Z] = 64L;
+        values[DeviceProperties.MAX_GRID_SIZE_X] = Integer.MAX_VALUE;
+        values[DeviceProperties.MAX_GRID_SIZE_Y] = 65535L;
+        values[DeviceProperties.MAX_GRID_SIZE_Z] = 65535L;
+        values[DeviceProperties.MULTI_PROCESSOR_COUNT] = SystemProps.HOST_MULTI_PROCESSORS;
+        values[DeviceProperties.MAX_THREADS_PER_MULTI_PROCESSOR] = 2048L;
+        // compute capability 0.0 marks an emulated device
+        values[DeviceProperties.MAJOR] = 0L;
+        values[DeviceProperties.MINOR] = 0L;
+        values[DeviceProperties.CLOCK_RATE] = 0L;
+        return new DeviceProperties(deviceId, "Host emulation device " + deviceId, values);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs in parallel on the common fork/join pool (see
+     * {@link HostVectorOps}).
+     */
+    @Override
+    public void axpy(int deviceId, int elementSize, long n, double alpha, long x, long y) throws CudaException {
+        checkVector(deviceId, elementSize, n, x);
+        checkVector(deviceId, elementSize, n, y);
+        HostVectorOps.axpy(elementSize, n, alpha, x, y);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs in parallel on the common fork/join pool (see
+     * {@link HostVectorOps}).
+     */
+    @Override
+    public void scale(int deviceId, int elementSize, long n, double alpha, long x) throws CudaException {
+        checkVector(deviceId, elementSize, n, x);
+        HostVectorOps.scale(elementSize, n, alpha, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs in parallel on the common fork/join pool (see
+     * {@link HostVectorOps}).
+     */
+    @Override
+    public double reduce(int deviceId, int reduction, int elementSize, long n, long x, long y)
+            throws CudaException {
+        if (reduction < REDUCE_SUM || reduction > REDUCE_SUM_OF_SQUARES) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        checkVector(deviceId, elementSize, n, x);
+        if (reduction == REDUCE_DOT) {
+            checkVector(deviceId, elementSize, n, y);
+        }
+        return HostVectorOps.reduce(reduction, elementSize, n, x, y);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A parallel radix sort on the common fork/join pool (see
+     * {@link HostPrimitives}).
+     */
+    @Override
+    public void sort(int deviceId, int keyType, int n, long keys, long values, int valueSize) throws CudaException {
+        if (keyType < TYPE_INT || keyType > TYPE_DOUBLE) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        checkVector(deviceId, (keyType == TYPE_LONG || keyType == TYPE_DOUBLE) ? 8 : 4, n, keys);
+        if (values != 0L) {
+            checkVector(deviceId, valueSize, n, values);
+        }
+        HostPrimitives.sort(keyType, n, keys, values, valueSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs in parallel on the common fork/join pool (see
+     * {@link HostPrimitives}).
+     */
+    @Override
+    public void scan(int deviceId, int type, boolean inclusive, int n, long in, long out) throws CudaException {
+        if (type < TYPE_INT || type > TYPE_DOUBLE) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        int size = (type == TYPE_LONG || type == TYPE_DOUBLE) ? 8 : 4;
+        checkVector(deviceId, size, n, in);
+        checkVector(deviceId, size, n, out);
+        HostPrimitives.scan(type, inclusive, n, in, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs in parallel on the common fork/join pool (see
+     * {@link HostPrimitives}).
+     */
+    @Override
+    public int selectFlagged(int deviceId, int elementSize, int n, long in, long flags, long out)
+            throws CudaException {
+        checkVector(deviceId, elementSize, n, in);
+        checkVector(deviceId, elementSize, n, out);
+        checkRange(deviceId, flags, n);
+        return HostPrimitives.select(elementSize, n, in, flags, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs in parallel on the common fork/join pool (see
+     * {@link HostPrimitives}).
+     */
+    @Override
+    public int selectUnique(int deviceId, int elementSize, int n, long in, long out) throws CudaException {
+        checkVector(deviceId, elementSize, n, in);
+        checkVector(deviceId, elementSize, n, out);
+        return HostPrimitives.select(elementSize, n, in, 0L, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs in parallel on the common fork/join pool (see
+     * {@link HostElementwise}).
+     */
+    @Override
+    public void evaluate(int deviceId, final ElementwiseProgram program, final long n, final long out,
+            final long[] inputs, final double[] scalars, long stream) throws CudaException {
+        if (inputs.length != program.getInputCount() || scalars.length != program.getScalarCount()) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        int size = program.getElementSize();
+        checkVector(deviceId, size, n, out);
+        for (long input : inputs) {
+            checkVector(deviceId, size, n, input);
+        }
+        if (stream == 0L) {
+            HostElementwise.evaluate(program, n, out, inputs, scalars);
+            return;
+        }
+        stream(stream).submit(new Runnable() {
+            @Override
+            public void run() {
+                HostElementwise.evaluate(program, n, out, inputs, scalars);
+            }
+        });
+    }
+
+    private HostDevice device(int deviceId) {
+        if (deviceId < 0 || deviceId >= devices.length) {
+            throw new CudaException(ERROR_INVALID_DEVICE);
+        }
+        return devices[deviceId];
+    }
+
+    private HostEvent event(long event) {
+        HostEvent hostEvent = events.get(event);
+        if (hostEvent == null) {
+            throw new CudaException(ERROR_INVALID_RESOURCE_HANDLE);
+        }
+        return hostEvent;
+    }
+
+    // same error codes as cudaEventElapsedTime
+    private static long timestampOf(HostEvent event) {
+        Timestamp timestamp = event.last;
+        if (timestamp == null || (event.flags & CudaEvent.FLAG_DISABLE_TIMING) != 0) {
+            throw new CudaException(ERROR_INVALID_RESOURCE_HANDLE);
+        }
+        if (timestamp.done.getCount() != 0L) {
+            throw new CudaException(ERROR_NOT_READY);
+        }
+        return timestamp.nanos;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1L, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HostStream stream(long stream) {
+        HostStream hostStream = streams.get(stream);
+        if (hostStream == null) {
+            throw new CudaException(ERROR_INVALID_RESOURCE_HANDLE);
+        }
+        return hostStream;
+    }
+
+    // Verifies that [address, address + byteCount) lies within a single
+    // allocation of the device the address belongs to
+    private long checkRange(int deviceId, long start, long byteCount) {
+        if (byteCount == 0L) {
+            return start;
+        }
+        Map.Entry<Long, Block> e = device(deviceId).blocks.floorEntry(start);
+        if (e == null || !e.getValue().contains(start, byteCount)) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        return start;
+    }
+
+    // Verifies that a vector of n elements of elementSize bytes is aligned
+    // and lies within a single allocation
+    private void checkVector(int deviceId, int elementSize, long n, long address) {
+        if ((elementSize != 4 && elementSize != 8) || (address & (elementSize - 1)) != 0L || n < 0L) {
+            throw new CudaException(ERROR_INVALID_VALUE);
+        }
+        checkRange(deviceId, address, n * elementSize);
+    }
+
+    private static final class HostDevice {
+        final int deviceId;
+        final ConcurrentSkipListMap<Long, Block> blocks = new ConcurrentSkipListMap<Long, Block>();
+        // the streams of this device, destroyed ones until their queued work
+        // has completed
+        final Set<HostStream> streams = Collections.newSetFromMap(new ConcurrentHashMap<HostStream, Boolean>());
+
+        HostDevice(int deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        // Waits until the work queued on the streams of this device so far
+        // has completed
+        void drainStreams() {
+            for (HostStream stream : streams) {
+                if (!stream.drain()) {
+                    streams.remove(stream);
+                }
+            }
+        }
+    }
+
+    private static int statusOf(Throwable failure) {
+        return (failure instanceof CudaException) ? ((CudaException) failure).getCode() : ERROR_UNKNOWN;
+    }
+
+    // a new exception for every report, the failure becomes its cause
+    private static CudaException toCudaException(Throwable failure) {
+        CudaException e = new CudaException(statusOf(failure));
+        e.initCause(failure);
+        return e;
+    }
+
+    private static final class HostStream {
+        final int deviceId;
+        final ExecutorService executor;
+        volatile Thread worker;
+        final AtomicInteger pending = new AtomicInteger();
+        // the first failure of an operation, only written by the worker.
+        // Like a sticky CUDA error it is reported by every synchronize,
+        // query and callback that follows it, so an operation reads it at its
+        // own position in the stream to report exactly the work before it
+        volatile Throwable failure;
+
+        HostStream(int deviceId, long handle) {
+            this.deviceId = deviceId;
+            final String name = "deer-host-stream-" + deviceId + "-" + handle;
+            this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, name);
+                    t.setDaemon(true);
+                    worker = t;
+                    return t;
+                }
+            });
+        }
+
+        void submit(final Runnable operation) {
+            pending.incrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            operation.run();
+                        } catch (Throwable t) {
+                            if (failure == null) {
+                                failure = t;
+                            }
+                        } finally {
+                            pending.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                throw new CudaException(ERROR_INVALID_RESOURCE_HANDLE);
+            }
+        }
+
+        // Waits until the work queued so far has completed, returns false if
+        // the stream has been destroyed and has no work left
+        boolean drain() {
+            if (Thread.currentThread() == worker) {
+                // an operation of this stream frees memory, the preceding
+                // work has completed anyway
+                return true;
+            }
+            final CountDownLatch done = new CountDownLatch(1);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        done.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // destroyed, its queued work is still allowed to complete
+                awaitTermination(executor);
+                return false;
+            }
+            awaitUninterruptibly(done);
+            return true;
+        }
+    }
+
+    private static final class HostEvent {
+        final int deviceId;
+        final int flags;
+        // the most recent record, null if the event has never been recorded
+        volatile Timestamp last;
+
+        HostEvent(int deviceId, int flags) {
+            this.deviceId = deviceId;
+            this.flags = flags;
+        }
+    }
+
+    private static final class Timestamp {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile long nanos;
+    }
+
+    private static final class Block {
+        final long base;
+        final long aligned;
+        final long length;
+
+        Block(long base, long aligned, long length) {
+            this.base = base;
+            this.aligned = aligned;
+            this.length = length;
+        }
+
+        boolean contains(long start, long byteCount) {
+            return start >= aligned && byteCount <= length - (start - aligned);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package net.deer.cuda;
+
+import static net.deer.cuda.UnsafeAccess.U;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The evaluation of an {@link ElementwiseProgram} by the {@link HostBackend},
+ * run in parallel on the common fork/join pool.
+ * <p>
+ * The vector is split in halves until the pieces have at most {@code LEAF}
+ * elements. A leaf is evaluated in tiles of {@code TILE} elements: the
+ * program runs once per tile on a stack of {@code double[TILE]} registers,
+ * every instruction being a plain loop over the tile that the JIT vectorizes.
+ * The registers stay in the cache, so the inputs are read from and the result
+ * is written to memory only once, as in the generated device kernel. A float
+ * program rounds the result of every operation to float, which (for the
+ * arithmetic operations and {@code sqrt}) yields the float result exactly.
+ */
+final class HostElementwise {
+
+    // the size of a piece that isn't split any further (in elements)
+    private static final long LEAF = 1L << 14;
+
+    // the number of elements evaluated at once
+    private static final int TILE = 512;
+
+    private static final long FLOAT_ARRAY_BASE = U.arrayBaseOffset(float[].class);
+    private static final long DOUBLE_ARRAY_BASE = U.arrayBaseOffset(double[].class);
+
+    /* package */static void evaluate(ElementwiseProgram program, long n, long out, long[] inputs,
+            double[] scalars) {
+        new Evaluate(program, out, inputs, scalars, 0L, n).invoke();
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Evaluate extends RecursiveAction {
+        private final ElementwiseProgram program;
+        private final long out;
+        private final long[] inputs;
+        private final double[] scalars;
+        private final long from;
+        private final long to;
+
+        Evaluate(ElementwiseProgram program, long out, long[] inputs, double[] scalars, long from, long to) {
+            this.program = program;
+            this.out = out;
+            this.inputs = inputs;
+            this.scalars = scalars;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF) {
+                long mid = (from + to) >>> 1;
+                invokeAll(new Evaluate(program, out, inputs, scalars, from, mid),
+                        new Evaluate(program, out, inputs, scalars, mid, to));
+            } else if (program.getElementSize() == 4) {
+                float[][] stack = new float[program.getStackDepth()][TILE];
+                for (long start = from; start < to; start += TILE) {
+                    floatTile(stack, start, (int) Math.min(TILE, to - start));
+                }
+            } else {
+                double[][] stack = new double[program.getStackDepth()][TILE];
+                for (long start = from; start < to; start += TILE) {
+                    doubleTile(stack, start, (int) Math.min(TILE, to - start));
+                }
+            }
+        }
+
+        private void floatTile(float[][] stack, long start, int len) {
+            int[] code = program.getCode();
+            int sp = 0;
+            for (int pc = 0; pc < code.length; pc += 2) {
+                int opcode = code[pc];
+                if (opcode == ElementwiseProgram.LOAD) {
+                    U.copyMemory(null, inputs[code[pc + 1]] + (start << 2), stack[sp++], FLOAT_ARRAY_BASE,
+                            (long) len << 2);
+                } else if (opcode == ElementwiseProgram.CONST) {
+                    Arrays.fill(stack[sp++], 0, len, (float) scalars[code[pc + 1]]);
+                } else if (ElementwiseProgram.isUnary(opcode)) {
+                    unary(opcode, stack[sp - 1], len);
+                } else {
+                    --sp;
+                    binary(opcode, stack[sp - 1], stack[sp], len);
+                }
+            }
+            U.copyMemory(stack[0], FLOAT_ARRAY_BASE, null, out + (start << 2), (long) len << 2);
+        }
+
+        private void doubleTile(double[][] stack, long start, int len) {
+            int[] code = program.getCode();
+            int sp = 0;
+            for (int pc = 0; pc < code.length; pc += 2) {
+                int opcode = code[pc];
+                if (opcode == ElementwiseProgram.LOAD) {
+                    U.copyMemory(null, inputs[code[pc + 1]] + (start << 3), stack[sp++], DOUBLE_ARRAY_BASE,
+                            (long) len << 3);
+                } else if (opcode == ElementwiseProgram.CONST) {
+                    Arrays.fill(stack[sp++], 0, len, scalars[code[pc + 1]]);
+                } else if (ElementwiseProgram.isUnary(opcode)) {
+                    unary(opcode, stack[sp - 1], len);
+                } else {
+                    --sp;
+                    binary(opcode, stack[sp - 1], stack[sp], len);
+                }
+            }
+            U.copyMemory(stack[0], DOUBLE_ARRAY_BASE, null, out + (start << 3), (long) len << 3);
+        }
+    }
+
+    // the transcendental functions are computed in double and rounded
+    private static void unary(int opcode, float[] a, int len) {
+        switch (opcode) {
+        case ElementwiseProgram.NEG:
+            for (int i = 0; i < len; ++i) {
+                a[i] = -a[i];
+            }
+            break;
+        case ElementwiseProgram.ABS:
+            for (int i = 0; i < len; ++i) {
+                a[i] = Math.abs(a[i]);
+            }
+            break;
+        case ElementwiseProgram.SQRT:
+            for (int i = 0; i < len; ++i) {
+                a[i] = (float) Math.sqrt(a[i]);
+            }
+            break;
+        case ElementwiseProgram.EXP:
+            for (int i = 0; i < len; ++i) {
+                a[i] = (float) Math.exp(a[i]);
+            }
+            break;
+        default:
+            for (int i = 0; i < len; ++i) {
+                a[i] = (float) Math.log(a[i]);
+            }
+            break;
+        }
+    }
+
+    private static void unary(int opcode, double[] a, int len) {
+        switch (opcode) {
+        case ElementwiseProgram.NEG:
+            for (int i = 0; i < len; ++i) {
+                a[i] = -a[i];
+            }
+            break;
+        case ElementwiseProgram.ABS:
+            for (int i = 0; i < len; ++i) {
+                a[i] = Math.abs(a[i]);
+            }
+            break;
+        case ElementwiseProgram.SQRT:
+            for (int i = 0; i < len; ++i) {
+                a[i] = Math.sqrt(a[i]);
+            }
+            break;
+        case ElementwiseProgram.EXP:
+            for (int i = 0; i < len; ++i) {
+                a[i] = Math.exp(a[i]);
+            }
+            break;
+        default:
+            for (int i = 0; i < len; ++i) {
+                a[i] = Math.log(a[i]);
+            }
+            break;
+        }
+    }
+
+    // a = a op b, min and max return the other operand if one is NaN (fmin)
+    private static void binary(int opcode, float[] a, float[] b, int len) {
+        switch (opcode) {
+        case ElementwiseProgram.ADD:
+            for (int i = 0; i < len; ++i) {
+                a[i] += b[i];
+            }
+            break;
+        case ElementwiseProgram.SUB:
+            for (int i = 0; i < len; ++i) {
+                a[i] -= b[i];
+            }
+            break;
+        case ElementwiseProgram.MUL:
+            for (int i = 0; i < len; ++i) {
+                a[i] *= b[i];
+            }
+            break;
+        case ElementwiseProgram.DIV:
+            for (int i = 0; i < len; ++i) {
+                a[i] /= b[i];
+            }
+            break;
+        case ElementwiseProgram.MIN:
+            for (int i = 0; i < len; ++i) {
+                float x = a[i];
+                float y = b[i];
+                a[i] = (y < x || x != x) ? y : x;
+            }
+            break;
+        default:
+            for (int i = 0; i < len; ++i) {
+                float x = a[i];
+                float y = b[i];
+                a[i] = (y > x || x != x) ? y : x;
+            }
+            break;
+        }
+    }
+
+    private static void binary(int opcode, double[] a, double[] b, int len) {
+        switch (opcode) {
+        case ElementwiseProgram.ADD:
+            for (int i = 0; i < len; ++i) {
+                a[i] += b[i];
+            }
+            break;
+        case ElementwiseProgram.SUB:
+            for (int i = 0; i < len; ++i) {
+                a[i] -= b[i];
+            }
+            break;
+        case ElementwiseProgram.MUL:
+            for (int i = 0; i < len; ++i) {
+                a[i] *= b[i];
+            }
+            break;
+        case ElementwiseProgram.DIV:
+            for (int i = 0; i < len; ++i) {
+                a[i] /= b[i];
+            }
+            break;
+        case ElementwiseProgram.MIN:
+            for (int i = 0; i < len; ++i) {
+                double x = a[i];
+                double y = b[i];
+                a[i] = (y < x || x != x) ? y : x;
+            }
+            break;
+        default:
+            for (int i = 0; i < len; ++i) {
+                double x = a[i];
+                double y = b[i];
+                a[i] = (y > x || x != x) ? y : x;
+            }
+            break;
+        }
+    }
+
+    private HostElementwise() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,347 @@
+package net.deer.cuda;
+
+import static net.deer.cuda.UnsafeAccess.U;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The sort, scan and compaction primitives of the {@link HostBackend}, run in
+ * parallel on the common fork/join pool.
+ * <p>
+ * All primitives split the input into a fixed number of contiguous chunks and
+ * work in the same three phases: every chunk counts (a digit histogram, a
+ * partial sum or the number of selected elements), a short sequential pass
+ * turns the counts into per-chunk offsets, and every chunk then writes its
+ * part of the output at its offset. The sort is a stable LSD radix sort over
+ * 8 bit digits that skips the passes in which all keys share the same digit.
+ */
+final class HostPrimitives {
+
+    // inputs below this size are processed by the calling thread only
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    // the smallest chunk handed to the pool
+    private static final int MIN_CHUNK = 1 << 14;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /* package */static void sort(int keyType, int n, long keys, long values, int valueSize) {
+        if (n < 2) {
+            return;
+        }
+        final int keySize = sizeOf(keyType);
+        final int chunks = chunks(n);
+        long scratch = U.allocateMemory((long) n * (keySize + (values != 0L ? valueSize : 0)));
+        try {
+            long srcKeys = keys;
+            long dstKeys = scratch;
+            long srcValues = values;
+            long dstValues = (values != 0L) ? scratch + (long) n * keySize : 0L;
+            int[][] offsets = new int[chunks][RADIX];
+            for (int shift = 0; shift < keySize * Byte.SIZE; shift += RADIX_BITS) {
+                histograms(keyType, n, srcKeys, shift, offsets);
+                if (!toOffsets(n, offsets)) {
+                    // every key has the same digit, the pass wouldn't move anything
+                    continue;
+                }
+                scatter(keyType, n, srcKeys, dstKeys, srcValues, dstValues, valueSize, shift, offsets);
+                long tmp = srcKeys;
+                srcKeys = dstKeys;
+                dstKeys = tmp;
+                tmp = srcValues;
+                srcValues = dstValues;
+                dstValues = tmp;
+            }
+            if (srcKeys != keys) {
+                UnsafeAccess.copy(null, srcKeys, null, keys, (long) n * keySize);
+                if (values != 0L) {
+                    UnsafeAccess.copy(null, srcValues, null, values, (long) n * valueSize);
+                }
+            }
+        } finally {
+            U.freeMemory(scratch);
+        }
+    }
+
+    /* package */static void scan(int type, final boolean inclusive, int n, final long in, final long out) {
+        if (n < 1) {
+            return;
+        }
+        final int size = sizeOf(type);
+        final boolean floating = (type == DeviceBackend.TYPE_FLOAT || type == DeviceBackend.TYPE_DOUBLE);
+        final int chunks = chunks(n);
+        // the chunk totals, stored as raw long or double bits
+        final long[] totals = new long[chunks];
+        if (chunks > 1) {
+            forEachChunk(n, chunks, new Chunk() {
+                @Override
+                public void run(int chunk, int from, int to) {
+                    totals[chunk] = floating ? Double.doubleToRawLongBits(sumFloating(size, in, from, to))
+                            : sumIntegral(size, in, from, to);
+                }
+            });
+        }
+        // turn the totals into the offsets of the chunks
+        long carry = 0L;
+        double carryFloating = 0.0;
+        for (int c = 0; c < chunks; ++c) {
+            long total = totals[c];
+            if (floating) {
+                totals[c] = Double.doubleToRawLongBits(carryFloating);
+                carryFloating = add(size, carryFloating, Double.longBitsToDouble(total));
+            } else {
+                totals[c] = carry;
+                carry += total;
+            }
+        }
+        forEachChunk(n, chunks, new Chunk() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                if (floating) {
+                    double acc = Double.longBitsToDouble(totals[chunk]);
+                    for (int i = from; i < to; ++i) {
+                        double v = getFloating(size, in, i);
+                        double next = add(size, acc, v);
+                        putFloating(size, out, i, inclusive ? next : acc);
+                        acc = next;
+                    }
+                } else {
+                    long acc = totals[chunk];
+                    for (int i = from; i < to; ++i) {
+                        long next = acc + getIntegral(size, in, i);
+                        putIntegral(size, out, i, inclusive ? next : acc);
+                        acc = next;
+                    }
+                }
+            }
+        });
+    }
+
+    /* package */static int select(final int elementSize, int n, final long in, final long flags, final long out) {
+        if (n < 1) {
+            return 0;
+        }
+        final int chunks = chunks(n);
+        final int[] counts = new int[chunks];
+        forEachChunk(n, chunks, new Chunk() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                int count = 0;
+                for (int i = from; i < to; ++i) {
+                    if (selected(elementSize, in, flags, i)) {
+                        ++count;
+                    }
+                }
+                counts[chunk] = count;
+            }
+        });
+        int total = 0;
+        for (int c = 0; c < chunks; ++c) {
+            int count = counts[c];
+            counts[c] = total;
+            total += count;
+        }
+        forEachChunk(n, chunks, new Chunk() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                long dst = out + (long) counts[chunk] * elementSize;
+                for (int i = from; i < to; ++i) {
+                    if (selected(elementSize, in, flags, i)) {
+                        copyElement(elementSize, in + (long) i * elementSize, dst);
+                        dst += elementSize;
+                    }
+                }
+            }
+        });
+        return total;
+    }
+
+    // flags == 0: the first element of a run of bitwise equal elements
+    private static boolean selected(int elementSize, long in, long flags, int i) {
+        if (flags != 0L) {
+            return U.getByte(flags + i) != 0;
+        }
+        return i == 0 || getIntegral(elementSize, in, i) != getIntegral(elementSize, in, i - 1);
+    }
+
+    private static void histograms(final int keyType, int n, final long keys, final int shift,
+            final int[][] counts) {
+        final int keySize = sizeOf(keyType);
+        forEachChunk(n, counts.length, new Chunk() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                int[] count = counts[chunk];
+                Arrays.fill(count, 0);
+                for (int i = from; i < to; ++i) {
+                    ++count[digit(keyType, keys + (long) i * keySize, shift)];
+                }
+            }
+        });
+    }
+
+    // Turns the per-chunk digit counts into the position of the first key of
+    // every (chunk, digit) pair: digit-major, chunk-minor, which keeps the
+    // sort stable. Returns false if a single digit holds all n keys.
+    private static boolean toOffsets(int n, int[][] counts) {
+        int position = 0;
+        for (int d = 0; d < RADIX; ++d) {
+            int start = position;
+            for (int[] count : counts) {
+                int c = count[d];
+                count[d] = position;
+                position += c;
+            }
+            if (position - start == n) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void scatter(final int keyType, int n, final long srcKeys, final long dstKeys,
+            final long srcValues, final long dstValues, final int valueSize, final int shift,
+            final int[][] offsets) {
+        final int keySize = sizeOf(keyType);
+        forEachChunk(n, offsets.length, new Chunk() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                int[] position = offsets[chunk];
+                for (int i = from; i < to; ++i) {
+                    long key = srcKeys + (long) i * keySize;
+                    int p = position[digit(keyType, key, shift)]++;
+                    copyElement(keySize, key, dstKeys + (long) p * keySize);
+                    if (srcValues != 0L) {
+                        copyElement(valueSize, srcValues + (long) i * valueSize, dstValues + (long) p * valueSize);
+                    }
+                }
+            }
+        });
+    }
+
+    // The digit of the key bits mapped to an unsigned order: the sign bit of
+    // integers is flipped, negative floating point numbers get all bits
+    // flipped (so -0.0 sorts before 0.0 and positive NaNs go last)
+    private static int digit(int keyType, long address, int shift) {
+        long bits;
+        switch (keyType) {
+        case DeviceBackend.TYPE_INT:
+            bits = (U.getInt(address) ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+            break;
+        case DeviceBackend.TYPE_FLOAT: {
+            int f = U.getInt(address);
+            bits = (f ^ ((f >> 31) | Integer.MIN_VALUE)) & 0xFFFFFFFFL;
+            break;
+        }
+        case DeviceBackend.TYPE_LONG:
+            bits = U.getLong(address) ^ Long.MIN_VALUE;
+            break;
+        default: {
+            long d = U.getLong(address);
+            bits = d ^ ((d >> 63) | Long.MIN_VALUE);
+            break;
+        }
+        }
+        return (int) (bits >>> shift) & (RADIX - 1);
+    }
+
+    private static long sumIntegral(int size, long in, int from, int to) {
+        long sum = 0L;
+        for (int i = from; i < to; ++i) {
+            sum += getIntegral(size, in, i);
+        }
+        return sum;
+    }
+
+    private static double sumFloating(int size, long in, int from, int to) {
+        double sum = 0.0;
+        for (int i = from; i < to; ++i) {
+            sum = add(size, sum, getFloating(size, in, i));
+        }
+        return sum;
+    }
+
+    // float sums are rounded to float after every addition, like on the device
+    private static double add(int size, double a, double b) {
+        return (size == 4) ? (double) (float) (a + b) : a + b;
+    }
+
+    private static long getIntegral(int size, long base, int i) {
+        return (size == 4) ? U.getInt(base + ((long) i << 2)) : U.getLong(base + ((long) i << 3));
+    }
+
+    // an int sum wraps around (the long is simply truncated)
+    private static void putIntegral(int size, long base, int i, long value) {
+        if (size == 4) {
+            U.putInt(base + ((long) i << 2), (int) value);
+        } else {
+            U.putLong(base + ((long) i << 3), value);
+        }
+    }
+
+    private static double getFloating(int size, long base, int i) {
+        return (size == 4) ? U.getFloat(base + ((long) i << 2)) : U.getDouble(base + ((long) i << 3));
+    }
+
+    private static void putFloating(int size, long base, int i, double value) {
+        if (size == 4) {
+            U.putFloat(base + ((long) i << 2), (float) value);
+        } else {
+            U.putDouble(base + ((long) i << 3), value);
+        }
+    }
+
+    private static void copyElement(int size, long src, long dst) {
+        if (size == 4) {
+            U.putInt(dst, U.getInt(src));
+        } else {
+            U.putLong(dst, U.getLong(src));
+        }
+    }
+
+    private static int sizeOf(int type) {
+        return (type == DeviceBackend.TYPE_LONG || type == DeviceBackend.TYPE_DOUBLE) ? 8 : 4;
+    }
+
+    private static int chunks(int n) {
+        if (n < PARALLEL_THRESHOLD) {
+            return 1;
+        }
+        return Math.max(1, Math.min(4 * ForkJoinPool.getCommonPoolParallelism(), n / MIN_CHUNK));
+    }
+
+    // the work of one chunk [from, to) of the input
+    private interface Chunk {
+        void run(int chunk, int from, int to);
+    }
+
+    @SuppressWarnings("serial")
+    private static void forEachChunk(final int n, final int chunks, final Chunk work) {
+        if (chunks == 1) {
+            work.run(0, 0, n);
+            return;
+        }
+        RecursiveAction[] tasks = new RecursiveAction[chunks];
+        for (int c = 0; c < chunks; ++c) {
+            final int chunk = c;
+            tasks[c] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    work.run(chunk, bound(n, chunks, chunk), bound(n, chunks, chunk + 1));
+                }
+            };
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    private static int bound(int n, int chunks, int chunk) {
+        return (int) ((long) n * chunk / chunks);
+    }
+
+    private HostPrimitives() {
+        throw new AssertionError();
+    }
+}
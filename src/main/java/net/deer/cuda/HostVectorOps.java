@@ -0,0 +1,196 @@
+package net.deer.cuda;
+
+import static net.deer.cuda.UnsafeAccess.U;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The vector operations of the {@link HostBackend}, run in parallel on the
+ * common fork/join pool.
+ * <p>
+ * A vector is split in halves until the pieces have at most {@code LEAF}
+ * elements. The leaves are plain counted loops over the raw addresses which
+ * the JIT unrolls (and vectorizes where it can); the sums use independent
+ * accumulators so that they aren't bound by the latency of the additions.
+ * Like the CUDA kernels, float reductions accumulate in double.
+ */
+final class HostVectorOps {
+
+    // the size of a piece that isn't split any further (in elements)
+    private static final long LEAF = 1L << 14;
+
+    /* package */static void axpy(int elementSize, long n, double alpha, long x, long y) {
+        // invoked from outside the pool this runs in the caller, so small
+        // vectors never leave the calling thread
+        new Axpy(elementSize, alpha, x, y, 0L, n).invoke();
+    }
+
+    /* package */static void scale(int elementSize, long n, double alpha, long x) {
+        new Scale(elementSize, alpha, x, 0L, n).invoke();
+    }
+
+    /* package */static double reduce(int reduction, int elementSize, long n, long x, long y) {
+        return new Reduce(reduction, elementSize, x, y, 0L, n).invoke().doubleValue();
+    }
+
+    // MIN and MAX skip NaN elements, NaN is their identity
+    private static double combine(int reduction, double a, double b) {
+        if (reduction == DeviceBackend.REDUCE_MIN) {
+            return (b < a || a != a) ? b : a;
+        }
+        if (reduction == DeviceBackend.REDUCE_MAX) {
+            return (b > a || a != a) ? b : a;
+        }
+        return a + b;
+    }
+
+    private static double identity(int reduction) {
+        return (reduction == DeviceBackend.REDUCE_MIN || reduction == DeviceBackend.REDUCE_MAX) ? Double.NaN : 0.0;
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Axpy extends RecursiveAction {
+        private final int elementSize;
+        private final double alpha;
+        private final long x;
+        private final long y;
+        private final long from;
+        private final long to;
+
+        Axpy(int elementSize, double alpha, long x, long y, long from, long to) {
+            this.elementSize = elementSize;
+            this.alpha = alpha;
+            this.x = x;
+            this.y = y;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF) {
+                long mid = (from + to) >>> 1;
+                invokeAll(new Axpy(elementSize, alpha, x, y, from, mid), new Axpy(elementSize, alpha, x, y, mid, to));
+            } else if (elementSize == 4) {
+                float a = (float) alpha;
+                for (long off = from << 2, end = to << 2; off < end; off += 4L) {
+                    U.putFloat(y + off, a * U.getFloat(x + off) + U.getFloat(y + off));
+                }
+            } else {
+                for (long off = from << 3, end = to << 3; off < end; off += 8L) {
+                    U.putDouble(y + off, alpha * U.getDouble(x + off) + U.getDouble(y + off));
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Scale extends RecursiveAction {
+        private final int elementSize;
+        private final double alpha;
+        private final long x;
+        private final long from;
+        private final long to;
+
+        Scale(int elementSize, double alpha, long x, long from, long to) {
+            this.elementSize = elementSize;
+            this.alpha = alpha;
+            this.x = x;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF) {
+                long mid = (from + to) >>> 1;
+                invokeAll(new Scale(elementSize, alpha, x, from, mid), new Scale(elementSize, alpha, x, mid, to));
+            } else if (elementSize == 4) {
+                float a = (float) alpha;
+                for (long off = from << 2, end = to << 2; off < end; off += 4L) {
+                    U.putFloat(x + off, a * U.getFloat(x + off));
+                }
+            } else {
+                for (long off = from << 3, end = to << 3; off < end; off += 8L) {
+                    U.putDouble(x + off, alpha * U.getDouble(x + off));
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Reduce extends RecursiveTask<Double> {
+        private final int reduction;
+        private final int elementSize;
+        private final long x;
+        private final long y;
+        private final long from;
+        private final long to;
+
+        Reduce(int reduction, int elementSize, long x, long y, long from, long to) {
+            this.reduction = reduction;
+            this.elementSize = elementSize;
+            this.x = x;
+            this.y = y;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= LEAF) {
+                return Double.valueOf(leaf());
+            }
+            long mid = (from + to) >>> 1;
+            Reduce right = new Reduce(reduction, elementSize, x, y, mid, to);
+            right.fork();
+            double left = new Reduce(reduction, elementSize, x, y, from, mid).compute().doubleValue();
+            return Double.valueOf(combine(reduction, left, right.join().doubleValue()));
+        }
+
+        private double leaf() {
+            if (reduction == DeviceBackend.REDUCE_MIN || reduction == DeviceBackend.REDUCE_MAX) {
+                double acc = identity(reduction);
+                for (long i = from; i < to; ++i) {
+                    acc = combine(reduction, acc, get(x, i));
+                }
+                return acc;
+            }
+            double s0 = 0.0;
+            double s1 = 0.0;
+            double s2 = 0.0;
+            double s3 = 0.0;
+            long i = from;
+            for (; i + 3L < to; i += 4L) {
+                s0 += term(i);
+                s1 += term(i + 1L);
+                s2 += term(i + 2L);
+                s3 += term(i + 3L);
+            }
+            for (; i < to; ++i) {
+                s0 += term(i);
+            }
+            return (s0 + s1) + (s2 + s3);
+        }
+
+        private double term(long i) {
+            double v = get(x, i);
+            if (reduction == DeviceBackend.REDUCE_DOT) {
+                return v * get(y, i);
+            }
+            if (reduction == DeviceBackend.REDUCE_SUM_OF_SQUARES) {
+                return v * v;
+            }
+            return v;
+        }
+
+        private double get(long base, long i) {
+            return (elementSize == 4) ? U.getFloat(base + (i << 2)) : U.getDouble(base + (i << 3));
+        }
+    }
+
+    private HostVectorOps() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,623 @@
+package net.deer.cuda;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import net.deer.cuda.OperationLatencies.Operation;
+
+/**
+ * A {@code DeviceBackend} decorator that brackets every allocation, free and
+ * synchronous copy with a pair of events on the default stream and reports the
+ * elapsed time to {@link OperationLatencies}. Copies and fills queued on a
+ * stream are bracketed on that stream instead, their time is reported from a
+ * stream callback (on a pool thread). All other operations are passed through
+ * unchanged.
+ * <p>
+ * The event pairs are pooled per device, so there are never more pairs than
+ * operations that have been in flight concurrently. Failing to time an
+ * operation never fails the operation itself.
+ */
+final class InstrumentedBackend implements DeviceBackend {
+
+    private final DeviceBackend delegate;
+
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<long[]>> eventPairs = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<long[]>>();
+
+    // the sizes of the device blocks allocated through this backend, for FREE
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<Long, Long>> blockSizes = new ConcurrentHashMap<Integer, ConcurrentHashMap<Long, Long>>();
+
+    InstrumentedBackend(DeviceBackend delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long malloc(int deviceId, long byteCount) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            long address = delegate.malloc(deviceId, byteCount);
+            sizes(deviceId).put(address, byteCount);
+            return address;
+        } finally {
+            end(deviceId, events, Operation.ALLOCATE, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDeviceCount() throws CudaException {
+        return delegate.getDeviceCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DeviceProperties getDeviceProperties(int deviceId) throws CudaException {
+        return delegate.getDeviceProperties(deviceId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long free(int deviceId, long address) {
+        Long byteCount = sizes(deviceId).remove(address);
+        long[] events = begin(deviceId);
+        try {
+            return delegate.free(deviceId, address);
+        } finally {
+            end(deviceId, events, Operation.FREE, (byteCount != null) ? byteCount.longValue() : 0L);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long free(int deviceId, long[] addresses, int count) {
+        // batches come from the reclaimer thread, they aren't timed
+        ConcurrentHashMap<Long, Long> sizes = sizes(deviceId);
+        for (int i = 0; i < count; ++i) {
+            sizes.remove(addresses[i]);
+        }
+        return delegate.free(deviceId, addresses, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long mallocManaged(int deviceId, long byteCount) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            long address = delegate.mallocManaged(deviceId, byteCount);
+            sizes(deviceId).put(address, byteCount);
+            return address;
+        } finally {
+            end(deviceId, events, Operation.ALLOCATE, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prefetch(int deviceId, long address, long byteCount, int dstDeviceId, long stream)
+            throws CudaException {
+        // asynchronous hint, there's nothing meaningful to time
+        delegate.prefetch(deviceId, address, byteCount, dstDeviceId, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void advise(int deviceId, long address, long byteCount, int advice, int adviceDeviceId)
+            throws CudaException {
+        delegate.advise(deviceId, address, byteCount, advice, adviceDeviceId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long mallocHost(long byteCount) throws CudaException {
+        return delegate.mallocHost(byteCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long freeHost(long address) {
+        return delegate.freeHost(address);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDevice(int deviceId, long address, Object array, long byteOffset, long byteCount)
+            throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.copyHostToDevice(deviceId, address, array, byteOffset, byteCount);
+        } finally {
+            end(deviceId, events, Operation.COPY_TO_DEVICE, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHost(int deviceId, long address, Object array, long byteOffset, long byteCount)
+            throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.copyDeviceToHost(deviceId, address, array, byteOffset, byteCount);
+        } finally {
+            end(deviceId, events, Operation.COPY_TO_HOST, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDevice(int deviceId, long address, long hostAddress, long byteCount) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.copyHostToDevice(deviceId, address, hostAddress, byteCount);
+        } finally {
+            end(deviceId, events, Operation.COPY_TO_DEVICE, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHost(int deviceId, long address, long hostAddress, long byteCount) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.copyDeviceToHost(deviceId, address, hostAddress, byteCount);
+        } finally {
+            end(deviceId, events, Operation.COPY_TO_HOST, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long createStream(int deviceId, int flags) throws CudaException {
+        return delegate.createStream(deviceId, flags);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long destroyStream(int deviceId, long stream) {
+        return delegate.destroyStream(deviceId, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void synchronizeStream(int deviceId, long stream) throws CudaException {
+        delegate.synchronizeStream(deviceId, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queryStream(int deviceId, long stream) throws CudaException {
+        return delegate.queryStream(deviceId, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addCallback(int deviceId, long stream, StreamCallback callback) throws CudaException {
+        delegate.addCallback(deviceId, stream, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long createEvent(int deviceId, int flags) throws CudaException {
+        return delegate.createEvent(deviceId, flags);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long destroyEvent(int deviceId, long event) {
+        return delegate.destroyEvent(deviceId, event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordEvent(int deviceId, long event, long stream) throws CudaException {
+        delegate.recordEvent(deviceId, event, stream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queryEvent(int deviceId, long event) throws CudaException {
+        return delegate.queryEvent(deviceId, event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void synchronizeEvent(int deviceId, long event) throws CudaException {
+        delegate.synchronizeEvent(deviceId, event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float elapsedTime(int deviceId, long start, long end) throws CudaException {
+        return delegate.elapsedTime(deviceId, start, end);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyHostToDeviceAsync(long stream, int deviceId, long address, long hostAddress, long byteCount)
+            throws CudaException {
+        long[] events = begin(deviceId, stream);
+        boolean queued = false;
+        try {
+            delegate.copyHostToDeviceAsync(stream, deviceId, address, hostAddress, byteCount);
+            queued = true;
+        } finally {
+            endAsync(deviceId, stream, events, queued, Operation.COPY_TO_DEVICE_ASYNC, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToHostAsync(long stream, int deviceId, long address, long hostAddress, long byteCount)
+            throws CudaException {
+        long[] events = begin(deviceId, stream);
+        boolean queued = false;
+        try {
+            delegate.copyDeviceToHostAsync(stream, deviceId, address, hostAddress, byteCount);
+            queued = true;
+        } finally {
+            endAsync(deviceId, stream, events, queued, Operation.COPY_TO_HOST_ASYNC, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToDevice(int deviceId, long dstAddress, long srcAddress, long byteCount)
+            throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.copyDeviceToDevice(deviceId, dstAddress, srcAddress, byteCount);
+        } finally {
+            end(deviceId, events, Operation.COPY_DEVICE_TO_DEVICE, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyDeviceToDeviceAsync(long stream, int deviceId, long dstAddress, long srcAddress, long byteCount)
+            throws CudaException {
+        long[] events = begin(deviceId, stream);
+        boolean queued = false;
+        try {
+            delegate.copyDeviceToDeviceAsync(stream, deviceId, dstAddress, srcAddress, byteCount);
+            queued = true;
+        } finally {
+            endAsync(deviceId, stream, events, queued, Operation.COPY_DEVICE_TO_DEVICE, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean enablePeerAccess(int deviceId, int peerDeviceId) throws CudaException {
+        return delegate.enablePeerAccess(deviceId, peerDeviceId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copyPeer(int dstDeviceId, long dstAddress, int srcDeviceId, long srcAddress, long byteCount)
+            throws CudaException {
+        // timed on the destination device
+        long[] events = begin(dstDeviceId);
+        try {
+            delegate.copyPeer(dstDeviceId, dstAddress, srcDeviceId, srcAddress, byteCount);
+        } finally {
+            end(dstDeviceId, events, Operation.COPY_PEER, byteCount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void memset(int deviceId, long address, long pattern, int patternSize, long count) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.memset(deviceId, address, pattern, patternSize, count);
+        } finally {
+            end(deviceId, events, Operation.FILL, count * patternSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void memsetAsync(long stream, int deviceId, long address, long pattern, int patternSize, long count)
+            throws CudaException {
+        long[] events = begin(deviceId, stream);
+        boolean queued = false;
+        try {
+            delegate.memsetAsync(stream, deviceId, address, pattern, patternSize, count);
+            queued = true;
+        } finally {
+            endAsync(deviceId, stream, events, queued, Operation.FILL, count * patternSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void axpy(int deviceId, int elementSize, long n, double alpha, long x, long y) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.axpy(deviceId, elementSize, n, alpha, x, y);
+        } finally {
+            end(deviceId, events, Operation.VECTOR, n * elementSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void scale(int deviceId, int elementSize, long n, double alpha, long x) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.scale(deviceId, elementSize, n, alpha, x);
+        } finally {
+            end(deviceId, events, Operation.VECTOR, n * elementSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double reduce(int deviceId, int reduction, int elementSize, long n, long x, long y)
+            throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            return delegate.reduce(deviceId, reduction, elementSize, n, x, y);
+        } finally {
+            end(deviceId, events, Operation.VECTOR, n * elementSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sort(int deviceId, int keyType, int n, long keys, long values, int valueSize) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.sort(deviceId, keyType, n, keys, values, valueSize);
+        } finally {
+            int keySize = (keyType == TYPE_LONG || keyType == TYPE_DOUBLE) ? 8 : 4;
+            end(deviceId, events, Operation.SORT, (long) n * (keySize + (values != 0L ? valueSize : 0)));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void scan(int deviceId, int type, boolean inclusive, int n, long in, long out) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            delegate.scan(deviceId, type, inclusive, n, in, out);
+        } finally {
+            end(deviceId, events, Operation.SCAN, (long) n * ((type == TYPE_LONG || type == TYPE_DOUBLE) ? 8 : 4));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int selectFlagged(int deviceId, int elementSize, int n, long in, long flags, long out)
+            throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            return delegate.selectFlagged(deviceId, elementSize, n, in, flags, out);
+        } finally {
+            end(deviceId, events, Operation.COMPACT, (long) n * elementSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int selectUnique(int deviceId, int elementSize, int n, long in, long out) throws CudaException {
+        long[] events = begin(deviceId);
+        try {
+            return delegate.selectUnique(deviceId, elementSize, n, in, out);
+        } finally {
+            end(deviceId, events, Operation.COMPACT, (long) n * elementSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void evaluate(int deviceId, ElementwiseProgram program, long n, long out, long[] inputs,
+            double[] scalars, long stream) throws CudaException {
+        if (stream != 0L) {
+            // queued only, there's nothing meaningful to time
+            delegate.evaluate(deviceId, program, n, out, inputs, scalars, stream);
+            return;
+        }
+        long[] events = begin(deviceId);
+        try {
+            delegate.evaluate(deviceId, program, n, out, inputs, scalars, 0L);
+        } finally {
+            // the bytes moved: every input is read and out is written once
+            end(deviceId, events, Operation.ELEMENTWISE, (inputs.length + 1L) * n * program.getElementSize());
+        }
+    }
+
+    // Records the start event of a pooled pair, returns null if the
+    // operation can't be timed
+    private long[] begin(int deviceId) {
+        return begin(deviceId, 0L);
+    }
+
+    private long[] begin(int deviceId, long stream) {
+        long[] events = pool(deviceId).poll();
+        try {
+            if (events == null) {
+                events = new long[2];
+                events[0] = delegate.createEvent(deviceId, CudaEvent.FLAG_DEFAULT);
+                events[1] = delegate.createEvent(deviceId, CudaEvent.FLAG_DEFAULT);
+            }
+            delegate.recordEvent(deviceId, events[0], stream);
+            return events;
+        } catch (CudaException e) {
+            discard(deviceId, events);
+            return null;
+        }
+    }
+
+    private void end(int deviceId, long[] events, Operation operation, long byteCount) {
+        if (events == null) {
+            return;
+        }
+        try {
+            delegate.recordEvent(deviceId, events[1], 0L);
+            delegate.synchronizeEvent(deviceId, events[1]);
+            float millis = delegate.elapsedTime(deviceId, events[0], events[1]);
+            OperationLatencies.record(operation, byteCount, (long) (millis * 1e6));
+            pool(deviceId).offer(events);
+        } catch (CudaException e) {
+            discard(deviceId, events);
+        }
+    }
+
+    // Records the end event behind the queued operation and reports the time
+    // once the stream has reached it. The callback runs on a thread of the
+    // runtime which must not call the backend, so it hands off to the pool.
+    private void endAsync(final int deviceId, long stream, final long[] events, boolean queued,
+            final Operation operation, final long byteCount) {
+        if (events == null) {
+            return;
+        }
+        try {
+            delegate.recordEvent(deviceId, events[1], stream);
+            if (!queued) {
+                // nothing to time, the pair is reusable once the stream is
+                // past it
+                delegate.synchronizeEvent(deviceId, events[1]);
+                pool(deviceId).offer(events);
+                return;
+            }
+            delegate.addCallback(deviceId, stream, new StreamCallback() {
+                @Override
+                public void done(final int status, Throwable cause) {
+                    ForkJoinPool.commonPool().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                if (status == 0) {
+                                    float millis = delegate.elapsedTime(deviceId, events[0], events[1]);
+                                    OperationLatencies.record(operation, byteCount, (long) (millis * 1e6));
+                                }
+                                pool(deviceId).offer(events);
+                            } catch (CudaException e) {
+                                discard(deviceId, events);
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (CudaException e) {
+            discard(deviceId, events);
+        }
+    }
+
+    private void discard(int deviceId, long[] events) {
+        if (events != null) {
+            for (long event : events) {
+                if (event != 0L) {
+                    delegate.destroyEvent(deviceId, event);
+                }
+            }
+        }
+    }
+
+    private ConcurrentHashMap<Long, Long> sizes(int deviceId) {
+        ConcurrentHashMap<Long, Long> sizes = blockSizes.get(deviceId);
+        if (sizes == null) {
+            ConcurrentHashMap<Long, Long> created = new ConcurrentHashMap<Long, Long>();
+            sizes = blockSizes.putIfAbsent(deviceId, created);
+            if (sizes == null) {
+                sizes = created;
+            }
+        }
+        return sizes;
+    }
+
+    private ConcurrentLinkedQueue<long[]> pool(int deviceId) {
+        ConcurrentLinkedQueue<long[]> pool = eventPairs.get(deviceId);
+        if (pool == null) {
+            ConcurrentLinkedQueue<long[]> created = new ConcurrentLinkedQueue<long[]>();
+            pool = eventPairs.putIfAbsent(deviceId, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool;
+    }
+}
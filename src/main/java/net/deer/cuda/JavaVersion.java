@@ -32,6 +32,10 @@ final class JavaVersion {
         return JAVA_CLASS_VERSION >= 54.0;
     }
 
+    public static boolean isAtLeastJava22() {
+        return JAVA_CLASS_VERSION >= 66.0;
+    }
+
     private JavaVersion() {
         throw new AssertionError();
     }
@@ -21,15 +21,54 @@
  *******************************************************************************/
 package net.deer.cuda;
 
+import static net.deer.cuda.UnsafeAccess.U;
+
+import java.util.Arrays;
+
+/**
+ * The argument block of a kernel launch.
+ * <p>
+ * Every parameter occupies a typed slot of 1, 2, 4 or 8 bytes. Scalars are
+ * kept as raw bits, device buffers by reference (their address is re-read,
+ * and thereby validated, whenever the block is packed). The block is packed
+ * into a reusable {@code long[]} following the C layout rules (every slot
+ * naturally aligned), the format of {@code CU_LAUNCH_PARAM_BUFFER_POINTER}.
+ * Setting a parameter allocates nothing, and packing only rewrites the slots
+ * that changed since the last time (plus the buffer addresses) as long as
+ * no slot changed its size.
+ * <p>
+ * A parameter block is not thread-safe.
+ */
 public final class KernelParams {
 
+    private static final long LONG_ARRAY_BASE = U.arrayBaseOffset(long[].class);
+
     /*
      * A bit-mask of missing values (the bit (1 << i) is set if the parameter at
-     * values[i] is missing).
+     * index i is missing).
      */
     private long mask;
 
-    private final Address[] values;
+    // the slots that have been set since the last pack()
+    private long dirty;
+
+    // the slots holding a device buffer
+    private long pointers;
+
+    // the size of each slot in bytes (0 while unset)
+    private final byte[] sizes;
+
+    // the raw bits of each scalar slot
+    private final long[] bits;
+
+    // the buffer of each pointer slot (null for scalars and null pointers)
+    private final DeviceMemory[] buffers;
+
+    // the packed layout, recomputed when a slot changes its size
+    private final int[] offsets;
+    private boolean layoutValid;
+    private int packedSize;
+    private long[] packed = new long[0];
 
     /**
      * Creates a copy of the given parameter block.
@@ -39,7 +78,11 @@ public final class KernelParams {
      */
     public KernelParams(KernelParams other) {
         this.mask = other.mask;
-        this.values = other.values.clone();
+        this.pointers = other.pointers;
+        this.sizes = other.sizes.clone();
+        this.bits = other.bits.clone();
+        this.buffers = other.buffers.clone();
+        this.offsets = new int[sizes.length];
     }
 
     /**
@@ -53,16 +96,15 @@ public final class KernelParams {
     KernelParams(int count) {
         if (0 <= count && count <= Long.SIZE) {
             this.mask = (count == Long.SIZE) ? -1L : (1L << count) - 1;
-            this.values = new Address[count];
+            this.sizes = new byte[count];
+            this.bits = new long[count];
+            this.buffers = new DeviceMemory[count];
+            this.offsets = new int[count];
         } else {
             throw new IllegalArgumentException("count: " + count);
         }
     }
 
-    Address[] getValues() {
-        return values;
-    }
-
     boolean isComplete() {
         return mask == 0L;
     }
@@ -75,26 +117,136 @@ public final class KernelParams {
     }
 
     /**
-     * Replaces the parameter at the specified index with the given address
-     * value.
+     * Replaces the parameter at the specified index with a scalar of the
+     * given size (1, 2, 4 or 8 bytes) whose value is the low order
+     * {@code size} bytes of {@code value}.
+     *
+     * @throws IndexOutOfBoundsException
+     *             if {@code index} &lt; 0 or {@code index} &gt;= the size of
+     *             this parameter list
+     */
+    void set(int index, int size, long value) {
+        long bit = slot(index, size);
+        pointers &= ~bit;
+        buffers[index] = null;
+        bits[index] = value;
+    }
+
+    /**
+     * Replaces the parameter at the specified index with the address of a
+     * device buffer ({@code null} denotes a null pointer).
      *
-     * @param index
-     *            the index of the parameter to be set
-     * @param value
-     *            the value to be passed when the kernel is launched
      * @throws IndexOutOfBoundsException
      *             if {@code index} &lt; 0 or {@code index} &gt;= the size of
      *             this parameter list
+     * @throws IllegalStateException
+     *             if the buffer has already been closed
      */
-    void set(int index, Address value) {
-        if (value == null) {
-            throw new IllegalArgumentException("null value at index " + index);
+    void set(int index, DeviceMemory buffer) {
+        if (buffer != null) {
+            // fail early
+            buffer.getAddress();
         }
-        if (0 <= index && index < values.length) {
-            mask &= ~(1L << index);
-            values[index] = value;
+        long bit = slot(index, Long.BYTES);
+        if (buffer == null) {
+            pointers &= ~bit;
+        } else {
+            pointers |= bit;
+        }
+        buffers[index] = buffer;
+        bits[index] = 0L;
+    }
+
+    /**
+     * Returns the number of bytes of the packed block.
+     */
+    int getPackedSize() {
+        check();
+        if (!layoutValid) {
+            layout();
+        }
+        return packedSize;
+    }
+
+    /**
+     * Packs the parameters into the returned array (which is reused by
+     * subsequent calls) and returns it. The first {@link #getPackedSize()}
+     * bytes of the array (in native byte order) are the argument block.
+     *
+     * @throws IllegalArgumentException
+     *             if not all parameters have been set
+     * @throws IllegalStateException
+     *             if a device buffer has been closed in the meantime
+     */
+    long[] pack() {
+        check();
+        long pending = dirty | pointers;
+        if (!layoutValid) {
+            layout();
+            pending = -1L;
+        }
+        for (int i = 0; i < sizes.length; ++i) {
+            if ((pending & (1L << i)) != 0L) {
+                DeviceMemory buffer = buffers[i];
+                long value = (buffer == null) ? bits[i] : buffer.getAddress();
+                write(offsets[i], sizes[i], value);
+            }
+        }
+        dirty = 0L;
+        return packed;
+    }
+
+    // Marks the slot as set, invalidates the layout if its size changes and
+    // returns the bit of the slot
+    private long slot(int index, int size) {
+        if (0 <= index && index < sizes.length) {
+            long bit = 1L << index;
+            mask &= ~bit;
+            dirty |= bit;
+            if (sizes[index] != size) {
+                sizes[index] = (byte) size;
+                layoutValid = false;
+            }
+            return bit;
         } else {
             throw new IndexOutOfBoundsException("index: " + index);
         }
     }
+
+    private void layout() {
+        int offset = 0;
+        for (int i = 0; i < sizes.length; ++i) {
+            int size = sizes[i];
+            offset = (offset + size - 1) & -size;
+            offsets[i] = offset;
+            offset += size;
+        }
+        packedSize = offset;
+        int words = (offset + Long.BYTES - 1) / Long.BYTES;
+        if (packed.length < words) {
+            packed = new long[words];
+        } else {
+            // clear the padding
+            Arrays.fill(packed, 0L);
+        }
+        layoutValid = true;
+    }
+
+    private void write(int offset, int size, long value) {
+        long at = LONG_ARRAY_BASE + offset;
+        switch (size) {
+        case 1:
+            U.putByte(packed, at, (byte) value);
+            break;
+        case 2:
+            U.putShort(packed, at, (short) value);
+            break;
+        case 4:
+            U.putInt(packed, at, (int) value);
+            break;
+        default:
+            U.putLong(packed, at, value);
+            break;
+        }
+    }
 }
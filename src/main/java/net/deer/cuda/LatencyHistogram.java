@@ -0,0 +1,103 @@
+package net.deer.cuda;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds.
+ * <p>
+ * Values below 16 ns are counted exactly, every power-of-two interval above
+ * is split into 8 linear buckets, so a reported percentile is never off by
+ * more than 12.5% (the maximum is exact). Recording is wait-free apart from
+ * the update of the maximum.
+ */
+final class LatencyHistogram {
+
+    // number of linear buckets per power of two
+    private static final int LOG_SUB_BUCKETS = 3;
+    private static final int SUB_BUCKETS = 1 << LOG_SUB_BUCKETS;
+
+    // values below this are counted in a bucket of their own
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int LOG_LINEAR_LIMIT = LOG_SUB_BUCKETS + 1;
+
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (Long.SIZE - 1 - LOG_LINEAR_LIMIT) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0L) {
+            nanos = 0L;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        count.incrementAndGet();
+        long current;
+        while (nanos > (current = max.get())) {
+            if (max.compareAndSet(current, nanos)) {
+                break;
+            }
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given
+     * percentile (0 &lt; percentile &lt;= 100), or 0 if nothing has been
+     * recorded yet.
+     */
+    long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0L) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        if (rank < 1L) {
+            rank = 1L;
+        }
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        // concurrent updates: the counts lag behind the total
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts.set(i, 0L);
+        }
+        count.set(0L);
+        max.set(0L);
+    }
+
+    /* package */static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int log2 = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (log2 - LOG_SUB_BUCKETS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + ((log2 - LOG_LINEAR_LIMIT) << LOG_SUB_BUCKETS) + sub;
+    }
+
+    /* package */static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int log2 = ((index - LINEAR_LIMIT) >>> LOG_SUB_BUCKETS) + LOG_LINEAR_LIMIT;
+        int sub = (index - LINEAR_LIMIT) & (SUB_BUCKETS - 1);
+        long width = 1L << (log2 - LOG_SUB_BUCKETS);
+        return ((SUB_BUCKETS + sub) * width) + width - 1L;
+    }
+}
@@ -0,0 +1,230 @@
+package net.deer.cuda;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The {@code OperationLatencies} class collects the device-side latencies of
+ * allocations, frees and transfers when instrumentation has been
+ * enabled by setting {@code net.deer.cuda.SystemProps.instrumentation.enabled}
+ * to {@code true}.
+ * <p>
+ * Every instrumented operation is bracketed by a pair of {@link CudaEvent}s on
+ * the default stream (on its own stream for an asynchronous operation, whose
+ * latency gets recorded once the stream has reached the second event) and
+ * the elapsed time between them is recorded in a
+ * histogram per {@link Operation} and size bucket (the power of two the byte
+ * count rounds up to). Each staged chunk of a large transfer is recorded on
+ * its own, and allocations served from the {@link CachingAllocator} don't
+ * reach the device and are therefore not recorded.
+ * <p>
+ * Note that bracketing serializes every operation with the device, so
+ * instrumentation is meant for diagnosis, not for production use.
+ */
+public final class OperationLatencies {
+
+    /**
+     * The instrumented operations.
+     */
+    public enum Operation {
+        /** Allocation of device memory. */
+        ALLOCATE,
+        /** Release of device memory. */
+        FREE,
+        /** Synchronous copy from the host to the device. */
+        COPY_TO_DEVICE,
+        /** Synchronous copy from the device to the host. */
+        COPY_TO_HOST,
+        /** Copy within a device (synchronous or queued on a stream). */
+        COPY_DEVICE_TO_DEVICE,
+        /** Synchronous copy from one device to another. */
+        COPY_PEER,
+        /** Device-side fill of a region with a pattern. */
+        FILL,
+        /** Device-side vector arithmetic (axpy, scale and reductions). */
+        VECTOR,
+        /** Device-side radix sort of keys or key / value pairs. */
+        SORT,
+        /** Device-side prefix sum. */
+        SCAN,
+        /** Device-side stream compaction (flagged or unique selection). */
+        COMPACT,
+        /** Device-side evaluation of a fused element-wise expression. */
+        ELEMENTWISE,
+        /** Copy from the host to the device queued on a stream. */
+        COPY_TO_DEVICE_ASYNC,
+        /** Copy from the device to the host queued on a stream. */
+        COPY_TO_HOST_ASYNC
+    }
+
+    private static final int SIZE_BUCKETS = Long.SIZE;
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private static final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<LatencyHistogram>(
+            OPERATIONS.length * SIZE_BUCKETS);
+
+    /**
+     * Returns whether the operations are being instrumented.
+     *
+     * @return {@code true} if instrumentation is enabled
+     */
+    public static boolean isEnabled() {
+        return SystemProps.INSTRUMENTATION;
+    }
+
+    /**
+     * Returns the current latencies of all operation / size bucket
+     * combinations that have been recorded at least once, ordered by operation
+     * and size bucket.
+     *
+     * @return an immutable snapshot of the recorded latencies
+     */
+    public static List<Entry> snapshot() {
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        for (int i = 0; i < histograms.length(); ++i) {
+            LatencyHistogram histogram = histograms.get(i);
+            if (histogram != null && histogram.getCount() != 0L) {
+                entries.add(new Entry(OPERATIONS[i / SIZE_BUCKETS], sizeBucketBound(i % SIZE_BUCKETS), histogram));
+            }
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Formats the current latencies in the Prometheus text exposition format
+     * (as a summary with the quantiles 0.5, 0.99 and 1, in seconds).
+     *
+     * @return the recorded latencies ready to be scraped
+     */
+    public static String format() {
+        StringBuilder sb = new StringBuilder();
+        String name = "deer_cuda_operation_latency_seconds";
+        sb.append("# TYPE ").append(name).append(" summary\n");
+        for (Entry e : snapshot()) {
+            String labels = "operation=\"" + e.getOperation().name().toLowerCase(Locale.ROOT) + "\",bytes_le=\""
+                    + e.getMaxByteCount() + "\"";
+            appendSample(sb, name, labels + ",quantile=\"0.5\"", e.getP50Nanos());
+            appendSample(sb, name, labels + ",quantile=\"0.99\"", e.getP99Nanos());
+            appendSample(sb, name, labels + ",quantile=\"1\"", e.getMaxNanos());
+            sb.append(name).append("_count{").append(labels).append("} ").append(e.getCount()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Discards all recorded latencies.
+     */
+    public static void reset() {
+        for (int i = 0; i < histograms.length(); ++i) {
+            LatencyHistogram histogram = histograms.get(i);
+            if (histogram != null) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /* package */static void record(Operation operation, long byteCount, long nanos) {
+        int index = operation.ordinal() * SIZE_BUCKETS + sizeBucket(byteCount);
+        LatencyHistogram histogram = histograms.get(index);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            if (!histograms.compareAndSet(index, null, histogram)) {
+                histogram = histograms.get(index);
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    // the smallest b with byteCount <= 2^b
+    private static int sizeBucket(long byteCount) {
+        return (byteCount <= 1L) ? 0 : Long.SIZE - Long.numberOfLeadingZeros(byteCount - 1L);
+    }
+
+    private static long sizeBucketBound(int sizeBucket) {
+        return (sizeBucket == Long.SIZE - 1) ? Long.MAX_VALUE : 1L << sizeBucket;
+    }
+
+    private static void appendSample(StringBuilder sb, String name, String labels, long nanos) {
+        sb.append(name).append('{').append(labels).append("} ").append(nanos / 1e9).append('\n');
+    }
+
+    /**
+     * The latencies of a single operation / size bucket combination at the
+     * time of the {@link OperationLatencies#snapshot() snapshot}.
+     */
+    public static final class Entry {
+
+        private final Operation operation;
+        private final long maxByteCount;
+        private final long count;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        Entry(Operation operation, long maxByteCount, LatencyHistogram histogram) {
+            this.operation = operation;
+            this.maxByteCount = maxByteCount;
+            this.count = histogram.getCount();
+            this.p50Nanos = histogram.getPercentile(50.0);
+            this.p99Nanos = histogram.getPercentile(99.0);
+            this.maxNanos = histogram.getMax();
+        }
+
+        /**
+         * @return the operation
+         */
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return the (inclusive) upper bound of the byte counts in this size
+         *         bucket, the lower bound is half of it (exclusive)
+         */
+        public long getMaxByteCount() {
+            return maxByteCount;
+        }
+
+        /**
+         * @return the number of recorded operations
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the median latency in nanoseconds
+         */
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        /**
+         * @return the 99th percentile of the latency in nanoseconds
+         */
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        /**
+         * @return the maximum latency in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return operation + " <= " + maxByteCount + " bytes: count=" + count + ", p50=" + p50Nanos + " ns, p99="
+                    + p99Nanos + " ns, max=" + maxNanos + " ns";
+        }
+    }
+
+    private OperationLatencies() {
+        throw new AssertionError();
+    }
+}
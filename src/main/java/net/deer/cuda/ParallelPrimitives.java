@@ -0,0 +1,562 @@
+package net.deer.cuda;
+
+/**
+ * Data-parallel primitives on {@link DeviceMemory}: radix sort of keys and of
+ * key / value pairs, inclusive and exclusive prefix sums and stream compaction
+ * (by flags or by removing consecutive duplicates).
+ * <p>
+ * An operand is a whole buffer or slice, its element count is its length
+ * divided by the element size (trailing bytes are ignored) and is limited to
+ * {@code Integer.MAX_VALUE}. Operands must start at a multiple of their
+ * element size and must live on the same device.
+ * <p>
+ * Every primitive runs on the device of its operands and returns once it has
+ * completed, so ranking or deduplicating a candidate buffer never fetches it
+ * to the JVM. The CUDA backend builds on CUB; the temporary storage comes from
+ * the stream-ordered allocator. With the host backend
+ * ({@code -Dnet.deer.cuda.SystemProps.backend=host}) the same primitives run in
+ * parallel on the common fork/join pool.
+ *
+ * @see VectorOps
+ */
+public final class ParallelPrimitives {
+
+    private static final DeviceBackend backend = Backends.get();
+
+    /**
+     * Sorts the int {@code keys} in ascending order, in place.
+     *
+     * @param keys
+     *            the keys to be sorted
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code keys} isn't aligned or holds more than
+     *             {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static void sortInt(DeviceMemory keys) throws CudaException {
+        backend.sort(keys.getDeviceId(), DeviceBackend.TYPE_INT, count(keys, 4), VectorOps.addressOf(keys, 4),
+                0L, 0);
+        ReachabilityFence.protect(keys);
+    }
+
+    /**
+     * Sorts the int {@code keys} in ascending order and permutes the
+     * {@code values} along with them, in place. The sort is stable, so
+     * sorting pairs whose values are the indices {@code 0, 1, ...} yields
+     * the sorting permutation.
+     *
+     * @param keys
+     *            the keys to be sorted
+     * @param values
+     *            one value of {@code valueSize} bytes per key
+     * @param valueSize
+     *            the size of a value in bytes, 4 (e.g. for int or float
+     *            values) or 8 (e.g. for long or double values)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code valueSize} is neither 4 nor 8, the buffers
+     *             differ in device or element count, aren't aligned or hold
+     *             more than {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void sortIntPairs(DeviceMemory keys, DeviceMemory values, int valueSize) throws CudaException {
+        checkElementSize(valueSize);
+        int n = count(keys, 4);
+        checkSameCount(keys, n, values, valueSize);
+        backend.sort(keys.getDeviceId(), DeviceBackend.TYPE_INT, n, VectorOps.addressOf(keys, 4),
+                VectorOps.addressOf(values, valueSize), valueSize);
+        ReachabilityFence.protect(keys);
+        ReachabilityFence.protect(values);
+    }
+
+    /**
+     * Sorts the long {@code keys} in ascending order, in place.
+     *
+     * @param keys
+     *            the keys to be sorted
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code keys} isn't aligned or holds more than
+     *             {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static void sortLong(DeviceMemory keys) throws CudaException {
+        backend.sort(keys.getDeviceId(), DeviceBackend.TYPE_LONG, count(keys, 8), VectorOps.addressOf(keys, 8),
+                0L, 0);
+        ReachabilityFence.protect(keys);
+    }
+
+    /**
+     * Sorts the long {@code keys} in ascending order and permutes the
+     * {@code values} along with them, in place. The sort is stable, so
+     * sorting pairs whose values are the indices {@code 0, 1, ...} yields
+     * the sorting permutation.
+     *
+     * @param keys
+     *            the keys to be sorted
+     * @param values
+     *            one value of {@code valueSize} bytes per key
+     * @param valueSize
+     *            the size of a value in bytes, 4 (e.g. for int or float
+     *            values) or 8 (e.g. for long or double values)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code valueSize} is neither 4 nor 8, the buffers
+     *             differ in device or element count, aren't aligned or hold
+     *             more than {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void sortLongPairs(DeviceMemory keys, DeviceMemory values, int valueSize) throws CudaException {
+        checkElementSize(valueSize);
+        int n = count(keys, 8);
+        checkSameCount(keys, n, values, valueSize);
+        backend.sort(keys.getDeviceId(), DeviceBackend.TYPE_LONG, n, VectorOps.addressOf(keys, 8),
+                VectorOps.addressOf(values, valueSize), valueSize);
+        ReachabilityFence.protect(keys);
+        ReachabilityFence.protect(values);
+    }
+
+    /**
+     * Sorts the float {@code keys} in ascending order, in place. The order of
+     * {@code -0.0} and {@code 0.0} and of NaNs with different bit patterns may
+     * differ between the backends.
+     *
+     * @param keys
+     *            the keys to be sorted
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code keys} isn't aligned or holds more than
+     *             {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static void sortFloat(DeviceMemory keys) throws CudaException {
+        backend.sort(keys.getDeviceId(), DeviceBackend.TYPE_FLOAT, count(keys, 4), VectorOps.addressOf(keys, 4),
+                0L, 0);
+        ReachabilityFence.protect(keys);
+    }
+
+    /**
+     * Sorts the float {@code keys} in ascending order and permutes the
+     * {@code values} along with them, in place. The sort is stable, so
+     * sorting pairs whose values are the indices {@code 0, 1, ...} yields
+     * the sorting permutation.
+     *
+     * @param keys
+     *            the keys to be sorted
+     * @param values
+     *            one value of {@code valueSize} bytes per key
+     * @param valueSize
+     *            the size of a value in bytes, 4 (e.g. for int or float
+     *            values) or 8 (e.g. for long or double values)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code valueSize} is neither 4 nor 8, the buffers
+     *             differ in device or element count, aren't aligned or hold
+     *             more than {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void sortFloatPairs(DeviceMemory keys, DeviceMemory values, int valueSize) throws CudaException {
+        checkElementSize(valueSize);
+        int n = count(keys, 4);
+        checkSameCount(keys, n, values, valueSize);
+        backend.sort(keys.getDeviceId(), DeviceBackend.TYPE_FLOAT, n, VectorOps.addressOf(keys, 4),
+                VectorOps.addressOf(values, valueSize), valueSize);
+        ReachabilityFence.protect(keys);
+        ReachabilityFence.protect(values);
+    }
+
+    /**
+     * Sorts the double {@code keys} in ascending order, in place. The order of
+     * {@code -0.0} and {@code 0.0} and of NaNs with different bit patterns may
+     * differ between the backends.
+     *
+     * @param keys
+     *            the keys to be sorted
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code keys} isn't aligned or holds more than
+     *             {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static void sortDouble(DeviceMemory keys) throws CudaException {
+        backend.sort(keys.getDeviceId(), DeviceBackend.TYPE_DOUBLE, count(keys, 8), VectorOps.addressOf(keys, 8),
+                0L, 0);
+        ReachabilityFence.protect(keys);
+    }
+
+    /**
+     * Sorts the double {@code keys} in ascending order and permutes the
+     * {@code values} along with them, in place. The sort is stable, so
+     * sorting pairs whose values are the indices {@code 0, 1, ...} yields
+     * the sorting permutation.
+     *
+     * @param keys
+     *            the keys to be sorted
+     * @param values
+     *            one value of {@code valueSize} bytes per key
+     * @param valueSize
+     *            the size of a value in bytes, 4 (e.g. for int or float
+     *            values) or 8 (e.g. for long or double values)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code valueSize} is neither 4 nor 8, the buffers
+     *             differ in device or element count, aren't aligned or hold
+     *             more than {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void sortDoublePairs(DeviceMemory keys, DeviceMemory values, int valueSize) throws CudaException {
+        checkElementSize(valueSize);
+        int n = count(keys, 8);
+        checkSameCount(keys, n, values, valueSize);
+        backend.sort(keys.getDeviceId(), DeviceBackend.TYPE_DOUBLE, n, VectorOps.addressOf(keys, 8),
+                VectorOps.addressOf(values, valueSize), valueSize);
+        ReachabilityFence.protect(keys);
+        ReachabilityFence.protect(values);
+    }
+
+    /**
+     * Computes the inclusive prefix sums of the int elements of {@code in}:
+     * {@code out[i] = in[0] + ... + in[i]}. An int sum wraps around on overflow.
+     *
+     * @param in
+     *            the elements to be summed up
+     * @param out
+     *            receives the prefix sums, may be {@code in} itself
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the buffers differ in device or element count, aren't
+     *             aligned or hold more than {@code Integer.MAX_VALUE}
+     *             elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void inclusiveScanInt(DeviceMemory in, DeviceMemory out) throws CudaException {
+        int n = count(in, 4);
+        checkSameCount(in, n, out, 4);
+        backend.scan(in.getDeviceId(), DeviceBackend.TYPE_INT, true, n, VectorOps.addressOf(in, 4),
+                VectorOps.addressOf(out, 4));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+    }
+
+    /**
+     * Computes the exclusive prefix sums of the int elements of {@code in}:
+     * {@code out[i] = in[0] + ... + in[i - 1]} (and
+     * {@code out[0] = 0}). An int sum wraps around on overflow.
+     *
+     * @param in
+     *            the elements to be summed up
+     * @param out
+     *            receives the prefix sums, may be {@code in} itself
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the buffers differ in device or element count, aren't
+     *             aligned or hold more than {@code Integer.MAX_VALUE}
+     *             elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void exclusiveScanInt(DeviceMemory in, DeviceMemory out) throws CudaException {
+        int n = count(in, 4);
+        checkSameCount(in, n, out, 4);
+        backend.scan(in.getDeviceId(), DeviceBackend.TYPE_INT, false, n, VectorOps.addressOf(in, 4),
+                VectorOps.addressOf(out, 4));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+    }
+
+    /**
+     * Computes the inclusive prefix sums of the long elements of {@code in}:
+     * {@code out[i] = in[0] + ... + in[i]}. A long sum wraps around on overflow.
+     *
+     * @param in
+     *            the elements to be summed up
+     * @param out
+     *            receives the prefix sums, may be {@code in} itself
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the buffers differ in device or element count, aren't
+     *             aligned or hold more than {@code Integer.MAX_VALUE}
+     *             elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void inclusiveScanLong(DeviceMemory in, DeviceMemory out) throws CudaException {
+        int n = count(in, 8);
+        checkSameCount(in, n, out, 8);
+        backend.scan(in.getDeviceId(), DeviceBackend.TYPE_LONG, true, n, VectorOps.addressOf(in, 8),
+                VectorOps.addressOf(out, 8));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+    }
+
+    /**
+     * Computes the exclusive prefix sums of the long elements of {@code in}:
+     * {@code out[i] = in[0] + ... + in[i - 1]} (and
+     * {@code out[0] = 0}). A long sum wraps around on overflow.
+     *
+     * @param in
+     *            the elements to be summed up
+     * @param out
+     *            receives the prefix sums, may be {@code in} itself
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the buffers differ in device or element count, aren't
+     *             aligned or hold more than {@code Integer.MAX_VALUE}
+     *             elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void exclusiveScanLong(DeviceMemory in, DeviceMemory out) throws CudaException {
+        int n = count(in, 8);
+        checkSameCount(in, n, out, 8);
+        backend.scan(in.getDeviceId(), DeviceBackend.TYPE_LONG, false, n, VectorOps.addressOf(in, 8),
+                VectorOps.addressOf(out, 8));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+    }
+
+    /**
+     * Computes the inclusive prefix sums of the float elements of {@code in}:
+     * {@code out[i] = in[0] + ... + in[i]}. The partial sums
+     * are accumulated in float precision.
+     *
+     * @param in
+     *            the elements to be summed up
+     * @param out
+     *            receives the prefix sums, may be {@code in} itself
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the buffers differ in device or element count, aren't
+     *             aligned or hold more than {@code Integer.MAX_VALUE}
+     *             elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void inclusiveScanFloat(DeviceMemory in, DeviceMemory out) throws CudaException {
+        int n = count(in, 4);
+        checkSameCount(in, n, out, 4);
+        backend.scan(in.getDeviceId(), DeviceBackend.TYPE_FLOAT, true, n, VectorOps.addressOf(in, 4),
+                VectorOps.addressOf(out, 4));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+    }
+
+    /**
+     * Computes the exclusive prefix sums of the float elements of {@code in}:
+     * {@code out[i] = in[0] + ... + in[i - 1]} (and
+     * {@code out[0] = 0}). The partial sums
+     * are accumulated in float precision.
+     *
+     * @param in
+     *            the elements to be summed up
+     * @param out
+     *            receives the prefix sums, may be {@code in} itself
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the buffers differ in device or element count, aren't
+     *             aligned or hold more than {@code Integer.MAX_VALUE}
+     *             elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void exclusiveScanFloat(DeviceMemory in, DeviceMemory out) throws CudaException {
+        int n = count(in, 4);
+        checkSameCount(in, n, out, 4);
+        backend.scan(in.getDeviceId(), DeviceBackend.TYPE_FLOAT, false, n, VectorOps.addressOf(in, 4),
+                VectorOps.addressOf(out, 4));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+    }
+
+    /**
+     * Computes the inclusive prefix sums of the double elements of {@code in}:
+     * {@code out[i] = in[0] + ... + in[i]}. The partial sums
+     * are accumulated in double precision.
+     *
+     * @param in
+     *            the elements to be summed up
+     * @param out
+     *            receives the prefix sums, may be {@code in} itself
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the buffers differ in device or element count, aren't
+     *             aligned or hold more than {@code Integer.MAX_VALUE}
+     *             elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void inclusiveScanDouble(DeviceMemory in, DeviceMemory out) throws CudaException {
+        int n = count(in, 8);
+        checkSameCount(in, n, out, 8);
+        backend.scan(in.getDeviceId(), DeviceBackend.TYPE_DOUBLE, true, n, VectorOps.addressOf(in, 8),
+                VectorOps.addressOf(out, 8));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+    }
+
+    /**
+     * Computes the exclusive prefix sums of the double elements of {@code in}:
+     * {@code out[i] = in[0] + ... + in[i - 1]} (and
+     * {@code out[0] = 0}). The partial sums
+     * are accumulated in double precision.
+     *
+     * @param in
+     *            the elements to be summed up
+     * @param out
+     *            receives the prefix sums, may be {@code in} itself
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the buffers differ in device or element count, aren't
+     *             aligned or hold more than {@code Integer.MAX_VALUE}
+     *             elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void exclusiveScanDouble(DeviceMemory in, DeviceMemory out) throws CudaException {
+        int n = count(in, 8);
+        checkSameCount(in, n, out, 8);
+        backend.scan(in.getDeviceId(), DeviceBackend.TYPE_DOUBLE, false, n, VectorOps.addressOf(in, 8),
+                VectorOps.addressOf(out, 8));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+    }
+
+    /**
+     * Stream compaction: copies the elements of {@code in} whose flag byte is
+     * non-zero to the front of {@code out}, keeping their order.
+     *
+     * @param in
+     *            the elements to select from
+     * @param flags
+     *            one byte per element of {@code in}, non-zero to select it
+     * @param out
+     *            receives the selected elements, must have room for all
+     *            elements of {@code in} and must not overlap {@code in}
+     * @param elementSize
+     *            the size of an element in bytes (4 or 8)
+     * @return the number of selected elements
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code elementSize} is neither 4 nor 8, the buffers differ
+     *             in device, are too small, aren't aligned or {@code in} holds
+     *             more than {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static int compact(DeviceMemory in, DeviceMemory flags, DeviceMemory out, int elementSize)
+            throws CudaException {
+        checkElementSize(elementSize);
+        int n = count(in, elementSize);
+        checkRoom(in, n, flags, 1);
+        checkRoom(in, n, out, elementSize);
+        int selected = backend.selectFlagged(in.getDeviceId(), elementSize, n, VectorOps.addressOf(in, elementSize),
+                flags.getAddress(), VectorOps.addressOf(out, elementSize));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(flags);
+        ReachabilityFence.protect(out);
+        return selected;
+    }
+
+    /**
+     * Copies the first element of every run of equal elements of {@code in}
+     * to the front of {@code out}, keeping their order. Applied to sorted
+     * input this removes all duplicates. Elements are compared bitwise, so
+     * {@code -0.0} and {@code 0.0} differ while identical NaNs are equal.
+     *
+     * @param in
+     *            the elements to deduplicate
+     * @param out
+     *            receives the unique elements, must have room for all
+     *            elements of {@code in} and must not overlap {@code in}
+     * @param elementSize
+     *            the size of an element in bytes (4 or 8)
+     * @return the number of unique elements
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code elementSize} is neither 4 nor 8, the buffers differ
+     *             in device, {@code out} is too small, the buffers aren't
+     *             aligned or {@code in} holds more than
+     *             {@code Integer.MAX_VALUE} elements
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static int unique(DeviceMemory in, DeviceMemory out, int elementSize) throws CudaException {
+        checkElementSize(elementSize);
+        int n = count(in, elementSize);
+        checkRoom(in, n, out, elementSize);
+        int selected = backend.selectUnique(in.getDeviceId(), elementSize, n, VectorOps.addressOf(in, elementSize),
+                VectorOps.addressOf(out, elementSize));
+        ReachabilityFence.protect(in);
+        ReachabilityFence.protect(out);
+        return selected;
+    }
+
+    private static int count(DeviceMemory x, int elementSize) {
+        long n = x.getLength() / elementSize;
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many elements: " + n);
+        }
+        return (int) n;
+    }
+
+    private static void checkElementSize(int elementSize) {
+        if (elementSize != 4 && elementSize != 8) {
+            throw new IllegalArgumentException("elementSize: " + elementSize);
+        }
+    }
+
+    private static void checkSameCount(DeviceMemory x, int n, DeviceMemory y, int elementSize) {
+        checkSameDevice(x, y);
+        if (y.getLength() / elementSize != n) {
+            throw new IllegalArgumentException(
+                    "expected " + n + " elements, found " + y.getLength() / elementSize + " elements");
+        }
+    }
+
+    private static void checkRoom(DeviceMemory x, int n, DeviceMemory y, int elementSize) {
+        checkSameDevice(x, y);
+        if (y.getLength() / elementSize < n) {
+            throw new IllegalArgumentException(
+                    "room for " + y.getLength() / elementSize + " elements, " + n + " required");
+        }
+    }
+
+    private static void checkSameDevice(DeviceMemory x, DeviceMemory y) {
+        if (x.getDeviceId() != y.getDeviceId()) {
+            throw new IllegalArgumentException(
+                    "buffers on different devices: " + x.getDeviceId() + " and " + y.getDeviceId());
+        }
+    }
+
+    private ParallelPrimitives() {
+        throw new AssertionError();
+    }
+}
@@ -21,6 +21,12 @@
  *******************************************************************************/
 package net.deer.cuda;
 
+/**
+ * Builds the {@link KernelParams} of a kernel launch. Setting a parameter
+ * allocates nothing and {@link #build()} always returns the same block, so a
+ * builder can be kept around and only the parameters that change need to be
+ * set again before the next launch.
+ */
 public final class ParamsBuilder {
 
     private final KernelParams params;
@@ -33,8 +39,8 @@ public final class ParamsBuilder {
         return params.check();
     }
 
-    private ParamsBuilder set(int index, Address address) {
-        params.set(index, address);
+    private ParamsBuilder set(int index, int size, long value) {
+        params.set(index, size, value);
         return this;
     }
 
@@ -51,7 +57,7 @@ public final class ParamsBuilder {
      *             the parameter list
      */
     public ParamsBuilder set(int index, long value) {
-        return set(index, Addresses.of(params, value, null, -1));
+        return set(index, Long.BYTES, value);
     }
 
     /**
@@ -67,7 +73,7 @@ public final class ParamsBuilder {
      *             the parameter list
      */
     public ParamsBuilder set(int index, byte value) {
-        return set(index, (long) value);
+        return set(index, Byte.BYTES, value);
     }
 
     /**
@@ -84,7 +90,7 @@ public final class ParamsBuilder {
      *             the parameter list
      */
     public ParamsBuilder set(int index, char value) {
-        return set(index, (long) value);
+        return set(index, Character.BYTES, value);
     }
 
     /**
@@ -100,9 +106,12 @@ public final class ParamsBuilder {
      * @throws IndexOutOfBoundsException
      *             if {@code index} &lt; 0 or {@code index} &gt;= the size of
      *             the parameter list
+     * @throws IllegalStateException
+     *             if the buffer has already been closed
      */
     public ParamsBuilder set(int index, DeviceMemory deviceBuffer) {
-        return set(index, (deviceBuffer == null) ? Addresses.of(params, 0L, null, -1) : deviceBuffer.getAddress());
+        params.set(index, deviceBuffer);
+        return this;
     }
 
     /**
@@ -119,7 +128,7 @@ public final class ParamsBuilder {
      *             the parameter list
      */
     public ParamsBuilder set(int index, double value) {
-        return set(index, Double.doubleToRawLongBits(value));
+        return set(index, Double.BYTES, Double.doubleToRawLongBits(value));
     }
 
     /**
@@ -135,7 +144,7 @@ public final class ParamsBuilder {
      *             the parameter list
      */
     public ParamsBuilder set(int index, float value) {
-        return set(index, (long) Float.floatToRawIntBits(value));
+        return set(index, Float.BYTES, Float.floatToRawIntBits(value));
     }
 
     /**
@@ -151,7 +160,7 @@ public final class ParamsBuilder {
      *             the parameter list
      */
     public ParamsBuilder set(int index, int value) {
-        return set(index, (long) value);
+        return set(index, Integer.BYTES, value);
     }
 
     /**
@@ -167,6 +176,6 @@ public final class ParamsBuilder {
      *             the parameter list
      */
     public ParamsBuilder set(int index, short value) {
-        return set(index, (long) value);
+        return set(index, Short.BYTES, value);
     }
 }
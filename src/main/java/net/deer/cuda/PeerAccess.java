@@ -0,0 +1,38 @@
+package net.deer.cuda;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches whether peer access between a pair of devices is available, so that
+ * {@code cudaDeviceCanAccessPeer} / {@code cudaDeviceEnablePeerAccess} run
+ * only once per (ordered) device pair.
+ */
+final class PeerAccess {
+
+    private static final ConcurrentHashMap<Long, Boolean> pairs = new ConcurrentHashMap<Long, Boolean>();
+
+    /**
+     * Returns whether the device {@code deviceId} can access the memory of
+     * {@code peerDeviceId} directly, enabling the access on first use. A pair
+     * for which enabling fails is treated as not having peer access.
+     */
+    /* package */static boolean isEnabled(DeviceBackend backend, int deviceId, int peerDeviceId) {
+        Long key = ((long) deviceId << 32) | (peerDeviceId & 0xFFFFFFFFL);
+        Boolean enabled = pairs.get(key);
+        if (enabled == null) {
+            boolean available;
+            try {
+                available = backend.enablePeerAccess(deviceId, peerDeviceId);
+            } catch (CudaException e) {
+                available = false;
+            }
+            enabled = Boolean.valueOf(available);
+            pairs.putIfAbsent(key, enabled);
+        }
+        return enabled.booleanValue();
+    }
+
+    private PeerAccess() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,513 @@
+package net.deer.cuda;
+
+/**
+ * The {@code PinnedHostMemory} class represents a region of page-locked
+ * (pinned) memory on the Java host.
+ * <p>
+ * Transfers between pinned memory and a device run at full bus speed and are
+ * the only host memory that may take part in asynchronous copies. Data may be
+ * moved between Java arrays and a pinned buffer via the various {@code put} and
+ * {@code get} methods and between a pinned buffer and a device via
+ * {@link DeviceMemory#transferToDevice(PinnedHostMemory)} and
+ * {@link DeviceMemory#fetchToHost(PinnedHostMemory)}.
+ * <p>
+ * When no longer required, a PinnedHostMemory instance must be {@code close}d.
+ * Instances that become unreachable without having been closed are released
+ * by the {@link Reclaimer}.
+ */
+public final class PinnedHostMemory implements AutoCloseable {
+
+    // pinned memory doesn't belong to a specific device
+    private static final int NO_DEVICE = -1;
+
+    private final long length;
+
+    private final PinnedHostMemory root;
+
+    private final Address memoryAddress;
+
+    private static final DeviceBackend backend = Backends.get();
+
+    private static final Cleaner cudaFreeHostCleaner = new Cleaner() {
+        @Override
+        public long release(Address address) {
+            return backend.freeHost(address.getValue());
+        }
+    };
+
+    /**
+     * Allocates a new page-locked region on the Java host of size
+     * {@code byteCount} bytes.
+     *
+     * @param byteCount
+     *            the allocation size in bytes
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     */
+    public PinnedHostMemory(long byteCount) throws CudaException {
+        this.memoryAddress = Addresses.of(this, backend.mallocHost(byteCount), byteCount, cudaFreeHostCleaner,
+                NO_DEVICE);
+        this.length = byteCount;
+        this.root = null;
+    }
+
+    private PinnedHostMemory(PinnedHostMemory parent, Address parentAddress, long fromOffset, long length) {
+        this.memoryAddress = Addresses.slice(this, parentAddress, fromOffset);
+        this.length = length;
+        this.root = parent;
+    }
+
+    Address getAddress() {
+        if ((root == null || !root.memoryAddress.isClosed()) && !memoryAddress.isClosed()) {
+            return memoryAddress;
+        }
+        try {
+            memoryAddress.close();
+        } catch (Exception ignore) {
+        }
+        throw new IllegalStateException("Root address or this address is already closed (or both)");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+        memoryAddress.close();
+    }
+
+    /**
+     * Returns a sub-region of this buffer. The new buffer begins at the
+     * specified fromOffset and extends to the specified toOffset (exclusive).
+     *
+     * @param fromOffset
+     *            the byte offset of the start of the sub-region within this
+     *            buffer
+     * @param toOffset
+     *            the byte offset of the end of the sub-region within this
+     *            buffer
+     * @return the specified sub-region
+     * @throws IllegalArgumentException
+     *             if {@code fromOffset > toOffset}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromOffset} is negative, {@code toOffset > length},
+     *             or the number of source bytes is larger than the length of
+     *             this buffer
+     */
+    public PinnedHostMemory slice(long fromOffset, long toOffset) {
+        if (fromOffset == 0L && toOffset == length) {
+            return this;
+        } else {
+            rangeCheck(length, fromOffset, toOffset);
+            return new PinnedHostMemory( // <br>
+                    (root != null) ? root : this, // <br>
+                    getAddress(), // <br>
+                    fromOffset, // <br>
+                    (toOffset - fromOffset)); // <br>
+        }
+    }
+
+    /**
+     * Returns the length in bytes of this buffer.
+     *
+     * @return the length in bytes of this buffer
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Copies data from the specified {@code array} to this buffer. Elements are
+     * read from {@code array} beginning at {@code fromIndex} continuing up to,
+     * but excluding, {@code toIndex} storing them in the same order at the
+     * beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void put(byte[] array, int fromIndex, int toIndex) {
+        put(array, array.length, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * Copies data from the specified {@code array} to this buffer. Elements are
+     * read from {@code array} beginning at {@code fromIndex} continuing up to,
+     * but excluding, {@code toIndex} storing them in the same order at the
+     * beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void put(char[] array, int fromIndex, int toIndex) {
+        put(array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Copies data from the specified {@code array} to this buffer. Elements are
+     * read from {@code array} beginning at {@code fromIndex} continuing up to,
+     * but excluding, {@code toIndex} storing them in the same order at the
+     * beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void put(double[] array, int fromIndex, int toIndex) {
+        put(array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Copies data from the specified {@code array} to this buffer. Elements are
+     * read from {@code array} beginning at {@code fromIndex} continuing up to,
+     * but excluding, {@code toIndex} storing them in the same order at the
+     * beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void put(float[] array, int fromIndex, int toIndex) {
+        put(array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Copies data from the specified {@code array} to this buffer. Elements are
+     * read from {@code array} beginning at {@code fromIndex} continuing up to,
+     * but excluding, {@code toIndex} storing them in the same order at the
+     * beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void put(int[] array, int fromIndex, int toIndex) {
+        put(array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Copies data from the specified {@code array} to this buffer. Elements are
+     * read from {@code array} beginning at {@code fromIndex} continuing up to,
+     * but excluding, {@code toIndex} storing them in the same order at the
+     * beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void put(long[] array, int fromIndex, int toIndex) {
+        put(array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Copies data from the specified {@code array} to this buffer. Elements are
+     * read from {@code array} beginning at {@code fromIndex} continuing up to,
+     * but excluding, {@code toIndex} storing them in the same order at the
+     * beginning of this buffer.
+     *
+     * @param array
+     *            the source array
+     * @param fromIndex
+     *            the source starting offset (inclusive)
+     * @param toIndex
+     *            the source ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of source bytes
+     *             is larger than the length of this buffer
+     */
+    public void put(short[] array, int fromIndex, int toIndex) {
+        put(array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Copies data from this buffer to the specified {@code array}. Elements are
+     * read starting at the beginning of this buffer and stored in
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void get(byte[] array, int fromIndex, int toIndex) {
+        get(array, array.length, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * Copies data from this buffer to the specified {@code array}. Elements are
+     * read starting at the beginning of this buffer and stored in
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void get(char[] array, int fromIndex, int toIndex) {
+        get(array, array.length, fromIndex, toIndex, 1);
+    }
+
+    /**
+     * Copies data from this buffer to the specified {@code array}. Elements are
+     * read starting at the beginning of this buffer and stored in
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void get(double[] array, int fromIndex, int toIndex) {
+        get(array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Copies data from this buffer to the specified {@code array}. Elements are
+     * read starting at the beginning of this buffer and stored in
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void get(float[] array, int fromIndex, int toIndex) {
+        get(array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Copies data from this buffer to the specified {@code array}. Elements are
+     * read starting at the beginning of this buffer and stored in
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void get(int[] array, int fromIndex, int toIndex) {
+        get(array, array.length, fromIndex, toIndex, 2);
+    }
+
+    /**
+     * Copies data from this buffer to the specified {@code array}. Elements are
+     * read starting at the beginning of this buffer and stored in
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void get(long[] array, int fromIndex, int toIndex) {
+        get(array, array.length, fromIndex, toIndex, 3);
+    }
+
+    /**
+     * Copies data from this buffer to the specified {@code array}. Elements are
+     * read starting at the beginning of this buffer and stored in
+     * {@code array} beginning at {@code fromIndex} continuing up to, but
+     * excluding, {@code toIndex}.
+     *
+     * @param array
+     *            the destination array
+     * @param fromIndex
+     *            the destination starting offset (inclusive)
+     * @param toIndex
+     *            the destination ending offset (exclusive)
+     * @throws IllegalArgumentException
+     *             if {@code fromIndex > toIndex}
+     * @throws IllegalStateException
+     *             if this buffer has been closed (see {@link #close()})
+     * @throws IndexOutOfBoundsException
+     *             if {@code fromIndex} is negative,
+     *             {@code toIndex > array.length}, or the number of required
+     *             source bytes is larger than the length of this buffer
+     */
+    public void get(short[] array, int fromIndex, int toIndex) {
+        get(array, array.length, fromIndex, toIndex, 1);
+    }
+
+    private void put(Object array, int arrayLength, int fromIndex, int toIndex, int logBase2UnitSize) {
+        rangeCheck(arrayLength, fromIndex, toIndex);
+        lengthCheck(toIndex - fromIndex, logBase2UnitSize);
+        putBytes(array, (long) fromIndex << logBase2UnitSize, (long) (toIndex - fromIndex) << logBase2UnitSize);
+    }
+
+    private void get(Object array, int arrayLength, int fromIndex, int toIndex, int logBase2UnitSize) {
+        rangeCheck(arrayLength, fromIndex, toIndex);
+        lengthCheck(toIndex - fromIndex, logBase2UnitSize);
+        getBytes(array, (long) fromIndex << logBase2UnitSize, (long) (toIndex - fromIndex) << logBase2UnitSize);
+    }
+
+    // unchecked: copies byteCount bytes of the primitive array (starting
+    // byteOffset bytes after its first element) to the start of this buffer
+    /* package */void putBytes(Object array, long byteOffset, long byteCount) {
+        UnsafeAccess.copy(array, UnsafeAccess.arrayBase(array) + byteOffset, null, getAddress().getValue(), byteCount);
+        ReachabilityFence.protect(this);
+    }
+
+    // unchecked: the reverse of putBytes
+    /* package */void getBytes(Object array, long byteOffset, long byteCount) {
+        UnsafeAccess.copy(null, getAddress().getValue(), array, UnsafeAccess.arrayBase(array) + byteOffset, byteCount);
+        ReachabilityFence.protect(this);
+    }
+
+    private void lengthCheck(long elementCount, int logBase2UnitSize) {
+        if (!(0 <= elementCount && elementCount <= (length >> logBase2UnitSize))) {
+            throw new IndexOutOfBoundsException("elementCount: " + elementCount);
+        }
+    }
+
+    private static void rangeCheck(long length, long fromIndex, long toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ')');
+        }
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex);
+        }
+        if (toIndex > length) {
+            throw new IndexOutOfBoundsException("toIndex: " + toIndex);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package net.deer.cuda;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of reusable {@link PinnedHostMemory} buffers through which
+ * large array transfers of {@link DeviceMemory} are staged.
+ * <p>
+ * Staging bounds the time a transfer holds an array pinned in a JNI critical
+ * region to a single chunk copy and lets the device read from page-locked
+ * memory. A staged array transfer takes two buffers so that filling one
+ * overlaps with the asynchronous copy of the other. When the pool can't
+ * provide them, callers fall back to the direct (unstaged) copy instead of
+ * waiting.
+ */
+final class PinnedStagingPool {
+
+    private static final boolean ENABLED = SystemProps.STAGING;
+    private static final long THRESHOLD = SystemProps.STAGING_THRESHOLD;
+    private static final long CHUNK = Math.max(4096L, SystemProps.STAGING_CHUNK);
+    private static final int MAX_BUFFERS = Math.max(0, SystemProps.STAGING_BUFFERS);
+
+    private static final ConcurrentLinkedQueue<PinnedHostMemory> idle = new ConcurrentLinkedQueue<PinnedHostMemory>();
+    private static final AtomicInteger created = new AtomicInteger();
+    private static final Set<PinnedHostMemory> owned = Collections
+            .newSetFromMap(new ConcurrentHashMap<PinnedHostMemory, Boolean>());
+
+    /* package */static long getChunkSize() {
+        return CHUNK;
+    }
+
+    /* package */static boolean isStaged(long byteCount) {
+        return ENABLED && byteCount >= THRESHOLD;
+    }
+
+    /**
+     * Returns an idle staging buffer or {@code null} if all buffers are in use
+     * (or if no pinned memory could be allocated).
+     */
+    /* package */static PinnedHostMemory acquire() {
+        PinnedHostMemory buffer = idle.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (created.incrementAndGet() <= MAX_BUFFERS) {
+            try {
+                PinnedHostMemory pooled = new PinnedHostMemory(CHUNK);
+                owned.add(pooled);
+                return pooled;
+            } catch (CudaException e) {
+                // out of pinned memory, give the slot back
+            }
+        }
+        created.decrementAndGet();
+        return null;
+    }
+
+    /* package */static void release(PinnedHostMemory buffer) {
+        idle.offer(buffer);
+    }
+
+    /* package */static boolean isPooled(PinnedHostMemory buffer) {
+        return owned.contains(buffer);
+    }
+
+    private PinnedStagingPool() {
+        throw new AssertionError();
+    }
+}
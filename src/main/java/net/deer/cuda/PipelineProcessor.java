@@ -0,0 +1,282 @@
+package net.deer.cuda;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link Flow.Processor} that runs the batches it receives through a
+ * {@link StreamPipeline} and publishes their results in the order of the
+ * batches.
+ * <p>
+ * The processor requests at most {@link StreamPipeline#getMaxInFlight()}
+ * batches from upstream that haven't been delivered downstream yet, so the
+ * batches in flight never exceed the slots of the pipeline (and
+ * {@link StreamPipeline#submit(Object)} never blocks) and a slow subscriber
+ * throttles the producer instead of letting results pile up. Results are
+ * delivered only as far as the subscriber has requested them.
+ * <p>
+ * The processor accepts a single subscriber. Once upstream completes, the
+ * batches still in flight are delivered before {@code onComplete} (or
+ * {@code onError} if upstream failed). If a batch fails, the subscriber
+ * receives {@code onError} with its exception and the upstream subscription
+ * is cancelled. The processor doesn't close the pipeline.
+ * <p>
+ * This class requires Java 9 or later ({@code java.util.concurrent.Flow} is
+ * compiled against a stub and can't be loaded on Java 8),
+ * {@link StreamPipeline} itself runs on Java 8.
+ *
+ * @param <T>
+ *            the type of the batches
+ * @param <R>
+ *            the type of the results
+ */
+public final class PipelineProcessor<T, R> implements Flow.Processor<T, R> {
+
+    private final StreamPipeline<T, R> pipeline;
+    private final int capacity;
+
+    // the result futures of the submitted batches in submission order
+    private final ConcurrentLinkedQueue<CompletableFuture<R>> pending;
+    private final AtomicReference<Flow.Subscriber<? super R>> downstream;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+    private volatile Throwable requestError;
+
+    // owned by the drain loop (guarded by wip)
+    private long requested;
+    private long delivered;
+    private boolean terminated;
+
+    private final BiConsumer<R, Throwable> drainOnCompletion = new BiConsumer<R, Throwable>() {
+        @Override
+        public void accept(R ignore, Throwable failure) {
+            drain();
+        }
+    };
+
+    /**
+     * Creates a processor that feeds {@code pipeline}.
+     *
+     * @param pipeline
+     *            the pipeline that processes the batches
+     */
+    public PipelineProcessor(StreamPipeline<T, R> pipeline) {
+        this.pipeline = pipeline;
+        this.capacity = pipeline.getMaxInFlight();
+        this.pending = new ConcurrentLinkedQueue<CompletableFuture<R>>();
+        this.downstream = new AtomicReference<Flow.Subscriber<? super R>>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onNext(T batch) {
+        if (upstreamDone || cancelled) {
+            return;
+        }
+        CompletableFuture<R> result;
+        try {
+            result = pipeline.submit(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = failed(e);
+        } catch (RuntimeException e) {
+            result = failed(e);
+        }
+        pending.add(result);
+        result.whenComplete(drainOnCompletion);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe(final Flow.Subscriber<? super R> subscriber) {
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("processor accepts a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0L) {
+                    requestError = new IllegalArgumentException("non-positive request: " + n);
+                } else {
+                    addDemand(n);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        drain();
+    }
+
+    private void addDemand(long n) {
+        for (;;) {
+            long current = demand.get();
+            long next = current + n;
+            if (next < 0L) {
+                // saturate, Long.MAX_VALUE means unbounded
+                next = Long.MAX_VALUE;
+            }
+            if (demand.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    // Delivers the completed results in order as far as there is demand,
+    // terminates the subscriber and tops up the upstream requests. Runs on
+    // one thread at a time, signals arriving meanwhile make it loop again.
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        for (;;) {
+            if (!terminated) {
+                if (cancelled) {
+                    terminate();
+                } else {
+                    deliver();
+                    if (!terminated && !upstreamDone) {
+                        Flow.Subscription s = upstream;
+                        long n = capacity - (requested - delivered);
+                        if (s != null && n > 0L) {
+                            requested += n;
+                            s.request(n);
+                        }
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void deliver() {
+        Flow.Subscriber<? super R> subscriber = downstream.get();
+        if (subscriber == null) {
+            return;
+        }
+        Throwable error = requestError;
+        if (error != null) {
+            terminate();
+            subscriber.onError(error);
+            return;
+        }
+        for (;;) {
+            CompletableFuture<R> head = pending.peek();
+            if (head == null || !head.isDone()) {
+                break;
+            }
+            if (head.isCompletedExceptionally()) {
+                terminate();
+                subscriber.onError(causeOf(head));
+                return;
+            }
+            if (demand.get() == 0L) {
+                break;
+            }
+            pending.poll();
+            if (demand.get() != Long.MAX_VALUE) {
+                demand.decrementAndGet();
+            }
+            ++delivered;
+            subscriber.onNext(head.join());
+        }
+        if (upstreamDone && pending.isEmpty()) {
+            terminated = true;
+            Throwable failure = upstreamError;
+            if (failure != null) {
+                subscriber.onError(failure);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    private void terminate() {
+        terminated = true;
+        Flow.Subscription s = upstream;
+        if (s != null && !upstreamDone) {
+            s.cancel();
+        }
+    }
+
+    private static Throwable causeOf(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return new IllegalStateException("future completed normally");
+        } catch (CompletionException e) {
+            return (e.getCause() != null) ? e.getCause() : e;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static <R> CompletableFuture<R> failed(Throwable t) {
+        CompletableFuture<R> future = new CompletableFuture<R>();
+        future.completeExceptionally(t);
+        return future;
+    }
+}
@@ -67,11 +67,11 @@ final class ReachabilityFence {
     // fields on such a referent.
     // Because there's no cross-native-boundary optimization going on currently,
     // JNI has to guarantee that.
-    private static native void protectN(Object ref);
+    /* package */static native void protectN(Object ref);
 
     // This should be good enough for most practical purposes, though strictly
     // speaking it doesn't provide full guarantees preventing GC
-    private static void protectJ(Object ref) {
+    /* package */static void protectJ(Object ref) {
         if (ref != null && ref.getClass() == null) {
             throw new IllegalStateException();
         }
@@ -0,0 +1,179 @@
+package net.deer.cuda;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code Reclaimer} releases the native memory of {@link DeviceMemory} and
+ * {@link PinnedHostMemory} instances that have become unreachable without
+ * having been {@code close}d.
+ * <p>
+ * Every allocation is tracked by a {@link PhantomReference} instead of a
+ * {@code finalize()} method, so live buffers put no load on the finalizer
+ * queue. A single daemon thread drains the reference queue in batches and
+ * releases the collected regions grouped by device: a burst of leaked buffers
+ * costs one batched free per device rather than one {@code cudaFree} per
+ * buffer. Buffers that get closed explicitly are unregistered right away and
+ * never reach the queue.
+ * <p>
+ * Every buffer reclaimed here has leaked, so {@link #getReclaimedCount()}
+ * should stay at zero in a well-behaved application.
+ */
+public final class Reclaimer {
+
+    private static final int MAX_BATCH = 256;
+
+    private static final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    // keeps the registrations themselves reachable until they get enqueued
+    private static final Set<Registration> registrations = Collections
+            .newSetFromMap(new ConcurrentHashMap<Registration, Boolean>());
+
+    private static final AtomicLong reclaimed = new AtomicLong();
+    private static final AtomicLong batches = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+
+    static {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                reclaimLoop();
+            }
+        }, "deer-cuda-reclaimer");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Returns the number of buffers that have been released because they
+     * became unreachable before they were closed.
+     *
+     * @return the number of buffers reclaimed by the garbage collector
+     */
+    public static long getReclaimedCount() {
+        return reclaimed.get();
+    }
+
+    /**
+     * Returns the number of batches the reclaimer thread has processed.
+     *
+     * @return the number of reclaim batches
+     */
+    public static long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Returns the number of reclaimed buffers whose release reported an
+     * error.
+     *
+     * @return the number of failed releases
+     */
+    public static long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the number of buffers that are currently tracked, i.e. that are
+     * neither closed nor reclaimed yet.
+     *
+     * @return the number of tracked buffers
+     */
+    public static long getTrackedCount() {
+        return registrations.size();
+    }
+
+    /* package */static Registration register(Object referent, Address address) {
+        Registration registration = new Registration(referent, address);
+        registrations.add(registration);
+        return registration;
+    }
+
+    // an unreachable registration is never enqueued, so dropping it from the
+    // set is all that's needed
+    /* package */static void unregister(Registration registration) {
+        registrations.remove(registration);
+    }
+
+    private static void reclaimLoop() {
+        Registration[] batch = new Registration[MAX_BATCH];
+        for (;;) {
+            int count = 0;
+            try {
+                batch[count++] = (Registration) queue.remove();
+                Reference<?> ref;
+                while (count < MAX_BATCH && (ref = queue.poll()) != null) {
+                    batch[count++] = (Registration) ref;
+                }
+                release(batch, count);
+            } catch (InterruptedException ignore) {
+                // a daemon thread, keep going
+            } catch (Throwable t) {
+                failures.incrementAndGet();
+            } finally {
+                Arrays.fill(batch, 0, count, null);
+            }
+        }
+    }
+
+    private static void release(Registration[] batch, int count) {
+        Map<Integer, ArrayList<Address>> byDevice = new HashMap<Integer, ArrayList<Address>>();
+        for (int i = 0; i < count; ++i) {
+            Registration registration = batch[i];
+            registrations.remove(registration);
+            Address address = registration.address;
+            if (!Addresses.markReclaimed(address)) {
+                // lost the race against an explicit close
+                continue;
+            }
+            ArrayList<Address> group = byDevice.get(address.getDeviceId());
+            if (group == null) {
+                group = new ArrayList<Address>();
+                byDevice.put(address.getDeviceId(), group);
+            }
+            group.add(address);
+        }
+        for (Map.Entry<Integer, ArrayList<Address>> entry : byDevice.entrySet()) {
+            int deviceId = entry.getKey();
+            ArrayList<Address> group = entry.getValue();
+            reclaimed.addAndGet(group.size());
+            if (deviceId >= 0) {
+                Address[] addresses = group.toArray(new Address[group.size()]);
+                if (CachingAllocator.forDevice(deviceId).release(addresses, addresses.length) != 0L) {
+                    failures.incrementAndGet();
+                }
+            } else {
+                // pinned host memory doesn't belong to a device
+                for (Address address : group) {
+                    if (Addresses.cleanerOf(address).release(address) != 0L) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }
+        }
+        batches.incrementAndGet();
+    }
+
+    // The phantom reference carries the Address (but never the referent)
+    /* package */static final class Registration extends PhantomReference<Object> {
+        final Address address;
+
+        Registration(Object referent, Address address) {
+            super(referent, queue);
+            this.address = address;
+        }
+    }
+
+    private Reclaimer() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,21 @@
+package net.deer.cuda;
+
+/**
+ * A callback queued on a stream with
+ * {@link DeviceBackend#addCallback(int, long, StreamCallback)}.
+ */
+interface StreamCallback {
+
+    /**
+     * Called once all work queued on the stream before the callback has
+     * completed. Must not call back into the backend.
+     *
+     * @param status
+     *            0 if that work has succeeded, otherwise the CUDA error code
+     *            of its failure
+     * @param cause
+     *            the exception behind a failed status, if the backend has one
+     *            (may be {@code null})
+     */
+    void done(int status, Throwable cause);
+}
@@ -0,0 +1,656 @@
+package net.deer.cuda;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * A pipeline that moves batches through the three stream-ordered stages
+ * upload (host to device), compute and download (device to host) such that
+ * the stages of consecutive batches overlap.
+ * <p>
+ * The pipeline owns {@code streamCount} {@link CudaStream}s and
+ * {@code buffersPerStream} slots per stream (2 for double buffering, 3 for
+ * triple buffering). A slot consists of a pinned input and output buffer on
+ * the host, an input and output buffer on the device and the
+ * {@link CudaEvent}s that time its stages. Submitted batches take the free
+ * slots in turn, so consecutive batches go to different streams: while one
+ * stream downloads the results of batch {@code k}, another one computes batch
+ * {@code k + 1} and a third uploads batch {@code k + 2}. The extra slots of a
+ * stream let the host prepare the next batch of a stream while the stream is
+ * still busy.
+ * <p>
+ * The number of batches in flight is bounded by the number of slots:
+ * {@link #submit(Object)} blocks while all slots are in use, which is the
+ * backpressure towards the producer. {@link PipelineProcessor} exposes a
+ * pipeline as a {@code java.util.concurrent.Flow.Processor} with the same
+ * bound.
+ * <p>
+ * What happens to a batch is defined by the {@link Stages}:
+ * {@link Stages#stage} copies a batch into the pinned input buffer (on the
+ * submitting thread), {@link Stages#compute} queues the device work on the
+ * stream of the slot and {@link Stages#collect} turns the downloaded bytes
+ * into the result (on a completion thread, see
+ * {@link CudaStream#completion()}). Compute work must be queued on the given
+ * stream, e.g. with {@link Expr#into(DeviceMemory, CudaStream)},
+ * {@link DeviceMemory#copyTo(DeviceMemory, CudaStream)} or the
+ * {@code fillXxx} overloads of {@link DeviceMemory} that take a stream. The
+ * synchronous operations of this package (e.g. {@link VectorOps} or the
+ * {@code copyTo} and {@code fillXxx} methods without a stream) don't wait
+ * for the non-blocking streams of the pipeline: they may only be used after
+ * {@link CudaStream#synchronize()} on the given stream, which stalls the
+ * submitting thread for the upload and so gives up most of the overlap.
+ * <p>
+ * The pipeline measures every stage of every batch (the device stages through
+ * the events of the slot, the host stages with {@link System#nanoTime()}),
+ * see {@link #getStats()}.
+ * <p>
+ * A pipeline is thread-safe. When no longer required, it must be
+ * {@code close}d.
+ *
+ * @param <T>
+ *            the type of the batches
+ * @param <R>
+ *            the type of the results
+ */
+public final class StreamPipeline<T, R> implements AutoCloseable {
+
+    /**
+     * The stages a batch passes through, in this order.
+     */
+    public enum Stage {
+        /** Copying the batch into the pinned input buffer (host). */
+        STAGE,
+        /** Copying the input buffer to the device (device). */
+        UPLOAD,
+        /** The device work queued by {@link Stages#compute} (device). */
+        COMPUTE,
+        /** Copying the output buffer to the host (device). */
+        DOWNLOAD,
+        /** Reading the result from the pinned output buffer (host). */
+        COLLECT
+    }
+
+    /**
+     * The work a {@link StreamPipeline} does per batch.
+     *
+     * @param <T>
+     *            the type of the batches
+     * @param <R>
+     *            the type of the results
+     */
+    public interface Stages<T, R> {
+
+        /**
+         * Writes {@code batch} into the pinned {@code input} buffer. Runs on
+         * the thread that submitted the batch.
+         *
+         * @param batch
+         *            the batch to be processed
+         * @param input
+         *            the pinned input buffer of the slot
+         * @return the number of bytes at the start of {@code input} that are
+         *         to be uploaded (at most the length of {@code input})
+         * @throws CudaException
+         *             if a CUDA exception occurs
+         */
+        long stage(T batch, PinnedHostMemory input) throws CudaException;
+
+        /**
+         * Queues the device work for the uploaded batch on {@code stream}
+         * (e.g. {@code Expr.floats(input).mul(2.0).into(output, stream)}).
+         * Runs on the thread that submitted the batch and should not wait for
+         * the device.
+         *
+         * @param input
+         *            the device input buffer, its first {@code inputBytes}
+         *            bytes hold the batch
+         * @param inputBytes
+         *            the number of bytes returned by {@link #stage}
+         * @param output
+         *            the device output buffer
+         * @param stream
+         *            the stream of the slot
+         * @return the number of bytes at the start of {@code output} that are
+         *         to be downloaded (at most the length of {@code output})
+         * @throws CudaException
+         *             if a CUDA exception occurs
+         */
+        long compute(DeviceMemory input, long inputBytes, DeviceMemory output, CudaStream stream)
+                throws CudaException;
+
+        /**
+         * Returns the result of {@code batch} from the downloaded bytes. Runs
+         * on a completion thread (which may use the CUDA API), the output
+         * buffer must not be used once this method has returned.
+         *
+         * @param batch
+         *            the batch that has been processed
+         * @param output
+         *            the pinned output buffer of the slot
+         * @param outputBytes
+         *            the number of bytes returned by {@link #compute}
+         * @return the result of the batch
+         * @throws CudaException
+         *             if a CUDA exception occurs
+         */
+        R collect(T batch, PinnedHostMemory output, long outputBytes) throws CudaException;
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    // how long close() waits for the batches in flight
+    private static final long DEFAULT_CLOSE_TIMEOUT_SECONDS = 60L;
+
+    private static final DeviceBackend backend = Backends.get();
+
+    private final GPUDevice device;
+    private final int streamCount;
+    private final Stages<T, R> stages;
+    private final ArrayList<AutoCloseable> resources = new ArrayList<AutoCloseable>();
+    private final Slot[] slots;
+    // the free slots, taking one is the backpressure of submit()
+    private final ArrayBlockingQueue<Slot> free;
+    private volatile boolean closed;
+
+    // the statistics: batches, uploaded and downloaded bytes, then the busy
+    // nanoseconds per Stage
+    private static final int BATCHES = 0;
+    private static final int UPLOADED = 1;
+    private static final int DOWNLOADED = 2;
+    private static final int NANOS = 3;
+    private final AtomicLongArray counters = new AtomicLongArray(NANOS + STAGES.length);
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Creates a pipeline on {@code device} with {@code streamCount} streams
+     * and {@code buffersPerStream} slots per stream.
+     *
+     * @param device
+     *            the device the batches are processed on
+     * @param streamCount
+     *            the number of streams the batches are distributed over
+     *            (3 lets all stages overlap)
+     * @param buffersPerStream
+     *            the number of slots per stream (2 for double buffering, 3
+     *            for triple buffering)
+     * @param inputBytes
+     *            the capacity of the input buffers (per slot)
+     * @param outputBytes
+     *            the capacity of the output buffers (per slot)
+     * @param stages
+     *            the work done per batch
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if a count is less than 1 or a capacity is negative
+     */
+    public StreamPipeline(GPUDevice device, int streamCount, int buffersPerStream, long inputBytes,
+            long outputBytes, Stages<T, R> stages) throws CudaException {
+        if (streamCount < 1 || buffersPerStream < 1) {
+            throw new IllegalArgumentException(
+                    "streamCount: " + streamCount + ", buffersPerStream: " + buffersPerStream);
+        }
+        if (inputBytes < 0L || outputBytes < 0L) {
+            throw new IllegalArgumentException("inputBytes: " + inputBytes + ", outputBytes: " + outputBytes);
+        }
+        if (stages == null) {
+            throw new NullPointerException("stages");
+        }
+        this.device = device;
+        this.streamCount = streamCount;
+        this.stages = stages;
+        this.slots = new Slot[streamCount * buffersPerStream];
+        this.free = new ArrayBlockingQueue<Slot>(slots.length);
+        boolean created = false;
+        try {
+            CudaStream[] streams = new CudaStream[streamCount];
+            for (int i = 0; i < streamCount; ++i) {
+                // non-blocking: no implicit synchronization with the work
+                // other threads queue on the default stream
+                streams[i] = add(new CudaStream(device, CudaStream.FLAG_NON_BLOCKING));
+            }
+            // slot i uses stream i % streamCount, so that the free queue hands
+            // out the streams round-robin
+            for (int i = 0; i < slots.length; ++i) {
+                slots[i] = new Slot(this, streams[i % streamCount], inputBytes, outputBytes);
+                free.add(slots[i]);
+            }
+            created = true;
+        } finally {
+            if (!created) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Submits a batch, blocking while all slots are in flight. The batch is
+     * staged and its upload, compute and download are queued before this
+     * method returns.
+     *
+     * @param batch
+     *            the batch to be processed
+     * @return a future that completes with the result of the batch, or
+     *         exceptionally if one of its stages failed
+     * @throws CudaException
+     *             if a CUDA exception occurs while the batch is queued
+     * @throws InterruptedException
+     *             if the thread is interrupted while it waits for a slot
+     * @throws IllegalStateException
+     *             if the pipeline has been closed
+     * @throws IllegalArgumentException
+     *             if a stage returns a byte count that doesn't fit its buffer
+     */
+    public CompletableFuture<R> submit(final T batch) throws CudaException, InterruptedException {
+        checkOpen();
+        final Slot slot = free.take();
+        if (closed) {
+            free.add(slot);
+            checkOpen();
+        }
+        boolean queued = false;
+        try {
+            long t0 = System.nanoTime();
+            final long inputBytes = stages.stage(batch, slot.hostInput);
+            addNanos(Stage.STAGE, System.nanoTime() - t0);
+            checkByteCount("stage", inputBytes, slot.hostInput.getLength());
+            CudaStream stream = slot.stream;
+            // the copies are queued on the backend directly: the one
+            // completion callback of the batch keeps the buffers of the slot
+            // reachable, so the copies need no callbacks of their own
+            long handle = stream.getHandle();
+            int deviceId = device.getDeviceId();
+            slot.started.record(stream);
+            if (inputBytes > 0L) {
+                backend.copyHostToDeviceAsync(handle, deviceId, slot.input.getAddress(),
+                        slot.hostInput.getAddress().getValue(), inputBytes);
+                slot.input.recordStream(stream);
+            }
+            slot.uploaded.record(stream);
+            final long outputBytes = stages.compute(slot.input, inputBytes, slot.output, stream);
+            checkByteCount("compute", outputBytes, slot.output.getLength());
+            slot.computed.record(stream);
+            if (outputBytes > 0L) {
+                backend.copyDeviceToHostAsync(handle, deviceId, slot.output.getAddress(),
+                        slot.hostOutput.getAddress().getValue(), outputBytes);
+                slot.output.recordStream(stream);
+            }
+            slot.downloaded.record(stream);
+            final CompletableFuture<R> result = new CompletableFuture<R>();
+            slot.result = result;
+            stream.completion().whenComplete(new BiConsumer<Void, Throwable>() {
+                @Override
+                public void accept(Void ignore, Throwable failure) {
+                    finish(slot, batch, inputBytes, outputBytes, failure, result);
+                }
+            });
+            queued = true;
+            return result;
+        } finally {
+            if (!queued) {
+                // parts of the batch may already be queued on the stream
+                try {
+                    slot.stream.synchronize();
+                } catch (CudaException ignore) {
+                } finally {
+                    free.add(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the maximal number of batches in flight (the number of slots).
+     *
+     * @return the number of slots
+     */
+    public int getMaxInFlight() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the number of batches in flight, i.e. submitted batches whose
+     * result future hasn't completed yet.
+     *
+     * @return the number of slots in use
+     */
+    public int getInFlight() {
+        return slots.length - free.size();
+    }
+
+    /**
+     * Returns the number of streams the batches are distributed over.
+     *
+     * @return the number of streams
+     */
+    public int getStreamCount() {
+        return streamCount;
+    }
+
+    /**
+     * Returns the device this pipeline runs on.
+     *
+     * @return the device
+     */
+    public GPUDevice getDevice() {
+        return device;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the batches completed so far.
+     *
+     * @return the statistics
+     */
+    public Stats getStats() {
+        long[] nanos = new long[STAGES.length];
+        for (int i = 0; i < nanos.length; ++i) {
+            nanos[i] = counters.get(NANOS + i);
+        }
+        return new Stats(counters.get(BATCHES), counters.get(UPLOADED), counters.get(DOWNLOADED), nanos,
+                System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Waits at most {@value #DEFAULT_CLOSE_TIMEOUT_SECONDS} seconds for the
+     * batches in flight and releases the streams, events and buffers of this
+     * pipeline, see {@link #close(long, TimeUnit)}.
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits at most {@code timeout} for the batches in flight and releases
+     * the streams, events and buffers of this pipeline. The result futures of
+     * the batches that haven't completed by then (e.g. because the device has
+     * failed) complete exceptionally with an {@link IllegalStateException}.
+     * Releasing the memory still waits for the work queued on the device (as
+     * {@code cudaFree} does), but not for completion callbacks that never
+     * fire. Batches can't be submitted afterwards.
+     *
+     * @param timeout
+     *            the maximal time to wait for the batches in flight
+     * @param unit
+     *            the unit of {@code timeout}
+     * @return {@code true} if all batches have completed in time (or the
+     *         pipeline was already closed), {@code false} otherwise
+     */
+    public synchronized boolean close(long timeout, TimeUnit unit) {
+        if (closed) {
+            return true;
+        }
+        closed = true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean interrupted = false;
+        // every slot comes back once its batch has completed
+        Set<Slot> returned = Collections.newSetFromMap(new IdentityHashMap<Slot, Boolean>());
+        while (returned.size() < slots.length) {
+            Slot slot;
+            try {
+                slot = free.poll(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                continue;
+            }
+            if (slot == null) {
+                break;
+            }
+            returned.add(slot);
+        }
+        boolean completed = returned.size() == slots.length;
+        for (Slot slot : slots) {
+            CompletableFuture<?> result = slot.result;
+            if (!returned.contains(slot) && result != null) {
+                result.completeExceptionally(new IllegalStateException("pipeline closed before the batch completed"));
+            }
+        }
+        // freeing the device and pinned memory waits for work still queued
+        release();
+        // let submitters that wait for a slot fail with the closed check
+        for (Slot slot : slots) {
+            free.offer(slot);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return completed;
+    }
+
+    private void finish(Slot slot, T batch, long inputBytes, long outputBytes, Throwable failure,
+            CompletableFuture<R> result) {
+        R value = null;
+        if (failure == null) {
+            try {
+                addNanos(Stage.UPLOAD, nanos(CudaEvent.elapsedMillis(slot.started, slot.uploaded)));
+                addNanos(Stage.COMPUTE, nanos(CudaEvent.elapsedMillis(slot.uploaded, slot.computed)));
+                addNanos(Stage.DOWNLOAD, nanos(CudaEvent.elapsedMillis(slot.computed, slot.downloaded)));
+                long t0 = System.nanoTime();
+                value = stages.collect(batch, slot.hostOutput, outputBytes);
+                addNanos(Stage.COLLECT, System.nanoTime() - t0);
+                counters.incrementAndGet(BATCHES);
+                counters.addAndGet(UPLOADED, inputBytes);
+                counters.addAndGet(DOWNLOADED, outputBytes);
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+        // the slot must be free before the result completes, so that a
+        // dependent action can submit the next batch without blocking (a
+        // batch that close() has given up on finds the queue full)
+        free.offer(slot);
+        if (failure == null) {
+            result.complete(value);
+        } else {
+            result.completeExceptionally(
+                    (failure instanceof CompletionException && failure.getCause() != null) ? failure.getCause()
+                            : failure);
+        }
+    }
+
+    private void addNanos(Stage stage, long nanos) {
+        counters.addAndGet(NANOS + stage.ordinal(), nanos);
+    }
+
+    private static long nanos(float millis) {
+        return (long) (millis * 1e6);
+    }
+
+    private static void checkByteCount(String stage, long byteCount, long capacity) {
+        if (byteCount < 0L || byteCount > capacity) {
+            throw new IllegalArgumentException(stage + " returned " + byteCount + " bytes, capacity: " + capacity);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("pipeline is already closed");
+        }
+    }
+
+    private <C extends AutoCloseable> C add(C resource) {
+        resources.add(resource);
+        return resource;
+    }
+
+    // closes the resources in the reverse order of their creation
+    private void release() {
+        for (int i = resources.size() - 1; i >= 0; --i) {
+            try {
+                resources.get(i).close();
+            } catch (Exception ignore) {
+            }
+        }
+        resources.clear();
+    }
+
+    private static final class Slot {
+        final CudaStream stream;
+        final PinnedHostMemory hostInput;
+        final PinnedHostMemory hostOutput;
+        final DeviceMemory input;
+        final DeviceMemory output;
+        final CudaEvent started;
+        final CudaEvent uploaded;
+        final CudaEvent computed;
+        final CudaEvent downloaded;
+        // the result of the batch in flight
+        volatile CompletableFuture<?> result;
+
+        Slot(StreamPipeline<?, ?> owner, CudaStream stream, long inputBytes, long outputBytes)
+                throws CudaException {
+            GPUDevice device = owner.device;
+            this.stream = stream;
+            this.hostInput = owner.add(new PinnedHostMemory(inputBytes));
+            this.hostOutput = owner.add(new PinnedHostMemory(outputBytes));
+            this.input = owner.add(new DeviceMemory(device, inputBytes));
+            this.output = owner.add(new DeviceMemory(device, outputBytes));
+            this.started = owner.add(new CudaEvent(device));
+            this.uploaded = owner.add(new CudaEvent(device));
+            this.computed = owner.add(new CudaEvent(device));
+            this.downloaded = owner.add(new CudaEvent(device));
+        }
+    }
+
+    /**
+     * An immutable snapshot of the statistics of a {@link StreamPipeline}.
+     * <p>
+     * The busy time of a stage is the sum of its durations over all completed
+     * batches. As the batches are spread over several streams, the busy times
+     * add up to more than the elapsed time when the stages overlap.
+     * {@link #getThroughput(Stage)} is the rate one stream achieves in a
+     * stage, the stage with the lowest rate is the bottleneck of the pipeline.
+     */
+    public static final class Stats {
+        private final long batches;
+        private final long uploadedBytes;
+        private final long downloadedBytes;
+        private final long[] nanos;
+        private final long elapsedNanos;
+
+        Stats(long batches, long uploadedBytes, long downloadedBytes, long[] nanos, long elapsedNanos) {
+            this.batches = batches;
+            this.uploadedBytes = uploadedBytes;
+            this.downloadedBytes = downloadedBytes;
+            this.nanos = nanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the number of batches that have completed successfully.
+         *
+         * @return the number of completed batches
+         */
+        public long getBatchCount() {
+            return batches;
+        }
+
+        /**
+         * Returns the number of bytes uploaded by the completed batches.
+         *
+         * @return the number of uploaded bytes
+         */
+        public long getUploadedBytes() {
+            return uploadedBytes;
+        }
+
+        /**
+         * Returns the number of bytes downloaded by the completed batches.
+         *
+         * @return the number of downloaded bytes
+         */
+        public long getDownloadedBytes() {
+            return downloadedBytes;
+        }
+
+        /**
+         * Returns the busy time of {@code stage} in milliseconds.
+         *
+         * @param stage
+         *            the stage of interest
+         * @return the sum of the durations of {@code stage}
+         */
+        public double getBusyMillis(Stage stage) {
+            return nanos[stage.ordinal()] / 1e6;
+        }
+
+        /**
+         * Returns the number of batches per second of busy time of
+         * {@code stage}.
+         *
+         * @param stage
+         *            the stage of interest
+         * @return the throughput of {@code stage} in batches per second, 0 if
+         *         no batch has completed yet
+         */
+        public double getThroughput(Stage stage) {
+            long busy = nanos[stage.ordinal()];
+            return (busy == 0L) ? 0.0 : batches * 1e9 / busy;
+        }
+
+        /**
+         * Returns the transfer rate of the uploads in bytes per second of busy
+         * time.
+         *
+         * @return the upload bandwidth, 0 if nothing has been uploaded
+         */
+        public double getUploadBytesPerSecond() {
+            long busy = nanos[Stage.UPLOAD.ordinal()];
+            return (busy == 0L) ? 0.0 : uploadedBytes * 1e9 / busy;
+        }
+
+        /**
+         * Returns the transfer rate of the downloads in bytes per second of
+         * busy time.
+         *
+         * @return the download bandwidth, 0 if nothing has been downloaded
+         */
+        public double getDownloadBytesPerSecond() {
+            long busy = nanos[Stage.DOWNLOAD.ordinal()];
+            return (busy == 0L) ? 0.0 : downloadedBytes * 1e9 / busy;
+        }
+
+        /**
+         * Returns the time since the pipeline was created in milliseconds.
+         *
+         * @return the elapsed wall-clock time
+         */
+        public double getElapsedMillis() {
+            return elapsedNanos / 1e6;
+        }
+
+        /**
+         * Returns the number of completed batches per second of elapsed time,
+         * the end-to-end throughput of the pipeline.
+         *
+         * @return the overall throughput in batches per second
+         */
+        public double getBatchesPerSecond() {
+            return (elapsedNanos == 0L) ? 0.0 : batches * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder(256);
+            buf.append("[Stats: ").append(batches).append(" batches, ")
+                    .append(String.format(Locale.ROOT, "%.1f", getBatchesPerSecond())).append(" batches/s");
+            for (Stage stage : STAGES) {
+                buf.append(", ").append(stage.name().toLowerCase(Locale.ROOT)).append(' ')
+                        .append(String.format(Locale.ROOT, "%.1f", getThroughput(stage))).append("/s");
+            }
+            return buf.append(" ]").toString();
+        }
+    }
+}
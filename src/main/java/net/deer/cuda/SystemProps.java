@@ -7,8 +7,81 @@ final class SystemProps {
 
     private static final String REACHABILITY_JNI_ENABLED_P = SystemProps.class.getName() + ".reachability.jni.enabled";
 
+    private static final String BACKEND_P = SystemProps.class.getName() + ".backend";
+
+    private static final String HOST_DEVICE_COUNT_P = SystemProps.class.getName() + ".host.devices";
+
+    private static final String HOST_TOTAL_MEMORY_P = SystemProps.class.getName() + ".host.totalMemory";
+
+    private static final String HOST_MULTI_PROCESSORS_P = SystemProps.class.getName() + ".host.multiProcessors";
+
+    private static final String HOST_MAX_THREADS_PER_BLOCK_P = SystemProps.class.getName() + ".host.maxThreadsPerBlock";
+
+    private static final String HOST_PEER_ACCESS_P = SystemProps.class.getName() + ".host.peerAccess";
+
+    private static final String ALLOCATOR_CACHING_ENABLED_P = SystemProps.class.getName() + ".allocator.caching.enabled";
+
+    private static final String ALLOCATOR_HIGH_WATER_P = SystemProps.class.getName() + ".allocator.highWater";
+
+    private static final String ALLOCATOR_MAX_BLOCK_P = SystemProps.class.getName() + ".allocator.maxBlock";
+
+    private static final String STAGING_ENABLED_P = SystemProps.class.getName() + ".staging.enabled";
+
+    private static final String STAGING_THRESHOLD_P = SystemProps.class.getName() + ".staging.threshold";
+
+    private static final String STAGING_CHUNK_P = SystemProps.class.getName() + ".staging.chunk";
+
+    private static final String STAGING_BUFFERS_P = SystemProps.class.getName() + ".staging.buffers";
+
+    private static final String INSTRUMENTATION_ENABLED_P = SystemProps.class.getName() + ".instrumentation.enabled";
+
+    private static final String LEAK_TRACKING_ENABLED_P = SystemProps.class.getName() + ".leakTracking.enabled";
+
     static final boolean REACHABILITY_JNI = getBooleanPropVal(REACHABILITY_JNI_ENABLED_P, false);
 
+    // either "cuda" (the default) or "host" (host memory emulation)
+    static final String BACKEND = getStringPropVal(BACKEND_P, "cuda");
+
+    // the number of emulated devices when running on the "host" backend
+    static final int HOST_DEVICE_COUNT = getIntPropVal(HOST_DEVICE_COUNT_P, 1);
+
+    // the synthetic properties reported for an emulated device (the memory
+    // size is reported only, not enforced)
+    static final long HOST_TOTAL_MEMORY = getLongPropVal(HOST_TOTAL_MEMORY_P, 1L << 30);
+
+    static final int HOST_MULTI_PROCESSORS = getIntPropVal(HOST_MULTI_PROCESSORS_P,
+            Runtime.getRuntime().availableProcessors());
+
+    static final int HOST_MAX_THREADS_PER_BLOCK = getIntPropVal(HOST_MAX_THREADS_PER_BLOCK_P, 1024);
+
+    // whether emulated devices report peer access to each other
+    static final boolean HOST_PEER_ACCESS = getBooleanPropVal(HOST_PEER_ACCESS_P, true);
+
+    static final boolean ALLOCATOR_CACHING = getBooleanPropVal(ALLOCATOR_CACHING_ENABLED_P, true);
+
+    // the maximum number of idle bytes the caching allocator keeps per device
+    static final long ALLOCATOR_HIGH_WATER = getLongPropVal(ALLOCATOR_HIGH_WATER_P, 256L << 20);
+
+    // allocations larger than this bypass the caching allocator
+    static final long ALLOCATOR_MAX_BLOCK = getLongPropVal(ALLOCATOR_MAX_BLOCK_P, 64L << 20);
+
+    static final boolean STAGING = getBooleanPropVal(STAGING_ENABLED_P, true);
+
+    // array copies of at least this many bytes are staged through pinned memory
+    static final long STAGING_THRESHOLD = getLongPropVal(STAGING_THRESHOLD_P, 1L << 20);
+
+    // the size of a single pinned staging buffer
+    static final long STAGING_CHUNK = getLongPropVal(STAGING_CHUNK_P, 4L << 20);
+
+    // the maximum number of pinned staging buffers
+    static final int STAGING_BUFFERS = getIntPropVal(STAGING_BUFFERS_P, 4);
+
+    // times every synchronous backend operation with a pair of events
+    static final boolean INSTRUMENTATION = getBooleanPropVal(INSTRUMENTATION_ENABLED_P, false);
+
+    // records the allocation stack trace of every device buffer
+    static final boolean LEAK_TRACKING = getBooleanPropVal(LEAK_TRACKING_ENABLED_P, false);
+
     private static boolean getBooleanPropVal(final String prop, final boolean defVal) {
         return AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
             @Override
@@ -25,6 +98,55 @@ final class SystemProps {
         });
     }
 
+    private static String getStringPropVal(final String prop, final String defVal) {
+        return AccessController.doPrivileged(new PrivilegedAction<String>() {
+            @Override
+            public String run() {
+                String val = defVal;
+                try {
+                    String s = System.getProperty(prop, defVal);
+                    if (s != null && s.trim().length() > 0) {
+                        val = s.trim();
+                    }
+                } catch (IllegalArgumentException ignore) {
+                }
+                return val;
+            }
+        });
+    }
+
+    private static int getIntPropVal(final String prop, final int defVal) {
+        return AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            @Override
+            public Integer run() {
+                int val = defVal;
+                try {
+                    String s = System.getProperty(prop, Integer.toString(defVal));
+                    val = Integer.parseInt(s.trim());
+                } catch (IllegalArgumentException ignore) {
+                } catch (NullPointerException ignore) {
+                }
+                return val;
+            }
+        });
+    }
+
+    private static long getLongPropVal(final String prop, final long defVal) {
+        return AccessController.doPrivileged(new PrivilegedAction<Long>() {
+            @Override
+            public Long run() {
+                long val = defVal;
+                try {
+                    String s = System.getProperty(prop, Long.toString(defVal));
+                    val = Long.parseLong(s.trim());
+                } catch (IllegalArgumentException ignore) {
+                } catch (NullPointerException ignore) {
+                }
+                return val;
+            }
+        });
+    }
+
     private SystemProps() {
         throw new AssertionError();
     }
@@ -0,0 +1,124 @@
+package net.deer.cuda;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.security.PrivilegedExceptionAction;
+
+import sun.misc.Unsafe;
+
+final class UnsafeAccess {
+
+    static final Unsafe U;
+
+    static {
+        try {
+            U = AccessController.doPrivileged(new PrivilegedExceptionAction<Unsafe>() {
+                @Override
+                public Unsafe run() throws Exception {
+                    Field f = Unsafe.class.getDeclaredField("theUnsafe");
+                    f.setAccessible(true);
+                    return (Unsafe) f.get(null);
+                }
+            });
+        } catch (Throwable t) {
+            throw new Error(t);
+        }
+    }
+
+    private static final long BUFFER_ADDRESS_OFFSET;
+    private static final long BUFFER_CAPACITY_OFFSET;
+    private static final long BUFFER_LIMIT_OFFSET;
+
+    static {
+        try {
+            BUFFER_ADDRESS_OFFSET = U.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+            BUFFER_CAPACITY_OFFSET = U.objectFieldOffset(Buffer.class.getDeclaredField("capacity"));
+            BUFFER_LIMIT_OFFSET = U.objectFieldOffset(Buffer.class.getDeclaredField("limit"));
+        } catch (Throwable t) {
+            throw new Error(t);
+        }
+    }
+
+    // the views of wrap() are duplicates of this buffer with their address and
+    // capacity replaced
+    private static final ByteBuffer VIEW_TEMPLATE = ByteBuffer.allocateDirect(1);
+
+    private static final long BYTE_ARRAY_BASE = U.arrayBaseOffset(byte[].class);
+    private static final long CHAR_ARRAY_BASE = U.arrayBaseOffset(char[].class);
+    private static final long DOUBLE_ARRAY_BASE = U.arrayBaseOffset(double[].class);
+    private static final long FLOAT_ARRAY_BASE = U.arrayBaseOffset(float[].class);
+    private static final long INT_ARRAY_BASE = U.arrayBaseOffset(int[].class);
+    private static final long LONG_ARRAY_BASE = U.arrayBaseOffset(long[].class);
+    private static final long SHORT_ARRAY_BASE = U.arrayBaseOffset(short[].class);
+
+    // Copies larger than this are split up into several smaller copies so
+    // that the VM gets a chance to reach a safepoint in between (the same
+    // threshold that java.nio uses)
+    private static final long COPY_CHUNK = 1L << 20;
+
+    /**
+     * Copies {@code byteCount} bytes from the source to the destination. Each
+     * side is either an on-heap array (base != {@code null}, offset relative to
+     * the array object) or off-heap memory (base == {@code null}, offset is the
+     * absolute address).
+     */
+    static void copy(Object srcBase, long srcOffset, Object dstBase, long dstOffset, long byteCount) {
+        while (byteCount > 0L) {
+            long size = (byteCount > COPY_CHUNK) ? COPY_CHUNK : byteCount;
+            U.copyMemory(srcBase, srcOffset, dstBase, dstOffset, size);
+            byteCount -= size;
+            srcOffset += size;
+            dstOffset += size;
+        }
+    }
+
+    /**
+     * Returns the offset of the first element of a primitive array relative to
+     * the array object.
+     */
+    static long arrayBase(Object array) {
+        if (array instanceof float[]) {
+            return FLOAT_ARRAY_BASE;
+        } else if (array instanceof double[]) {
+            return DOUBLE_ARRAY_BASE;
+        } else if (array instanceof int[]) {
+            return INT_ARRAY_BASE;
+        } else if (array instanceof long[]) {
+            return LONG_ARRAY_BASE;
+        } else if (array instanceof byte[]) {
+            return BYTE_ARRAY_BASE;
+        } else if (array instanceof short[]) {
+            return SHORT_ARRAY_BASE;
+        } else if (array instanceof char[]) {
+            return CHAR_ARRAY_BASE;
+        }
+        throw new IllegalArgumentException("not a primitive array: " + array);
+    }
+
+    /**
+     * Returns the native address of the first element (index 0) of a direct
+     * buffer.
+     */
+    static long addressOf(Buffer directBuffer) {
+        return U.getLong(directBuffer, BUFFER_ADDRESS_OFFSET);
+    }
+
+    /**
+     * Returns a direct buffer (position 0, limit = capacity) over
+     * {@code capacity} bytes of off-heap memory at {@code address}. The buffer
+     * doesn't own the memory, which must stay allocated while it is in use.
+     */
+    static ByteBuffer wrap(long address, int capacity) {
+        ByteBuffer view = VIEW_TEMPLATE.duplicate();
+        U.putLong(view, BUFFER_ADDRESS_OFFSET, address);
+        U.putInt(view, BUFFER_CAPACITY_OFFSET, capacity);
+        U.putInt(view, BUFFER_LIMIT_OFFSET, capacity);
+        return view;
+    }
+
+    private UnsafeAccess() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,360 @@
+package net.deer.cuda;
+
+/**
+ * BLAS level 1 style operations on float and double vectors that live in
+ * {@link DeviceMemory}: {@code axpy}, {@code scale}, {@code dot}, {@code sum},
+ * {@code min}, {@code max} and {@code norm}.
+ * <p>
+ * A vector is a whole buffer or slice, its element count is its length
+ * divided by the element size (trailing bytes are ignored). Vectors must start
+ * at a multiple of the element size and the two operands of a binary
+ * operation must live on the same device, have the same number of elements and
+ * must not overlap partially.
+ * <p>
+ * Every operation runs on the device of its operands and returns once it has
+ * completed. Only the scalar result of a reduction is copied to the host, so a
+ * chain of operations never round-trips the vectors through
+ * {@code fetchToHost}. With the host backend
+ * ({@code -Dnet.deer.cuda.SystemProps.backend=host}) the same operations run
+ * in parallel on the common fork/join pool, so code using them runs (and can
+ * be benchmarked) on nodes without a GPU.
+ * <p>
+ * Sums, dot products and norms are accumulated in double precision, also for
+ * float vectors. The order of the additions differs between the backends, so
+ * their results may differ in the last bits.
+ */
+public final class VectorOps {
+
+    private static final DeviceBackend backend = Backends.get();
+
+    /**
+     * Computes {@code y = alpha * x + y} for the float vectors {@code x} and
+     * {@code y}.
+     *
+     * @param alpha
+     *            the scalar multiplier of {@code x}
+     * @param x
+     *            the vector to be added, scaled by {@code alpha}
+     * @param y
+     *            the vector to be updated in place
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vectors differ in device or length or aren't aligned
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void axpyFloat(float alpha, DeviceMemory x, DeviceMemory y) throws CudaException {
+        long n = checkSameShape(x, y, 4);
+        backend.axpy(x.getDeviceId(), 4, n, alpha, addressOf(x, 4), addressOf(y, 4));
+        ReachabilityFence.protect(x);
+        ReachabilityFence.protect(y);
+    }
+
+    /**
+     * Computes {@code x = alpha * x} for the float vector {@code x}.
+     *
+     * @param alpha
+     *            the scalar multiplier
+     * @param x
+     *            the vector to be scaled in place
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static void scaleFloat(float alpha, DeviceMemory x) throws CudaException {
+        backend.scale(x.getDeviceId(), 4, x.getLength() >> 2, alpha, addressOf(x, 4));
+        ReachabilityFence.protect(x);
+    }
+
+    /**
+     * Returns the dot product of the float vectors {@code x} and {@code y}.
+     *
+     * @param x
+     *            the first vector
+     * @param y
+     *            the second vector
+     * @return the sum of the element-wise products, accumulated in double
+     *         precision
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vectors differ in device or length or aren't aligned
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static double dotFloat(DeviceMemory x, DeviceMemory y) throws CudaException {
+        long n = checkSameShape(x, y, 4);
+        double dot = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_DOT, 4, n, addressOf(x, 4),
+                addressOf(y, 4));
+        ReachabilityFence.protect(x);
+        ReachabilityFence.protect(y);
+        return dot;
+    }
+
+    /**
+     * Returns the sum of the elements of the float vector {@code x}.
+     *
+     * @param x
+     *            the vector of interest
+     * @return the sum of the elements, accumulated in double precision (0 for an
+     *         empty vector)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static double sumFloat(DeviceMemory x) throws CudaException {
+        double sum = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_SUM, 4, x.getLength() >> 2,
+                addressOf(x, 4), 0L);
+        ReachabilityFence.protect(x);
+        return sum;
+    }
+
+    /**
+     * Returns the smallest element of the float vector {@code x}, NaN elements
+     * are ignored.
+     *
+     * @param x
+     *            the vector of interest
+     * @return the minimum, NaN if {@code x} is empty or has NaN elements only
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static float minFloat(DeviceMemory x) throws CudaException {
+        double min = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_MIN, 4, x.getLength() >> 2,
+                addressOf(x, 4), 0L);
+        ReachabilityFence.protect(x);
+        return (float) min;
+    }
+
+    /**
+     * Returns the largest element of the float vector {@code x}, NaN elements
+     * are ignored.
+     *
+     * @param x
+     *            the vector of interest
+     * @return the maximum, NaN if {@code x} is empty or has NaN elements only
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static float maxFloat(DeviceMemory x) throws CudaException {
+        double max = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_MAX, 4, x.getLength() >> 2,
+                addressOf(x, 4), 0L);
+        ReachabilityFence.protect(x);
+        return (float) max;
+    }
+
+    /**
+     * Returns the Euclidean norm of the float vector {@code x}.
+     *
+     * @param x
+     *            the vector of interest
+     * @return the square root of the sum of the squared elements, accumulated
+     *         in double precision
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static double normFloat(DeviceMemory x) throws CudaException {
+        double sumOfSquares = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_SUM_OF_SQUARES, 4,
+                x.getLength() >> 2, addressOf(x, 4), 0L);
+        ReachabilityFence.protect(x);
+        return Math.sqrt(sumOfSquares);
+    }
+
+    /**
+     * Computes {@code y = alpha * x + y} for the double vectors {@code x} and
+     * {@code y}.
+     *
+     * @param alpha
+     *            the scalar multiplier of {@code x}
+     * @param x
+     *            the vector to be added, scaled by {@code alpha}
+     * @param y
+     *            the vector to be updated in place
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vectors differ in device or length or aren't aligned
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static void axpyDouble(double alpha, DeviceMemory x, DeviceMemory y) throws CudaException {
+        long n = checkSameShape(x, y, 8);
+        backend.axpy(x.getDeviceId(), 8, n, alpha, addressOf(x, 8), addressOf(y, 8));
+        ReachabilityFence.protect(x);
+        ReachabilityFence.protect(y);
+    }
+
+    /**
+     * Computes {@code x = alpha * x} for the double vector {@code x}.
+     *
+     * @param alpha
+     *            the scalar multiplier
+     * @param x
+     *            the vector to be scaled in place
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static void scaleDouble(double alpha, DeviceMemory x) throws CudaException {
+        backend.scale(x.getDeviceId(), 8, x.getLength() >> 3, alpha, addressOf(x, 8));
+        ReachabilityFence.protect(x);
+    }
+
+    /**
+     * Returns the dot product of the double vectors {@code x} and {@code y}.
+     *
+     * @param x
+     *            the first vector
+     * @param y
+     *            the second vector
+     * @return the sum of the element-wise products, accumulated in double
+     *         precision
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vectors differ in device or length or aren't aligned
+     * @throws IllegalStateException
+     *             if one of the buffers has been closed
+     */
+    public static double dotDouble(DeviceMemory x, DeviceMemory y) throws CudaException {
+        long n = checkSameShape(x, y, 8);
+        double dot = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_DOT, 8, n, addressOf(x, 8),
+                addressOf(y, 8));
+        ReachabilityFence.protect(x);
+        ReachabilityFence.protect(y);
+        return dot;
+    }
+
+    /**
+     * Returns the sum of the elements of the double vector {@code x}.
+     *
+     * @param x
+     *            the vector of interest
+     * @return the sum of the elements, accumulated in double precision (0 for an
+     *         empty vector)
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static double sumDouble(DeviceMemory x) throws CudaException {
+        double sum = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_SUM, 8, x.getLength() >> 3,
+                addressOf(x, 8), 0L);
+        ReachabilityFence.protect(x);
+        return sum;
+    }
+
+    /**
+     * Returns the smallest element of the double vector {@code x}, NaN elements
+     * are ignored.
+     *
+     * @param x
+     *            the vector of interest
+     * @return the minimum, NaN if {@code x} is empty or has NaN elements only
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static double minDouble(DeviceMemory x) throws CudaException {
+        double min = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_MIN, 8, x.getLength() >> 3,
+                addressOf(x, 8), 0L);
+        ReachabilityFence.protect(x);
+        return min;
+    }
+
+    /**
+     * Returns the largest element of the double vector {@code x}, NaN elements
+     * are ignored.
+     *
+     * @param x
+     *            the vector of interest
+     * @return the maximum, NaN if {@code x} is empty or has NaN elements only
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static double maxDouble(DeviceMemory x) throws CudaException {
+        double max = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_MAX, 8, x.getLength() >> 3,
+                addressOf(x, 8), 0L);
+        ReachabilityFence.protect(x);
+        return max;
+    }
+
+    /**
+     * Returns the Euclidean norm of the double vector {@code x}.
+     *
+     * @param x
+     *            the vector of interest
+     * @return the square root of the sum of the squared elements, accumulated
+     *         in double precision
+     * @throws CudaException
+     *             if a CUDA exception occurs
+     * @throws IllegalArgumentException
+     *             if the vector isn't aligned
+     * @throws IllegalStateException
+     *             if the buffer has been closed
+     */
+    public static double normDouble(DeviceMemory x) throws CudaException {
+        double sumOfSquares = backend.reduce(x.getDeviceId(), DeviceBackend.REDUCE_SUM_OF_SQUARES, 8,
+                x.getLength() >> 3, addressOf(x, 8), 0L);
+        ReachabilityFence.protect(x);
+        return Math.sqrt(sumOfSquares);
+    }
+
+    // returns the common element count of x and y
+    private static long checkSameShape(DeviceMemory x, DeviceMemory y, int elementSize) {
+        if (x.getDeviceId() != y.getDeviceId()) {
+            throw new IllegalArgumentException(
+                    "x lives on device " + x.getDeviceId() + ", y on device " + y.getDeviceId());
+        }
+        long n = x.getLength() / elementSize;
+        if (y.getLength() / elementSize != n) {
+            throw new IllegalArgumentException(
+                    "x has " + n + " elements, y has " + y.getLength() / elementSize + " elements");
+        }
+        return n;
+    }
+
+    // a misaligned vector would be a (sticky) launch failure on the device
+    /* package */static long addressOf(DeviceMemory x, int elementSize) {
+        long address = x.getAddress();
+        if ((address & (elementSize - 1)) != 0L) {
+            throw new IllegalArgumentException("vector isn't aligned to its element size " + elementSize);
+        }
+        return address;
+    }
+
+    private VectorOps() {
+        throw new AssertionError();
+    }
+}
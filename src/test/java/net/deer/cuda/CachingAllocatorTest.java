@@ -0,0 +1,220 @@
+package net.deer.cuda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Runs on the host backend (see the surefire configuration), every test uses
+ * an allocator of its own so that the counters start at 0.
+ */
+public class CachingAllocatorTest {
+
+    private static final int ERROR_MEMORY_ALLOCATION = 2;
+
+    private static final long MB = 1L << 20;
+
+    @Test
+    public void releasedBlockIsReusedForTheSameSizeClass() {
+        CountingBackend counting = new CountingBackend(Long.MAX_VALUE);
+        CachingAllocator allocator = new CachingAllocator(0, counting.proxy());
+        long block = allocator.malloc(1000L);
+        assertEquals(0L, allocator.getHitCount());
+        assertEquals(1L, allocator.getMissCount());
+
+        release(allocator, block, 1000L);
+        assertEquals(CachingAllocator.classSize(CachingAllocator.classIndex(1000L)), allocator.getCachedBytes());
+
+        // 1000 and 1024 bytes share the 1024 bytes class
+        assertEquals(block, allocator.malloc(1024L));
+        assertEquals(1L, allocator.getHitCount());
+        assertEquals(1L, allocator.getMissCount());
+        assertEquals(0L, allocator.getCachedBytes());
+        assertEquals(1, counting.mallocs.get());
+        release(allocator, block, 1024L);
+    }
+
+    @Test
+    public void otherSizeClassMisses() {
+        CountingBackend counting = new CountingBackend(Long.MAX_VALUE);
+        CachingAllocator allocator = new CachingAllocator(0, counting.proxy());
+        long block = allocator.malloc(1000L);
+        release(allocator, block, 1000L);
+
+        long other = allocator.malloc(2000L);
+        assertNotEquals(block, other);
+        assertEquals(0L, allocator.getHitCount());
+        assertEquals(2L, allocator.getMissCount());
+        assertEquals(2, counting.mallocs.get());
+        release(allocator, other, 2000L);
+    }
+
+    @Test
+    public void blocksAboveMaxBlockAreNotCached() {
+        CountingBackend counting = new CountingBackend(Long.MAX_VALUE);
+        CachingAllocator allocator = new CachingAllocator(0, counting.proxy());
+        long byteCount = SystemProps.ALLOCATOR_MAX_BLOCK + 1L;
+        long block = allocator.malloc(byteCount);
+        assertEquals(0L, allocator.getMissCount());
+
+        release(allocator, block, byteCount);
+        assertEquals(0L, allocator.getCachedBytes());
+        assertEquals(0L, counting.liveBytes.get());
+    }
+
+    @Test
+    public void cachedBytesStayBelowTheHighWaterMark() {
+        CountingBackend counting = new CountingBackend(Long.MAX_VALUE);
+        CachingAllocator allocator = new CachingAllocator(0, counting.proxy());
+        int cacheable = (int) (SystemProps.ALLOCATOR_HIGH_WATER / MB);
+        long[] blocks = new long[cacheable + 2];
+        for (int i = 0; i < blocks.length; ++i) {
+            blocks[i] = allocator.malloc(MB);
+        }
+        for (long block : blocks) {
+            release(allocator, block, MB);
+        }
+        assertEquals(cacheable * MB, allocator.getCachedBytes());
+        // the blocks beyond the mark went straight back to the device
+        assertEquals(2, counting.frees.get());
+        assertEquals(cacheable * MB, counting.liveBytes.get());
+
+        assertEquals(cacheable * MB, allocator.trim());
+        assertEquals(0L, allocator.getCachedBytes());
+        assertEquals(0L, counting.liveBytes.get());
+    }
+
+    @Test
+    public void outOfMemoryTrimsTheCacheAndRetries() {
+        CountingBackend counting = new CountingBackend(2L * MB);
+        CachingAllocator allocator = new CachingAllocator(0, counting.proxy());
+        long first = allocator.malloc(MB);
+        long second = allocator.malloc(MB);
+        release(allocator, first, MB);
+        release(allocator, second, MB);
+        assertEquals(2L * MB, allocator.getCachedBytes());
+
+        // only fits after the two idle blocks have been freed
+        long block = allocator.malloc(2L * MB);
+        assertTrue(block != 0L);
+        assertEquals(1L, allocator.getTrimCount());
+        assertEquals(0L, allocator.getCachedBytes());
+        assertEquals(2L * MB, counting.liveBytes.get());
+        release(allocator, block, 2L * MB);
+        allocator.trim();
+    }
+
+    @Test
+    public void outOfMemoryWithAnEmptyCacheIsRethrown() {
+        CountingBackend counting = new CountingBackend(MB);
+        CachingAllocator allocator = new CachingAllocator(0, counting.proxy());
+        try {
+            allocator.malloc(2L * MB);
+            fail("CudaException expected");
+        } catch (CudaException e) {
+            assertEquals(ERROR_MEMORY_ALLOCATION, e.getCode());
+        }
+        assertEquals(0L, counting.liveBytes.get());
+    }
+
+    @Test
+    public void blockIsNotReusedBeforeRecordedWorkCompletes() throws Exception {
+        DeviceBackend backend = Backends.get();
+        CachingAllocator allocator = new CachingAllocator(1, backend);
+        CudaStream stream = new CudaStream(new GPUDevice(1));
+        try {
+            long block = allocator.malloc(4096L);
+            Address address = Addresses.of(this, block, 4096L, allocator.cleaner(4096L), 1);
+
+            // holds up the stream until the latch opens
+            final CountDownLatch latch = new CountDownLatch(1);
+            backend.addCallback(1, stream.getHandle(), new StreamCallback() {
+                @Override
+                public void done(int status, Throwable cause) {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            CachingAllocator.recordStream(address, stream);
+            address.close();
+
+            long other = allocator.malloc(4096L);
+            assertNotEquals(block, other);
+            assertEquals(0L, allocator.getHitCount());
+
+            latch.countDown();
+            stream.synchronize();
+            assertEquals(block, allocator.malloc(4096L));
+            assertEquals(1L, allocator.getHitCount());
+            release(allocator, block, 4096L);
+            release(allocator, other, 4096L);
+            allocator.trim();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static void release(CachingAllocator allocator, long block, long byteCount) {
+        Address address = Addresses.of(allocator, block, byteCount, null, 0);
+        assertEquals(0L, allocator.cleaner(byteCount).release(address));
+    }
+
+    // Delegates to the active backend, counts malloc/free on device memory and
+    // fails malloc with cudaErrorMemoryAllocation when more than limit bytes
+    // would be live
+    private static final class CountingBackend implements InvocationHandler {
+        final long limit;
+        final AtomicInteger mallocs = new AtomicInteger();
+        final AtomicInteger frees = new AtomicInteger();
+        final AtomicLong liveBytes = new AtomicLong();
+        final ConcurrentHashMap<Long, Long> sizes = new ConcurrentHashMap<Long, Long>();
+
+        CountingBackend(long limit) {
+            this.limit = limit;
+        }
+
+        DeviceBackend proxy() {
+            return (DeviceBackend) Proxy.newProxyInstance(DeviceBackend.class.getClassLoader(),
+                    new Class<?>[] { DeviceBackend.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean malloc = "malloc".equals(name);
+            if (malloc && liveBytes.get() + (Long) args[1] > limit) {
+                throw new CudaException(ERROR_MEMORY_ALLOCATION);
+            }
+            Object result;
+            try {
+                result = method.invoke(Backends.get(), args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (malloc) {
+                mallocs.incrementAndGet();
+                liveBytes.addAndGet((Long) args[1]);
+                sizes.put((Long) result, (Long) args[1]);
+            } else if ("free".equals(name) && args.length == 2) {
+                frees.incrementAndGet();
+                liveBytes.addAndGet(-sizes.remove(args[1]));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package net.deer.cuda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Checks the synthetic properties the host backend reports (see the surefire
+ * configuration) and their caching in {@link GPUDevice}.
+ */
+public class DevicePropertiesTest {
+
+    @Test
+    public void deviceCountIsTheEmulatedCount() {
+        assertEquals(SystemProps.HOST_DEVICE_COUNT, GPUDevice.getCount());
+    }
+
+    @Test
+    public void syntheticProperties() {
+        for (int deviceId = 0; deviceId < GPUDevice.getCount(); ++deviceId) {
+            DeviceProperties props = new GPUDevice(deviceId).getProperties();
+            assertEquals(deviceId, props.getDeviceId());
+            assertEquals("Host emulation device " + deviceId, props.getName());
+            assertEquals(SystemProps.HOST_TOTAL_MEMORY, props.getTotalGlobalMem());
+            assertEquals(SystemProps.HOST_MULTI_PROCESSORS, props.getMultiProcessorCount());
+            assertEquals(SystemProps.HOST_MAX_THREADS_PER_BLOCK, props.getMaxThreadsPerBlock());
+            assertEquals(32, props.getWarpSize());
+            assertEquals(48L << 10, props.getSharedMemPerBlock());
+            assertEquals(1024, props.getMaxThreadsDim().x);
+            assertEquals(64, props.getMaxThreadsDim().z);
+            assertEquals(Integer.MAX_VALUE, props.getMaxGridSize().x);
+            // compute capability 0.0 marks an emulated device
+            assertEquals(0, props.getMajor());
+            assertEquals(0, props.getMinor());
+            assertTrue(props.toString().contains(props.getName()));
+        }
+    }
+
+    @Test
+    public void propertiesAreCachedPerDeviceId() {
+        GPUDevice device = new GPUDevice(1);
+        DeviceProperties props = device.getProperties();
+        assertSame(props, device.getProperties());
+        assertSame(props, new GPUDevice(1).getProperties());
+    }
+
+    @Test
+    public void invalidDeviceIdIsRejected() {
+        try {
+            new GPUDevice(GPUDevice.getCount()).getProperties();
+            fail("CudaException expected");
+        } catch (CudaException e) {
+            assertEquals(HostBackend.ERROR_INVALID_DEVICE, e.getCode());
+        }
+    }
+}
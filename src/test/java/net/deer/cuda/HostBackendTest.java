@@ -0,0 +1,192 @@
+package net.deer.cuda;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HostBackendTest {
+
+    private HostBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new HostBackend(2);
+    }
+
+    @Test
+    public void allocationsAreAligned() {
+        for (long byteCount : new long[] { 1L, 255L, 1000L, 4097L, 1L << 20 }) {
+            long address = backend.malloc(0, byteCount);
+            assertEquals("byteCount " + byteCount, 0L, address % HostBackend.ALIGNMENT);
+            assertEquals(0L, backend.free(0, address));
+        }
+    }
+
+    @Test
+    public void zeroByteAllocationReturnsNull() {
+        assertEquals(0L, backend.malloc(0, 0L));
+        assertEquals(0L, backend.free(0, 0L));
+    }
+
+    @Test
+    public void arrayRoundTrip() {
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i * 0.25;
+        }
+        long address = backend.malloc(0, 8L * values.length);
+        backend.copyHostToDevice(0, address, values, 0L, 8L * values.length);
+        double[] back = new double[values.length];
+        backend.copyDeviceToHost(0, address, back, 0L, 8L * back.length);
+        assertArrayEquals(values, back, 0.0);
+
+        // byte offsets are relative to the first array element
+        int[] ints = { 1, 2, 3, 4 };
+        backend.copyHostToDevice(0, address + 8L, ints, 4L, 8L);
+        int[] slice = new int[2];
+        backend.copyDeviceToHost(0, address + 8L, slice, 0L, 8L);
+        assertArrayEquals(new int[] { 2, 3 }, slice);
+        backend.free(0, address);
+    }
+
+    @Test
+    public void deviceToDeviceAndPeerCopies() {
+        byte[] bytes = new byte[4096];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) (i * 7);
+        }
+        long src = backend.malloc(0, bytes.length);
+        long dst = backend.malloc(0, bytes.length);
+        long peer = backend.malloc(1, bytes.length);
+        backend.copyHostToDevice(0, src, bytes, 0L, bytes.length);
+
+        backend.copyDeviceToDevice(0, dst, src, bytes.length);
+        byte[] back = new byte[bytes.length];
+        backend.copyDeviceToHost(0, dst, back, 0L, back.length);
+        assertArrayEquals(bytes, back);
+
+        backend.copyPeer(1, peer, 0, src, bytes.length);
+        back = new byte[bytes.length];
+        backend.copyDeviceToHost(1, peer, back, 0L, back.length);
+        assertArrayEquals(bytes, back);
+
+        backend.free(0, src);
+        backend.free(0, dst);
+        backend.free(1, peer);
+    }
+
+    @Test
+    public void asyncCopiesAndMemsetRunOnTheStream() {
+        long stream = backend.createStream(0, CudaStream.FLAG_DEFAULT);
+        long host = backend.mallocHost(64L);
+        long address = backend.malloc(0, 64L);
+        try {
+            backend.memsetAsync(stream, 0, address, 0x01020304L, 4, 16L);
+            backend.copyDeviceToHostAsync(stream, 0, address, host, 64L);
+            backend.synchronizeStream(0, stream);
+            int[] ints = new int[16];
+            UnsafeAccess.copy(null, host, ints, UnsafeAccess.arrayBase(ints), 64L);
+            for (int value : ints) {
+                assertEquals(0x01020304, value);
+            }
+
+            backend.memset(0, address, 0xABL, 1, 64L);
+            backend.copyDeviceToDeviceAsync(stream, 0, address, address + 32L, 32L);
+            backend.synchronizeStream(0, stream);
+            byte[] bytes = new byte[64];
+            backend.copyDeviceToHost(0, address, bytes, 0L, 64L);
+            for (byte value : bytes) {
+                assertEquals((byte) 0xAB, value);
+            }
+        } finally {
+            backend.free(0, address);
+            backend.freeHost(host);
+            backend.destroyStream(0, stream);
+        }
+    }
+
+    @Test
+    public void copiesBeyondTheAllocationAreRejected() {
+        final long address = backend.malloc(0, 1024L);
+        byte[] bytes = new byte[2048];
+        assertInvalidValue(new Runnable() {
+            @Override
+            public void run() {
+                backend.copyHostToDevice(0, address, new byte[2048], 0L, 1025L);
+            }
+        });
+        assertInvalidValue(new Runnable() {
+            @Override
+            public void run() {
+                backend.copyDeviceToHost(0, address + 1000L, new byte[2048], 0L, 100L);
+            }
+        });
+        assertInvalidValue(new Runnable() {
+            @Override
+            public void run() {
+                backend.copyDeviceToHost(0, address - 1L, new byte[2048], 0L, 8L);
+            }
+        });
+        // the last byte is fine
+        backend.copyHostToDevice(0, address + 1023L, bytes, 0L, 1L);
+        backend.free(0, address);
+    }
+
+    @Test
+    public void addressesOfOtherDevicesAreRejected() {
+        final long address = backend.malloc(0, 1024L);
+        assertInvalidValue(new Runnable() {
+            @Override
+            public void run() {
+                backend.copyHostToDevice(1, address, new byte[16], 0L, 16L);
+            }
+        });
+        assertEquals(HostBackend.ERROR_INVALID_VALUE, backend.free(1, address));
+        assertEquals(0L, backend.free(0, address));
+        // freed twice
+        assertEquals(HostBackend.ERROR_INVALID_VALUE, backend.free(0, address));
+    }
+
+    @Test
+    public void invalidDeviceIdIsRejected() {
+        try {
+            backend.malloc(2, 16L);
+            fail("CudaException expected");
+        } catch (CudaException e) {
+            assertEquals(HostBackend.ERROR_INVALID_DEVICE, e.getCode());
+        }
+        assertEquals(HostBackend.ERROR_INVALID_DEVICE, backend.free(-1, 256L));
+    }
+
+    @Test
+    public void misalignedVectorsAreRejected() {
+        final long address = backend.malloc(0, 1024L);
+        assertInvalidValue(new Runnable() {
+            @Override
+            public void run() {
+                backend.scale(0, 8, 4L, 2.0, address + 4L);
+            }
+        });
+        assertInvalidValue(new Runnable() {
+            @Override
+            public void run() {
+                // 129 doubles don't fit into 1024 bytes
+                backend.scale(0, 8, 129L, 2.0, address);
+            }
+        });
+        backend.scale(0, 4, 256L, 2.0, address);
+        backend.free(0, address);
+    }
+
+    private static void assertInvalidValue(Runnable operation) {
+        try {
+            operation.run();
+            fail("CudaException expected");
+        } catch (CudaException e) {
+            assertEquals(HostBackend.ERROR_INVALID_VALUE, e.getCode());
+        }
+    }
+}